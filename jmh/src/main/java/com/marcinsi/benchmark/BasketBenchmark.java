@@ -0,0 +1,150 @@
+package com.marcinsi.benchmark;
+
+import com.marcinsi.warehouseapp.Basket;
+import com.marcinsi.warehouseapp.CheckoutResult;
+import com.marcinsi.warehouseapp.CompactBasket;
+import com.marcinsi.warehouseapp.StockItem;
+import com.marcinsi.warehouseapp.StockList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Operacje na koszyku - każdy wątek ma własny koszyk (ThreadState), lista produktów jest wspólna
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BasketBenchmark {
+
+    static final int CHECKOUT_LINES = 3;
+
+    @Benchmark
+    public int addRemove(CatalogState catalog, ThreadState state) {
+
+        StockItem item = catalog.stockList.get(catalog.randomId());
+
+        state.basket.addToBasket(item, 1);
+
+        return state.basket.removeFromBasket(item, 1);
+    }
+
+    // Pełny zakup - tak jak Main.sellItem() oraz Main.checkOut(): trzy pozycje, rezerwacja, sprzedaż koszyka i uzupełnienie magazynu
+    // Gdy zakup się nie powiódł, towar nie został sprzedany - cofamy tylko rezerwacje (uzupełnienie zawyżałoby stan magazynu)
+
+    @Benchmark
+    public int checkout(CatalogState catalog, ThreadState state) {
+
+        StockList stockList = catalog.stockList;
+        Basket basket = state.basket;
+
+        for(int i = 0; i < CHECKOUT_LINES; i++){
+
+            String name = catalog.randomName();
+
+            if(stockList.reserveStock(name, 1) != 0){
+
+                basket.addToBasket(stockList.get(name), 1);
+            }
+        }
+
+        int count = 0;
+
+        for(Map.Entry<StockItem, Integer> line : basket.Items().entrySet()){
+
+            state.lines[count] = line.getKey();
+            state.quantities[count] = line.getValue();
+            count++;
+        }
+
+        CheckoutResult result = stockList.checkout(basket);
+
+        for(int i = 0; i < count; i++){
+
+            if(result.isSuccessful()){
+
+                state.lines[i].adjustStock(state.quantities[i]);
+
+            } else {
+
+                state.lines[i].unreserveStock(state.quantities[i]);
+            }
+        }
+
+        basket.clearBasket();
+
+        return result.getUnitsSold();
+    }
+
+    @Benchmark
+    public int compactAddRemove(CatalogState catalog, ThreadState state) {
+
+        int itemId = catalog.randomId();
+
+        state.compactBasket.addToBasket(itemId, 1);
+
+        return state.compactBasket.removeFromBasket(itemId, 1);
+    }
+
+    // Ten sam zakup co checkout(), ale na koszyku kompaktowym - pozycje to identyfikatory, bez wyszukiwania po nazwie
+
+    @Benchmark
+    public int compactCheckout(CatalogState catalog, ThreadState state) {
+
+        StockList stockList = catalog.stockList;
+        CompactBasket basket = state.compactBasket;
+        int count = 0;
+
+        for(int i = 0; i < CHECKOUT_LINES; i++){
+
+            int itemId = catalog.randomId();
+
+            if(stockList.reserveStock(itemId, 1) != 0){
+
+                if(basket.addToBasket(itemId, 1) == 0){
+
+                    state.lineIds[count++] = itemId;
+                }
+            }
+        }
+
+        for(int i = 0; i < count; i++){
+
+            state.quantities[i] = basket.getQuantity(state.lineIds[i]);
+        }
+
+        CheckoutResult result = stockList.checkout(basket);
+
+        for(int i = 0; i < count; i++){
+
+            StockItem item = stockList.get(state.lineIds[i]);
+
+            if(result.isSuccessful()){
+
+                item.adjustStock(state.quantities[i]);
+
+            } else {
+
+                item.unreserveStock(state.quantities[i]);
+            }
+        }
+
+        basket.clearBasket();
+
+        return result.getUnitsSold();
+    }
+
+    @Benchmark
+    public int basketToString(ThreadState state) {
+
+        return state.report.toString().length();
+    }
+}
@@ -0,0 +1,78 @@
+package com.marcinsi.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Arrays;
+
+// Uruchomienie pomiarów JMH dla kilku rozmiarów katalogu i kilku liczb wątków (gradle :jmh:jmh)
+// Rozmiar katalogu to parametr @Param (CatalogState.size), a liczbę wątków JMH ustala dla całego uruchomienia (opcja -t)
+// Dlatego dla każdej liczby wątków uruchamiamy JMH osobno - pomiary całej listy (ReportBenchmark) tylko dla jednego wątku
+// Profiler GC dopisuje do wyników alokacje na operację (gc.alloc.rate.norm) - wzrost tej wartości to regresja
+//
+// Argumenty: sizes=1000,100000,10000000 threads=1,4,16 filter=reserve forks=1 iterations=5 time=1 output=results.json
+
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+
+        String[] sizes = {"1000", "100000", "1000000"};
+        int[] threads = {1, 4};
+        String filter = "";
+        String output = null;
+        int forks = 1;
+        int iterations = 5;
+        int seconds = 1;
+
+        for(String arg : args){
+
+            String[] parts = arg.split("=", 2);
+
+            if(parts.length != 2){
+
+                throw new IllegalArgumentException("Expected name=value : " + arg);
+            }
+
+            switch(parts[0]){
+
+                case "sizes": sizes = parts[1].split(","); break;
+                case "threads": threads = Arrays.stream(parts[1].split(",")).mapToInt(value -> Integer.parseInt(value.trim())).toArray(); break;
+                case "filter": filter = parts[1]; break;
+                case "forks": forks = Integer.parseInt(parts[1]); break;
+                case "iterations": iterations = Integer.parseInt(parts[1]); break;
+                case "time": seconds = Integer.parseInt(parts[1]); break;
+                case "output": output = parts[1]; break;
+                default: throw new IllegalArgumentException("Unknown argument : " + arg);
+            }
+        }
+
+        for(int threadCount : threads){
+
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(BenchmarkRunner.class.getPackageName() + ".*Benchmark.*" + filter)
+                    .param("size", sizes)
+                    .threads(threadCount)
+                    .forks(forks)
+                    .measurementIterations(iterations)
+                    .measurementTime(TimeValue.seconds(seconds))
+                    .addProfiler(GCProfiler.class);
+
+            if(threadCount > 1){
+
+                options.exclude(ReportBenchmark.class.getSimpleName());
+            }
+
+            if(output != null){
+
+                options.resultFormat(ResultFormatType.JSON).result(output.replace(".json", "") + "-t" + threadCount + ".json");
+            }
+
+            new Runner(options.build()).run();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.marcinsi.benchmark;
+
+import com.marcinsi.warehouseapp.StockItem;
+import com.marcinsi.warehouseapp.StockList;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Lista produktów wspólna dla wszystkich wątków pomiaru - rozmiar katalogu to parametr JMH (size)
+// Oprócz produktów item0, item1... lista zawiera dwa dodatkowe produkty rezerwowane przez wszystkie wątki naraz:
+// HOT_ITEM - podzielony na przedziały (StockList.markHot()), CONTENDED_ITEM - zwykły produkt (porównanie)
+
+@State(Scope.Benchmark)
+public class CatalogState {
+
+    static final String HOT_ITEM = "hot-item";
+    static final String CONTENDED_ITEM = "contended-item";
+
+    // Zapas towaru - pomiary przywracają stan po każdej operacji, więc towar nie wyczerpuje się w trakcie pomiaru
+
+    static final int QUANTITY = 1_000_000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    StockList stockList;
+    String[] names;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        names = new String[size];
+        stockList = StockList.concurrentStockList(size + 2);
+
+        for(int i = 0; i < size; i++){
+
+            names[i] = "item" + i;
+            stockList.addStock(new StockItem(names[i], 1.0 + (i % 1000) / 100.0, QUANTITY));
+        }
+
+        stockList.addStock(new StockItem(HOT_ITEM, 9.99, Integer.MAX_VALUE / 2));
+        stockList.addStock(new StockItem(CONTENDED_ITEM, 9.99, Integer.MAX_VALUE / 2));
+        stockList.markHot(HOT_ITEM, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    String randomName() {
+
+        return names[ThreadLocalRandom.current().nextInt(size)];
+    }
+
+    int randomId() {
+
+        return ThreadLocalRandom.current().nextInt(size);
+    }
+}
@@ -0,0 +1,98 @@
+package com.marcinsi.benchmark;
+
+import com.marcinsi.warehouseapp.StockItem;
+import com.marcinsi.warehouseapp.StockJournal;
+import com.marcinsi.warehouseapp.StockList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Rezerwacja na liście z dziennikiem (StockJournal) - rozkład czasów (tryb SampleTime: percentyle p50, p99, p99.9)
+// reserve - rekord trafia do bufora bez czekania na dysk, reserveDurably - metoda czeka na zapis rekordu (fsync wspólny dla wielu wątków)
+
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+    static final int ITEMS = 1_000;
+
+    @State(Scope.Benchmark)
+    public static class JournalState {
+
+        StockList stockList;
+        StockJournal journal;
+        Path directory;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+
+            directory = Files.createTempDirectory("stock-journal-benchmark");
+            stockList = StockList.concurrentStockList(ITEMS);
+
+            for(int i = 0; i < ITEMS; i++){
+
+                stockList.addStock(new StockItem("item" + i, 1.0 + i / 100.0, CatalogState.QUANTITY));
+            }
+
+            journal = StockJournal.open(directory);
+            stockList.attachJournal(journal);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+
+            journal.close();
+
+            try(Stream<Path> files = Files.walk(directory)){
+
+                for(Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator){
+
+                    Files.delete(file);
+                }
+            }
+        }
+
+        String randomName() {
+
+            return "item" + ThreadLocalRandom.current().nextInt(ITEMS);
+        }
+    }
+
+    @Benchmark
+    public int reserve(JournalState state) {
+
+        String name = state.randomName();
+        int reserved = state.stockList.reserveStock(name, 1);
+
+        return reserved + state.stockList.unreservedStock(name, reserved);
+    }
+
+    @Benchmark
+    public int reserveDurably(JournalState state) {
+
+        String name = state.randomName();
+        int reserved = state.stockList.reserveStockDurably(name, 1);
+
+        return reserved + state.stockList.unreservedStock(name, reserved);
+    }
+}
@@ -0,0 +1,46 @@
+package com.marcinsi.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Operacje na całej liście (cennik, wartość magazynu, raporty) - mierzone tylko na jednym wątku (BenchmarkRunner pomija je dla threads > 1)
+// Czas operacji rośnie z rozmiarem katalogu - dlatego jednostką są mikrosekundy
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportBenchmark {
+
+    @Benchmark
+    public int priceList(CatalogState catalog) {
+
+        return catalog.stockList.PriceList().size();
+    }
+
+    @Benchmark
+    public long computeAvailableValue(CatalogState catalog) {
+
+        return catalog.stockList.computeAvailableValueInMinorUnits();
+    }
+
+    @Benchmark
+    public long analyze(CatalogState catalog) {
+
+        return catalog.stockList.analyze().getAvailableValueInMinorUnits();
+    }
+
+    @Benchmark
+    public int stockListToString(CatalogState catalog) {
+
+        return catalog.stockList.toString().length();
+    }
+}
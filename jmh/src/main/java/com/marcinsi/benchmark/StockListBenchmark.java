@@ -0,0 +1,100 @@
+package com.marcinsi.benchmark;
+
+import com.marcinsi.warehouseapp.StockList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Operacje na liście produktów wykonywane równolegle przez wiele wątków (liczba wątków - opcja JMH -t, BenchmarkRunner threads=)
+// Po każdej operacji przywracamy stan produktu - wynik nie zależy od długości pomiaru
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StockListBenchmark {
+
+    @Benchmark
+    public int get(CatalogState catalog) {
+
+        return catalog.stockList.get(catalog.randomName()).getId();
+    }
+
+    @Benchmark
+    public int reserveStock(CatalogState catalog) {
+
+        String name = catalog.randomName();
+        int reserved = catalog.stockList.reserveStock(name, 1);
+
+        return reserved + catalog.stockList.unreservedStock(name, reserved);
+    }
+
+    @Benchmark
+    public int reserveStockById(CatalogState catalog) {
+
+        int id = catalog.randomId();
+        int reserved = catalog.stockList.reserveStock(id, 1);
+
+        return reserved + catalog.stockList.unreservedStock(id, reserved);
+    }
+
+    // Sprzedaż - rezerwacja, finalizeStock() i uzupełnienie sprzedanej ilości
+
+    @Benchmark
+    public int sellStock(CatalogState catalog) {
+
+        String name = catalog.randomName();
+        int sold = catalog.stockList.reserveStock(name, 1) > 0 ? catalog.stockList.sellStock(name, 1) : 0;
+
+        catalog.stockList.get(name).adjustStock(sold);
+
+        return sold;
+    }
+
+    // Wszystkie wątki rezerwują ten sam produkt (promocja) - produkt podzielony na przedziały oraz zwykły produkt
+
+    @Benchmark
+    public int reserveHotItem(CatalogState catalog, ThreadState state) {
+
+        StockList stockList = catalog.stockList;
+        int reserved = stockList.reserveStock(CatalogState.HOT_ITEM, 1);
+
+        state.pendingHot += reserved;
+
+        if(state.pendingHot == ThreadState.RELEASE_BATCH){
+
+            state.pendingHot -= stockList.unreservedStock(CatalogState.HOT_ITEM, ThreadState.RELEASE_BATCH);
+        }
+
+        return reserved;
+    }
+
+    @Benchmark
+    public int reserveSameItem(CatalogState catalog, ThreadState state) {
+
+        StockList stockList = catalog.stockList;
+        int reserved = stockList.reserveStock(CatalogState.CONTENDED_ITEM, 1);
+
+        state.pendingContended += reserved;
+
+        if(state.pendingContended == ThreadState.RELEASE_BATCH){
+
+            state.pendingContended -= stockList.unreservedStock(CatalogState.CONTENDED_ITEM, ThreadState.RELEASE_BATCH);
+        }
+
+        return reserved;
+    }
+
+    @Benchmark
+    public double totalAvailableValue(CatalogState catalog) {
+
+        return catalog.stockList.totalAvailableValue();
+    }
+}
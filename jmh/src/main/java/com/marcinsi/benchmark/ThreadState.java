@@ -0,0 +1,49 @@
+package com.marcinsi.benchmark;
+
+import com.marcinsi.warehouseapp.Basket;
+import com.marcinsi.warehouseapp.CompactBasket;
+import com.marcinsi.warehouseapp.StockItem;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Stan jednego wątku pomiaru - własny koszyk i bufory pozycji (bez współdzielenia pomiędzy wątkami)
+
+@State(Scope.Thread)
+public class ThreadState {
+
+    // Koszyk dla addToBasket() / removeFromBasket() oraz checkout()
+
+    final Basket basket = new Basket("benchmark");
+
+    // Koszyk kompaktowy (identyfikatory produktów) dla tych samych operacji
+
+    final CompactBasket compactBasket = new CompactBasket("benchmark");
+
+    // Koszyk z dziesięcioma pozycjami dla pomiaru Basket.toString()
+
+    final Basket report = new Basket("report");
+
+    // Pozycje koszyka zapamiętane przed checkout() - po zakupie przywracamy stan magazynu (bez tworzenia list w trakcie pomiaru)
+
+    final StockItem[] lines = new StockItem[BasketBenchmark.CHECKOUT_LINES];
+    final int[] quantities = new int[BasketBenchmark.CHECKOUT_LINES];
+    final int[] lineIds = new int[BasketBenchmark.CHECKOUT_LINES];
+
+    // Sztuki zarezerwowane w pomiarach jednego produktu - zwalniane co RELEASE_BATCH rezerwacji jednym wywołaniem
+
+    static final int RELEASE_BATCH = 1024;
+
+    int pendingHot = 0;
+    int pendingContended = 0;
+
+    @Setup(Level.Trial)
+    public void setUp(CatalogState catalog) {
+
+        for(int i = 0; i < 10; i++){
+
+            report.addToBasket(catalog.stockList.get(catalog.randomId()), 1);
+        }
+    }
+}
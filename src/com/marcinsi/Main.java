@@ -1,10 +1,9 @@
 package com.marcinsi;
 import com.marcinsi.warehouseapp.Basket;
+import com.marcinsi.warehouseapp.CheckoutResult;
 import com.marcinsi.warehouseapp.StockItem;
 import com.marcinsi.warehouseapp.StockList;
 
-import java.util.Map;
-
 public class Main {
 
     // Analogiczne do przykładu z ciałami niebieskimi, czy lokalizacjami
@@ -180,38 +179,28 @@ public class Main {
             return 0;
         }
 
-        // Gdy wykona się metoda removeFromBasket() na koszyku, wtedy wykonujemy metodę unreservedStock() na obiekcie typu StockList
+        // Usunięcie z koszyka i cofnięcie rezerwacji wykonuje jedna metoda na obiekcie typu StockList (StockList.removeFromBasket())
         // Skoro towar jest w koszyku, to znaczy, że jest już zarezerwowany, inaczej, by nie znalazł się w koszyku (analiza wsześniejszego etapu dodania)
-        // Równie dobrze byśmy mogli zapisać tutaj != 0
-
-        if(basket.removeFromBasket(stockItem, quantity) == quantity){
+        // Pozycja z rezerwacji z terminem (Basket.addToBasket(Reservation)) - zamiast unreservedStock() anulujemy samą rezerwację, inaczej termin zwolniłby te sztuki drugi raz
 
-            // Zwracamy wynik działania metody
-            // W związku z zaprojektowaną architekturą naszej aplikacji - poniższa metoda zawsze się wykona (analiza wcześniejszego etapu dodania)
-
-            return stockList.unreservedStock(item, quantity); // W jakim przypadku to się nie wykonana - jest taka możliwość, pomiędzy metodami sellItem() a removeItem() - wykonany metodę unreserveStock() - furtka w systemie
-        }
-
-        return 0;
+        return stockList.removeFromBasket(basket, item, quantity);
     }
 
     // Jako parametr metody checkOut() wprowadzamy tylko dany koszyk
     // W koszyku znajdują się produkty, które zostały wcześniej dodane, czyli odpwiednia ilość towaru została zarezerwowana
-    // Metoda sellStock na obiekcie typu stockList zawsze powinna się wykonać (wcześniejsza analiza etapu dodawania elementu)
-    // Natomiast ta metoda, w przeciewieństwie do metod sellItem() oraz removeItem() nic nie zwraca
+    // Metoda checkout() na obiekcie typu stockList sprzedaje cały koszyk w jednej operacji (wszystko albo nic)
+    // Wcześniej sprzedawaliśmy pozycje po kolei i nie sprawdzaliśmy, czy metoda sellStock() nie zwróciła 0
+    // Jeśli sprzedaż się nie powiedzie - koszyk nie zostanie wyczyszczony, a w magazynie nic się nie zmieni
 
-    public static void checkOut(Basket basket){
+    public static CheckoutResult checkOut(Basket basket){
 
-        for(Map.Entry<StockItem, Integer> item: basket.Items().entrySet()){
+        CheckoutResult result = stockList.checkout(basket);
 
-            // Tuaj nie sprawdzaliśmy, czy metoda nie zwróci czasami 0
-            // Gdyby ta metoda zwróciła 0, oznaczałoby to, że sprzedaż towarów ze sklepu się nie powiodła
-            // Jednak w związku z architekturą aplikacji - wiemy, że ta metoda zawsze powinna się wykonać
+        if(!result.isSuccessful()){
 
-            stockList.sellStock(item.getKey().getName(), item.getValue());
+            System.out.println(result);
         }
 
-        basket.clearBasket();
-
+        return result;
     }
 }
@@ -0,0 +1,98 @@
+package com.marcinsi.server;
+
+import com.marcinsi.warehouseapp.CheckoutResult;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+// Wyniki zakupów sharda według identyfikatora zakupu (checkoutId nadaje koordynator - ShardedStockList)
+// Dzięki temu checkout() i restoreStock() sharda można powtórzyć bez skutków ubocznych:
+// - powtórzony checkout() zwraca zapisany wynik (koordynator, który nie dostał odpowiedzi, pyta w ten sposób o wynik)
+// - restoreStock() przywraca towar tylko raz, a zakup, który jeszcze nie dotarł do sharda, oznacza jako anulowany (spóźnione żądanie nic nie sprzeda)
+// Pamiętamy ostatnie capacity zakupów (najstarsze są usuwane) - koordynator ponawia żądania tylko zaraz po błędzie
+// Wyniki są tylko w pamięci - po restarcie sharda zakup z nieznanym wynikiem trzeba wyjaśnić ręcznie
+
+final class CheckoutLedger {
+
+    static final int DEFAULT_CAPACITY = 65_536;
+
+    // result == null - zakup nie został jeszcze wykonany; restored - wykonano restoreStock() (albo zakup anulowano)
+
+    private static final class Entry {
+
+        private CheckoutResult result;
+        private boolean restored;
+    }
+
+    private final Map<Long, Entry> entries;
+
+    CheckoutLedger() {
+
+        this(DEFAULT_CAPACITY);
+    }
+
+    CheckoutLedger(int capacity) {
+
+        this.entries = new LinkedHashMap<>() {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+
+                return size() > capacity;
+            }
+        };
+    }
+
+    private Entry entry(long checkoutId) {
+
+        synchronized(entries){
+
+            return entries.computeIfAbsent(checkoutId, id -> new Entry());
+        }
+    }
+
+    // Zakup wykonujemy pod blokadą wpisu - równoległe powtórzenie tego samego zakupu czeka na wynik pierwszego
+
+    CheckoutResult checkout(long checkoutId, Map<String, Integer> lines, Function<Map<String, Integer>, CheckoutResult> sale) {
+
+        Entry entry = entry(checkoutId);
+
+        synchronized(entry){
+
+            if(entry.result == null){
+
+                entry.result = sale.apply(lines);
+            }
+
+            return entry.result;
+        }
+    }
+
+    int restore(long checkoutId, Map<String, Integer> lines, ToIntFunction<Map<String, Integer>> restore) {
+
+        Entry entry = entry(checkoutId);
+
+        synchronized(entry){
+
+            if(entry.restored){
+
+                return 0;
+            }
+
+            entry.restored = true;
+
+            // Zakup nie dotarł jeszcze do sharda - anulujemy go (spóźniony checkout() zwróci ten wynik)
+
+            if(entry.result == null){
+
+                entry.result = CheckoutResult.failed(lines.isEmpty() ? "" : lines.keySet().iterator().next());
+
+                return 0;
+            }
+
+            return entry.result.isSuccessful() ? restore.applyAsInt(lines) : 0;
+        }
+    }
+}
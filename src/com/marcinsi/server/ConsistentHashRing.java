@@ -0,0 +1,73 @@
+package com.marcinsi.server;
+
+import java.util.Arrays;
+
+// Pierścień spójnego haszowania (consistent hashing) - przypisanie nazwy produktu do sharda
+// Każdy shard ma wiele punktów na pierścieniu (węzły wirtualne) - produkty rozkładają się równomiernie
+// Produkt należy do pierwszego punktu za wartością skrótu jego nazwy (zgodnie z ruchem wskazówek zegara)
+// Dodanie sharda przenosi tylko około 1/n produktów - pozostałe zostają na swoich shardach
+// Punkty przechowujemy w posortowanych tablicach (wyszukiwanie binarne) zamiast w TreeMap<Long, Integer>
+
+final class ConsistentHashRing {
+
+    private final long[] points;
+    private final int[] owners;
+
+    ConsistentHashRing(int shards, int virtualNodes) {
+
+        long[][] entries = new long[shards * virtualNodes][];
+
+        for(int shard = 0; shard < shards; shard++){
+
+            for(int node = 0; node < virtualNodes; node++){
+
+                entries[shard * virtualNodes + node] = new long[]{hash("shard-" + shard + "#" + node), shard};
+            }
+        }
+
+        Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+
+        points = new long[entries.length];
+        owners = new int[entries.length];
+
+        for(int i = 0; i < entries.length; i++){
+
+            points[i] = entries[i][0];
+            owners[i] = (int) entries[i][1];
+        }
+    }
+
+    int shardOf(String key) {
+
+        int index = Arrays.binarySearch(points, hash(key));
+
+        if(index < 0){
+
+            index = -index - 1;
+        }
+
+        return owners[index == points.length ? 0 : index];
+    }
+
+    // Skrót 64-bitowy: FNV-1a po znakach nazwy, a następnie wymieszanie bitów (finalizer MurmurHash3)
+    // String.hashCode() ma tylko 32 bity i słabo rozkłada podobne nazwy (item1, item2, ...)
+
+    static long hash(String key) {
+
+        long h = 0xcbf29ce484222325L;
+
+        for(int i = 0; i < key.length(); i++){
+
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return h;
+    }
+}
@@ -0,0 +1,242 @@
+package com.marcinsi.server;
+
+import com.marcinsi.warehouseapp.LatencyHistogram;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Generator obciążenia dla WarehouseServer - odtwarza sesje zakupowe wielu klientów jednocześnie
+// Sesja: kilka produktów dodanych do koszyka (SELL), czasem usunięcie pozycji (REMOVE), zakup (CHECKOUT) albo porzucenie koszyka, na końcu END
+// Sesje są rozłożone na połączenia - każde połączenie wysyła po jednym żądaniu każdej swojej sesji naraz (pipelining) i czyta odpowiedzi
+// Czas odpowiedzi mierzymy od wysłania żądań do odczytania odpowiedzi (LatencyHistogram) - wynik zawiera także czas oczekiwania w kolejce
+//
+// Uruchomienie: java com.marcinsi.server.LoadGenerator sessions=100000 connections=1000 seconds=10 items=1000
+// Parametr port=0 (domyślnie) - serwer zostaje uruchomiony w tym samym procesie
+
+public class LoadGenerator {
+
+    // Scenariusz jednej sesji - lista żądań wysyłanych po kolei
+
+    private static final class Session {
+
+        private final String prefix;
+        private final List<String> script = new ArrayList<>();
+        private int generation;
+        private int step;
+
+        private Session(String prefix) {
+
+            this.prefix = prefix;
+        }
+
+        private void start(int items) {
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            String id = prefix + "-" + generation++;
+            int lines = 1 + random.nextInt(5);
+            String last = null;
+
+            script.clear();
+            step = 0;
+
+            for(int line = 0; line < lines; line++){
+
+                last = "item" + random.nextInt(items);
+                script.add("SELL " + id + " " + last + " " + (1 + random.nextInt(3)));
+            }
+
+            if(random.nextInt(5) == 0){
+
+                script.add("REMOVE " + id + " " + last + " 1");
+            }
+
+            if(random.nextInt(5) != 0){
+
+                script.add("CHECKOUT " + id);
+            }
+
+            script.add("END " + id);
+        }
+
+        private String next(int items) {
+
+            if(step == script.size()){
+
+                start(items);
+            }
+
+            return script.get(step++);
+        }
+    }
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder checkouts = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+
+        int port = 0;
+        int items = 1_000;
+        int sessions = 10_000;
+        int connections = 100;
+        double seconds = 10.0;
+
+        for(String arg : args){
+
+            String[] parts = arg.split("=", 2);
+
+            switch(parts[0]){
+
+                case "port": port = Integer.parseInt(parts[1]); break;
+                case "items": items = Integer.parseInt(parts[1]); break;
+                case "sessions": sessions = Integer.parseInt(parts[1]); break;
+                case "connections": connections = Integer.parseInt(parts[1]); break;
+                case "seconds": seconds = Double.parseDouble(parts[1]); break;
+                default: throw new IllegalArgumentException("Unknown argument : " + arg);
+            }
+        }
+
+        WarehouseServer server = null;
+
+        if(port == 0){
+
+            server = new WarehouseServer(new WarehouseService(WarehouseServer.demoStockList(items)), 0);
+            port = server.getPort();
+        }
+
+        try {
+
+            new LoadGenerator().run(port, items, sessions, Math.min(connections, sessions), seconds);
+
+        } finally {
+
+            if(server != null){
+
+                server.close();
+            }
+        }
+    }
+
+    private void run(int port, int items, int sessions, int connections, double seconds) throws Exception {
+
+        ExecutorService clients = WarehouseServer.newPerTaskExecutor("load-generator", connections);
+        List<Future<?>> tasks = new ArrayList<>();
+        long deadline = System.nanoTime() + (long) (seconds * 1e9);
+        long begin = System.nanoTime();
+
+        for(int c = 0; c < connections; c++){
+
+            // Sesje dzielimy równo pomiędzy połączenia (pierwsze połączenia dostają o jedną sesję więcej)
+
+            int connectionSessions = sessions / connections + (c < sessions % connections ? 1 : 0);
+            int connection = c;
+
+            tasks.add(clients.submit(() -> {
+
+                drive(port, items, connection, connectionSessions, deadline);
+
+                return null;
+            }));
+        }
+
+        for(Future<?> task : tasks){
+
+            task.get();
+        }
+
+        long elapsed = System.nanoTime() - begin;
+
+        clients.shutdown();
+        clients.awaitTermination(10, TimeUnit.SECONDS);
+
+        System.out.println(String.format(Locale.ROOT, "sessions %d, connections %d, %.1f s", sessions, connections, elapsed / 1e9));
+        System.out.println(String.format(Locale.ROOT, "requests %d (%.0f req/s), checkouts %d, errors %d", requests.sum(), requests.sum() * 1e9 / elapsed, checkouts.sum(), errors.sum()));
+        System.out.println(String.format(Locale.ROOT, "latency us : p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f",
+                latency.getValueAtPercentile(50.0) / 1e3, latency.getValueAtPercentile(90.0) / 1e3, latency.getValueAtPercentile(99.0) / 1e3,
+                latency.getValueAtPercentile(99.9) / 1e3, latency.getMax() / 1e3));
+    }
+
+    // Jedno połączenie - w każdej rundzie wysyłamy po jednym żądaniu każdej sesji, a następnie czytamy wszystkie odpowiedzi
+
+    private void drive(int port, int items, int connection, int sessionCount, long deadline) throws IOException {
+
+        Session[] sessions = new Session[sessionCount];
+
+        for(int s = 0; s < sessionCount; s++){
+
+            sessions[s] = new Session("c" + connection + "s" + s);
+        }
+
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))){
+
+            socket.setTcpNoDelay(true);
+
+            while(System.nanoTime() < deadline){
+
+                long sent = System.nanoTime();
+
+                for(Session session : sessions){
+
+                    out.write(session.next(items));
+                    out.write('\n');
+                }
+
+                out.flush();
+
+                for(Session session : sessions){
+
+                    String response = in.readLine();
+
+                    if(response == null){
+
+                        throw new IOException("Server closed the connection");
+                    }
+
+                    latency.record(System.nanoTime() - sent);
+                    requests.increment();
+
+                    if(response.startsWith("ERR")){
+
+                        errors.increment();
+
+                    } else if(session.script.get(session.step - 1).startsWith("CHECKOUT")){
+
+                        checkouts.increment();
+                    }
+                }
+            }
+
+            // Porzucone w połowie sesje zwalniają rezerwacje
+
+            for(Session session : sessions){
+
+                if((session.step > 0) && (session.step < session.script.size())){
+
+                    out.write(session.script.get(session.script.size() - 1));
+                    out.write('\n');
+                }
+            }
+
+            out.write("QUIT\n");
+            out.flush();
+        }
+    }
+}
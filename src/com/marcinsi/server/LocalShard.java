@@ -0,0 +1,104 @@
+package com.marcinsi.server;
+
+import com.marcinsi.warehouseapp.CheckoutResult;
+import com.marcinsi.warehouseapp.CompactBasket;
+import com.marcinsi.warehouseapp.StockItem;
+import com.marcinsi.warehouseapp.StockList;
+
+import java.util.Map;
+
+// Shard w tym samym procesie - bezpośrednie wywołania metod obiektu StockList
+
+public class LocalShard implements Shard {
+
+    private final StockList stockList;
+    private final CheckoutLedger ledger = new CheckoutLedger();
+
+    public LocalShard() {
+
+        this(StockList.concurrentStockList());
+    }
+
+    public LocalShard(StockList stockList) {
+
+        this.stockList = stockList;
+    }
+
+    public StockList getStockList() {
+
+        return stockList;
+    }
+
+    @Override
+    public int addStock(String item, long priceInMinorUnits, int quantity) {
+
+        return stockList.addStock(StockItem.ofMinorUnits(item, priceInMinorUnits, quantity));
+    }
+
+    @Override
+    public int reserveStock(String item, int quantity) {
+
+        return stockList.reserveStock(item, quantity);
+    }
+
+    @Override
+    public int sellStock(String item, int quantity) {
+
+        return stockList.sellStock(item, quantity);
+    }
+
+    @Override
+    public int unreservedStock(String item, int quantity) {
+
+        return stockList.unreservedStock(item, quantity);
+    }
+
+    @Override
+    public CheckoutResult checkout(long checkoutId, Map<String, Integer> lines) {
+
+        return ledger.checkout(checkoutId, lines, this::sell);
+    }
+
+    private CheckoutResult sell(Map<String, Integer> lines) {
+
+        // Koszyk kompaktowy - pozycje jako identyfikatory produktów (bez TreeMap i obiektów Integer na każdą pozycję)
+
+        CompactBasket basket = new CompactBasket("shard", lines.size());
+
+        for(Map.Entry<String, Integer> line : lines.entrySet()){
+
+            int itemId = stockList.idOf(line.getKey());
+
+            if(itemId < 0){
+
+                return CheckoutResult.failed(line.getKey());
+            }
+
+            basket.addToBasket(itemId, line.getValue());
+        }
+
+        return stockList.checkout(basket);
+    }
+
+    @Override
+    public int restoreStock(long checkoutId, Map<String, Integer> lines) {
+
+        return ledger.restore(checkoutId, lines, this::restore);
+    }
+
+    private int restore(Map<String, Integer> lines) {
+
+        int restored = 0;
+
+        for(Map.Entry<String, Integer> line : lines.entrySet()){
+
+            restored += stockList.restoreStock(line.getKey(), line.getValue());
+        }
+
+        return restored;
+    }
+
+    @Override
+    public void close() {
+    }
+}
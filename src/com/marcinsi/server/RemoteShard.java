@@ -0,0 +1,205 @@
+package com.marcinsi.server;
+
+import com.marcinsi.warehouseapp.CheckoutResult;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Shard w osobnym procesie (WarehouseServer na adresie lokalnym) - żądania bez sesji protokołu tekstowego (RESERVE, FINALIZE, ...)
+// Połączenia trzymamy w puli - wątek pobiera wolne połączenie (albo otwiera nowe), wysyła żądanie, czyta odpowiedź i oddaje połączenie
+// Błąd połączenia zgłaszamy jako UncheckedIOException (metody interfejsu Shard nie deklarują IOException), a połączenie zamykamy
+// Odpowiedź musi przyjść w czasie timeoutMillis (Socket.setSoTimeout()) - zawieszony shard nie blokuje koordynatora bez końca
+
+public class RemoteShard implements Shard {
+
+    private static final class Connection {
+
+        private final Socket socket;
+        private final BufferedReader in;
+        private final Writer out;
+
+        private Connection(int port, int timeoutMillis) throws IOException {
+
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(timeoutMillis);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        private String call(String request) throws IOException {
+
+            out.write(request);
+            out.write('\n');
+            out.flush();
+
+            String response = in.readLine();
+
+            if(response == null){
+
+                throw new IOException("Shard closed the connection");
+            }
+
+            return response;
+        }
+    }
+
+    public static final int DEFAULT_TIMEOUT_MILLIS = 5_000;
+
+    private final int port;
+    private final int timeoutMillis;
+    private final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<>();
+
+    public RemoteShard(int port) {
+
+        this(port, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public RemoteShard(int port, int timeoutMillis) {
+
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public int getPort() {
+
+        return port;
+    }
+
+    private String call(String request) {
+
+        Connection connection = idle.poll();
+
+        try {
+
+            if(connection == null){
+
+                connection = new Connection(port, timeoutMillis);
+            }
+
+            String response = connection.call(request);
+
+            idle.offer(connection);
+
+            return response;
+
+        } catch(IOException e){
+
+            if(connection != null){
+
+                closeQuietly(connection);
+            }
+
+            throw new UncheckedIOException("Shard on port " + port + " failed : " + request, e);
+        }
+    }
+
+    // Odpowiedź "OK <liczba>" - ERR oznacza błąd żądania (np. niepoprawną ilość), czyli wynik 0 - tak jak w StockList
+
+    private int callForInt(String request) {
+
+        String response = call(request);
+
+        return response.startsWith("OK ") ? Integer.parseInt(response.substring(3).trim()) : 0;
+    }
+
+    @Override
+    public int addStock(String item, long priceInMinorUnits, int quantity) {
+
+        return callForInt("ADD " + WarehouseServer.encode(item) + " " + priceInMinorUnits + " " + quantity);
+    }
+
+    @Override
+    public int reserveStock(String item, int quantity) {
+
+        return callForInt("RESERVE " + WarehouseServer.encode(item) + " " + quantity);
+    }
+
+    @Override
+    public int sellStock(String item, int quantity) {
+
+        return callForInt("FINALIZE " + WarehouseServer.encode(item) + " " + quantity);
+    }
+
+    @Override
+    public int unreservedStock(String item, int quantity) {
+
+        return callForInt("UNRESERVE " + WarehouseServer.encode(item) + " " + quantity);
+    }
+
+    @Override
+    public CheckoutResult checkout(long checkoutId, Map<String, Integer> lines) {
+
+        String response = call(lines("CHECKOUTLINES", checkoutId, lines));
+
+        if(!response.startsWith("OK ")){
+
+            return CheckoutResult.failed(WarehouseServer.decode(response.substring(Math.min(4, response.length()))));
+        }
+
+        String[] parts = response.split(" ");
+
+        return CheckoutResult.sold(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), Long.parseLong(parts[3]));
+    }
+
+    @Override
+    public int restoreStock(long checkoutId, Map<String, Integer> lines) {
+
+        return callForInt(lines("RESTORE", checkoutId, lines));
+    }
+
+    private static String lines(String command, long checkoutId, Map<String, Integer> lines) {
+
+        StringBuilder request = new StringBuilder(command).append(' ').append(checkoutId);
+
+        for(Map.Entry<String, Integer> line : lines.entrySet()){
+
+            request.append(' ').append(WarehouseServer.encode(line.getKey())).append(' ').append(line.getValue());
+        }
+
+        return request.toString();
+    }
+
+    private static void closeQuietly(Connection connection) {
+
+        try {
+
+            connection.socket.close();
+
+        } catch(IOException e){
+
+            // Połączenie i tak nie nadaje się do użycia
+        }
+    }
+
+    @Override
+    public void close() {
+
+        Connection connection;
+
+        while((connection = idle.poll()) != null){
+
+            try {
+
+                connection.out.write("QUIT\n");
+                connection.out.flush();
+
+            } catch(IOException e){
+
+                // Serwer już zamknął połączenie
+            }
+
+            closeQuietly(connection);
+        }
+    }
+}
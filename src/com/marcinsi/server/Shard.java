@@ -0,0 +1,31 @@
+package com.marcinsi.server;
+
+import com.marcinsi.warehouseapp.CheckoutResult;
+
+import java.io.Closeable;
+import java.util.Map;
+
+// Jedna część (shard) listy produktów podzielonej pomiędzy kilka obiektów StockList (ShardedStockList)
+// Shard może działać w tym samym procesie (LocalShard) albo w osobnym procesie za gniazdem sieciowym (RemoteShard)
+// Metody mają te same znaczenie i wartości zwracane co odpowiednie metody klasy StockList
+
+public interface Shard extends Closeable {
+
+    int addStock(String item, long priceInMinorUnits, int quantity);
+
+    int reserveStock(String item, int quantity);
+
+    int sellStock(String item, int quantity);
+
+    int unreservedStock(String item, int quantity);
+
+    // Sprzedaż pozycji należących do tego sharda - wszystkie albo żadna (StockList.checkout())
+    // Powtórzenie z tym samym checkoutId zwraca zapisany wynik i niczego nie sprzedaje drugi raz (CheckoutLedger)
+
+    CheckoutResult checkout(long checkoutId, Map<String, Integer> lines);
+
+    // Cofnięcie udanego checkout() - gdy nie powiódł się zakup na innym shardzie albo wynik zakupu jest nieznany
+    // Przywraca towar najwyżej raz; zakup, który jeszcze nie dotarł do sharda, zostaje anulowany
+
+    int restoreStock(long checkoutId, Map<String, Integer> lines);
+}
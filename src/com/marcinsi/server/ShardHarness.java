@@ -0,0 +1,222 @@
+package com.marcinsi.server;
+
+import com.marcinsi.warehouseapp.CheckoutResult;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Pomiar skalowania ShardedStockList - dla każdej liczby shardów uruchamiamy osobne procesy WarehouseServer na tej samej maszynie
+// Produkty są rozdzielane pomiędzy shardy przez ShardedStockList.addStock(), a następnie klienci wykonują zakupy:
+// rezerwacja kilku losowych produktów i zakup całego koszyka (często obejmującego kilka shardów)
+// Wynik: liczba zakupów oraz żądań na sekundę i przyspieszenie względem pierwszej konfiguracji
+//
+// Uruchomienie: java com.marcinsi.server.ShardHarness shards=1,2,4 clients=32 seconds=5 items=10000 mode=remote
+// mode=local - shardy w tym samym procesie (LocalShard), bez procesów i gniazd
+
+public class ShardHarness {
+
+    public static void main(String[] args) throws Exception {
+
+        int[] shardCounts = {1, 2, 4};
+        int clients = 32;
+        double seconds = 5.0;
+        int items = 10_000;
+        boolean remote = true;
+
+        for(String arg : args){
+
+            String[] parts = arg.split("=", 2);
+
+            switch(parts[0]){
+
+                case "shards": shardCounts = parseInts(parts[1]); break;
+                case "clients": clients = Integer.parseInt(parts[1]); break;
+                case "seconds": seconds = Double.parseDouble(parts[1]); break;
+                case "items": items = Integer.parseInt(parts[1]); break;
+                case "mode": remote = parts[1].equals("remote"); break;
+                default: throw new IllegalArgumentException("Unknown argument : " + arg);
+            }
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%-8s %7s %8s %14s %14s %9s", "mode", "shards", "clients", "checkouts/s", "requests/s", "speedup"));
+
+        double baseline = 0.0;
+
+        for(int shardCount : shardCounts){
+
+            List<Process> processes = new ArrayList<>();
+            List<Shard> shards = new ArrayList<>();
+
+            try {
+
+                for(int s = 0; s < shardCount; s++){
+
+                    if(remote){
+
+                        Process process = startShardProcess();
+
+                        processes.add(process);
+                        shards.add(new RemoteShard(readPort(process)));
+
+                    } else {
+
+                        shards.add(new LocalShard());
+                    }
+                }
+
+                try(ShardedStockList stockList = new ShardedStockList(shards)){
+
+                    for(int i = 0; i < items; i++){
+
+                        stockList.addStock("item" + i, 100 + i % 1000, 1_000_000_000);
+                    }
+
+                    double[] result = run(stockList, items, clients, seconds);
+
+                    if(baseline == 0.0){
+
+                        baseline = result[0];
+                    }
+
+                    System.out.println(String.format(Locale.ROOT, "%-8s %7d %8d %14.0f %14.0f %8.2fx", remote ? "remote" : "local", shardCount, clients, result[0], result[1], result[0] / baseline));
+                }
+
+            } finally {
+
+                for(Process process : processes){
+
+                    process.destroy();
+                }
+            }
+        }
+    }
+
+    // Wynik: liczba udanych zakupów na sekundę oraz liczba żądań (rezerwacje i zakupy) na sekundę
+
+    private static double[] run(ShardedStockList stockList, int items, int clients, double seconds) throws Exception {
+
+        LongAdder checkouts = new LongAdder();
+        LongAdder requests = new LongAdder();
+        ExecutorService executor = WarehouseServer.newPerTaskExecutor("shard-client", clients);
+        List<Future<?>> tasks = new ArrayList<>();
+
+        // Rozgrzewka (JIT, otwarcie połączeń), potem właściwy pomiar
+
+        long warmupEnd = System.nanoTime() + (long) (seconds * 0.25e9);
+        long end = warmupEnd + (long) (seconds * 1e9);
+
+        for(int c = 0; c < clients; c++){
+
+            tasks.add(executor.submit(() -> {
+
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                Map<String, Integer> basket = new TreeMap<>();
+                long now;
+
+                while((now = System.nanoTime()) < end){
+
+                    basket.clear();
+
+                    int lines = 1 + random.nextInt(4);
+                    int calls = 1;
+
+                    for(int line = 0; line < lines; line++){
+
+                        String item = "item" + random.nextInt(items);
+                        int quantity = 1 + random.nextInt(3);
+
+                        if(!basket.containsKey(item) && (stockList.reserveStock(item, quantity) == quantity)){
+
+                            basket.put(item, quantity);
+                        }
+
+                        calls++;
+                    }
+
+                    CheckoutResult result = stockList.checkout(basket);
+
+                    // Nieudany zakup - zwalniamy rezerwacje (tak jak WarehouseService.endSession())
+
+                    if(!result.isSuccessful()){
+
+                        for(Map.Entry<String, Integer> line : basket.entrySet()){
+
+                            stockList.unreservedStock(line.getKey(), line.getValue());
+                            calls++;
+                        }
+                    }
+
+                    if(now >= warmupEnd){
+
+                        requests.add(calls);
+
+                        if(result.isSuccessful()){
+
+                            checkouts.increment();
+                        }
+                    }
+                }
+
+                return null;
+            }));
+        }
+
+        for(Future<?> task : tasks){
+
+            task.get();
+        }
+
+        executor.shutdown();
+
+        return new double[]{checkouts.sum() / seconds, requests.sum() / seconds};
+    }
+
+    // Osobny proces JVM z pustą listą produktów - port wybiera system (port=0), serwer wypisuje go w pierwszej linii
+
+    private static Process startShardProcess() throws IOException {
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), WarehouseServer.class.getName(), "port=0", "items=0")
+                .redirectErrorStream(true)
+                .start();
+    }
+
+    private static int readPort(Process process) throws IOException {
+
+        BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line = out.readLine();
+
+        if((line == null) || (line.lastIndexOf(':') < 0)){
+
+            throw new IOException("Shard process did not start : " + line);
+        }
+
+        return Integer.parseInt(line.substring(line.lastIndexOf(':') + 1).trim());
+    }
+
+    private static int[] parseInts(String value) {
+
+        String[] parts = value.split(",");
+        int[] result = new int[parts.length];
+
+        for(int i = 0; i < parts.length; i++){
+
+            result[i] = Integer.parseInt(parts[i].trim());
+        }
+
+        return result;
+    }
+}
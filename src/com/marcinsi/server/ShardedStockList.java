@@ -0,0 +1,304 @@
+package com.marcinsi.server;
+
+import com.marcinsi.warehouseapp.CheckoutResult;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Lista produktów podzielona pomiędzy kilka shardów (obiekty StockList w tym procesie albo w osobnych procesach)
+// Właściciela produktu wyznacza pierścień spójnego haszowania nazwy (ConsistentHashRing) - operacje na produkcie trafiają do jednego sharda
+//
+// Zakup koszyka obejmującego kilka shardów (checkout()):
+// 1. pozycje dzielimy według shardów, każdy shard sprzedaje swoje pozycje jedną operacją (wszystkie albo żadna) - shardy działają równolegle
+// 2. jeśli któryś shard się nie powiódł, shardy, które sprzedały swoje pozycje, przywracają je (restoreStock() - transakcja kompensująca)
+// Każdy zakup ma identyfikator (checkoutId) - shard, który nie odpowiedział, pytamy jeszcze raz, a w razie braku odpowiedzi cofamy zakup (settle())
+// Tak jak w StockList.checkout() - klient przez chwilę może zobaczyć sprzedane pozycje, które zaraz wrócą do magazynu
+
+public class ShardedStockList implements Closeable {
+
+    private static final int VIRTUAL_NODES = 160;
+
+    // Limit wątków koordynatora (tylko bez wątków wirtualnych) - ponad limit shard sprzedaje swoje pozycje w wątku wywołującym
+
+    private static final int COORDINATOR_THREADS = 256;
+
+    private final Shard[] shards;
+    private final ConsistentHashRing ring;
+    // Identyfikatory zakupów - losowy początek, żeby dwa koordynatory (albo ponowne uruchomienie) nie używały tych samych numerów na shardzie
+
+    private final AtomicLong checkoutIds = new AtomicLong(new SecureRandom().nextLong());
+    private final ExecutorService coordinator = WarehouseServer.newPerTaskExecutor("shard-checkout", COORDINATOR_THREADS);
+
+    public ShardedStockList(List<? extends Shard> shards) {
+
+        this.shards = shards.toArray(new Shard[0]);
+        this.ring = new ConsistentHashRing(this.shards.length, VIRTUAL_NODES);
+    }
+
+    public int getShardCount() {
+
+        return shards.length;
+    }
+
+    public int shardOf(String item) {
+
+        return ring.shardOf(item);
+    }
+
+    private Shard shardFor(String item) {
+
+        return shards[ring.shardOf(item)];
+    }
+
+    public int addStock(String item, long priceInMinorUnits, int quantity) {
+
+        return shardFor(item).addStock(item, priceInMinorUnits, quantity);
+    }
+
+    public int reserveStock(String item, int quantity) {
+
+        return shardFor(item).reserveStock(item, quantity);
+    }
+
+    public int sellStock(String item, int quantity) {
+
+        return shardFor(item).sellStock(item, quantity);
+    }
+
+    public int unreservedStock(String item, int quantity) {
+
+        return shardFor(item).unreservedStock(item, quantity);
+    }
+
+    // Sprzedaż zarezerwowanych wcześniej pozycji (nazwa produktu -> ilość) - wszystkie albo żadna
+
+    public CheckoutResult checkout(Map<String, Integer> lines) {
+
+        // Pozycje każdego sharda w kolejności nazw (TreeMap) - tak jak w koszyku (Basket)
+
+        List<TreeMap<String, Integer>> perShard = new ArrayList<>(shards.length);
+
+        for(int shard = 0; shard < shards.length; shard++){
+
+            perShard.add(null);
+        }
+
+        for(Map.Entry<String, Integer> line : lines.entrySet()){
+
+            int shard = ring.shardOf(line.getKey());
+
+            if(perShard.get(shard) == null){
+
+                perShard.set(shard, new TreeMap<>());
+            }
+
+            perShard.get(shard).put(line.getKey(), line.getValue());
+        }
+
+        // Pozycje tylko jednego sharda - nie potrzebujemy koordynacji
+
+        int involved = -1;
+
+        for(int shard = 0; shard < shards.length; shard++){
+
+            if(perShard.get(shard) != null){
+
+                involved = involved == -1 ? shard : -2;
+            }
+        }
+
+        if(involved == -1){
+
+            return CheckoutResult.sold(0, 0, 0);
+        }
+
+        long checkoutId = checkoutIds.incrementAndGet();
+
+        if(involved >= 0){
+
+            CheckoutResult result = settle(involved, checkoutId, perShard.get(involved), null);
+
+            return result != null ? result : CheckoutResult.failed(unreachableItem(perShard.get(involved)));
+        }
+
+        List<Future<CheckoutResult>> pending = new ArrayList<>(shards.length);
+
+        for(int shard = 0; shard < shards.length; shard++){
+
+            Map<String, Integer> shardLines = perShard.get(shard);
+
+            pending.add(shardLines != null ? submit(shards[shard], checkoutId, shardLines) : null);
+        }
+
+        // Wynik każdego sharda: sprzedane, odmowa (z nazwą produktu) albo null - brak odpowiedzi (wynik nieznany, już cofnięty w settle())
+
+        CheckoutResult[] results = new CheckoutResult[shards.length];
+        String failedItem = null;
+        String unreachableItem = null;
+
+        for(int shard = 0; shard < shards.length; shard++){
+
+            if(pending.get(shard) == null){
+
+                continue;
+            }
+
+            results[shard] = settle(shard, checkoutId, perShard.get(shard), pending.get(shard));
+
+            if(results[shard] == null){
+
+                if(unreachableItem == null){
+
+                    unreachableItem = unreachableItem(perShard.get(shard));
+                }
+
+            } else if((failedItem == null) && !results[shard].isSuccessful()){
+
+                failedItem = results[shard].getFailedItem();
+            }
+        }
+
+        // Produkt, którego naprawdę zabrakło, ma pierwszeństwo przed produktem sharda, który nie odpowiedział
+
+        if(failedItem == null){
+
+            failedItem = unreachableItem;
+        }
+
+        int linesSold = 0;
+        int unitsSold = 0;
+        long totalCost = 0;
+
+        for(int shard = 0; shard < shards.length; shard++){
+
+            if((results[shard] == null) || !results[shard].isSuccessful()){
+
+                continue;
+            }
+
+            if(failedItem != null){
+
+                restore(shard, checkoutId, perShard.get(shard));
+
+            } else {
+
+                linesSold += results[shard].getLinesSold();
+                unitsSold += results[shard].getUnitsSold();
+                totalCost += results[shard].getTotalCostInMinorUnits();
+            }
+        }
+
+        return failedItem != null ? CheckoutResult.failed(failedItem) : CheckoutResult.sold(linesSold, unitsSold, totalCost);
+    }
+
+    // Wynik zakupu na jednym shardzie (pending == null - wywołanie w tym wątku)
+    // Brak odpowiedzi (błąd połączenia, przekroczony czas) nie oznacza, że shard nic nie sprzedał - pytamy go jeszcze raz tym samym
+    // identyfikatorem zakupu (shard zwraca zapisany wynik albo wykonuje zakup teraz); jeśli i to się nie uda - cofamy zakup (restoreStock()
+    // przywraca towar albo anuluje zakup, który do sharda jeszcze nie dotarł) i zwracamy null
+
+    private CheckoutResult settle(int shard, long checkoutId, Map<String, Integer> lines, Future<CheckoutResult> pending) {
+
+        if(pending != null){
+
+            try {
+
+                return pending.get();
+
+            } catch(ExecutionException e){
+
+                // Wynik nieznany - ponowne pytanie poniżej
+
+            } catch(InterruptedException e){
+
+                Thread.currentThread().interrupt();
+                restore(shard, checkoutId, lines);
+
+                return null;
+            }
+        }
+
+        for(int attempt = pending != null ? 1 : 0; attempt < 2; attempt++){
+
+            try {
+
+                return shards[shard].checkout(checkoutId, lines);
+
+            } catch(RuntimeException e){
+
+                // Shard nie odpowiedział - kolejna próba albo cofnięcie
+            }
+        }
+
+        restore(shard, checkoutId, lines);
+
+        return null;
+    }
+
+    // Cofnięcie zakupu na shardzie - restoreStock() można powtórzyć (shard przywraca towar najwyżej raz)
+    // Jeśli shard nie odpowiada także na drugie żądanie - zakup pozostaje nierozstrzygnięty, zapisujemy to na standardowym wyjściu błędów
+
+    private void restore(int shard, long checkoutId, Map<String, Integer> lines) {
+
+        for(int attempt = 0; attempt < 2; attempt++){
+
+            try {
+
+                shards[shard].restoreStock(checkoutId, lines);
+
+                return;
+
+            } catch(RuntimeException e){
+
+                if(attempt == 1){
+
+                    System.err.println("Checkout " + checkoutId + " on shard " + shard + " is unresolved : " + e);
+                }
+            }
+        }
+    }
+
+    // Przyczyna odmowy, gdy shard nie odpowiedział - pierwszy (według nazwy) produkt tego sharda
+
+    private static String unreachableItem(TreeMap<String, Integer> lines) {
+
+        return lines.firstKey();
+    }
+
+    private Future<CheckoutResult> submit(Shard target, long checkoutId, Map<String, Integer> shardLines) {
+
+        try {
+
+            return coordinator.submit(() -> target.checkout(checkoutId, shardLines));
+
+        } catch(RejectedExecutionException e){
+
+            FutureTask<CheckoutResult> task = new FutureTask<>(() -> target.checkout(checkoutId, shardLines));
+
+            task.run();
+
+            return task;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        coordinator.shutdown();
+
+        for(Shard shard : shards){
+
+            shard.close();
+        }
+    }
+}
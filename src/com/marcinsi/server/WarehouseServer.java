@@ -0,0 +1,474 @@
+package com.marcinsi.server;
+
+import com.marcinsi.warehouseapp.BasketStore;
+import com.marcinsi.warehouseapp.CheckoutResult;
+import com.marcinsi.warehouseapp.StockItem;
+import com.marcinsi.warehouseapp.StockList;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Prosty serwer tekstowy (jedna linia - jedno żądanie) na adresie lokalnym (loopback) - front-end dla WarehouseService
+// Każde połączenie obsługuje osobny wątek wirtualny (Java 21+) - tysiące klientów nie wymagają tysięcy wątków systemowych
+// Na starszej Javie (brak wątków wirtualnych) używamy puli z ograniczoną liczbą wątków - połączenie ponad limit dostaje "ERR busy" i jest zamykane
+//
+// Pola żądania rozdziela spacja - nazwy (produkt, sesja) kodujemy jak w URL: spacja, '%' i znaki sterujące jako %XX (encode(), decode())
+// Ten sam zapis mają nazwy w odpowiedziach ERR <produkt>
+//
+// Żądania (odpowiedź: OK ... albo ERR ...):
+//   SELL <sesja> <produkt> <ilość>      -> OK <ilość dodana do koszyka>
+//   REMOVE <sesja> <produkt> <ilość>    -> OK <ilość zwolniona>
+//   CHECKOUT <sesja>                    -> OK <sprzedane sztuki> <wartość> albo ERR <produkt, którego zabrakło>
+//   END <sesja>                         -> OK <zwolnione sztuki>
+//   QUIT                                -> zamknięcie połączenia
+//
+// Żądania bez sesji - operacje bezpośrednio na liście produktów (używane przez RemoteShard, gdy serwer jest częścią ShardedStockList):
+//   ADD <produkt> <cena w groszach> <ilość>         -> OK <ilość w magazynie>
+//   RESERVE | FINALIZE | UNRESERVE <produkt> <ilość> -> OK <ilość> (StockList.reserveStock(), sellStock(), unreservedStock())
+//   CHECKOUTLINES <zakup> <produkt> <ilość> ...     -> OK <pozycje> <sztuki> <wartość w groszach> albo ERR <produkt> (ilość musi być dodatnia)
+//   RESTORE <zakup> <produkt> <ilość> ...           -> OK <przywrócone sztuki> (cofnięcie CHECKOUTLINES)
+// <zakup> - identyfikator zakupu (long) nadany przez koordynatora: oba żądania można powtórzyć bez skutków ubocznych (LocalShard, CheckoutLedger)
+//
+// Klient może wysłać wiele żądań bez czekania na odpowiedzi (pipelining) - odpowiedzi przychodzą w kolejności żądań
+// Serwer wysyła zebrane odpowiedzi dopiero wtedy, gdy przeczytał wszystkie oczekujące żądania (jeden zapis zamiast wielu)
+// Żądania jednego połączenia wykonujemy po kolei - dzięki temu kolejne operacje jednej sesji (SELL, CHECKOUT) nie wyprzedzają się
+//
+// Uruchomienie: java com.marcinsi.server.WarehouseServer port=7070 items=1000 connections=1024
+// Koszyki w pliku (w pamięci tylko ostatnio używane): java com.marcinsi.server.WarehouseServer baskets=baskets.bin hot=100000
+
+public class WarehouseServer implements Closeable {
+
+    // Limit połączeń obsługiwanych naraz - dotyczy tylko puli wątków systemowych (bez wątków wirtualnych)
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 1_024;
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final WarehouseService service;
+    private final StockList stockList;
+    private final LocalShard shard;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final Thread acceptor;
+
+    public WarehouseServer(WarehouseService service, int port) throws IOException {
+
+        this(service, port, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    public WarehouseServer(WarehouseService service, int port, int maxConnections) throws IOException {
+
+        this.service = service;
+        this.connections = newPerTaskExecutor("warehouse-connection", maxConnections);
+        this.stockList = service.getStockList();
+        this.shard = new LocalShard(stockList);
+        this.serverSocket = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress());
+
+        this.acceptor = new Thread(this::acceptConnections, "warehouse-acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    // Wykonawca uruchamiający każde zadanie w nowym wątku wirtualnym (metoda dostępna od Javy 21 - wywołanie przez refleksję)
+    // Zastępczo - pula co najwyżej maxThreads wątków demona bez kolejki: zadanie ponad limit kończy się RejectedExecutionException
+    // (wątki zadań to zwykle długie połączenia - zadanie w kolejce czekałoby bez końca)
+
+    static ExecutorService newPerTaskExecutor(String threadName, int maxThreads) {
+
+        try {
+
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+
+        } catch(ReflectiveOperationException e){
+
+            AtomicInteger counter = new AtomicInteger();
+
+            return new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), task -> {
+
+                Thread thread = new Thread(task, threadName + "-" + counter.incrementAndGet());
+
+                thread.setDaemon(true);
+
+                return thread;
+            });
+        }
+    }
+
+    // Zapis nazwy jako jednego pola żądania - spacja, '%' i znaki sterujące jako %XX (pozostałe znaki bez zmian, UTF-8)
+
+    public static String encode(String field) {
+
+        StringBuilder encoded = null;
+
+        for(int i = 0; i < field.length(); i++){
+
+            char c = field.charAt(i);
+
+            if((c == ' ') || (c == '%') || Character.isISOControl(c)){
+
+                if(encoded == null){
+
+                    encoded = new StringBuilder(field.length() + 8).append(field, 0, i);
+                }
+
+                encoded.append('%').append(HEX[c >> 4 & 0xF]).append(HEX[c & 0xF]);
+
+            } else if(encoded != null){
+
+                encoded.append(c);
+            }
+        }
+
+        return encoded != null ? encoded.toString() : field;
+    }
+
+    // Odczyt pola zapisanego przez encode() - niepoprawna sekwencja %XX kończy się IllegalArgumentException
+
+    public static String decode(String field) {
+
+        int escape = field.indexOf('%');
+
+        if(escape < 0){
+
+            return field;
+        }
+
+        StringBuilder decoded = new StringBuilder(field.length()).append(field, 0, escape);
+
+        for(int i = escape; i < field.length(); i++){
+
+            char c = field.charAt(i);
+
+            if(c == '%'){
+
+                int high = (i + 2 < field.length()) ? Character.digit(field.charAt(i + 1), 16) : -1;
+                int low = (high >= 0) ? Character.digit(field.charAt(i + 2), 16) : -1;
+
+                if(low < 0){
+
+                    throw new IllegalArgumentException("Invalid escape in field : " + field);
+                }
+
+                decoded.append((char) (high << 4 | low));
+                i += 2;
+
+            } else {
+
+                decoded.append(c);
+            }
+        }
+
+        return decoded.toString();
+    }
+
+    public int getPort() {
+
+        return serverSocket.getLocalPort();
+    }
+
+    public int getActiveConnections() {
+
+        return activeConnections.get();
+    }
+
+    private void acceptConnections() {
+
+        while(!serverSocket.isClosed()){
+
+            try {
+
+                Socket socket = serverSocket.accept();
+
+                try {
+
+                    connections.execute(() -> serve(socket));
+
+                } catch(RejectedExecutionException e){
+
+                    refuse(socket);
+                }
+
+            } catch(IOException e){
+
+                // Gniazdo serwera zostało zamknięte (close()) - kończymy pętlę
+
+                if(serverSocket.isClosed()){
+
+                    return;
+                }
+            }
+        }
+    }
+
+    // Wszystkie wątki puli są zajęte - klient dostaje odpowiedź "ERR busy", a połączenie zamykamy (bez czekania w kolejce)
+
+    private static void refuse(Socket socket) throws IOException {
+
+        try(Socket client = socket){
+
+            client.getOutputStream().write("ERR busy\n".getBytes(StandardCharsets.UTF_8));
+
+        } catch(SocketException e){
+
+            // Klient zerwał połączenie - nie ma komu odpowiedzieć
+        }
+    }
+
+    private void serve(Socket socket) {
+
+        activeConnections.incrementAndGet();
+
+        try(Socket client = socket;
+            BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8))){
+
+            client.setTcpNoDelay(true);
+
+            String request;
+
+            while(((request = in.readLine()) != null) && !request.equals("QUIT")){
+
+                out.write(execute(request));
+                out.write('\n');
+
+                // Kolejne żądania czekają już w buforze - odpowiedź wyślemy razem z następnymi
+
+                if(!in.ready()){
+
+                    out.flush();
+                }
+            }
+
+            out.flush();
+
+        } catch(SocketException e){
+
+            // Klient zerwał połączenie - nie ma komu odpowiedzieć
+
+        } catch(IOException e){
+
+            System.err.println("Connection error : " + e);
+
+        } finally {
+
+            activeConnections.decrementAndGet();
+        }
+    }
+
+    // Wykonanie jednego żądania - zwracamy treść odpowiedzi (bez znaku końca linii)
+    // Pola rozdzielone spacjami odczytujemy przez decode() - nazwa ze spacją przychodzi jako jedno pole (%20)
+
+    String execute(String request) {
+
+        String[] parts = request.trim().split(" +");
+
+        try {
+
+            for(int i = 1; i < parts.length; i++){
+
+                parts[i] = decode(parts[i]);
+            }
+
+            switch(parts[0]){
+
+                case "SELL":
+                    return parts.length == 4 ? "OK " + service.sellItem(parts[1], parts[2], Integer.parseInt(parts[3])) : "ERR usage : SELL <session> <item> <quantity>";
+
+                case "REMOVE":
+                    return parts.length == 4 ? "OK " + service.removeItem(parts[1], parts[2], Integer.parseInt(parts[3])) : "ERR usage : REMOVE <session> <item> <quantity>";
+
+                case "CHECKOUT":
+
+                    if(parts.length != 2){
+
+                        return "ERR usage : CHECKOUT <session>";
+                    }
+
+                    CheckoutResult result = service.checkOut(parts[1]);
+
+                    return result.isSuccessful() ? "OK " + result.getUnitsSold() + " " + result.getTotalCost() : "ERR " + encode(result.getFailedItem());
+
+                case "END":
+                    return parts.length == 2 ? "OK " + service.endSession(parts[1]) : "ERR usage : END <session>";
+
+                case "ADD":
+                    return parts.length == 4 ? "OK " + stockList.addStock(StockItem.ofMinorUnits(parts[1], Long.parseLong(parts[2]), Integer.parseInt(parts[3]))) : "ERR usage : ADD <item> <price in minor units> <quantity>";
+
+                case "RESERVE":
+                    return parts.length == 3 ? "OK " + stockList.reserveStock(parts[1], Integer.parseInt(parts[2])) : "ERR usage : RESERVE <item> <quantity>";
+
+                case "FINALIZE":
+                    return parts.length == 3 ? "OK " + stockList.sellStock(parts[1], Integer.parseInt(parts[2])) : "ERR usage : FINALIZE <item> <quantity>";
+
+                case "UNRESERVE":
+                    return parts.length == 3 ? "OK " + stockList.unreservedStock(parts[1], Integer.parseInt(parts[2])) : "ERR usage : UNRESERVE <item> <quantity>";
+
+                case "CHECKOUTLINES":
+                    return checkoutLines(parts);
+
+                case "RESTORE":
+                    return restoreLines(parts);
+
+                default:
+                    return "ERR unknown request : " + parts[0];
+            }
+
+        } catch(NumberFormatException e){
+
+            return "ERR invalid quantity";
+
+        } catch(IllegalArgumentException e){
+
+            return "ERR invalid field";
+        }
+    }
+
+    // Sprzedaż kilku pozycji jednej listy naraz (StockList.checkout() - wszystkie pozycje albo żadna) - tak jak shard w tym samym procesie
+
+    private String checkoutLines(String[] parts) {
+
+        Map<String, Integer> lines = lines(parts);
+
+        if(lines == null){
+
+            return "ERR usage : CHECKOUTLINES <checkout id> <item> <quantity> ...";
+        }
+
+        if(lines.isEmpty()){
+
+            return "ERR invalid quantity";
+        }
+
+        CheckoutResult result = shard.checkout(Long.parseLong(parts[1]), lines);
+
+        return result.isSuccessful() ? "OK " + result.getLinesSold() + " " + result.getUnitsSold() + " " + result.getTotalCostInMinorUnits() : "ERR " + encode(result.getFailedItem());
+    }
+
+    private String restoreLines(String[] parts) {
+
+        Map<String, Integer> lines = lines(parts);
+
+        if(lines == null){
+
+            return "ERR usage : RESTORE <checkout id> <item> <quantity> ...";
+        }
+
+        return lines.isEmpty() ? "ERR invalid quantity" : "OK " + shard.restoreStock(Long.parseLong(parts[1]), lines);
+    }
+
+    // Pozycje żądania (po identyfikatorze zakupu): null - zła liczba pól, pusta mapa - ilość <= 0
+    // Koszyk pomija pozycje z ilością <= 0 - zakup bez takiej pozycji nie byłby tym, o co prosił klient, dlatego odrzucamy całe żądanie
+
+    private static Map<String, Integer> lines(String[] parts) {
+
+        if((parts.length < 4) || (parts.length % 2 != 0)){
+
+            return null;
+        }
+
+        Map<String, Integer> lines = new LinkedHashMap<>();
+
+        for(int i = 2; i < parts.length; i += 2){
+
+            int quantity = Integer.parseInt(parts[i + 1]);
+
+            if(quantity <= 0){
+
+                return Map.of();
+            }
+
+            lines.merge(parts[i], quantity, Integer::sum);
+        }
+
+        return lines;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        serverSocket.close();
+        connections.shutdownNow();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        int port = 7070;
+        int items = 1_000;
+        Path basketFile = null;
+        int hotBaskets = 100_000;
+        int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+        for(String arg : args){
+
+            String[] parts = arg.split("=", 2);
+
+            switch(parts[0]){
+
+                case "port": port = Integer.parseInt(parts[1]); break;
+                case "items": items = Integer.parseInt(parts[1]); break;
+                case "baskets": basketFile = Path.of(parts[1]); break;
+                case "hot": hotBaskets = Integer.parseInt(parts[1]); break;
+                case "connections": maxConnections = Integer.parseInt(parts[1]); break;
+                default: throw new IllegalArgumentException("Unknown argument : " + arg);
+            }
+        }
+
+        StockList stockList = demoStockList(items);
+        BasketStore baskets = basketFile != null ? BasketStore.open(stockList, basketFile, hotBaskets) : BasketStore.inMemory(stockList);
+
+        // Zamknięcie magazynu koszyków zapisuje do pliku także koszyki z pamięci
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+
+            try {
+
+                baskets.close();
+
+            } catch(IOException e){
+
+                System.err.println("Cannot save baskets : " + e.getMessage());
+            }
+        }));
+
+        WarehouseServer server = new WarehouseServer(new WarehouseService(stockList, baskets), port, maxConnections);
+
+        System.out.println("Warehouse server listening on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort());
+
+        server.acceptor.join();
+    }
+
+    // Lista produktów item0 ... itemN-1 z bardzo dużym zapasem (pomiar wydajności nie powinien wyczerpać towaru)
+
+    static StockList demoStockList(int items) {
+
+        StockList stockList = StockList.concurrentStockList();
+
+        for(int i = 0; i < items; i++){
+
+            stockList.addStock(new StockItem("item" + i, 1.0 + (i % 1000) / 100.0, 1_000_000_000));
+        }
+
+        return stockList;
+    }
+}
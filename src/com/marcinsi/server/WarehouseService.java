@@ -0,0 +1,99 @@
+package com.marcinsi.server;
+
+import com.marcinsi.warehouseapp.Basket;
+import com.marcinsi.warehouseapp.BasketStore;
+import com.marcinsi.warehouseapp.CheckoutResult;
+import com.marcinsi.warehouseapp.StockItem;
+import com.marcinsi.warehouseapp.StockList;
+
+// Warstwa usługi - to samo połączenie funkcjonalności co Main.sellItem(), Main.removeItem() oraz Main.checkOut()
+// Różnica: wspólna lista produktów dla wielu klientów, a koszyk klienta wskazujemy identyfikatorem sesji
+// Koszyki sesji przechowuje BasketStore - operacje na jednym koszyku wykonuje pod blokadą koszyka (różne sesje działają równolegle)
+// Domyślnie wszystkie koszyki są w pamięci, BasketStore.open() trzyma w pamięci tylko ostatnio używane (pozostałe w pliku)
+// Żądania jednej sesji powinny przychodzić po kolei (np. jednym połączeniem) - tak jak w przykładzie z klasy Main
+
+public class WarehouseService {
+
+    private final StockList stockList;
+    private final BasketStore baskets;
+
+    public WarehouseService(StockList stockList) {
+
+        this(stockList, BasketStore.inMemory(stockList));
+    }
+
+    public WarehouseService(StockList stockList, BasketStore baskets) {
+
+        this.stockList = stockList;
+        this.baskets = baskets;
+    }
+
+    public StockList getStockList() {
+
+        return stockList;
+    }
+
+    // Rezerwacja towaru i dodanie go do koszyka sesji
+    // Zwracamy ilość dodaną do koszyka (0 - nieznany produkt lub brak towaru), a nie poprzednią ilość w koszyku jak Main.sellItem()
+
+    public int sellItem(String session, String item, int quantity) {
+
+        StockItem stockItem = stockList.get(item);
+
+        if(stockItem == null){
+
+            return 0;
+        }
+
+        return baskets.withBasket(session, basket -> {
+
+            if(stockList.reserveStock(item, quantity) != 0){
+
+                basket.addToBasket(stockItem, quantity);
+
+                return quantity;
+            }
+
+            return 0;
+        });
+    }
+
+    // Usunięcie z koszyka sesji i cofnięcie rezerwacji (StockList.removeFromBasket())
+
+    public int removeItem(String session, String item, int quantity) {
+
+        Integer removed = baskets.withExistingBasket(session, basket -> stockList.removeFromBasket(basket, item, quantity));
+
+        return removed != null ? removed : 0;
+    }
+
+    // Sprzedaż całego koszyka sesji (StockList.checkout()) - pusty koszyk zostaje w sesji do wywołania endSession()
+
+    public CheckoutResult checkOut(String session) {
+
+        return baskets.withBasket(session, stockList::checkout);
+    }
+
+    // Zakończenie sesji - towar z niesprzedanego koszyka wraca do puli (cofnięcie rezerwacji)
+    // Zwracamy liczbę zwolnionych sztuk
+
+    public int endSession(String session) {
+
+        Basket basket = baskets.remove(session);
+
+        if(basket == null){
+
+            return 0;
+        }
+
+        synchronized(basket){
+
+            return stockList.releaseBasket(basket);
+        }
+    }
+
+    public int sessionCount() {
+
+        return baskets.size();
+    }
+}
@@ -0,0 +1,120 @@
+package com.marcinsi.warehouseapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Kolejka oczekujących rezerwacji jednego produktu (StockList.reserveOrWait()) - zamiast ponawiania reserveStock() w pętli
+// Klient otrzymuje CompletableFuture, które zostaje zakończone ilością zarezerwowanych sztuk, gdy towar się pojawi
+// Towar pojawia się po adjustStock() z wartością dodatnią, po unreserveStock() oraz po wygaśnięciu rezerwacji (Reservation)
+//
+// Kolejność FIFO: obsługujemy tylko pierwszego oczekującego - jeśli dla niego brakuje towaru, kolejni też czekają (mniejsze zamówienia go nie wyprzedzą)
+// Oczekiwanie ma termin (orTimeout()) - po jego upływie future kończy się wyjątkiem TimeoutException, a wpis jest pomijany przy obsłudze kolejki
+// Jeśli future zakończyło się (termin, cancel()) w chwili między rezerwacją a complete() - cofamy rezerwację
+//
+// complete() wywołujemy w puli wątków (CompletableFuture.runAsync()), a nie w wątku, który zwolnił towar
+// Towar zwalnia się m.in. pod blokadami (zastąpienie produktu w StockItem.retire(), obsługa kolejki) - dalsze kroki klienta (thenAccept() itp.) nie mogą działać pod nimi
+//
+// Kolejkę obsługuje jeden wątek naraz (licznik próśb jak w StockValuation.refresh()) - pozostałe wątki tylko zgłaszają potrzebę obsługi
+
+final class BackorderQueue {
+
+    private static final class Waiter {
+
+        private final int quantity;
+        private final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+        private Waiter(int quantity) {
+
+            this.quantity = quantity;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    // Dodanie oczekującego i od razu próba obsługi kolejki - towar mógł się pojawić, zanim wpis trafił do kolejki
+
+    CompletableFuture<Integer> enqueue(StockItem item, int quantity, long timeout, TimeUnit unit) {
+
+        Waiter waiter = new Waiter(quantity);
+
+        waiter.future.orTimeout(timeout, unit);
+        waiters.add(waiter);
+        drain(item);
+
+        return waiter.future;
+    }
+
+    boolean isEmpty() {
+
+        return waiters.isEmpty();
+    }
+
+    // Liczba oczekujących (łącznie z tymi, których termin minął, a nie zostali jeszcze usunięci z kolejki)
+
+    int size() {
+
+        return waiters.size();
+    }
+
+    void drain(StockItem item) {
+
+        if(drainRequests.getAndIncrement() != 0){
+
+            return;
+        }
+
+        int missed = 1;
+        List<Waiter> ready = new ArrayList<>();
+
+        do {
+
+            Waiter head;
+
+            while((head = waiters.peek()) != null){
+
+                // Termin minął albo klient zrezygnował - wpis tylko usuwamy
+
+                if(head.future.isDone()){
+
+                    waiters.poll();
+
+                    continue;
+                }
+
+                if(item.reserveStock(head.quantity) == 0){
+
+                    break;
+                }
+
+                waiters.poll();
+                ready.add(head);
+            }
+
+            missed = drainRequests.addAndGet(-missed);
+
+        } while(missed != 0);
+
+        if(!ready.isEmpty()){
+
+            CompletableFuture.runAsync(() -> complete(item, ready));
+        }
+    }
+
+    // Zakończenie future obsłużonych oczekujących (kolejność FIFO) - poza obsługą kolejki i poza wątkiem, który zwolnił towar
+
+    private static void complete(StockItem item, List<Waiter> ready) {
+
+        for(Waiter waiter : ready){
+
+            if(!waiter.future.complete(waiter.quantity)){
+
+                item.unreserveStock(waiter.quantity);
+            }
+        }
+    }
+}
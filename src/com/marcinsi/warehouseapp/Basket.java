@@ -1,6 +1,10 @@
 package com.marcinsi.warehouseapp;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -14,9 +18,25 @@ public class Basket {
 
     private final Map<StockItem, Integer> list;
 
+    // Rezerwacje z terminem, z których pochodzą pozycje koszyka (null - brak) - zatwierdzane przez StockList.checkout()
+
+    private List<Reservation> reservations;
+
+    // Pomiary operacji na koszyku (null - pomiary wyłączone)
+
+    private final WarehouseMetrics metrics;
+
     public Basket(String name) {
 
+        this(name, null);
+    }
+
+    // Koszyk zapisujący czasy oraz wyniki addToBasket() i removeFromBasket() (np. StockList.enableMetrics())
+
+    public Basket(String name, WarehouseMetrics metrics) {
+
         this.name = name;
+        this.metrics = metrics;
 
         // Czy TreeMap potrzebuje metod equals() oraz hashCode()
         // TreeMap oraz TreeSet nie potrzebuje tych metod
@@ -37,6 +57,92 @@ public class Basket {
 
     public int addToBasket(StockItem item, int quantity){
 
+        long start = metrics != null ? System.nanoTime() : 0;
+        int inBasket = add(item, quantity);
+
+        if(metrics != null){
+
+            metrics.record(WarehouseMetrics.Operation.BASKET_ADD, (item != null) && (quantity > 0) ? WarehouseMetrics.Outcome.SUCCESS : WarehouseMetrics.Outcome.FAILURE, start);
+        }
+
+        return inBasket;
+    }
+
+    // Dodanie pozycji z rezerwacji z terminem ważności (StockList.reserveStock(item, quantity, ttl, unit))
+    // Koszyk zapamiętuje rezerwację - checkout() wstrzymuje jej termin na czas sprzedaży i zatwierdza ją po sprzedaży, więc termin nie zwolni sprzedanego towaru
+    // Rezerwacja, która nie jest już aktywna (wygasła, anulowana, zatwierdzona), nie zostaje dodana - zwracamy 0
+
+    public int addToBasket(Reservation reservation){
+
+        if((reservation == null) || !reservation.isPending()){
+
+            return 0;
+        }
+
+        int inBasket = addToBasket(reservation.getItem(), reservation.getQuantity());
+
+        if(reservations == null){
+
+            reservations = new ArrayList<>();
+        }
+
+        reservations.add(reservation);
+
+        return inBasket;
+    }
+
+    List<Reservation> reservations(){
+
+        return reservations != null ? reservations : Collections.emptyList();
+    }
+
+    // Pozycja usunięta z koszyka (StockList.removeFromBasket()) - rezerwacje z terminem tego produktu, które obejmowały usunięte sztuki, przestają obowiązywać
+    // Bez tego termin zwolniłby po raz drugi sztuki oddane już do puli (i zarezerwowane w tym czasie przez innego klienta)
+    // Zwalniamy od najnowszej rezerwacji: całą anulujemy (cancel()), a gdy potrzeba tylko części - zastępujemy ją mniejszą (Reservation.release())
+    // Zwracamy liczbę sztuk, które wróciły do puli przez rezerwacje (także wygasłe wcześniej) - resztę zwalnia wywołujący
+
+    int releaseReservations(int itemId, int units){
+
+        int released = 0;
+
+        for(int i = reservations != null ? reservations.size() - 1 : -1; (i >= 0) && (released < units); i--){
+
+            Reservation reservation = reservations.get(i);
+
+            if(reservation.itemId() != itemId){
+
+                continue;
+            }
+
+            int part = Math.min(reservation.getQuantity(), units - released);
+            Reservation rest = null;
+
+            if(part == reservation.getQuantity()){
+
+                reservation.cancel();
+
+            } else {
+
+                rest = reservation.release(part);
+            }
+
+            if(rest != null){
+
+                reservations.set(i, rest);
+
+            } else {
+
+                reservations.remove(i);
+            }
+
+            released += part;
+        }
+
+        return released;
+    }
+
+    private int add(StockItem item, int quantity){
+
         if((item != null) && quantity > 0){
 
             // Sprawdzamy jaka była ilość danego produktu w koszyku wcześniej
@@ -57,8 +163,24 @@ public class Basket {
 
     }
 
+    // Usunięcie sztuk z koszyka - towar zarezerwowany dla koszyka zwalnia wywołujący (StockList.removeFromBasket() robi to razem z usunięciem)
+    // Pozycje dodane z rezerwacji z terminem trzeba usuwać przez StockList.removeFromBasket() - sama ta metoda nie zatrzymuje terminu rezerwacji
+
     public int removeFromBasket(StockItem item, int quantity){
 
+        long start = metrics != null ? System.nanoTime() : 0;
+        int removed = remove(item, quantity);
+
+        if(metrics != null){
+
+            metrics.record(WarehouseMetrics.Operation.BASKET_REMOVE, (item != null) && (quantity > 0), removed, start);
+        }
+
+        return removed;
+    }
+
+    private int remove(StockItem item, int quantity){
+
         if((item != null) && (quantity > 0)){
 
             // metoda getOrDefault() - zwróci ilość towaru, która była w koszyku lub wartość 0, gdy danego towaru nie było w koszyku
@@ -91,11 +213,32 @@ public class Basket {
         return 0;
     }
 
+    // Dodanie do koszyka wszystkich zarezerwowanych pozycji zamówienia (wynik StockList.reserveAll())
+    // Produkty zostały już znalezione podczas rezerwacji - nie szukamy ich ponownie
+    // Zwracamy liczbę dodanych pozycji
+
+    public int addAll(BatchReservation reservation){
+
+        int added = 0;
+
+        for(int line = 0; line < reservation.size(); line++){
+
+            if(reservation.getOutcome(line) == BatchReservation.Outcome.RESERVED){
+
+                addToBasket(reservation.getItem(line), reservation.getReserved(line));
+                added++;
+            }
+        }
+
+        return added;
+    }
+
     public void clearBasket(){
 
         // Dla mapy list (bo lista jest mapą) istnieje metoda clear() -> to rozwiązanie jest bardziej wydajne niż przechodzenie po mapie i usuwanie elementów po kolei
 
         this.list.clear();
+        this.reservations = null;
     }
 
     public Map<StockItem, Integer> Items(){
@@ -106,23 +249,47 @@ public class Basket {
         return Collections.unmodifiableMap(list);
     }
 
-    @Override
-    public String toString() {
+    // Raport zawartości koszyka zapisywany bezpośrednio do obiektu Appendable (tak jak StockList.writeReport())
+
+    public void writeReport(Appendable out) throws IOException {
+
+        out.append("\nShopping basket ").append(name).append(" contains ");
+        ReportFormat.appendLong(out, list.size());
+        out.append(list.size() == 1 ? " item" : " items").append('\n');
 
-        String s = "\nShopping basket " + name + " contains " + list.size() + (list.size() == 1 ? " item" : " items") + "\n";
+        // Suma w groszach (long) - wynik jest dokładny (suma liczb double daje np. 57.050000000000004 zamiast 57.05)
 
-        double totalCost = 0.0;
+        long totalCost = 0;
 
         for(Map.Entry<StockItem, Integer> item: list.entrySet()){
 
-            s = s + item.getKey() + ". " + item.getValue() + " purchased\n";
+            item.getKey().appendTo(out);
+            out.append(". ");
+            ReportFormat.appendLong(out, item.getValue());
+            out.append(" purchased\n");
 
-            totalCost += item.getKey().getPrice() * item.getValue();
+            totalCost += item.getKey().getPriceInMinorUnits() * item.getValue();
         }
 
-        s += "Total cost : " + totalCost;
+        out.append("Total cost : ");
+        ReportFormat.appendPrice(out, totalCost);
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder s = new StringBuilder();
+
+        try {
+
+            writeReport(s);
+
+        } catch(IOException e){
+
+            throw new UncheckedIOException(e);
+        }
 
-        return s;
+        return s.toString();
     }
 }
 
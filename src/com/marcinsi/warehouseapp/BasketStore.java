@@ -0,0 +1,1001 @@
+package com.marcinsi.warehouseapp;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+// Magazyn koszyków sesji - ostatnio używane koszyki w pamięci (LRU), pozostałe w pliku
+// Koszyk w pamięci to obiekt Basket z mapą TreeMap (kilkadziesiąt bajtów na pozycję), koszyk w pliku to kilka bajtów na pozycję
+//
+// Część w pamięci: LinkedHashMap w kolejności dostępu (accessOrder) - najdawniej używany koszyk jest pierwszy
+// Po przekroczeniu limitu najdawniej używane koszyki trafiają do pliku (tylko te, na których nikt w tej chwili nie pracuje)
+// Koszyk z pliku wczytujemy dopiero przy pierwszym dostępie do sesji (withBasket())
+//
+// Rekord w pliku: długość nazwy, nazwa (UTF-8), liczba pozycji + 1 (0 - sesja usunięta), pozycje (identyfikator produktu, ilość, długość nazwy, nazwa)
+// Wszystkie liczby zapisujemy jako varint (7 bitów na bajt) - identyfikatory i ilości są zwykle małe
+// Produkty odczytujemy po identyfikatorze z listy StockList (StockList.get(int)) - gdy pod identyfikatorem jest inny produkt (np. plik z innej listy),
+// szukamy produktu po nazwie; pozycja produktu, którego lista już nie zna, nie wraca do koszyka
+//
+// Plik tylko rośnie (nowe rekordy dopisujemy na końcu) - gdy nieaktualne rekordy zajmują więcej niż aktualne, plik jest przepisywany
+// Po ponownym otwarciu ostatni rekord danej sesji "wygrywa" (tak jak w StockJournal), close() zapisuje do pliku także koszyki z pamięci
+//
+// Blokada obiektu BasketStore chroni tylko mapy i liczniki (bez operacji na pliku) - odczyt, zapis i przepisywanie pliku wykonujemy poza nią:
+// - wczytywany koszyk ma w mapie hot wpis zastępczy (basket == null), a koszyk zapisywany do pliku - znacznik spilling;
+//   inne wątki tej samej sesji czekają (wait()), pozostałe sesje działają dalej
+// - miejsce w pliku rezerwujemy pod blokadą (end), a bajty zapisujemy poza nią (zapis pod wskazaną pozycją - FileChannel.write(buffer, position))
+// - odczyty i zapisy wykonujemy pod blokadą fileLock do odczytu, przepisanie pliku (compact()) pod blokadą do zapisu
+//   (zawsze najpierw fileLock, potem blokada obiektu - kolejność wyklucza zakleszczenie)
+// Operacje na samym koszyku - pod blokadą koszyka (różne sesje działają równolegle)
+
+public class BasketStore implements Closeable {
+
+    // Położenie rekordu w pliku zapisane w jednej liczbie long: starsze 40 bitów - pozycja, młodsze 24 bity - długość
+
+    private static final int LENGTH_BITS = 24;
+    private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+
+    // Plik przepisujemy dopiero wtedy, gdy nieaktualne rekordy zajmują co najmniej tyle bajtów
+
+    static final long COMPACTION_THRESHOLD = 1 << 20;
+
+    // Koszyk w pamięci wraz z liczbą wątków, które w tej chwili na nim pracują (takiego koszyka nie zapisujemy do pliku)
+    // basket == null - koszyk jest wczytywany z pliku, spilling - koszyk jest zapisywany do pliku (w obu przypadkach wątki sesji czekają)
+    // stored - w pliku jest nieaktualny rekord tej sesji (usunięcie sesji wymaga rekordu usunięcia)
+
+    private static final class Entry {
+
+        private Basket basket;
+        private final boolean stored;
+        private boolean spilling = false;
+        private int users = 0;
+
+        private Entry(Basket basket, boolean stored) {
+
+            this.basket = basket;
+            this.stored = stored;
+        }
+    }
+
+    // Koszyk wybrany do zapisu w pliku - rekord kodujemy i zapisujemy poza blokadą obiektu
+
+    private static final class Spill {
+
+        private final String session;
+        private final Entry entry;
+        private byte[] record;
+        private long offset;
+        private boolean written = false;
+
+        private Spill(String session, Entry entry) {
+
+            this.session = session;
+            this.entry = entry;
+        }
+    }
+
+    private final StockList stockList;
+    private final Path file;
+    private final int hotCapacity;
+    private final long compactionThreshold;
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+
+    private final LinkedHashMap<String, Entry> hot = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> spilled = new HashMap<>();
+
+    // channel zmieniamy tylko pod blokadą fileLock do zapisu - operacje na pliku (blokada do odczytu) widzą aktualny kanał
+
+    private FileChannel channel;
+    private long end = 0;
+    private long liveBytes = 0;
+    private long deadBytes = 0;
+    private boolean compacting = false;
+    private boolean closed = false;
+
+    private BasketStore(StockList stockList, Path file, int hotCapacity, long compactionThreshold) {
+
+        this.stockList = stockList;
+        this.file = file;
+        this.hotCapacity = hotCapacity;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    // Magazyn bez pliku - wszystkie koszyki w pamięci (zachowanie sprzed wprowadzenia magazynu koszyków)
+
+    public static BasketStore inMemory(StockList stockList) {
+
+        return new BasketStore(stockList, null, Integer.MAX_VALUE, COMPACTION_THRESHOLD);
+    }
+
+    // Otwarcie magazynu w pliku - koszyki zapisane wcześniej (np. przed restartem) są dostępne od razu
+    // hotCapacity - liczba koszyków przechowywanych w pamięci
+
+    public static BasketStore open(StockList stockList, Path file, int hotCapacity) throws IOException {
+
+        return open(stockList, file, hotCapacity, COMPACTION_THRESHOLD);
+    }
+
+    // Wersja z własnym progiem przepisywania pliku (testy)
+
+    static BasketStore open(StockList stockList, Path file, int hotCapacity, long compactionThreshold) throws IOException {
+
+        if(hotCapacity < 1){
+
+            throw new IllegalArgumentException("Hot capacity must be positive : " + hotCapacity);
+        }
+
+        BasketStore store = new BasketStore(stockList, file, hotCapacity, compactionThreshold);
+
+        store.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+
+            store.recover();
+
+        } catch(IOException e){
+
+            store.channel.close();
+
+            throw e;
+        }
+
+        return store;
+    }
+
+    // Wykonanie operacji na koszyku sesji (koszyk jest tworzony, jeśli sesja jeszcze go nie ma)
+    // Operacja działa pod blokadą koszyka - w tym czasie koszyk nie zostanie zapisany do pliku
+
+    public <R> R withBasket(String session, Function<Basket, R> action) {
+
+        return apply(acquire(session, true), action);
+    }
+
+    // To samo co withBasket(), ale bez tworzenia nowego koszyka (null - sesja nie ma koszyka, operacja nie jest wykonywana)
+
+    public <R> R withExistingBasket(String session, Function<Basket, R> action) {
+
+        Entry entry = acquire(session, false);
+
+        return entry != null ? apply(entry, action) : null;
+    }
+
+    private <R> R apply(Entry entry, Function<Basket, R> action) {
+
+        try {
+
+            synchronized(entry.basket){
+
+                return action.apply(entry.basket);
+            }
+
+        } finally {
+
+            release(entry);
+        }
+    }
+
+    // Pobranie koszyka sesji (users + 1) - koszyk z pliku wczytujemy poza blokadą obiektu, w mapie hot jest w tym czasie wpis zastępczy
+    // Wczytanie wymaga blokady fileLock (przepisanie pliku nie może zmienić położenia rekordu) - bierzemy ją przed blokadą obiektu i sprawdzamy stan ponownie
+
+    private Entry acquire(String session, boolean create) {
+
+        boolean fileLocked = false;
+        boolean interrupted = false;
+
+        try {
+
+            while(true){
+
+                Entry entry;
+                long position;
+
+                synchronized(this){
+
+                    ensureOpen();
+
+                    entry = hot.get(session);
+
+                    if(entry != null){
+
+                        // Koszyk sesji jest właśnie wczytywany albo zapisywany do pliku - czekamy na koniec operacji i sprawdzamy ponownie
+
+                        if((entry.basket == null) || entry.spilling){
+
+                            try {
+
+                                wait();
+
+                            } catch(InterruptedException e){
+
+                                interrupted = true;
+                            }
+
+                            continue;
+                        }
+
+                        entry.users++;
+
+                        return entry;
+                    }
+
+                    Long stored = spilled.get(session);
+
+                    if(stored == null){
+
+                        if(!create){
+
+                            return null;
+                        }
+
+                        entry = new Entry(new Basket(session), false);
+                        entry.users++;
+                        hot.put(session, entry);
+
+                        return entry;
+                    }
+
+                    if(fileLocked){
+
+                        position = stored;
+                        spilled.remove(session);
+
+                        entry = new Entry(null, true);
+                        entry.users++;
+                        hot.put(session, entry);
+
+                    } else {
+
+                        position = -1;
+                    }
+                }
+
+                if(position < 0){
+
+                    fileLock.readLock().lock();
+                    fileLocked = true;
+
+                    continue;
+                }
+
+                return load(session, entry, position);
+            }
+
+        } finally {
+
+            if(fileLocked){
+
+                fileLock.readLock().unlock();
+            }
+
+            if(interrupted){
+
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Wczytanie koszyka do wpisu zastępczego - błąd odczytu przywraca rekord w pliku i usuwa wpis (czekające wątki spróbują ponownie)
+
+    private Entry load(String session, Entry entry, long position) {
+
+        int length = (int) (position & LENGTH_MASK);
+        Basket basket;
+
+        try {
+
+            basket = decode(session, read(position >>> LENGTH_BITS, length));
+
+        } catch(RuntimeException e){
+
+            synchronized(this){
+
+                hot.remove(session);
+                spilled.put(session, position);
+                notifyAll();
+            }
+
+            throw e;
+        }
+
+        synchronized(this){
+
+            entry.basket = basket;
+            liveBytes -= length;
+            deadBytes += length;
+            notifyAll();
+        }
+
+        return entry;
+    }
+
+    private void release(Entry entry) {
+
+        synchronized(this){
+
+            entry.users--;
+
+            if(closed || (channel == null) || (hot.size() <= hotCapacity)){
+
+                return;
+            }
+        }
+
+        evict();
+        compactIfNeeded();
+    }
+
+    // Usunięcie sesji - zwracamy jej koszyk (wczytany z pliku, jeśli był w pliku) albo null
+
+    public Basket remove(String session) {
+
+        Entry entry = acquire(session, false);
+
+        if(entry == null){
+
+            return null;
+        }
+
+        boolean fileLocked = channel != null;
+        byte[] record = null;
+        long offset = 0;
+
+        if(fileLocked){
+
+            fileLock.readLock().lock();
+        }
+
+        try {
+
+            synchronized(this){
+
+                entry.users--;
+
+                // Inny wątek usunął sesję w międzyczasie
+
+                if(hot.get(session) != entry){
+
+                    return null;
+                }
+
+                hot.remove(session);
+
+                // Rekord usunięcia - po ponownym otwarciu sesja nie wróci
+
+                if(entry.stored && !closed){
+
+                    record = encodeRemoval(session);
+                    offset = end;
+                    end += record.length;
+                    deadBytes += record.length;
+                }
+            }
+
+            if(record != null){
+
+                write(offset, record);
+            }
+
+        } finally {
+
+            if(fileLocked){
+
+                fileLock.readLock().unlock();
+            }
+        }
+
+        compactIfNeeded();
+
+        return entry.basket;
+    }
+
+    public synchronized boolean contains(String session) {
+
+        return hot.containsKey(session) || spilled.containsKey(session);
+    }
+
+    public synchronized int size() {
+
+        return hot.size() + spilled.size();
+    }
+
+    // Liczba koszyków w pamięci
+
+    public synchronized int hotSize() {
+
+        return hot.size();
+    }
+
+    // Rozmiar pliku (w bajtach) - łącznie z nieaktualnymi rekordami
+
+    public synchronized long fileSize() {
+
+        return end;
+    }
+
+    private void ensureOpen() {
+
+        if(closed){
+
+            throw new IllegalStateException("Basket store closed");
+        }
+    }
+
+    // Zapis do pliku najdawniej używanych koszyków - aż liczba koszyków w pamięci spadnie do limitu
+    // Pod blokadą obiektu tylko wybór koszyków i rezerwacja miejsca w pliku - kodowanie i zapis poza nią (koszyki mają znacznik spilling)
+
+    private void evict() {
+
+        List<Spill> spills = new ArrayList<>();
+
+        fileLock.readLock().lock();
+
+        try {
+
+            synchronized(this){
+
+                if(closed){
+
+                    return;
+                }
+
+                Iterator<Map.Entry<String, Entry>> iterator = hot.entrySet().iterator();
+
+                while((hot.size() - spills.size() > hotCapacity) && iterator.hasNext()){
+
+                    Map.Entry<String, Entry> eldest = iterator.next();
+                    Entry entry = eldest.getValue();
+
+                    if((entry.users == 0) && (entry.basket != null) && !entry.spilling){
+
+                        entry.spilling = true;
+                        spills.add(new Spill(eldest.getKey(), entry));
+                    }
+                }
+            }
+
+            if(spills.isEmpty()){
+
+                return;
+            }
+
+            // Nikt nie używa tych koszyków (users == 0), a nowe wątki czekają na koniec zapisu - kodujemy bez blokady koszyka
+
+            for(Spill spill : spills){
+
+                spill.record = encode(spill.session, spill.entry.basket);
+            }
+
+            synchronized(this){
+
+                for(Spill spill : spills){
+
+                    if(spill.record != null){
+
+                        spill.offset = end;
+                        end += spill.record.length;
+                    }
+                }
+            }
+
+            // Koszyk, którego nie udało się zapisać, zostaje w pamięci - zarezerwowane dla niego miejsce w pliku jest nieaktualne
+
+            UncheckedIOException failure = null;
+
+            for(Spill spill : spills){
+
+                if(spill.record != null){
+
+                    try {
+
+                        write(spill.offset, spill.record);
+
+                        spill.written = true;
+
+                    } catch(UncheckedIOException e){
+
+                        failure = e;
+                    }
+                }
+            }
+
+            synchronized(this){
+
+                for(Spill spill : spills){
+
+                    spill.entry.spilling = false;
+
+                    if(spill.written){
+
+                        hot.remove(spill.session);
+                        spilled.put(spill.session, (spill.offset << LENGTH_BITS) | spill.record.length);
+                        liveBytes += spill.record.length;
+
+                    } else if(spill.record != null){
+
+                        deadBytes += spill.record.length;
+                    }
+                }
+
+                notifyAll();
+            }
+
+            if(failure != null){
+
+                throw failure;
+            }
+
+        } finally {
+
+            fileLock.readLock().unlock();
+        }
+    }
+    // Odczyt koszyka z rekordu - produkt szukamy po identyfikatorze, a gdy nazwa się nie zgadza (albo identyfikatora nie ma) - po nazwie
+    // Pozycja produktu, którego lista nie zna, jest pomijana (jej rezerwacja nie istnieje w tej liście)
+
+    private Basket decode(String session, byte[] record) {
+
+        Basket basket = new Basket(session);
+        int[] cursor = {0};
+
+        // Pominięcie nazwy sesji na początku rekordu
+
+        int sessionLength = readVarint(record, cursor);
+
+        cursor[0] += sessionLength;
+
+        int lines = readVarint(record, cursor) - 1;
+
+        for(int line = 0; line < lines; line++){
+
+            int id = readVarint(record, cursor);
+            int quantity = readVarint(record, cursor);
+            int nameLength = readVarint(record, cursor);
+            String name = new String(record, cursor[0], nameLength, StandardCharsets.UTF_8);
+
+            cursor[0] += nameLength;
+
+            StockItem item = stockList.get(id);
+
+            if((item == null) || !item.getName().equals(name)){
+
+                item = stockList.get(name);
+            }
+
+            if(item != null){
+
+                basket.addToBasket(item, quantity);
+            }
+        }
+
+        return basket;
+    }
+
+    // Kodowanie rekordu koszyka (null - koszyka nie można zapisać, np. zawiera produkt spoza listy StockList)
+
+    private byte[] encode(String session, Basket basket) {
+
+        byte[] name = session.getBytes(StandardCharsets.UTF_8);
+        Map<StockItem, Integer> lines = basket.Items();
+        byte[][] itemNames = new byte[lines.size()][];
+        int capacity = 5 + name.length + 5;
+        int index = 0;
+
+        for(StockItem item : lines.keySet()){
+
+            StockItem inStock = stockList.get(item.getId());
+
+            if((inStock == null) || !inStock.getName().equals(item.getName())){
+
+                return null;
+            }
+
+            itemNames[index] = item.getName().getBytes(StandardCharsets.UTF_8);
+            capacity += 15 + itemNames[index++].length;
+        }
+
+        byte[] record = new byte[capacity];
+        int position = writeVarint(record, 0, name.length);
+
+        System.arraycopy(name, 0, record, position, name.length);
+        position = writeVarint(record, position + name.length, lines.size() + 1);
+        index = 0;
+
+        for(Map.Entry<StockItem, Integer> line : lines.entrySet()){
+
+            byte[] itemName = itemNames[index++];
+
+            position = writeVarint(record, position, line.getKey().getId());
+            position = writeVarint(record, position, line.getValue());
+            position = writeVarint(record, position, itemName.length);
+
+            System.arraycopy(itemName, 0, record, position, itemName.length);
+            position += itemName.length;
+        }
+
+        return position <= LENGTH_MASK ? Arrays.copyOf(record, position) : null;
+    }
+
+    private static byte[] encodeRemoval(String session) {
+
+        byte[] name = session.getBytes(StandardCharsets.UTF_8);
+        byte[] record = new byte[5 + name.length + 1];
+        int position = writeVarint(record, 0, name.length);
+
+        System.arraycopy(name, 0, record, position, name.length);
+
+        return Arrays.copyOf(record, writeVarint(record, position + name.length, 0));
+    }
+
+    static int writeVarint(byte[] target, int position, int value) {
+
+        while((value & ~0x7F) != 0){
+
+            target[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        target[position++] = (byte) value;
+
+        return position;
+    }
+
+    // Odczyt liczby varint - cursor[0] to pozycja w tablicy (przesuwana za odczytaną liczbę)
+
+    static int readVarint(byte[] source, int[] cursor) {
+
+        int value = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+
+            b = source[cursor[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+
+        } while(b < 0);
+
+        return value;
+    }
+
+    // Operacje na pliku (pod blokadą fileLock do odczytu, bez blokady obiektu) - błąd zgłaszamy wyjątkiem UncheckedIOException
+    // (metody wywoływane są wewnątrz operacji na koszyku)
+
+    private void write(long offset, byte[] record) {
+
+        try {
+
+            ByteBuffer source = ByteBuffer.wrap(record);
+
+            while(source.hasRemaining()){
+
+                channel.write(source, offset + source.position());
+            }
+
+        } catch(IOException e){
+
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] read(long offset, int length) {
+
+        byte[] record = new byte[length];
+
+        try {
+
+            ByteBuffer target = ByteBuffer.wrap(record);
+
+            while(target.hasRemaining()){
+
+                if(channel.read(target, offset + target.position()) < 0){
+
+                    throw new EOFException("Basket record beyond end of file : " + file);
+                }
+            }
+
+        } catch(IOException e){
+
+            throw new UncheckedIOException(e);
+        }
+
+        return record;
+    }
+
+    // Przepisanie pliku, gdy nieaktualne rekordy zajmują więcej niż aktualne - jeden wątek naraz (compacting), pod blokadą fileLock do zapisu
+    // W tym czasie nikt nie czyta ani nie zapisuje pliku, więc położenia rekordów (spilled) się nie zmieniają - koszyki w pamięci działają dalej
+
+    private void compactIfNeeded() {
+
+        synchronized(this){
+
+            if(compacting || closed || (channel == null) || (deadBytes <= liveBytes) || (deadBytes < compactionThreshold)){
+
+                return;
+            }
+
+            compacting = true;
+        }
+
+        fileLock.writeLock().lock();
+
+        try {
+
+            compact();
+
+        } finally {
+
+            fileLock.writeLock().unlock();
+
+            synchronized(this){
+
+                compacting = false;
+            }
+        }
+    }
+
+    // Przepisanie aktualnych rekordów do nowego pliku (nieaktualne rekordy znikają) i podmiana pliku jedną operacją
+
+    private void compact() {
+
+        Map<String, Long> records;
+
+        synchronized(this){
+
+            if(closed){
+
+                return;
+            }
+
+            records = new HashMap<>(spilled);
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".compact");
+        long position = 0;
+
+        try {
+
+            try(FileChannel target = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+
+                for(Map.Entry<String, Long> record : records.entrySet()){
+
+                    long offset = record.getValue() >>> LENGTH_BITS;
+                    long length = record.getValue() & LENGTH_MASK;
+                    long copied = 0;
+
+                    while(copied < length){
+
+                        copied += channel.transferTo(offset + copied, length - copied, target);
+                    }
+
+                    record.setValue((position << LENGTH_BITS) | length);
+                    position += length;
+                }
+
+                target.force(false);
+            }
+
+            channel.close();
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        } catch(IOException e){
+
+            throw new UncheckedIOException(e);
+        }
+
+        synchronized(this){
+
+            spilled.putAll(records);
+            end = position;
+            deadBytes = 0;
+        }
+    }
+
+    // Odczyt pliku przy otwarciu - budujemy indeks sesja -> położenie ostatniego rekordu
+    // Niepełny ostatni rekord (przerwany zapis) jest obcinany
+
+    private void recover() throws IOException {
+
+        long position = 0;
+
+        try(InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)){
+
+            while(true){
+
+                long start = position;
+                int nameLength = readVarint(in);
+
+                if(nameLength < 0){
+
+                    break;
+                }
+
+                byte[] name = in.readNBytes(nameLength);
+                int lines = readVarint(in);
+
+                if((name.length < nameLength) || (lines < 0)){
+
+                    break;
+                }
+
+                position = start + varintLength(nameLength) + nameLength + varintLength(lines);
+
+                // Pozycja: identyfikator, ilość, długość nazwy produktu i nazwa
+
+                boolean complete = true;
+
+                for(int line = 0; complete && (line < lines - 1); line++){
+
+                    for(int value = 0; value < 3; value++){
+
+                        int read = readVarint(in);
+
+                        if(read < 0){
+
+                            complete = false;
+
+                            break;
+                        }
+
+                        position += varintLength(read);
+
+                        if(value == 2){
+
+                            complete = in.readNBytes(read).length == read;
+                            position += read;
+                        }
+                    }
+                }
+
+                if(!complete){
+
+                    position = start;
+
+                    break;
+                }
+
+                String session = new String(name, StandardCharsets.UTF_8);
+                long length = position - start;
+                Long previous = lines > 0 ? spilled.put(session, (start << LENGTH_BITS) | length) : spilled.remove(session);
+
+                if(previous != null){
+
+                    liveBytes -= previous & LENGTH_MASK;
+                    deadBytes += previous & LENGTH_MASK;
+                }
+
+                if(lines > 0){
+
+                    liveBytes += length;
+
+                } else {
+
+                    deadBytes += length;
+                }
+            }
+        }
+
+        channel.truncate(position);
+        end = position;
+    }
+
+    // Odczyt liczby varint ze strumienia (-1 - koniec pliku, także w środku liczby)
+
+    private static int readVarint(InputStream in) throws IOException {
+
+        int value = 0;
+        int shift = 0;
+        int b;
+
+        do {
+
+            b = in.read();
+
+            if(b < 0){
+
+                return -1;
+            }
+
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+
+        } while((b & 0x80) != 0);
+
+        return value;
+    }
+
+    private static int varintLength(int value) {
+
+        int length = 1;
+
+        while((value & ~0x7F) != 0){
+
+            value >>>= 7;
+            length++;
+        }
+
+        return length;
+    }
+
+    // Zapis wszystkich koszyków z pamięci do pliku i zamknięcie pliku - kolejne operacje zgłaszają IllegalStateException
+    // Blokada fileLock do zapisu - czekamy na koniec trwających odczytów i zapisów (nie ma wtedy wpisów zastępczych ani znaczników spilling)
+
+    @Override
+    public void close() throws IOException {
+
+        fileLock.writeLock().lock();
+
+        try {
+
+            synchronized(this){
+
+                if(closed){
+
+                    return;
+                }
+
+                closed = true;
+                notifyAll();
+
+                if(channel == null){
+
+                    return;
+                }
+
+                try {
+
+                    for(Map.Entry<String, Entry> entry : hot.entrySet()){
+
+                        byte[] record;
+
+                        synchronized(entry.getValue().basket){
+
+                            record = encode(entry.getKey(), entry.getValue().basket);
+                        }
+
+                        if(record != null){
+
+                            write(end, record);
+                            end += record.length;
+                        }
+                    }
+
+                    hot.clear();
+                    channel.force(false);
+
+                } catch(UncheckedIOException e){
+
+                    throw e.getCause();
+
+                } finally {
+
+                    channel.close();
+                }
+            }
+
+        } finally {
+
+            fileLock.writeLock().unlock();
+        }
+    }
+}
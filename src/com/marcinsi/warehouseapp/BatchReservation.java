@@ -0,0 +1,162 @@
+package com.marcinsi.warehouseapp;
+
+import java.util.Arrays;
+
+// Wynik rezerwacji całego zamówienia (StockList.reserveAll()) - jedna pozycja zamówienia to jeden wiersz wyniku
+// Dane przechowujemy w tablicach (nazwa, produkt, zamówiona ilość, zarezerwowana ilość, wynik) - obiekt można używać wielokrotnie
+// Dzięki temu import dużych zamówień nie tworzy osobnego obiektu dla każdej pozycji
+
+public class BatchReservation {
+
+    // Sposób realizacji zamówienia: każda pozycja osobno albo wszystko albo nic
+
+    public enum Policy {
+
+        PARTIAL,
+        ALL_OR_NOTHING
+    }
+
+    public enum Outcome {
+
+        RESERVED,
+        UNKNOWN_ITEM,
+        INVALID_QUANTITY,
+        INSUFFICIENT_STOCK,
+
+        // Pozycja była zarezerwowana, ale inna pozycja się nie powiodła (tylko Policy.ALL_OR_NOTHING)
+
+        ROLLED_BACK
+    }
+
+    private String[] names;
+    private StockItem[] items;
+    private int[] requested;
+    private int[] reserved;
+    private Outcome[] outcomes;
+    private int size;
+
+    public BatchReservation() {
+
+        this(16);
+    }
+
+    public BatchReservation(int expectedLines) {
+
+        allocate(Math.max(1, expectedLines));
+    }
+
+    private void allocate(int capacity) {
+
+        names = new String[capacity];
+        items = new StockItem[capacity];
+        requested = new int[capacity];
+        reserved = new int[capacity];
+        outcomes = new Outcome[capacity];
+    }
+
+    // Przygotowanie obiektu do kolejnego zamówienia - tablice są powiększane tylko wtedy, gdy są za małe
+
+    void reset(int lines) {
+
+        if(lines > names.length){
+
+            allocate(lines);
+
+        } else {
+
+            Arrays.fill(names, 0, size, null);
+            Arrays.fill(items, 0, size, null);
+        }
+
+        size = 0;
+    }
+
+    void addLine(String name, StockItem item, int quantity, int reservedQuantity, Outcome outcome) {
+
+        names[size] = name;
+        items[size] = item;
+        requested[size] = quantity;
+        reserved[size] = reservedQuantity;
+        outcomes[size] = outcome;
+        size++;
+    }
+
+    // Cofnięcie wszystkich zarezerwowanych pozycji (Policy.ALL_OR_NOTHING)
+
+    void rollBack() {
+
+        for(int line = 0; line < size; line++){
+
+            if(outcomes[line] == Outcome.RESERVED){
+
+                items[line].unreserveStock(reserved[line]);
+                reserved[line] = 0;
+                outcomes[line] = Outcome.ROLLED_BACK;
+            }
+        }
+    }
+
+    public int size() {
+
+        return size;
+    }
+
+    public String getName(int line) {
+
+        return names[line];
+    }
+
+    StockItem getItem(int line) {
+
+        return items[line];
+    }
+
+    public int getRequested(int line) {
+
+        return requested[line];
+    }
+
+    public int getReserved(int line) {
+
+        return reserved[line];
+    }
+
+    public Outcome getOutcome(int line) {
+
+        return outcomes[line];
+    }
+
+    public boolean isComplete() {
+
+        for(int line = 0; line < size; line++){
+
+            if(outcomes[line] != Outcome.RESERVED){
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public int getReservedLines() {
+
+        int count = 0;
+
+        for(int line = 0; line < size; line++){
+
+            if(outcomes[line] == Outcome.RESERVED){
+
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public String toString() {
+
+        return "Batch reservation : " + getReservedLines() + " of " + size + (size == 1 ? " line" : " lines") + " reserved";
+    }
+}
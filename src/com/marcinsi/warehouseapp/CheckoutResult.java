@@ -0,0 +1,76 @@
+package com.marcinsi.warehouseapp;
+
+// Wynik operacji StockList.checkout() - informacja o przebiegu procesu w jednym obiekcie
+// Albo cały koszyk został sprzedany, albo nic nie zostało sprzedane (wtedy wiemy, który produkt był przyczyną)
+// Klasa jest immutable - obiekty tworzy StockList, a także klasy łączące wyniki kilku list (np. ShardedStockList)
+
+public final class CheckoutResult {
+
+    private final String failedItem;
+    private final int linesSold;
+    private final int unitsSold;
+    private final long totalCost;
+
+    private CheckoutResult(String failedItem, int linesSold, int unitsSold, long totalCost) {
+
+        this.failedItem = failedItem;
+        this.linesSold = linesSold;
+        this.unitsSold = unitsSold;
+        this.totalCost = totalCost;
+    }
+
+    // Wartość sprzedaży w groszach
+
+    public static CheckoutResult sold(int linesSold, int unitsSold, long totalCost) {
+
+        return new CheckoutResult(null, linesSold, unitsSold, totalCost);
+    }
+
+    public static CheckoutResult failed(String failedItem) {
+
+        return new CheckoutResult(failedItem, 0, 0, 0);
+    }
+
+    public boolean isSuccessful() {
+
+        return failedItem == null;
+    }
+
+    // Nazwa produktu, którego nie udało się sprzedać (null - jeśli cały koszyk został sprzedany)
+
+    public String getFailedItem() {
+
+        return failedItem;
+    }
+
+    public int getLinesSold() {
+
+        return linesSold;
+    }
+
+    public int getUnitsSold() {
+
+        return unitsSold;
+    }
+
+    public double getTotalCost() {
+
+        return (double) totalCost / StockItem.MINOR_UNITS;
+    }
+
+    public long getTotalCostInMinorUnits() {
+
+        return totalCost;
+    }
+
+    @Override
+    public String toString() {
+
+        if(isSuccessful()){
+
+            return "Checkout completed : " + linesSold + (linesSold == 1 ? " item, " : " items, ") + unitsSold + " units. Total cost : " + getTotalCost();
+        }
+
+        return "Checkout failed : " + failedItem + " could not be sold";
+    }
+}
@@ -0,0 +1,185 @@
+package com.marcinsi.warehouseapp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+// Kompaktowa wersja koszyka - pozycje są identyfikowane przez liczbowy identyfikator produktu (int), a nie przez obiekt StockItem
+// Ilości przechowujemy w mapie IntIntHashMap (typy proste) - dodanie i usunięcie pozycji nie tworzy nowych obiektów
+// Koszyk nie wie nic o nazwach produktów - posortowany widok (tak jak w klasie Basket) tworzymy dopiero na żądanie
+// Zakup: StockList.checkout(CompactBasket), raport: writeReport() z funkcją zamieniającą identyfikator na produkt (np. stockList::get)
+
+public class CompactBasket {
+
+    private final String name;
+    private final IntIntHashMap list;
+
+    public CompactBasket(String name) {
+
+        this(name, 8);
+    }
+
+    public CompactBasket(String name, int expectedItems) {
+
+        this.name = name;
+        this.list = new IntIntHashMap(expectedItems);
+    }
+
+    public String getName() {
+
+        return name;
+    }
+
+    // Te same zasady co w klasie Basket - zwracamy ilość, która była w koszyku wcześniej
+
+    public int addToBasket(int itemId, int quantity){
+
+        if((itemId >= 0) && (quantity > 0)){
+
+            int inBasket = list.get(itemId);
+
+            list.put(itemId, inBasket + quantity);
+
+            return inBasket;
+        }
+
+        return 0;
+    }
+
+    public int removeFromBasket(int itemId, int quantity){
+
+        if((itemId >= 0) && (quantity > 0)){
+
+            int inBasket = list.get(itemId);
+            int newQuantity = inBasket - quantity;
+
+            if(newQuantity > 0){
+
+                list.put(itemId, newQuantity);
+
+                return quantity;
+
+            } else if((newQuantity == 0) && (inBasket > 0)){
+
+                list.remove(itemId);
+
+                return quantity;
+            }
+        }
+
+        return 0;
+    }
+
+    public int getQuantity(int itemId){
+
+        return itemId >= 0 ? list.get(itemId) : 0;
+    }
+
+    public int size(){
+
+        return list.size();
+    }
+
+    public void clearBasket(){
+
+        list.clear();
+    }
+
+    // Widok w postaci posortowanej mapy (tak jak Basket.Items()) - tworzony tylko na żądanie, np. do wyświetlenia
+    // Parametr items zamienia identyfikator na produkt (na przykład lista produktów w magazynie)
+
+    public Map<StockItem, Integer> Items(IntFunction<StockItem> items){
+
+        Map<StockItem, Integer> sorted = new TreeMap<>();
+
+        for(int slot = list.nextSlot(0); slot >= 0; slot = list.nextSlot(slot + 1)){
+
+            StockItem item = items.apply(list.keyAt(slot));
+
+            if(item != null){
+
+                sorted.put(item, list.valueAt(slot));
+            }
+        }
+
+        return Collections.unmodifiableMap(sorted);
+    }
+
+    // Pozycje zapisane jako long (identyfikator w starszych 32 bitach, ilość w młodszych) i posortowane po identyfikatorze
+    // Używane przez StockList.checkout(CompactBasket) - jedna tablica typu prostego zamiast mapy obiektów
+
+    long[] sortedLines(){
+
+        long[] lines = new long[list.size()];
+        int count = 0;
+
+        for(int slot = list.nextSlot(0); slot >= 0; slot = list.nextSlot(slot + 1)){
+
+            lines[count++] = ((long) list.keyAt(slot) << 32) | list.valueAt(slot);
+        }
+
+        Arrays.sort(lines);
+
+        return lines;
+    }
+
+    static int itemId(long line){
+
+        return (int) (line >>> 32);
+    }
+
+    static int quantity(long line){
+
+        return (int) line;
+    }
+
+    // Raport w tym samym formacie co Basket.writeReport() - pozycje w kolejności nazw, produkty nieobecne w liście są pomijane
+
+    public void writeReport(Appendable out, IntFunction<StockItem> items) throws IOException {
+
+        out.append("\nShopping basket ").append(name).append(" contains ");
+        ReportFormat.appendLong(out, list.size());
+        out.append(list.size() == 1 ? " item" : " items").append('\n');
+
+        long totalCost = 0;
+
+        for(Map.Entry<StockItem, Integer> item : Items(items).entrySet()){
+
+            item.getKey().appendTo(out);
+            out.append(". ");
+            ReportFormat.appendLong(out, item.getValue());
+            out.append(" purchased\n");
+
+            totalCost += item.getKey().getPriceInMinorUnits() * item.getValue();
+        }
+
+        out.append("Total cost : ");
+        ReportFormat.appendPrice(out, totalCost);
+    }
+
+    public String toString(IntFunction<StockItem> items) {
+
+        StringBuilder s = new StringBuilder();
+
+        try {
+
+            writeReport(s, items);
+
+        } catch(IOException e){
+
+            throw new UncheckedIOException(e);
+        }
+
+        return s.toString();
+    }
+
+    @Override
+    public String toString() {
+
+        return "\nShopping basket " + name + " contains " + list.size() + (list.size() == 1 ? " item" : " items");
+    }
+}
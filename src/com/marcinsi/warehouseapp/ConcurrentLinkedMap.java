@@ -0,0 +1,245 @@
+package com.marcinsi.warehouseapp;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+
+// Mapa współbieżna, która zachowuje kolejność dodawania (odpowiednik LinkedHashMap dla wielu wątków)
+// Odczyty (get) trafiają bezpośrednio do ConcurrentHashMap - bez blokad
+// Zapisy blokują tylko jeden "koszyk" (bin) ConcurrentHashMap - czyli zapisy do różnych kluczy nie czekają na siebie
+// Kolejność dodawania przechowujemy w osobnej kolejce kluczy - klucz trafia do kolejki tylko przy pierwszym dodaniu
+
+class ConcurrentLinkedMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+    private final ConcurrentHashMap<K, V> index;
+    private final ConcurrentLinkedQueue<K> order = new ConcurrentLinkedQueue<>();
+
+    ConcurrentLinkedMap() {
+
+        this.index = new ConcurrentHashMap<>();
+    }
+
+    ConcurrentLinkedMap(int initialCapacity) {
+
+        this.index = new ConcurrentHashMap<>(initialCapacity);
+    }
+
+    @Override
+    public V get(Object key) {
+
+        return index.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+
+        return index.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+
+        return index.size();
+    }
+
+    @Override
+    public V put(K key, V value) {
+
+        return compute(key, (k, previous) -> value);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+
+        V previous = index.get(key);
+
+        if(previous != null){
+
+            return previous;
+        }
+
+        V[] existing = newHolder();
+
+        compute(key, (k, current) -> {
+
+            existing[0] = current;
+
+            return current != null ? current : value;
+        });
+
+        return existing[0];
+    }
+
+    // Wszystkie modyfikacje przechodzą przez compute() z ConcurrentHashMap - operacja jest atomowa dla danego klucza
+    // Jeśli w trakcie operacji klucz pojawia się po raz pierwszy - dopisujemy go na końcu kolejki
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+
+        return index.compute(key, (k, previous) -> {
+
+            V value = remappingFunction.apply(k, previous);
+
+            if(previous == null && value != null){
+
+                order.add(k);
+
+            } else if(previous != null && value == null){
+
+                order.remove(k);
+            }
+
+            return value;
+        });
+    }
+
+    @Override
+    public V remove(Object key) {
+
+        V[] removed = newHolder();
+
+        index.computeIfPresent(castKey(key), (k, previous) -> {
+
+            removed[0] = previous;
+            order.remove(k);
+
+            return null;
+        });
+
+        return removed[0];
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+
+        boolean[] removed = new boolean[1];
+
+        index.computeIfPresent(castKey(key), (k, previous) -> {
+
+            if(!previous.equals(value)){
+
+                return previous;
+            }
+
+            removed[0] = true;
+            order.remove(k);
+
+            return null;
+        });
+
+        return removed[0];
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+
+        return index.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public V replace(K key, V value) {
+
+        return index.replace(key, value);
+    }
+
+    @Override
+    public void clear() {
+
+        for(K key : order){
+
+            remove(key);
+        }
+    }
+
+    // Widok na wpisy - iterujemy po kolejce kluczy (kolejność dodawania) i pobieramy aktualną wartość z indeksu
+    // Iterator jest "słabo spójny" (weakly consistent) - tak jak iteratory ConcurrentHashMap
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+
+        return new AbstractSet<>() {
+
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+
+                return index.size();
+            }
+        };
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+        private final Iterator<K> keys = order.iterator();
+        private Map.Entry<K, V> next;
+        private K last;
+
+        @Override
+        public boolean hasNext() {
+
+            while(next == null && keys.hasNext()){
+
+                K key = keys.next();
+                V value = index.get(key);
+
+                if(value != null){
+
+                    next = new SimpleImmutableEntry<>(key, value);
+                }
+            }
+
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+
+            if(!hasNext()){
+
+                throw new NoSuchElementException();
+            }
+
+            Map.Entry<K, V> entry = next;
+            next = null;
+            last = entry.getKey();
+
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+
+            if(last == null){
+
+                throw new IllegalStateException();
+            }
+
+            ConcurrentLinkedMap.this.remove(last);
+            last = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private K castKey(Object key) {
+
+        return (K) key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V[] newHolder() {
+
+        return (V[]) new Object[1];
+    }
+}
@@ -0,0 +1,193 @@
+package com.marcinsi.warehouseapp;
+
+import java.util.Arrays;
+
+// Mapa int -> int oparta na adresowaniu otwartym (open addressing) i próbkowaniu liniowym
+// Klucze i wartości przechowujemy w tablicach typów prostych - brak obiektów Integer i węzłów (jak w TreeMap czy HashMap)
+// Usuwanie bez "nagrobków" (backward shift) - tablica nie degraduje się przy wielu operacjach dodaj/usuń
+// Nowa pamięć jest alokowana tylko przy powiększaniu tablic - w stanie ustalonym put() oraz remove() nic nie alokują
+// Klucze muszą być nieujemne (wartość -1 oznacza puste miejsce)
+
+class IntIntHashMap {
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    IntIntHashMap(int expectedSize) {
+
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+
+        Arrays.fill(keys, EMPTY);
+    }
+
+    // Mieszanie bitów klucza - kolejne identyfikatory (0, 1, 2...) trafiają w różne miejsca tablicy
+
+    private int slotOf(int key) {
+
+        int h = key * 0x9E3779B9;
+
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private int find(int key) {
+
+        int slot = slotOf(key);
+
+        while(keys[slot] != EMPTY){
+
+            if(keys[slot] == key){
+
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    // Zwraca wartość dla danego klucza lub 0 (odpowiednik getOrDefault(key, 0))
+
+    int get(int key) {
+
+        int slot = find(key);
+
+        return slot < 0 ? 0 : values[slot];
+    }
+
+    boolean containsKey(int key) {
+
+        return find(key) >= 0;
+    }
+
+    void put(int key, int value) {
+
+        if(key < 0){
+
+            throw new IllegalArgumentException("Key must not be negative : " + key);
+        }
+
+        int slot = slotOf(key);
+
+        while(keys[slot] != EMPTY){
+
+            if(keys[slot] == key){
+
+                values[slot] = value;
+
+                return;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+
+        if(++size > (mask + 1) / 2){
+
+            grow();
+        }
+    }
+
+    void remove(int key) {
+
+        int slot = find(key);
+
+        if(slot < 0){
+
+            return;
+        }
+
+        // Przesunięcie wstecz - elementy z tej samej "serii" wracają bliżej swojego miejsca docelowego
+
+        int gap = slot;
+        int next = (gap + 1) & mask;
+
+        while(keys[next] != EMPTY){
+
+            int home = slotOf(keys[next]);
+
+            if(((next - home) & mask) >= ((next - gap) & mask)){
+
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        keys[gap] = EMPTY;
+        size--;
+    }
+
+    int size() {
+
+        return size;
+    }
+
+    void clear() {
+
+        if(size > 0){
+
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+        }
+    }
+
+    // Iteracja bez obiektów iteratora: for(int slot = map.nextSlot(0); slot >= 0; slot = map.nextSlot(slot + 1))
+
+    int nextSlot(int from) {
+
+        for(int slot = from; slot <= mask; slot++){
+
+            if(keys[slot] != EMPTY){
+
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+    int keyAt(int slot) {
+
+        return keys[slot];
+    }
+
+    int valueAt(int slot) {
+
+        return values[slot];
+    }
+
+    private void grow() {
+
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+
+        allocate(oldKeys.length * 2);
+        size = 0;
+
+        for(int i = 0; i < oldKeys.length; i++){
+
+            if(oldKeys[i] != EMPTY){
+
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
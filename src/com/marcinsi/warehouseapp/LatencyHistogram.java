@@ -0,0 +1,123 @@
+package com.marcinsi.warehouseapp;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Histogram czasów operacji (w nanosekundach) w stylu HdrHistogram - przedziały logarytmiczno-liniowe
+// Każda potęga dwójki jest podzielona na 16 równych części - błąd odczytu percentyla nie przekracza około 6%
+// Liczniki przedziałów to LongAdder (liczniki rozłożone na wiele komórek) - wiele wątków zapisuje bez rywalizacji o jedną linię pamięci
+
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+
+        for(int i = 0; i < BUCKETS; i++){
+
+            counts[i] = new LongAdder();
+        }
+    }
+
+    // Numer przedziału: wartości 0..15 mają własne przedziały, wyżej - wykładnik oraz 4 najstarsze bity mantysy
+
+    private static int bucketOf(long value) {
+
+        if(value < SUB_BUCKETS){
+
+            return (int) Math.max(0, value);
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+
+        return exponent * SUB_BUCKETS + (int) ((value >>> (exponent - 1)) & (SUB_BUCKETS - 1));
+    }
+
+    // Najmniejsza wartość należąca do przedziału
+
+    private static long lowestValueOf(int bucket) {
+
+        int exponent = bucket / SUB_BUCKETS;
+        long subBucket = bucket % SUB_BUCKETS;
+
+        return exponent == 0 ? subBucket : (SUB_BUCKETS + subBucket) << (exponent - 1);
+    }
+
+    public void record(long nanos) {
+
+        counts[bucketOf(nanos)].increment();
+        total.increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    public long getTotalCount() {
+
+        return total.sum();
+    }
+
+    public long getMax() {
+
+        return max.get();
+    }
+
+    public double getMean() {
+
+        long count = total.sum();
+
+        return count == 0 ? 0.0 : (double) sum.sum() / count;
+    }
+
+    // Wartość, poniżej której znajduje się dany procent pomiarów (np. 99.0 - percentyl p99)
+
+    public long getValueAtPercentile(double percentile) {
+
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+
+        for(int i = 0; i < BUCKETS; i++){
+
+            snapshot[i] = counts[i].sum();
+            count += snapshot[i];
+        }
+
+        if(count == 0){
+
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * count);
+        long seen = 0;
+
+        for(int i = 0; i < BUCKETS; i++){
+
+            seen += snapshot[i];
+
+            if((seen >= rank) && (snapshot[i] > 0)){
+
+                return i + 1 < BUCKETS ? Math.min(lowestValueOf(i + 1) - 1, getMax()) : getMax();
+            }
+        }
+
+        return getMax();
+    }
+
+    public void reset() {
+
+        for(LongAdder count : counts){
+
+            count.reset();
+        }
+
+        total.reset();
+        sum.reset();
+        max.reset();
+    }
+}
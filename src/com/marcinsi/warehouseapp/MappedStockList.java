@@ -0,0 +1,502 @@
+package com.marcinsi.warehouseapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Alternatywna wersja listy produktów dla bardzo dużych katalogów - dane nie są przechowywane w obiektach na stercie
+// Cena, ilość w magazynie i ilość zarezerwowana leżą w pliku zmapowanym do pamięci (MappedByteBuffer) - "kolumny" w stałych rekordach
+// Indeks nazwa -> numer rekordu (tablica mieszająca z adresowaniem otwartym) również znajduje się w pliku
+// Po restarcie wystarczy ponownie zmapować plik - nie ma etapu wczytywania danych
+//
+// Układ pliku: nagłówek | indeks (int dla każdego miejsca) | rekordy
+// Rekord: stan magazynowy (long - ten sam format co w StockItem: quantityInStock oraz reserved) | cena w groszach (long) | długość nazwy | nazwa (UTF-8)
+// Stan magazynowy zmieniamy operacją compareAndSet() bezpośrednio w pamięci pliku (VarHandle) - bez blokad, tak jak w StockItem
+// Rekordy są mapowane w częściach (CHUNK_RECORDS rekordów) - plik może być większy niż 2 GB
+
+public class MappedStockList implements Closeable {
+
+    // Druga wersja formatu (cena w groszach zamiast double) - plik w starym formacie nie zostanie otwarty
+
+    private static final int MAGIC = 0x4d53544c;
+    private static final int HEADER_SIZE = 64;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int NAME_LENGTH_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int INDEX_SLOTS_OFFSET = 16;
+
+    private static final int STOCK_OFFSET = 0;
+    private static final int PRICE_OFFSET = 8;
+    private static final int NAME_OFFSET = 16;
+
+    private static final int CHUNK_RECORDS = 1 << 16;
+
+    // Indeks ma highestOneBit(capacity) * 4 miejsc i jest mapowany jednym buforem (najwyżej 2 GB) - ograniczamy go do 2^28 miejsc (1 GB)
+    // Część rekordów (CHUNK_RECORDS rekordów) także jest jednym buforem - to ogranicza rozmiar rekordu, czyli najdłuższą nazwę
+
+    static final int MAX_CAPACITY = (1 << 27) - 1;
+    static final int MAX_NAME_LENGTH = Integer.MAX_VALUE / CHUNK_RECORDS - NAME_OFFSET - 2 - 7;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer index;
+    private final MappedByteBuffer[] chunks;
+
+    private final int capacity;
+    private final int maxNameLength;
+    private final int recordSize;
+    private final int indexMask;
+
+    private MappedStockList(FileChannel channel, int capacity, int maxNameLength, int indexSlots) throws IOException {
+
+        this.channel = channel;
+        this.capacity = capacity;
+        this.maxNameLength = maxNameLength;
+        this.recordSize = ((NAME_OFFSET + 2 + maxNameLength) + 7) & ~7;
+        this.indexMask = indexSlots - 1;
+
+        long indexBytes = (long) indexSlots * 4;
+        long recordsStart = HEADER_SIZE + ((indexBytes + 7) & ~7L);
+
+        this.header = map(0, HEADER_SIZE);
+        this.index = map(HEADER_SIZE, indexBytes);
+
+        this.chunks = new MappedByteBuffer[(capacity + CHUNK_RECORDS - 1) / CHUNK_RECORDS];
+
+        for(int i = 0; i < chunks.length; i++){
+
+            int records = Math.min(CHUNK_RECORDS, capacity - i * CHUNK_RECORDS);
+
+            chunks[i] = map(recordsStart + (long) i * CHUNK_RECORDS * recordSize, (long) records * recordSize);
+        }
+    }
+
+    private MappedByteBuffer map(long position, long size) throws IOException {
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        return buffer;
+    }
+
+    // Otwarcie istniejącego pliku (parametry są wtedy odczytywane z nagłówka) albo utworzenie nowego
+    // capacity - maksymalna liczba produktów, maxNameLength - maksymalna długość nazwy w bajtach (UTF-8)
+
+    public static MappedStockList open(Path file, int capacity, int maxNameLength) throws IOException {
+
+        boolean exists = Files.exists(file) && Files.size(file) >= HEADER_SIZE;
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+
+            if(exists){
+
+                // Jedno wywołanie read() może odczytać mniej bajtów niż rozmiar bufora - czytamy do zapełnienia nagłówka
+
+                ByteBuffer stored = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+                while(stored.hasRemaining()){
+
+                    if(channel.read(stored, stored.position()) < 0){
+
+                        throw new IOException("Truncated mapped stock list header : " + file);
+                    }
+                }
+
+                if(stored.getInt(MAGIC_OFFSET) != MAGIC){
+
+                    throw new IOException("Not a mapped stock list : " + file);
+                }
+
+                int storedCapacity = stored.getInt(CAPACITY_OFFSET);
+                int storedNameLength = stored.getInt(NAME_LENGTH_OFFSET);
+                int storedIndexSlots = stored.getInt(INDEX_SLOTS_OFFSET);
+                int storedCount = stored.getInt(COUNT_OFFSET);
+
+                if(!validParameters(storedCapacity, storedNameLength) || (storedIndexSlots != indexSlots(storedCapacity)) || (storedCount < 0) || (storedCount > storedCapacity)){
+
+                    throw new IOException("Corrupted mapped stock list header : " + file);
+                }
+
+                return new MappedStockList(channel, storedCapacity, storedNameLength, storedIndexSlots);
+            }
+
+            if(!validParameters(capacity, maxNameLength)){
+
+                throw new IllegalArgumentException("Invalid capacity or name length : " + capacity + ", " + maxNameLength + " (limits " + MAX_CAPACITY + ", " + MAX_NAME_LENGTH + ")");
+            }
+
+            int indexSlots = indexSlots(capacity);
+
+            MappedStockList stockList = new MappedStockList(channel, capacity, maxNameLength, indexSlots);
+
+            stockList.header.putInt(CAPACITY_OFFSET, capacity);
+            stockList.header.putInt(NAME_LENGTH_OFFSET, maxNameLength);
+            stockList.header.putInt(INDEX_SLOTS_OFFSET, indexSlots);
+            stockList.header.putInt(COUNT_OFFSET, 0);
+            stockList.header.putInt(MAGIC_OFFSET, MAGIC);
+
+            return stockList;
+
+        } catch(IOException | RuntimeException e){
+
+            channel.close();
+
+            throw e;
+        }
+    }
+
+    private static boolean validParameters(int capacity, int maxNameLength) {
+
+        return (capacity > 0) && (capacity <= MAX_CAPACITY) && (maxNameLength > 0) && (maxNameLength <= MAX_NAME_LENGTH);
+    }
+
+    // Co najmniej dwa razy więcej miejsc niż produktów (potęga dwójki) - krótkie ciągi sprawdzanych miejsc
+
+    private static int indexSlots(int capacity) {
+
+        return Integer.highestOneBit(capacity) << 2;
+    }
+
+    public int size() {
+
+        return (int) INTS.getVolatile(header, COUNT_OFFSET);
+    }
+
+    // Dodanie produktu - te same zasady co StockList.addStock(): nowa cena, ilości są sumowane, rezerwacje pozostają
+    // Zapisy nowych produktów są synchronizowane (rzadka operacja), odczyty i zmiany stanu nie używają blokad
+
+    public int addStock(String name, double price, int quantity) {
+
+        return addStockInMinorUnits(name, StockItem.toMinorUnits(price), quantity);
+    }
+
+    public synchronized int addStockInMinorUnits(String name, long priceInMinorUnits, int quantity) {
+
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int found = find(name, bytes);
+
+        if(found < 0){
+
+            if(bytes.length > maxNameLength){
+
+                throw new IllegalArgumentException("Name too long : " + name);
+            }
+
+            int record = size();
+
+            if(record == capacity){
+
+                throw new IllegalStateException("Mapped stock list is full : " + capacity);
+            }
+
+            ByteBuffer chunk = chunk(record);
+            int offset = offset(record);
+
+            chunk.putLong(offset + PRICE_OFFSET, priceInMinorUnits);
+            chunk.putShort(offset + NAME_OFFSET, (short) bytes.length);
+            chunk.put(offset + NAME_OFFSET + 2, bytes);
+
+            LONGS.setVolatile(chunk, offset + STOCK_OFFSET, StockItem.pack(quantity, 0));
+
+            // Rekord jest gotowy - dopiero teraz publikujemy go w indeksie i zwiększamy licznik
+
+            INTS.setVolatile(index, -found - 1, record + 1);
+            INTS.setVolatile(header, COUNT_OFFSET, record + 1);
+
+            return quantity;
+        }
+
+        setPrice(found, priceInMinorUnits);
+        adjustStock(found, quantity);
+
+        return getAvailableQuantity(found);
+    }
+
+    // Numer rekordu dla danej nazwy (-1 - brak produktu) - dalsze operacje mogą używać numeru zamiast nazwy
+
+    public int slotOf(String name) {
+
+        int slot = find(name, name.getBytes(StandardCharsets.UTF_8));
+
+        return slot >= 0 ? slot : -1;
+    }
+
+    // Wyszukiwanie w indeksie: wynik >= 0 - numer rekordu, wynik < 0 - wolne miejsce w indeksie (-przesunięcie - 1)
+
+    private int find(String name, byte[] bytes) {
+
+        int h = name.hashCode() * 0x9E3779B9;
+        int position = (h ^ (h >>> 16)) & indexMask;
+
+        while(true){
+
+            int entry = (int) INTS.getVolatile(index, position * 4);
+
+            if(entry == 0){
+
+                return -(position * 4) - 1;
+            }
+
+            if(nameEquals(entry - 1, bytes)){
+
+                return entry - 1;
+            }
+
+            position = (position + 1) & indexMask;
+        }
+    }
+
+    private boolean nameEquals(int record, byte[] bytes) {
+
+        ByteBuffer chunk = chunk(record);
+        int offset = offset(record) + NAME_OFFSET;
+
+        if(chunk.getShort(offset) != bytes.length){
+
+            return false;
+        }
+
+        for(int i = 0; i < bytes.length; i++){
+
+            if(chunk.get(offset + 2 + i) != bytes[i]){
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private ByteBuffer chunk(int record) {
+
+        return chunks[record / CHUNK_RECORDS];
+    }
+
+    private int offset(int record) {
+
+        return (record % CHUNK_RECORDS) * recordSize;
+    }
+
+    private boolean valid(int record) {
+
+        return (record >= 0) && (record < size());
+    }
+
+    // Operacje na stanie - te same warunki i wartości zwracane co w StockItem (0 - informacja o niepowodzeniu)
+
+    public int sellStock(String name, int quantity) {
+
+        return sellStock(slotOf(name), quantity);
+    }
+
+    public int sellStock(int record, int quantity) {
+
+        if(!valid(record) || (quantity <= 0)){
+
+            return 0;
+        }
+
+        ByteBuffer chunk = chunk(record);
+        int offset = offset(record) + STOCK_OFFSET;
+        long current;
+
+        do {
+
+            current = (long) LONGS.getVolatile(chunk, offset);
+
+            if(quantity > StockItem.reserved(current)){
+
+                return 0;
+            }
+
+        } while(!LONGS.compareAndSet(chunk, offset, current, StockItem.pack(StockItem.quantityInStock(current) - quantity, StockItem.reserved(current) - quantity)));
+
+        return quantity;
+    }
+
+    public int reserveStock(String name, int quantity) {
+
+        return reserveStock(slotOf(name), quantity);
+    }
+
+    public int reserveStock(int record, int quantity) {
+
+        if(!valid(record) || (quantity <= 0)){
+
+            return 0;
+        }
+
+        ByteBuffer chunk = chunk(record);
+        int offset = offset(record) + STOCK_OFFSET;
+        long current;
+
+        do {
+
+            current = (long) LONGS.getVolatile(chunk, offset);
+
+            if(quantity > StockItem.quantityInStock(current) - StockItem.reserved(current)){
+
+                return 0;
+            }
+
+        } while(!LONGS.compareAndSet(chunk, offset, current, StockItem.pack(StockItem.quantityInStock(current), StockItem.reserved(current) + quantity)));
+
+        return quantity;
+    }
+
+    public int unreservedStock(String name, int quantity) {
+
+        return unreservedStock(slotOf(name), quantity);
+    }
+
+    public int unreservedStock(int record, int quantity) {
+
+        if(!valid(record) || (quantity <= 0)){
+
+            return 0;
+        }
+
+        ByteBuffer chunk = chunk(record);
+        int offset = offset(record) + STOCK_OFFSET;
+        long current;
+
+        do {
+
+            current = (long) LONGS.getVolatile(chunk, offset);
+
+            if(quantity > StockItem.reserved(current)){
+
+                return 0;
+            }
+
+        } while(!LONGS.compareAndSet(chunk, offset, current, StockItem.pack(StockItem.quantityInStock(current), StockItem.reserved(current) - quantity)));
+
+        return quantity;
+    }
+
+    private void adjustStock(int record, int quantity) {
+
+        ByteBuffer chunk = chunk(record);
+        int offset = offset(record) + STOCK_OFFSET;
+        long current;
+        int newQuantity;
+
+        do {
+
+            current = (long) LONGS.getVolatile(chunk, offset);
+            newQuantity = StockItem.quantityInStock(current) + quantity;
+
+            if(newQuantity < 0){
+
+                return;
+            }
+
+        } while(!LONGS.compareAndSet(chunk, offset, current, StockItem.pack(newQuantity, StockItem.reserved(current))));
+    }
+
+    private void setPrice(int record, long priceInMinorUnits) {
+
+        if(priceInMinorUnits > 0){
+
+            LONGS.setVolatile(chunk(record), offset(record) + PRICE_OFFSET, priceInMinorUnits);
+        }
+    }
+
+    public int getAvailableQuantity(int record) {
+
+        if(!valid(record)){
+
+            return 0;
+        }
+
+        long current = (long) LONGS.getVolatile(chunk(record), offset(record) + STOCK_OFFSET);
+
+        return StockItem.quantityInStock(current) - StockItem.reserved(current);
+    }
+
+    public int getReservedQuantity(int record) {
+
+        return valid(record) ? StockItem.reserved((long) LONGS.getVolatile(chunk(record), offset(record) + STOCK_OFFSET)) : 0;
+    }
+
+    public double getPrice(int record) {
+
+        return (double) getPriceInMinorUnits(record) / StockItem.MINOR_UNITS;
+    }
+
+    public long getPriceInMinorUnits(int record) {
+
+        return valid(record) ? (long) LONGS.getVolatile(chunk(record), offset(record) + PRICE_OFFSET) : 0;
+    }
+
+    public String getName(int record) {
+
+        if(!valid(record)){
+
+            return null;
+        }
+
+        ByteBuffer chunk = chunk(record);
+        int offset = offset(record) + NAME_OFFSET;
+        byte[] bytes = new byte[chunk.getShort(offset)];
+
+        chunk.get(offset + 2, bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Lista cen - tak jak StockList.PriceList() (kolejność dodawania produktów)
+
+    public Map<String, Double> PriceList() {
+
+        Map<String, Double> prices = new LinkedHashMap<>();
+        int count = size();
+
+        for(int record = 0; record < count; record++){
+
+            prices.put(getName(record), getPrice(record));
+        }
+
+        return Collections.unmodifiableMap(prices);
+    }
+
+    // Wymuszenie zapisu zmian na dysk (system operacyjny i tak zapisze zmapowane strony, ale w nieokreślonym momencie)
+
+    public void force() {
+
+        header.force();
+        index.force();
+
+        for(MappedByteBuffer chunk : chunks){
+
+            chunk.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        force();
+        channel.close();
+    }
+}
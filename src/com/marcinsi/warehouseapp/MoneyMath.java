@@ -0,0 +1,24 @@
+package com.marcinsi.warehouseapp;
+
+// Obliczenia na kwotach w groszach (long) - sumy są dokładne, kolejność sumowania nie zmienia wyniku
+// Pętle działają na tablicach typów prostych, bez obiektów i bez rozgałęzień - kompilator JIT (C2) może je wektoryzować (SIMD)
+
+final class MoneyMath {
+
+    private MoneyMath() {
+    }
+
+    // Suma iloczynów cena * ilość dla pozycji od from (włącznie) do to (wyłącznie)
+
+    static long dotProduct(long[] pricesInMinorUnits, int[] quantities, int from, int to) {
+
+        long total = 0;
+
+        for(int i = from; i < to; i++){
+
+            total += pricesInMinorUnits[i] * quantities[i];
+        }
+
+        return total;
+    }
+}
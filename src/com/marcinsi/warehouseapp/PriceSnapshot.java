@@ -0,0 +1,357 @@
+package com.marcinsi.warehouseapp;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+// Niezmienna (immutable) migawka cennika - wynik StockList.PriceList()
+// Ceny (w groszach) przechowujemy w tablicach long[] podzielonych na segmenty (indeks = identyfikator produktu), a nie w obiektach Double
+// Zmiana jednej ceny tworzy nową migawkę, która kopiuje tylko jeden segment - pozostałe segmenty są współdzielone (copy-on-write)
+// Nowy produkt (identyfikator >= count) zapisujemy w miejscu - segmenty i tablica segmentów mają zapas, a starsze wersje nie czytają miejsc od count w górę
+// Czytelnik pobiera aktualną migawkę jednym odczytem pola volatile i może z niej korzystać dowolnie długo
+// Każda migawka ma numer wersji - zmienia się tylko wtedy, gdy zmieniła się cena lub lista produktów
+// Nowe wersje tworzy jeden wątek naraz (StockList.publishPrice()) - zawsze na podstawie najnowszej wersji
+
+public final class PriceSnapshot extends AbstractMap<String, Double> {
+
+    private static final int SEGMENT_BITS = 10;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final long version;
+
+    // count - granica identyfikatorów (największy identyfikator + 1), size - liczba produktów w cenniku
+    // Produkty rejestrowane równolegle mogą trafić do cennika w innej kolejności niż identyfikatory - do tego czasu ich miejsce jest puste (nazwa null)
+    // Wszystkie segmenty poniżej granicy count istnieją (puste miejsca mają nazwę null i cenę 0)
+
+    private final int count;
+    private final int size;
+    private final long[][] prices;
+    private final String[][] names;
+
+    // Indeks nazwa -> identyfikator: tablica z adresowaniem otwartym (wartość identyfikator + 1, 0 - puste miejsce), wypełniona najwyżej w połowie
+    // Tablicę współdzielą kolejne wersje - nowy produkt zajmuje puste miejsce, a wpisy nigdy nie są usuwane
+    // Wpis o identyfikatorze spoza danej wersji (>= count albo puste miejsce) wyszukiwanie pomija i sprawdza dalsze miejsca
+    // Gdy tablica zapełni się w połowie, nowa wersja otrzymuje nową, dwa razy większą tablicę
+
+    private final int[] table;
+
+    private PriceSnapshot(long version, int count, int size, long[][] prices, String[][] names, int[] table) {
+
+        this.version = version;
+        this.count = count;
+        this.size = size;
+        this.prices = prices;
+        this.names = names;
+        this.table = table;
+    }
+
+    static PriceSnapshot empty() {
+
+        return new PriceSnapshot(0, 0, 0, new long[1][], new String[1][], new int[16]);
+    }
+
+    // Nowa wersja z jedną zmienioną ceną - kopiujemy tylko tablicę wskaźników i jeden segment
+
+    PriceSnapshot withPrice(int id, long price) {
+
+        int segment = id >>> SEGMENT_BITS;
+
+        if(prices[segment][id & SEGMENT_MASK] == price){
+
+            return this;
+        }
+
+        long[][] newPrices = prices.clone();
+
+        newPrices[segment] = prices[segment].clone();
+        newPrices[segment][id & SEGMENT_MASK] = price;
+
+        return new PriceSnapshot(version + 1, count, size, newPrices, names, table);
+    }
+
+    // Nowa wersja z dodatkowym produktem (albo nową ceną produktu, który już jest w cenniku)
+
+    PriceSnapshot withItem(int id, String name, long price) {
+
+        if(contains(id)){
+
+            return withPrice(id, price);
+        }
+
+        int segment = id >>> SEGMENT_BITS;
+        long[][] newPrices = prices;
+        String[][] newNames = names;
+
+        if(segment >= prices.length){
+
+            // Tablica segmentów z zapasem (podwojenie) - kolejne segmenty dopisujemy w miejscu
+
+            newPrices = Arrays.copyOf(prices, Math.max(segment + 1, prices.length * 2));
+            newNames = Arrays.copyOf(names, newPrices.length);
+        }
+
+        if(id < count){
+
+            // Puste miejsce, które starsze wersje mogą czytać - kopiujemy segment
+
+            if(newPrices == prices){
+
+                newPrices = prices.clone();
+                newNames = names.clone();
+            }
+
+            newPrices[segment] = newPrices[segment].clone();
+            newNames[segment] = newNames[segment].clone();
+
+        } else {
+
+            // Miejsce poza granicą starszych wersji - brakujące segmenty tworzymy z pełnym zapasem, zapis bez kopiowania
+
+            for(int next = (count + SEGMENT_MASK) >>> SEGMENT_BITS; next <= segment; next++){
+
+                if(newPrices[next] == null){
+
+                    newPrices[next] = new long[SEGMENT_SIZE];
+                    newNames[next] = new String[SEGMENT_SIZE];
+                }
+            }
+        }
+
+        newPrices[segment][id & SEGMENT_MASK] = price;
+        newNames[segment][id & SEGMENT_MASK] = name;
+
+        int newCount = Math.max(count, id + 1);
+        int newSize = size + 1;
+        int[] newTable = table;
+
+        if(newSize * 2 > table.length){
+
+            newTable = buildTable(newNames, newCount, newSize);
+
+        } else {
+
+            insert(newTable, name, id);
+        }
+
+        return new PriceSnapshot(version + 1, newCount, newSize, newPrices, newNames, newTable);
+    }
+
+    // Nowa wersja zbudowana od razu dla wszystkich produktów (po StockList.addAll()) - każdy segment tworzymy tylko raz
+
+    PriceSnapshot rebuild(StockItem[] items, int itemCount) {
+
+        int segments = (itemCount + SEGMENT_SIZE - 1) >>> SEGMENT_BITS;
+
+        long[][] newPrices = new long[Math.max(1, segments * 2)][];
+        String[][] newNames = new String[newPrices.length][];
+        int newSize = 0;
+
+        for(int segment = 0; segment < segments; segment++){
+
+            newPrices[segment] = new long[SEGMENT_SIZE];
+            newNames[segment] = new String[SEGMENT_SIZE];
+        }
+
+        for(int id = 0; id < itemCount; id++){
+
+            // Produkt, który jeszcze nie trafił do tablicy (rejestracja w toku) - dopisze go jego własna publikacja
+
+            StockItem item = items[id];
+
+            if(item != null){
+
+                newPrices[id >>> SEGMENT_BITS][id & SEGMENT_MASK] = item.getPriceInMinorUnits();
+                newNames[id >>> SEGMENT_BITS][id & SEGMENT_MASK] = item.getName();
+                newSize++;
+            }
+        }
+
+        return new PriceSnapshot(version + 1, itemCount, newSize, newPrices, newNames, buildTable(newNames, itemCount, newSize));
+    }
+
+    // Nowa tablica indeksu wypełniona najwyżej w jednej czwartej - kolejna przebudowa dopiero po podwojeniu liczby produktów
+
+    private static int[] buildTable(String[][] names, int count, int size) {
+
+        int[] table = new int[Math.max(16, Integer.highestOneBit(Math.max(1, size) * 4 - 1) << 1)];
+
+        for(int id = 0; id < count; id++){
+
+            String name = names[id >>> SEGMENT_BITS][id & SEGMENT_MASK];
+
+            if(name != null){
+
+                insert(table, name, id);
+            }
+        }
+
+        return table;
+    }
+
+    private static void insert(int[] table, String name, int id) {
+
+        int mask = table.length - 1;
+        int slot = slotOf(name, mask);
+
+        while(table[slot] != 0){
+
+            slot = (slot + 1) & mask;
+        }
+
+        table[slot] = id + 1;
+    }
+
+    private static int slotOf(String name, int mask) {
+
+        int h = name.hashCode() * 0x9E3779B9;
+
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public long getVersion() {
+
+        return version;
+    }
+
+    // Granica identyfikatorów - produkty cennika mają identyfikatory od 0 do idLimit() - 1 (niektóre miejsca mogą być puste)
+
+    int idLimit() {
+
+        return count;
+    }
+
+    // Czy produkt o danym identyfikatorze jest w tej wersji cennika
+
+    boolean contains(int id) {
+
+        return (id >= 0) && (id < count) && (names[id >>> SEGMENT_BITS][id & SEGMENT_MASK] != null);
+    }
+
+    // Odczyt ceny po identyfikatorze produktu - bez tworzenia obiektu Double (0.0 - brak produktu w tej wersji)
+
+    public double getPrice(int id) {
+
+        return (double) getPriceInMinorUnits(id) / StockItem.MINOR_UNITS;
+    }
+
+    public long getPriceInMinorUnits(int id) {
+
+        return (id >= 0) && (id < count) ? prices[id >>> SEGMENT_BITS][id & SEGMENT_MASK] : 0;
+    }
+
+    // Segment cen zawierający produkt o danym identyfikatorze (tylko do odczytu - segmenty są współdzielone przez wersje)
+
+    long[] segment(int id) {
+
+        return prices[id >>> SEGMENT_BITS];
+    }
+
+    // Wyszukanie identyfikatora w niezmiennym indeksie tej wersji - bez odczytu listy produktów (StockList)
+
+    private int idOf(Object key) {
+
+        if(!(key instanceof String)){
+
+            return -1;
+        }
+
+        String name = (String) key;
+        int[] current = table;
+        int mask = current.length - 1;
+
+        for(int slot = slotOf(name, mask); ; slot = (slot + 1) & mask){
+
+            int entry = current[slot];
+
+            if(entry == 0){
+
+                return -1;
+            }
+
+            int id = entry - 1;
+
+            if((id < count) && name.equals(names[id >>> SEGMENT_BITS][id & SEGMENT_MASK])){
+
+                return id;
+            }
+        }
+    }
+
+    @Override
+    public Double get(Object key) {
+
+        int id = idOf(key);
+
+        return id >= 0 ? getPrice(id) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+
+        return idOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Double>> entrySet() {
+
+        return new AbstractSet<>() {
+
+            @Override
+            public Iterator<Map.Entry<String, Double>> iterator() {
+
+                return new Iterator<>() {
+
+                    private int id = skipEmpty(0);
+
+                    @Override
+                    public boolean hasNext() {
+
+                        return id < count;
+                    }
+
+                    @Override
+                    public Map.Entry<String, Double> next() {
+
+                        if(id >= count){
+
+                            throw new NoSuchElementException();
+                        }
+
+                        Map.Entry<String, Double> entry = new SimpleImmutableEntry<>(names[id >>> SEGMENT_BITS][id & SEGMENT_MASK], getPrice(id));
+
+                        id = skipEmpty(id + 1);
+
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+
+                return size;
+            }
+        };
+    }
+
+    private int skipEmpty(int id) {
+
+        while((id < count) && !contains(id)){
+
+            id++;
+        }
+
+        return id;
+    }
+}
@@ -0,0 +1,94 @@
+package com.marcinsi.warehouseapp;
+
+import java.io.IOException;
+
+// Pomocnicze metody formatowania liczb do raportów (StockList.writeReport(), Basket.writeReport())
+// Cyfry zapisujemy bezpośrednio do obiektu Appendable - bez tworzenia obiektów String (jak w String.format() czy konkatenacji)
+
+final class ReportFormat {
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L,
+            10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L,
+            1_000_000_000_000_000L, 10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+
+    private ReportFormat() {
+    }
+
+    static void appendLong(Appendable out, long value) throws IOException {
+
+        if(value == Long.MIN_VALUE){
+
+            out.append(Long.toString(value));
+
+            return;
+        }
+
+        if(value < 0){
+
+            out.append('-');
+            value = -value;
+        }
+
+        int digits = 1;
+
+        while((digits < POWERS_OF_TEN.length) && (value >= POWERS_OF_TEN[digits])){
+
+            digits++;
+        }
+
+        for(int i = digits - 1; i >= 0; i--){
+
+            long power = POWERS_OF_TEN[i];
+
+            out.append((char) ('0' + value / power));
+            value %= power;
+        }
+    }
+
+    // Odpowiednik String.format("%.2f", value) dla kwoty w groszach - zapis w postaci stałoprzecinkowej
+
+    static void appendFixed2(Appendable out, long minorUnits) throws IOException {
+
+        if(minorUnits == Long.MIN_VALUE){
+
+            out.append(String.format("%.2f", minorUnits / 100.0));
+
+            return;
+        }
+
+        if(minorUnits < 0){
+
+            out.append('-');
+            minorUnits = -minorUnits;
+        }
+
+        appendLong(out, minorUnits / 100);
+        out.append('.');
+        out.append((char) ('0' + (minorUnits / 10) % 10));
+        out.append((char) ('0' + minorUnits % 10));
+    }
+
+    // Odpowiednik String.valueOf(minorUnits / 100.0) (np. "12.5", "0.86", "62.0") dla kwoty w groszach
+    // Kwoty, dla których Double.toString() używa zapisu wykładniczego (poniżej 0.001 albo od 10 milionów), przekazujemy do Double.toString()
+
+    static void appendPrice(Appendable out, long minorUnits) throws IOException {
+
+        if((minorUnits <= 0) || (minorUnits >= 1_000_000_000L)){
+
+            out.append(Double.toString(minorUnits / 100.0));
+
+            return;
+        }
+
+        appendLong(out, minorUnits / 100);
+        out.append('.');
+        out.append((char) ('0' + (minorUnits / 10) % 10));
+
+        if(minorUnits % 10 != 0){
+
+            out.append((char) ('0' + minorUnits % 10));
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.marcinsi.warehouseapp;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Consumer;
+
+// Rezerwacja z terminem ważności (TTL) - zwracana przez StockList.reserveStock(item, quantity, ttl, unit)
+// Jeśli klient nie zakończy rezerwacji (commit()) ani jej nie anuluje (cancel()) - po upływie terminu towar wraca do puli (unreserveStock())
+// Stan zmieniamy operacją compareAndSet() - dokładnie jedno z trzech zdarzeń (commit, cancel, wygaśnięcie) może się wydarzyć
+// Towar sprzedawany z tej rezerwacji trzeba najpierw zatwierdzić - inaczej termin zwolni sztuki, które już zostały sprzedane
+// Basket.addToBasket(Reservation) robi to za klienta: StockList.checkout() wstrzymuje termin rezerwacji koszyka na czas sprzedaży (hold())
+// i zatwierdza je dopiero po sprzedaży wszystkich pozycji - nieudany zakup przywraca je do stanu oczekującego
+
+public final class Reservation {
+
+    private static final int PENDING = 0;
+    private static final int COMMITTED = 1;
+    private static final int CANCELLED = 2;
+    private static final int EXPIRED = 3;
+
+    // Zakup koszyka w toku (StockList.checkout()) - HELD_EXPIRED: termin minął w trakcie zakupu
+
+    private static final int HELD = 4;
+    private static final int HELD_EXPIRED = 5;
+
+    private static final AtomicIntegerFieldUpdater<Reservation> STATE = AtomicIntegerFieldUpdater.newUpdater(Reservation.class, "state");
+
+    private final StockList stockList;
+    private final ReservationExpiry expiry;
+    private final int itemId;
+    private final int quantity;
+    private final Consumer<Reservation> onExpiry;
+
+    private volatile int state = PENDING;
+
+    // Pola używane wyłącznie przez wątek koła czasowego (TimingWheel) - lista dwukierunkowa w danym miejscu koła
+
+    final long deadlineTick;
+    Reservation previous;
+    Reservation next;
+    TimingWheel.Bucket bucket;
+
+    Reservation(StockList stockList, ReservationExpiry expiry, int itemId, int quantity, long deadlineTick, Consumer<Reservation> onExpiry) {
+
+        this.stockList = stockList;
+        this.expiry = expiry;
+        this.itemId = itemId;
+        this.quantity = quantity;
+        this.deadlineTick = deadlineTick;
+        this.onExpiry = onExpiry;
+    }
+
+    public StockItem getItem() {
+
+        return stockList.get(itemId);
+    }
+
+    int itemId() {
+
+        return itemId;
+    }
+
+    public int getQuantity() {
+
+        return quantity;
+    }
+
+    public boolean isPending() {
+
+        return state == PENDING;
+    }
+
+    public boolean isExpired() {
+
+        return state == EXPIRED;
+    }
+
+    public boolean isCommitted() {
+
+        return state == COMMITTED;
+    }
+
+    // Rezerwacja zostaje na stałe (np. przed sprzedażą koszyka) - termin ważności przestaje obowiązywać
+
+    public boolean commit() {
+
+        if(STATE.compareAndSet(this, PENDING, COMMITTED)){
+
+            expiry.cancel(this);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    // Rezerwacja jest jeszcze w kole czasowym (albo w kolejce do niego) - oczekująca lub wstrzymana przez zakup
+
+    boolean isScheduled() {
+
+        int current = state;
+
+        return (current == PENDING) || (current == HELD);
+    }
+
+    // Początek zakupu koszyka - termin nie zwolni już towaru, ale rezerwacja nie jest jeszcze zatwierdzona
+    // Termin, który minie w trakcie zakupu, zostaje tylko zapamiętany (expire()) - obsłuży go unhold()
+
+    boolean hold() {
+
+        return STATE.compareAndSet(this, PENDING, HELD);
+    }
+
+    // Zakup się udał - rezerwacja zostaje zatwierdzona (także wtedy, gdy termin minął w trakcie zakupu - towar jest już sprzedany)
+
+    void commitHeld() {
+
+        int current;
+
+        do {
+
+            current = state;
+
+        } while(((current == HELD) || (current == HELD_EXPIRED)) && !STATE.compareAndSet(this, current, COMMITTED));
+
+        expiry.cancel(this);
+    }
+
+    // Zakup się nie udał - rezerwacja znowu oczekuje; jeśli termin minął w trakcie zakupu, wygasa od razu
+
+    void unhold() {
+
+        if(STATE.compareAndSet(this, HELD, PENDING)){
+
+            return;
+        }
+
+        if(STATE.compareAndSet(this, HELD_EXPIRED, PENDING)){
+
+            expire();
+        }
+    }
+
+    // Rezygnacja przed terminem - towar od razu wraca do puli
+
+    public boolean cancel() {
+
+        if(STATE.compareAndSet(this, PENDING, CANCELLED)){
+
+            expiry.cancel(this);
+            stockList.unreservedStock(itemId, quantity);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    // Zwolnienie części rezerwacji (część pozycji usunięta z koszyka - StockList.removeFromBasket())
+    // Zwalniamy units sztuk, a pozostałe dostają nową rezerwację z tym samym terminem (ilość rezerwacji się nie zmienia - zamiast tego zastępujemy obiekt)
+    // null - rezerwacja nie była już aktywna (wygasła albo została anulowana - jej towar wrócił do puli w całości)
+
+    Reservation release(int units) {
+
+        if(!STATE.compareAndSet(this, PENDING, CANCELLED)){
+
+            return null;
+        }
+
+        expiry.cancel(this);
+        stockList.unreservedStock(itemId, units);
+
+        Reservation rest = new Reservation(stockList, expiry, itemId, quantity - units, deadlineTick, onExpiry);
+
+        expiry.schedule(rest);
+
+        return rest;
+    }
+
+    // Wywoływane przez wątek koła czasowego po upływie terminu
+
+    void expire() {
+
+        while(true){
+
+            int current = state;
+
+            if(current == HELD){
+
+                if(STATE.compareAndSet(this, HELD, HELD_EXPIRED)){
+
+                    return;
+                }
+
+            } else if(current != PENDING){
+
+                return;
+
+            } else if(STATE.compareAndSet(this, PENDING, EXPIRED)){
+
+                stockList.unreservedStock(itemId, quantity);
+
+                if(onExpiry != null){
+
+                    onExpiry.accept(this);
+                }
+
+                return;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+
+        String[] states = {"pending", "committed", "cancelled", "expired", "checking out", "checking out"};
+
+        return "Reservation of " + quantity + " x " + getItem().getName() + " (" + states[state] + ")";
+    }
+}
@@ -0,0 +1,110 @@
+package com.marcinsi.warehouseapp;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Obsługa terminów ważności rezerwacji - jeden wątek dla wszystkich rezerwacji danej listy produktów (StockList)
+// Inne wątki nie dotykają koła czasowego - przekazują nowe i anulowane rezerwacje przez kolejki (bez blokad)
+// Wątek co jedno "tyknięcie" przenosi rezerwacje z kolejek do koła i przesuwa koło - wygasłe rezerwacje zwalniają towar
+// shutdown() (StockList.close()) kończy wątek - rezerwacje, które jeszcze nie wygasły, pozostają zarezerwowane
+
+class ReservationExpiry {
+
+    private static final int LEVELS = 5;
+
+    private final long tickNanos;
+    private final long start = System.nanoTime();
+
+    private final ConcurrentLinkedQueue<Reservation> scheduled = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Reservation> cancelled = new ConcurrentLinkedQueue<>();
+
+    private final TimingWheel wheel = new TimingWheel(LEVELS, 0);
+    private final Thread thread;
+    private volatile boolean stopped = false;
+
+    ReservationExpiry(long tick, TimeUnit unit) {
+
+        this.tickNanos = Math.max(1, unit.toNanos(tick));
+
+        this.thread = new Thread(this::run, "reservation-expiry");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // Numer tyknięcia, w którym rezerwacja wygaśnie (zaokrąglenie w górę - rezerwacja nigdy nie wygasa przed terminem)
+
+    long deadlineTick(long ttl, TimeUnit unit) {
+
+        return (System.nanoTime() - start + unit.toNanos(ttl) + tickNanos - 1) / tickNanos;
+    }
+
+    void schedule(Reservation reservation) {
+
+        scheduled.add(reservation);
+    }
+
+    void cancel(Reservation reservation) {
+
+        cancelled.add(reservation);
+    }
+
+    // Zatrzymanie wątku i oczekiwanie na jego zakończenie (chyba że wywołuje go sam wątek obsługi terminów, np. w onExpiry)
+
+    void shutdown() {
+
+        stopped = true;
+        LockSupport.unpark(thread);
+
+        if(Thread.currentThread() == thread){
+
+            return;
+        }
+
+        boolean interrupted = false;
+
+        while(thread.isAlive()){
+
+            try {
+
+                thread.join();
+
+            } catch(InterruptedException e){
+
+                interrupted = true;
+            }
+        }
+
+        if(interrupted){
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+
+        while(!stopped){
+
+            Reservation reservation;
+
+            while((reservation = scheduled.poll()) != null){
+
+                if(reservation.isScheduled() && !wheel.add(reservation)){
+
+                    reservation.expire();
+                }
+            }
+
+            while((reservation = cancelled.poll()) != null){
+
+                wheel.remove(reservation);
+            }
+
+            long now = (System.nanoTime() - start) / tickNanos;
+
+            wheel.advanceTo(now, Reservation::expire);
+
+            LockSupport.parkNanos(start + (now + 1) * tickNanos - System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.marcinsi.warehouseapp;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+
+// Równoległe obliczenia na całej liście produktów (StockList.analyze()) - ForkJoinPool.commonPool()
+// Zakres identyfikatorów dzielimy na połowy (granice zgodne z segmentami cennika PriceSnapshot), aż zakres jest wystarczająco mały
+// Każde zadanie liczy wszystko we własnym obiekcie Accumulator (bez wspólnych liczników) - wyniki łączymy przy powrocie z podzadań
+// Ceny odczytujemy z jednej wersji cennika (PriceSnapshot), ilości - jednym odczytem stanu produktu (StockItem.getStockState())
+
+final class StockAnalytics extends RecursiveTask<StockAnalytics.Accumulator> {
+
+    private static final long serialVersionUID = 1L;
+
+    // Najmniejszy zakres dzielony dalej - 8 segmentów cennika (tworzenie zadania kosztuje więcej niż przejście po kilku produktach)
+
+    static final int LEAF_SIZE = 8 * PriceSnapshot.SEGMENT_SIZE;
+
+    // Wyniki częściowe jednego zadania
+
+    static final class Accumulator {
+
+        int items = 0;
+        long quantityInStock = 0;
+        long reserved = 0;
+        long availableValue = 0;
+        long reservedValue = 0;
+        int minAvailable = Integer.MAX_VALUE;
+        int maxAvailable = Integer.MIN_VALUE;
+        int minAvailableId = -1;
+        int maxAvailableId = -1;
+        long minPrice = Long.MAX_VALUE;
+        long maxPrice = Long.MIN_VALUE;
+        final long[] histogram;
+
+        // K produktów o największej wartości dostępnego towaru - kopiec (najmniejsza wartość na szczycie) w dwóch tablicach
+
+        final long[] topValues;
+        final int[] topIds;
+        int topSize = 0;
+
+        Accumulator(int bins, int topK) {
+
+            this.histogram = new long[bins];
+            this.topValues = new long[topK];
+            this.topIds = new int[topK];
+        }
+
+        void add(int id, long price, long state, int[] bounds) {
+
+            int quantity = StockItem.quantityInStock(state);
+            int reservedQuantity = StockItem.reserved(state);
+            int available = quantity - reservedQuantity;
+            long value = price * available;
+
+            items++;
+            quantityInStock += quantity;
+            reserved += reservedQuantity;
+            availableValue += value;
+            reservedValue += price * reservedQuantity;
+
+            if(available < minAvailable){
+
+                minAvailable = available;
+                minAvailableId = id;
+            }
+
+            if(available > maxAvailable){
+
+                maxAvailable = available;
+                maxAvailableId = id;
+            }
+
+            minPrice = Math.min(minPrice, price);
+            maxPrice = Math.max(maxPrice, price);
+
+            // Przedział histogramu: liczba granic nie większych niż dostępna ilość
+
+            int bin = Arrays.binarySearch(bounds, available);
+
+            histogram[bin >= 0 ? bin + 1 : -bin - 1]++;
+
+            offer(value, id);
+        }
+
+        // Przy równej wartości wyżej jest produkt o mniejszym identyfikatorze (wynik nie zależy od podziału na zadania)
+
+        private static boolean before(long value, int id, long otherValue, int otherId) {
+
+            return value > otherValue || (value == otherValue && id < otherId);
+        }
+
+        private void offer(long value, int id) {
+
+            int capacity = topValues.length;
+
+            if(topSize < capacity){
+
+                int child = topSize++;
+
+                while(child > 0){
+
+                    int parent = (child - 1) >>> 1;
+
+                    if(!before(topValues[parent], topIds[parent], value, id)){
+
+                        break;
+                    }
+
+                    topValues[child] = topValues[parent];
+                    topIds[child] = topIds[parent];
+                    child = parent;
+                }
+
+                topValues[child] = value;
+                topIds[child] = id;
+
+            } else if((capacity > 0) && before(value, id, topValues[0], topIds[0])){
+
+                int parent = 0;
+
+                while(true){
+
+                    int child = 2 * parent + 1;
+
+                    if(child >= capacity){
+
+                        break;
+                    }
+
+                    if((child + 1 < capacity) && before(topValues[child], topIds[child], topValues[child + 1], topIds[child + 1])){
+
+                        child++;
+                    }
+
+                    if(!before(value, id, topValues[child], topIds[child])){
+
+                        break;
+                    }
+
+                    topValues[parent] = topValues[child];
+                    topIds[parent] = topIds[child];
+                    parent = child;
+                }
+
+                topValues[parent] = value;
+                topIds[parent] = id;
+            }
+        }
+
+        void merge(Accumulator other) {
+
+            items += other.items;
+            quantityInStock += other.quantityInStock;
+            reserved += other.reserved;
+            availableValue += other.availableValue;
+            reservedValue += other.reservedValue;
+
+            // Zakres other ma większe identyfikatory - przy równych wartościach zostaje produkt z tego zakresu (jak w pętli po kolei)
+
+            if(other.minAvailable < minAvailable){
+
+                minAvailable = other.minAvailable;
+                minAvailableId = other.minAvailableId;
+            }
+
+            if(other.maxAvailable > maxAvailable){
+
+                maxAvailable = other.maxAvailable;
+                maxAvailableId = other.maxAvailableId;
+            }
+
+            minPrice = Math.min(minPrice, other.minPrice);
+            maxPrice = Math.max(maxPrice, other.maxPrice);
+
+            for(int bin = 0; bin < histogram.length; bin++){
+
+                histogram[bin] += other.histogram[bin];
+            }
+
+            for(int i = 0; i < other.topSize; i++){
+
+                offer(other.topValues[i], other.topIds[i]);
+            }
+        }
+    }
+
+    private final StockItem[] items;
+    private final PriceSnapshot prices;
+    private final int[] bounds;
+    private final int topK;
+    private final int from;
+    private final int to;
+
+    StockAnalytics(StockItem[] items, PriceSnapshot prices, int[] bounds, int topK, int from, int to) {
+
+        this.items = items;
+        this.prices = prices;
+        this.bounds = bounds;
+        this.topK = topK;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected Accumulator compute() {
+
+        if(to - from <= LEAF_SIZE){
+
+            return scan();
+        }
+
+        // Podział w połowie, zaokrąglony do granicy segmentu cennika
+
+        int middle = from + (((to - from) >>> 1) & -PriceSnapshot.SEGMENT_SIZE);
+
+        StockAnalytics left = new StockAnalytics(items, prices, bounds, topK, from, middle);
+        StockAnalytics right = new StockAnalytics(items, prices, bounds, topK, middle, to);
+
+        right.fork();
+
+        Accumulator result = left.compute();
+
+        result.merge(right.join());
+
+        return result;
+    }
+
+    // Przejście po zakresie segmentami cennika - cena z tablicy long[] segmentu, bez wywołań PriceSnapshot dla każdego produktu
+
+    private Accumulator scan() {
+
+        Accumulator result = new Accumulator(bounds.length + 1, topK);
+
+        for(int segmentStart = from; segmentStart < to; segmentStart += PriceSnapshot.SEGMENT_SIZE){
+
+            long[] segment = prices.segment(segmentStart);
+            int segmentEnd = Math.min(to, segmentStart + PriceSnapshot.SEGMENT_SIZE);
+
+            for(int id = segmentStart; id < segmentEnd; id++){
+
+                StockItem item = items[id];
+
+                if(item != null){
+
+                    result.add(id, segment[id - segmentStart], item.getStockState(), bounds);
+                }
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+package com.marcinsi.warehouseapp;
+
+// Zdarzenie zmiany produktu przekazywane subskrybentom strumienia zmian (StockEventStream)
+// Obiekt jest używany wielokrotnie (flyweight) - dane są ważne tylko w trakcie wywołania metody onEvent()
+// Jeśli subskrybent chce zachować zdarzenie - musi skopiować potrzebne wartości
+
+public final class StockEvent {
+
+    public enum Type {
+
+        ADDED,
+        ADJUSTED,
+        RESERVED,
+        UNRESERVED,
+        FINALIZED,
+        RESTORED,
+        PRICE_CHANGED
+    }
+
+    private static final Type[] TYPES = Type.values();
+
+    private long sequence;
+    private Type type;
+    private int itemId;
+    private int quantityDelta;
+    private int reservedDelta;
+    private long priceInMinorUnits;
+
+    void set(long sequence, int type, int itemId, int quantityDelta, int reservedDelta, long priceInMinorUnits) {
+
+        this.sequence = sequence;
+        this.type = TYPES[type];
+        this.itemId = itemId;
+        this.quantityDelta = quantityDelta;
+        this.reservedDelta = reservedDelta;
+        this.priceInMinorUnits = priceInMinorUnits;
+    }
+
+    // Numer kolejny zdarzenia w danym strumieniu
+
+    public long getSequence() {
+
+        return sequence;
+    }
+
+    public Type getType() {
+
+        return type;
+    }
+
+    // Identyfikator produktu (StockList.get(int) zwraca produkt)
+
+    public int getItemId() {
+
+        return itemId;
+    }
+
+    public int getQuantityDelta() {
+
+        return quantityDelta;
+    }
+
+    public int getReservedDelta() {
+
+        return reservedDelta;
+    }
+
+    // Cena produktu po zmianie w groszach (dla ADDED oraz PRICE_CHANGED, pozostałe zdarzenia - 0)
+
+    public long getPriceInMinorUnits() {
+
+        return priceInMinorUnits;
+    }
+
+    public double getPrice() {
+
+        return (double) priceInMinorUnits / StockItem.MINOR_UNITS;
+    }
+
+    @Override
+    public String toString() {
+
+        return "#" + sequence + " " + type + " item " + itemId + " quantity " + quantityDelta + " reserved " + reservedDelta + " price " + getPrice();
+    }
+}
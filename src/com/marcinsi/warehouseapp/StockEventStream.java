@@ -0,0 +1,210 @@
+package com.marcinsi.warehouseapp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Strumień zmian produktów (change data capture) dla jednego subskrybenta - StockList.subscribe()
+// Zdarzenia trafiają do ograniczonego bufora cyklicznego (ring buffer) bez blokad - wiele wątków zapisuje, jeden wątek czyta
+// Dane zdarzeń przechowujemy w tablicach typów prostych - publikacja zdarzenia nie tworzy obiektów
+//
+// Wolny subskrybent nigdy nie blokuje rezerwacji: gdy bufor jest pełny, zdarzenie jest pomijane i zwiększamy licznik droppedEvents()
+// To jest sygnał dla subskrybenta (backpressure), że nie nadąża i powinien odświeżyć swój stan (np. na podstawie StockList.Items())
+
+public class StockEventStream implements AutoCloseable {
+
+    // Obsługa zdarzeń - endOfBatch informuje, że to ostatnie zdarzenie w tej porcji (np. moment na zatwierdzenie zmian)
+
+    public interface Handler {
+
+        void onEvent(StockEvent event, boolean endOfBatch);
+    }
+
+    private final StockList stockList;
+    private final int mask;
+
+    // Numer kolejnej pozycji do zapisu (producenci) i do odczytu (tylko wątek subskrybenta)
+
+    private final AtomicLong tail = new AtomicLong();
+    private long head = 0;
+
+    // Dla każdego miejsca w buforze: numer pozycji, na którą miejsce czeka (algorytm bufora ograniczonego D. Vyukova)
+
+    private final AtomicLongArray sequences;
+    private final byte[] types;
+    private final int[] itemIds;
+    private final int[] quantityDeltas;
+    private final int[] reservedDeltas;
+    private final long[] prices;
+
+    private final LongAdder dropped = new LongAdder();
+    private final StockEvent event = new StockEvent();
+
+    private volatile Thread waiter;
+    private volatile boolean closed;
+
+    StockEventStream(StockList stockList, int capacity) {
+
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        this.stockList = stockList;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        this.types = new byte[size];
+        this.itemIds = new int[size];
+        this.quantityDeltas = new int[size];
+        this.reservedDeltas = new int[size];
+        this.prices = new long[size];
+
+        for(int i = 0; i < size; i++){
+
+            sequences.set(i, i);
+        }
+    }
+
+    // Publikacja zdarzenia (wywołuje StockList) - zwraca false, gdy bufor jest pełny
+
+    boolean publish(StockEvent.Type type, int itemId, int quantityDelta, int reservedDelta, long priceInMinorUnits) {
+
+        if(closed){
+
+            return false;
+        }
+
+        long position = tail.get();
+
+        while(true){
+
+            long difference = sequences.get((int) position & mask) - position;
+
+            if(difference == 0){
+
+                if(tail.compareAndSet(position, position + 1)){
+
+                    break;
+                }
+
+                position = tail.get();
+
+            } else if(difference < 0){
+
+                dropped.increment();
+
+                return false;
+
+            } else {
+
+                position = tail.get();
+            }
+        }
+
+        int index = (int) position & mask;
+
+        types[index] = (byte) type.ordinal();
+        itemIds[index] = itemId;
+        quantityDeltas[index] = quantityDelta;
+        reservedDeltas[index] = reservedDelta;
+        prices[index] = priceInMinorUnits;
+
+        // Zapis volatile (a nie lazySet()) - odczyt pola waiter nie może zostać wykonany przed publikacją zdarzenia
+
+        sequences.set(index, position + 1);
+
+        Thread current = waiter;
+
+        if(current != null){
+
+            LockSupport.unpark(current);
+        }
+
+        return true;
+    }
+
+    // Odczyt dostępnych zdarzeń (najwyżej maxBatch) bez czekania - zwraca liczbę obsłużonych zdarzeń
+    // Metody poll() może wywoływać tylko jeden wątek na raz
+
+    public int poll(Handler handler, int maxBatch) {
+
+        int count = 0;
+
+        while(count < maxBatch){
+
+            int index = (int) head & mask;
+
+            if(sequences.get(index) != head + 1){
+
+                break;
+            }
+
+            event.set(head, types[index], itemIds[index], quantityDeltas[index], reservedDeltas[index], prices[index]);
+
+            // Miejsce w buforze jest zwalniane przed wywołaniem obsługi - producenci mogą z niego korzystać
+
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+            count++;
+
+            int next = (int) head & mask;
+
+            handler.onEvent(event, (count == maxBatch) || (sequences.get(next) != head + 1));
+        }
+
+        return count;
+    }
+
+    // Odczyt z czekaniem - wątek subskrybenta jest uśpiony, dopóki nie pojawi się zdarzenie (bez ciągłego odpytywania)
+
+    public int poll(Handler handler, int maxBatch, long timeout, TimeUnit unit) {
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int count = poll(handler, maxBatch);
+
+        while((count == 0) && !closed){
+
+            long remaining = deadline - System.nanoTime();
+
+            if(remaining <= 0){
+
+                break;
+            }
+
+            waiter = Thread.currentThread();
+
+            if(sequences.get((int) head & mask) != head + 1){
+
+                LockSupport.parkNanos(this, remaining);
+            }
+
+            waiter = null;
+            count = poll(handler, maxBatch);
+        }
+
+        return count;
+    }
+
+    public long droppedEvents() {
+
+        return dropped.sum();
+    }
+
+    public boolean isClosed() {
+
+        return closed;
+    }
+
+    @Override
+    public void close() {
+
+        closed = true;
+        stockList.unsubscribe(this);
+
+        Thread current = waiter;
+
+        if(current != null){
+
+            LockSupport.unpark(current);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.marcinsi.warehouseapp;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+// Historia zmian produktów dla migawek StockSnapshot (MVCC - wiele wersji stanu jednocześnie)
+//
+// Bez aktywnych migawek zapis nic nie kosztuje poza odczytem pola latestSnapshot (0 - brak migawek)
+// Gdy migawka istnieje, zapis produktu dopisuje do niego rekord "stan sprzed zmiany" z numerem wersji (zegar clock)
+// Migawka o wersji v widzi stan produktu sprzed najstarszej zmiany o wersji większej niż v (albo stan bieżący, gdy takiej zmiany nie ma)
+//
+// Rekord potrzebny jest tylko dla pierwszej zmiany produktu po utworzeniu migawki - kolejne zmiany niczego nie dopisują
+// Dzięki temu długi raport na 10 milionach produktów przechowuje co najwyżej jeden rekord na produkt, niezależnie od liczby rezerwacji
+// Rekordy starsze niż najstarsza aktywna migawka są odcinane przy kolejnym zapisie danego produktu
+// Póki istnieje migawka, zapisy tego samego produktu wykonywane są po kolei (StockItem.commit()) - zapisy różnych produktów nadal równolegle
+//
+// Bez migawek zapis nie zmienia licznika writers produktu (dwie operacje RMW na każdą rezerwację) - wątek ogłasza zapis we własnym polu (WriterSlot)
+// open() po ustawieniu wersji migawki czeka, aż skończą się zapisy ogłoszone w ten sposób (wzajemne wykluczanie Dekkera: ogłoszenie -> odczyt
+// latestSnapshot w wątku zapisu oraz latestSnapshot -> odczyt ogłoszeń w open()) - migawka nie widzi zapisu bez rekordu historii
+
+final class StockHistory {
+
+    private static final AtomicReferenceFieldUpdater<StockItem, Version> VERSIONS = AtomicReferenceFieldUpdater.newUpdater(StockItem.class, Version.class, "versions");
+
+    // Stan produktu sprzed zmiany o numerze version (lista od najnowszej zmiany)
+
+    static final class Version {
+
+        private final long version;
+        private final long previousState;
+        private volatile Version next;
+
+        private Version(long version, long previousState, Version next) {
+
+            this.version = version;
+            this.previousState = previousState;
+            this.next = next;
+        }
+    }
+
+    // Ogłoszenie zapisu bez licznika writers - jedno pole na wątek (zapisuje tylko właściciel), wszystkie pola w SLOTS
+
+    static final class WriterSlot {
+
+        private static final VarHandle ACTIVE;
+
+        static {
+
+            try {
+
+                ACTIVE = MethodHandles.lookup().findVarHandle(WriterSlot.class, "active", boolean.class);
+
+            } catch(ReflectiveOperationException e){
+
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final Thread owner = Thread.currentThread();
+        private volatile boolean active;
+
+        // Zapis volatile - odczyt latestSnapshot po ogłoszeniu nie może zostać wykonany przed nim
+
+        void enter() {
+
+            active = true;
+        }
+
+        // Koniec zapisu - wystarczy zapis z semantyką release (rekord historii jest widoczny razem z końcem ogłoszenia)
+
+        void exit() {
+
+            ACTIVE.setRelease(this, false);
+        }
+    }
+
+    private static final Queue<WriterSlot> SLOTS = new ConcurrentLinkedQueue<>();
+
+    private static final ThreadLocal<WriterSlot> SLOT = ThreadLocal.withInitial(() -> {
+
+        WriterSlot slot = new WriterSlot();
+
+        SLOTS.add(slot);
+
+        return slot;
+    });
+
+    static WriterSlot writerSlot() {
+
+        return SLOT.get();
+    }
+
+    private final AtomicLong clock = new AtomicLong();
+
+    // Wersja najnowszej aktywnej migawki (0 - brak aktywnych migawek) oraz najstarszej (granica odcinania rekordów)
+
+    private volatile long latestSnapshot = 0;
+    private volatile long oldestSnapshot = 0;
+
+    // Aktywne migawki: wersja -> liczba migawek o tej wersji (zmieniane tylko w metodach synchronized)
+
+    private final TreeMap<Long, Integer> active = new TreeMap<>();
+
+    long open() {
+
+        long version;
+
+        synchronized(this){
+
+            version = clock.incrementAndGet();
+
+            active.merge(version, 1, Integer::sum);
+            oldestSnapshot = active.firstKey();
+            latestSnapshot = version;
+        }
+
+        awaitUnrecordedWriters();
+
+        return version;
+    }
+
+    // Zapisy rozpoczęte bez licznika writers (przed ustawieniem latestSnapshot) muszą się skończyć, zanim migawka odczyta pierwszy produkt
+    // Takie zapisy są krótkie (compareAndSet() i ewentualny rekord historii) - czekamy aktywnie; pola zakończonych wątków usuwamy
+
+    private static void awaitUnrecordedWriters() {
+
+        for(WriterSlot slot : SLOTS){
+
+            while(slot.active){
+
+                Thread.onSpinWait();
+            }
+
+            if(!slot.owner.isAlive()){
+
+                SLOTS.remove(slot);
+            }
+        }
+    }
+
+    synchronized void close(long version) {
+
+        if(active.merge(version, -1, Integer::sum) == 0){
+
+            active.remove(version);
+        }
+
+        oldestSnapshot = active.isEmpty() ? 0 : active.firstKey();
+        latestSnapshot = active.isEmpty() ? 0 : active.lastKey();
+    }
+
+    // Czy istnieje aktywna migawka - wtedy zapisy jednego produktu są wykonywane po kolei (StockItem.commit())
+
+    boolean isRecording() {
+
+        return latestSnapshot != 0;
+    }
+
+    // Wywoływane przez produkt po udanej zmianie stanu (compareAndSet()) - previousState to stan sprzed zmiany
+    // Produkt przez cały czas od compareAndSet() do powrotu z tej metody ma zwiększony licznik writers (czytelnik czeka na jego wyzerowanie)
+
+    void recordWrite(StockItem item, long previousState) {
+
+        long latest = latestSnapshot;
+        Version head = item.versions;
+
+        if(latest == 0){
+
+            // Nie ma migawek - stare rekordy i poprzednie wersje produktu nie są już nikomu potrzebne
+
+            if(head != null){
+
+                VERSIONS.compareAndSet(item, head, null);
+            }
+
+            if(item.replaced != null){
+
+                item.replaced = null;
+            }
+
+            return;
+        }
+
+        // Zmiana po wcześniejszej zmianie, która już jest nowsza od wszystkich migawek - migawki korzystają z tamtego rekordu
+
+        if((head != null) && (head.version > latest)){
+
+            return;
+        }
+
+        Version version = new Version(clock.incrementAndGet(), previousState, head);
+
+        while(!VERSIONS.compareAndSet(item, head, version)){
+
+            head = item.versions;
+
+            if((head != null) && (head.version > latest)){
+
+                return;
+            }
+
+            version = new Version(version.version, previousState, head);
+        }
+
+        trim(version);
+    }
+
+    // Odcięcie rekordów, których nie użyje żadna aktywna migawka (wersja nie większa niż wersja najstarszej migawki)
+
+    private void trim(Version newest) {
+
+        long oldest = oldestSnapshot;
+        Version last = newest;
+
+        while((last.next != null) && (last.next.version > oldest)){
+
+            last = last.next;
+        }
+
+        if(last.next != null){
+
+            last.next = null;
+        }
+    }
+
+    // Produkt zastępuje poprzedni produkt o tej samej nazwie (StockList.addStock()) - migawki utworzone wcześniej widzą poprzedni obiekt
+    // Zwracamy wersję zastąpienia (0 - brak migawek, poprzedni obiekt nie jest potrzebny)
+
+    long recordReplacement() {
+
+        return latestSnapshot == 0 ? 0 : clock.incrementAndGet();
+    }
+
+    // Stan produktu (spakowany jak w StockItem) widziany przez migawkę o wersji snapshotVersion
+
+    static long stateAt(StockItem item, long snapshotVersion) {
+
+        while(true){
+
+            if(item.writers != 0){
+
+                Thread.onSpinWait();
+
+                continue;
+            }
+
+            Version head = item.versions;
+            long state = item.getStockState();
+
+            // Nikt nie zmienił produktu w trakcie odczytu - stan i lista rekordów pochodzą z tego samego momentu
+
+            if((item.writers == 0) && (item.versions == head)){
+
+                for(Version version = head; (version != null) && (version.version > snapshotVersion); version = version.next){
+
+                    state = version.previousState;
+                }
+
+                return state;
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.marcinsi.warehouseapp;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+// Indeksy pomocnicze listy produktów - produkty posortowane według dostępnej ilości oraz według ceny
+// Zapytania (produkty poniżej progu, przedział cen, N największych) kosztują O(log n + k) zamiast przechodzenia po całej liście
+// ConcurrentSkipListSet pozwala czytać indeks bez blokad w trakcie aktualizacji
+// Przeliczenie produktu - tak jak StockValuation: tylko jeden wątek na raz przenosi dany produkt w indeksach
+//
+// Indeks ilości przechowuje dokładną dostępną ilość, ale zmiana stanu nie przenosi produktu od razu (operacja na skip liście i nowy klucz przy każdej rezerwacji)
+// stockChanged() tylko oznacza produkt jako zmieniony i dopisuje go do kolejki (raz - kolejne zmiany widzą znacznik i nic nie zapisują)
+// Zapytanie o ilość najpierw przenosi produkty z kolejki (każdy raz, niezależnie od liczby jego zmian), potem czyta indeks
+// Koszt takiego zapytania: O((d + 1) log n + k), gdzie d - liczba produktów zmienionych od poprzedniego zapytania
+// Zapytanie widzi stan z chwili swojego rozpoczęcia - zmiana równoległa z zapytaniem może jeszcze nie być widoczna
+//
+// Produkty "gorące" (StockList.markHot()) nie mają klucza w indeksie ilości - rezerwacje z pul przedziałów nie zmieniają licznika głównego
+// Zapytania o ilość sprawdzają je przy każdym odczycie (takich produktów jest niewiele), indeks cen obejmuje je normalnie
+
+class StockIndex {
+
+    private static final AtomicIntegerFieldUpdater<StockItem> REQUESTS = AtomicIntegerFieldUpdater.newUpdater(StockItem.class, "indexRequests");
+    private static final AtomicIntegerFieldUpdater<StockItem> CHANGED = AtomicIntegerFieldUpdater.newUpdater(StockItem.class, "indexChanged");
+
+    // Numer obiektu produktu w indeksie - produkt zastępujący poprzedni ma ten sam identyfikator, ale inny klucz (bez czekania na usunięcie starego)
+
+    private static final AtomicInteger SERIALS = new AtomicInteger();
+
+    // Klucz indeksu - wartość (dostępna ilość albo cena), identyfikator produktu oraz numer obiektu (dwa produkty mogą mieć tę samą wartość)
+
+    static final class Key implements Comparable<Key> {
+
+        private final double value;
+        private final int id;
+        private final int serial;
+        private final StockItem item;
+
+        private Key(double value, int id, int serial, StockItem item) {
+
+            this.value = value;
+            this.id = id;
+            this.serial = serial;
+            this.item = item;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+
+            int result = Double.compare(value, other.value);
+
+            if(result == 0){
+
+                result = Integer.compare(id, other.id);
+            }
+
+            return result != 0 ? result : Integer.compare(serial, other.serial);
+        }
+    }
+
+    private final NavigableSet<Key> byAvailable = new ConcurrentSkipListSet<>();
+    private final NavigableSet<Key> byPrice = new ConcurrentSkipListSet<>();
+
+    // Produkty zmienione od ostatniego zapytania o ilość (każdy co najwyżej raz - znacznik StockItem.indexChanged)
+
+    private final ConcurrentLinkedQueue<StockItem> changed = new ConcurrentLinkedQueue<>();
+    private final CopyOnWriteArrayList<StockItem> hotItems = new CopyOnWriteArrayList<>();
+
+    void add(StockItem item) {
+
+        item.indexSerial = SERIALS.incrementAndGet();
+        item.indexActive = true;
+
+        if(item.isHot()){
+
+            hotItems.addIfAbsent(item);
+        }
+
+        refresh(item);
+    }
+
+    // Produkt został zastąpiony nowym obiektem - klucze nowego obiektu różnią się numerem, więc nie czekamy na usunięcie starych
+    // Jeśli inny wątek właśnie przelicza stary produkt, licznik próśb zmusi go do ponownego przebiegu, który usunie klucze
+    // Do tego czasu zapytania pomijają produkty odłączone od indeksu
+
+    void remove(StockItem item) {
+
+        item.indexActive = false;
+
+        hotItems.remove(item);
+        refresh(item);
+    }
+
+    // Produkt podzielony na przedziały - usuwamy jego klucz z indeksu ilości (tak jak StockValuation.markHot())
+
+    void markHot(StockItem item) {
+
+        hotItems.addIfAbsent(item);
+        refresh(item);
+
+        if(!item.indexActive){
+
+            hotItems.remove(item);
+        }
+    }
+
+    // Zmiana stanu produktu - tylko znacznik i kolejka (produkt już oznaczony: jeden odczyt pola, bez zapisu)
+
+    void stockChanged(StockItem item) {
+
+        if((item.indexChanged == 0) && CHANGED.compareAndSet(item, 0, 1)){
+
+            changed.add(item);
+        }
+    }
+
+    // Przeniesienie zmienionych produktów przed zapytaniem o ilość - jedno zapytanie naraz, żeby każde widziało wszystkie wcześniejsze zmiany
+    // Znacznik zdejmujemy przed przeliczeniem - zmiana w trakcie przeliczenia dopisze produkt do kolejki ponownie
+
+    private void applyChanges() {
+
+        synchronized(changed){
+
+            StockItem item;
+
+            while((item = changed.poll()) != null){
+
+                item.indexChanged = 0;
+
+                refresh(item);
+            }
+        }
+    }
+
+    // Przeniesienie produktu w indeksach - usuwamy poprzedni klucz i dodajemy nowy (tylko gdy wartość się zmieniła)
+
+    void refresh(StockItem item) {
+
+        if(REQUESTS.getAndIncrement(item) != 0){
+
+            return;
+        }
+
+        int missed = 1;
+
+        do {
+
+            Key available = null;
+            Key price = null;
+
+            if(item.indexActive){
+
+                available = item.isHot() ? null : key(item.availableKey, item.getAvailableQuantity(), item);
+                price = key(item.priceKey, item.getPrice(), item);
+            }
+
+            item.availableKey = move(byAvailable, item.availableKey, available);
+            item.priceKey = move(byPrice, item.priceKey, price);
+
+            missed = REQUESTS.addAndGet(item, -missed);
+
+        } while(missed != 0);
+    }
+
+    private static Key key(Key previous, double value, StockItem item) {
+
+        return (previous != null) && (previous.value == value) ? previous : new Key(value, item.getId(), item.indexSerial, item);
+    }
+
+    private static Key move(NavigableSet<Key> index, Key previous, Key current) {
+
+        if(previous != current){
+
+            if(previous != null){
+
+                index.remove(previous);
+            }
+
+            if(current != null){
+
+                index.add(current);
+            }
+        }
+
+        return current;
+    }
+
+    // Produkty, których dostępna ilość jest mniejsza od progu (od najmniejszej ilości)
+    // Produkty "gorące" sprawdzamy dokładnie i dokładamy przed sortowaniem
+
+    List<StockItem> itemsBelowAvailable(int threshold) {
+
+        applyChanges();
+
+        List<StockItem> result = items(byAvailable.headSet(new Key(threshold, Integer.MIN_VALUE, Integer.MIN_VALUE, null), false), Integer.MAX_VALUE);
+        boolean hot = false;
+
+        for(StockItem item : hotItems){
+
+            if(item.indexActive && (item.getAvailableQuantity() < threshold)){
+
+                result.add(item);
+                hot = true;
+            }
+        }
+
+        if(hot){
+
+            result.sort(Comparator.comparingInt(StockItem::getAvailableQuantity).thenComparingInt(StockItem::getId));
+        }
+
+        return result;
+    }
+
+    // Produkty o cenie z przedziału <lowest, highest> (od najtańszego)
+
+    List<StockItem> itemsInPriceRange(double lowest, double highest) {
+
+        if(lowest > highest){
+
+            return new ArrayList<>();
+        }
+
+        return items(byPrice.subSet(new Key(lowest, Integer.MIN_VALUE, Integer.MIN_VALUE, null), true, new Key(highest, Integer.MAX_VALUE, Integer.MAX_VALUE, null), true), Integer.MAX_VALUE);
+    }
+
+    // Produkty z największą dostępną ilością - produkty "gorące" dokładamy wszystkie i sortujemy tylko wtedy, gdy jakieś są
+
+    List<StockItem> mostAvailable(int count) {
+
+        applyChanges();
+
+        List<StockItem> result = items(byAvailable.descendingSet(), count);
+        boolean hot = false;
+
+        for(StockItem item : hotItems){
+
+            if(item.indexActive){
+
+                result.add(item);
+                hot = true;
+            }
+        }
+
+        if(hot){
+
+            result.sort(Comparator.comparingInt(StockItem::getAvailableQuantity).thenComparingInt(StockItem::getId).reversed());
+            result = new ArrayList<>(result.subList(0, Math.min(Math.max(0, count), result.size())));
+        }
+
+        return result;
+    }
+
+    List<StockItem> mostExpensive(int count) {
+
+        return items(byPrice.descendingSet(), count);
+    }
+
+    private static List<StockItem> items(NavigableSet<Key> keys, int count) {
+
+        List<StockItem> result = new ArrayList<>();
+        Iterator<Key> iterator = keys.iterator();
+
+        while((result.size() < count) && iterator.hasNext()){
+
+            Key key = iterator.next();
+
+            if(key.item.indexActive){
+
+                result.add(key.item);
+            }
+        }
+
+        return result;
+    }
+}
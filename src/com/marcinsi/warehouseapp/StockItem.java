@@ -1,5 +1,10 @@
 package com.marcinsi.warehouseapp;
 
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
 // StockItem - podstawowa składowa całej aplikacji
 // Rozpoczęcie pisania kodu od tej klasy
 // Klasa nie jest klasą finalną (w kontekście metody equals() oraz hashCode())
@@ -8,22 +13,138 @@ package com.marcinsi.warehouseapp;
 
 public class StockItem implements Comparable<StockItem> {
 
+    // Liczba jednostek podrzędnych (groszy) w jednostce waluty
+
+    public static final int MINOR_UNITS = 100;
+
+    private static final AtomicIntegerFieldUpdater<StockItem> WRITERS = AtomicIntegerFieldUpdater.newUpdater(StockItem.class, "writers");
+
+    // Stan produktu odłączonego od listy (zastąpionego nowym obiektem o tej samej nazwie) - ilość Integer.MIN_VALUE nie występuje w zwykłym stanie
+
+    private static final long RETIRED = pack(Integer.MIN_VALUE, 0);
+
+    // Wynik consistentState(), gdy licznik główny albo pule zmieniły się w trakcie odczytu (nigdy nie jest prawdziwym stanem)
+
+    private static final long UNSTABLE = pack(Integer.MIN_VALUE, 1);
+
     private final String name;
-    private double price;
-    private int quantityInStock = 0;
-    private int reserved = 0;
+
+    // Cena w groszach (long) - sumy i iloczyny są dokładne, w przeciwieństwie do sumowania liczb double
+    // Metody przyjmujące i zwracające double (getPrice(), setPrice()) zaokrąglają do pełnych groszy
+
+    private volatile long priceInMinorUnits;
+
+    // Stan magazynowy przechowywany w jednej zmiennej typu long (bezpieczeństwo wątkowe bez blokad)
+    // Starsze 32 bity - quantityInStock, młodsze 32 bity - reserved
+    // Obie wartości zmieniamy jedną operacją compareAndSet() - nie ma możliwości sprzedania towaru, którego nie ma (overselling)
+
+    private final AtomicLong stock;
+
+    // Identyfikator nadawany przez StockList w momencie dodania produktu (-1 - produkt nie jest na żadnej liście)
+
+    private volatile int id = -1;
+
+    // Obiekt powiadamiany o zmianach (ustawia go StockList w momencie dodania produktu)
+
+    private volatile StockItemListener listener;
+
+    // Pola pomocnicze klasy StockValuation - ostatni wkład produktu do wartości magazynu (w groszach)
+
+    final AtomicInteger valuationRequests = new AtomicInteger();
+    volatile boolean valuationActive;
+    long valuedAvailable;
+    long valuedReserved;
+
+    // Pola pomocnicze klasy StockIndex - klucze, pod którymi produkt znajduje się w indeksach (null - produkt poza indeksem)
+    // Indeksy są opcjonalne, dlatego licznik próśb to zwykłe pole int (AtomicIntegerFieldUpdater) - bez dodatkowego obiektu dla każdego produktu
+
+    // indexChanged - produkt czeka w kolejce zmian indeksu (StockIndex.stockChanged())
+
+    volatile int indexRequests;
+    volatile int indexChanged;
+    volatile boolean indexActive;
+    volatile StockIndex.Key availableKey;
+    volatile StockIndex.Key priceKey;
+    int indexSerial;
+
+    // Pola pomocnicze klasy StockHistory (migawki StockSnapshot) - historia ustawiana przez StockList w momencie dodania produktu
+    // writers - liczba zapisów w toku (od compareAndSet() do zapisania rekordu historii), versions - stany sprzed zmian (od najnowszej)
+    // replaced - produkt o tej samej nazwie zastąpiony przez ten produkt w wersji replacedAt (potrzebny migawkom starszym od zastąpienia)
+
+    volatile StockHistory history;
+    volatile int writers;
+    volatile StockHistory.Version versions;
+    volatile StockItem replaced;
+    volatile long replacedAt;
+
+    // Przedziały "gorącego" produktu (null - zwykły produkt) - ustawiane raz przez StockList.markHot()
+    // W liczniku stock wartość reserved zawiera także pule przedziałów - metody odczytu zwracają wartości bez pul
+
+    private volatile StockStripes stripes;
+
+    // Kolejka oczekujących rezerwacji (StockList.reserveOrWait()) - tworzona przy pierwszym oczekującym, null - nikt nigdy nie czekał
+
+    volatile BackorderQueue backorders;
+
+    // Następca produktu odłączonego od listy (retire()) - zapisywany i odczytywany pod blokadą obiektu
+    // retiring - odłączanie w toku: rezerwacje produktu "gorącego" omijają pule przedziałów
+
+    private StockItem successor;
+    private volatile boolean retiring;
 
     public StockItem(String name, double price) {
 
-        this.name = name;
-        this.price = price;
+        this(name, price, 0);
     }
 
     public StockItem(String name, double price, int quantityInStock) {
 
         this.name = name;
-        this.price = price;
-        this.quantityInStock = quantityInStock;
+        this.priceInMinorUnits = toMinorUnits(price);
+        this.stock = new AtomicLong(pack(quantityInStock, 0));
+    }
+
+    // Metoda fabrykująca - cena podana od razu w groszach (np. ofMinorUnits("bread", 86, 100) - cena 0.86)
+    // Osobna nazwa zamiast konstruktora StockItem(String, long, int) - wywołanie new StockItem("cup", 1, 5) wybrałoby wtedy cenę w groszach
+
+    public static StockItem ofMinorUnits(String name, long priceInMinorUnits, int quantityInStock) {
+
+        StockItem item = new StockItem(name, 0.0, quantityInStock);
+
+        item.priceInMinorUnits = priceInMinorUnits;
+
+        return item;
+    }
+
+    // Cena dodatnia, która po zaokrągleniu dałaby 0 groszy, jest błędem (setPrice() pominąłby ją bez śladu)
+
+    static long toMinorUnits(double price) {
+
+        long minorUnits = Math.round(price * MINOR_UNITS);
+
+        if((price > 0.0) && (minorUnits <= 0)){
+
+            throw new IllegalArgumentException("Price below the minor unit : " + price);
+        }
+
+        return minorUnits;
+    }
+
+    // Metody pomocnicze - pakowanie i rozpakowywanie stanu magazynowego (dostępne w pakiecie, np. dla StockJournal)
+
+    static long pack(int quantityInStock, int reserved) {
+
+        return ((long) quantityInStock << 32) | (reserved & 0xFFFFFFFFL);
+    }
+
+    static int quantityInStock(long stock) {
+
+        return (int) (stock >> 32);
+    }
+
+    static int reserved(long stock) {
+
+        return (int) stock;
     }
 
     public String getName() {
@@ -31,35 +152,199 @@ public class StockItem implements Comparable<StockItem> {
         return name;
     }
 
+    public int getId() {
+
+        return id;
+    }
+
+    void setId(int id) {
+
+        this.id = id;
+    }
+
+    void setListener(StockItemListener listener) {
+
+        this.listener = listener;
+    }
+
+    // Włączenie podziału na przedziały (false - produkt już jest podzielony)
+
+    boolean enableStripes(int count) {
+
+        synchronized(this){
+
+            if(stripes != null){
+
+                return false;
+            }
+
+            stripes = new StockStripes(count);
+
+            return true;
+        }
+    }
+
+    StockStripes stripes() {
+
+        return stripes;
+    }
+
+    public boolean isHot() {
+
+        return stripes != null;
+    }
+
+    // Stan licznika głównego (current) bez pul przedziałów - suma pul pochodzi z tej samej chwili co current
+    // Pula przeniesiona w trakcie odczytu (StockStripes.beginRebalance()) albo zmiana licznika głównego - zwracamy UNSTABLE, wywołujący odczytuje stan ponownie
+    // Rezerwacje z pul trwające w tym czasie tylko zmniejszają pule: wynik leży pomiędzy stanem z początku i z końca odczytu
+    // Zarezerwowana ilość nigdy nie jest więc większa od prawdziwej - unreserveStock() i finalizeStock() nie zwolnią cudzych sztuk
+
+    private long consistentState(long current) {
+
+        StockStripes currentStripes = stripes;
+
+        if(currentStripes == null){
+
+            return current;
+        }
+
+        long version = currentStripes.stableVersion();
+
+        if(stock.get() != current){
+
+            return UNSTABLE;
+        }
+
+        int quota = currentStripes.quota();
+
+        return currentStripes.unchanged(version) ? pack(quantityInStock(current), reserved(current) - quota) : UNSTABLE;
+    }
+
+    // Stan bez pul przedziałów - pule to towar dostępny, choć licznik główny traktuje go jak zarezerwowany
+    // Tylko gdy pule się nie zmieniają (istnieje migawka albo produkt jest odłączany) - w pozostałych przypadkach consistentState()
+
+    private long logical(long state) {
+
+        StockStripes current = stripes;
+
+        return current != null ? pack(quantityInStock(state), reserved(state) - current.quota()) : state;
+    }
+
+    private void stockChanged(int quantityDelta, int reservedDelta) {
+
+        StockItemListener current = listener;
+
+        if(current != null){
+
+            current.stockChanged(this, quantityDelta, reservedDelta);
+        }
+    }
+
+    // Sprawdzenie przed zmianą, która zaczyna nową operację (rezerwacja, dostawa, cena) - np. lista z uszkodzonym dziennikiem ją odrzuca
+    // Zwolnienie rezerwacji i sprzedaż zarezerwowanego towaru nie są sprawdzane - kończą albo cofają operacje już rozpoczęte (np. wycofanie zamówienia)
+
+    private void checkWritable() {
+
+        StockItemListener current = listener;
+
+        if(current != null){
+
+            current.checkWritable(this);
+        }
+    }
+
+    private void contended(int retries) {
+
+        if(retries != 0){
+
+            StockItemListener current = listener;
+
+            if(current != null){
+
+                current.reserveContended(this, retries);
+            }
+        }
+    }
+
     public double getPrice() {
 
-        return price;
+        return (double) priceInMinorUnits / MINOR_UNITS;
+    }
+
+    public long getPriceInMinorUnits() {
+
+        return priceInMinorUnits;
     }
 
     // Bardzo ważna informacja do klienta - Sprawdzenie dostępności towaru
     // Metoda oblicza wartości na podstawie pól zawartych w produkcie
 
+    // Jeden odczyt zmiennej stock - ilość w magazynie oraz ilość zarezerwowana pochodzą z tego samego momentu
+
     public int getAvailableQuantity() {
 
-        return quantityInStock - reserved;
+        long current = getStockState();
+
+        return quantityInStock(current) - reserved(current);
     }
 
     public int getReservedQuantity(){
 
-      return reserved;
+      return reserved(getStockState());
 
     }
 
     public int getQuantityInStock(){
 
-        return quantityInStock;
+        return quantityInStock(getStockState());
+    }
+
+    // Spójny odczyt obu wartości naraz (do rozpakowania metodami quantityInStock() oraz reserved())
+
+    // Dla produktu podzielonego na przedziały licznik główny i suma pul pochodzą z tej samej chwili (consistentState())
+    // Rezerwacje z pul trwające w trakcie odczytu mogą być widoczne częściowo - po ich zakończeniu odczyt jest dokładny
+    // Produkt odłączony od listy zwraca stan swojego następcy (tam trafił jego towar)
+
+    long getStockState(){
+
+        while(true){
+
+            long current = stock.get();
+
+            if(current == RETIRED){
+
+                return successor().getStockState();
+            }
+
+            long state = consistentState(current);
+
+            if(state != UNSTABLE){
+
+                return state;
+            }
+        }
     }
 
     public void setPrice(double price) {
 
-        if(price > 0.0){
+        setPriceInMinorUnits(toMinorUnits(price));
+    }
+
+    public void setPriceInMinorUnits(long priceInMinorUnits) {
+
+        if(priceInMinorUnits > 0){
 
-            this.price = price;
+            checkWritable();
+
+            long oldPrice = this.priceInMinorUnits;
+            this.priceInMinorUnits = priceInMinorUnits;
+
+            StockItemListener current = listener;
+
+            if((current != null) && (oldPrice != priceInMinorUnits)){
+
+                current.priceChanged(this, oldPrice, priceInMinorUnits);
+            }
         }
 
     }
@@ -68,14 +353,37 @@ public class StockItem implements Comparable<StockItem> {
     // Moim zdaniem ta metoda także powinna zwracać wartość (informującą o przebiegu procesu)
     // Ja bym rozdzielił, tę metodę na increase oraz decrease (uzyskanie większej spójności)
 
+    // Wszystkie metody zmieniające stan działają według schematu: odczyt, sprawdzenie warunku, próba zapisu compareAndSet()
+    // Jeśli inny wątek zmienił stan w międzyczasie - powtarzamy całą operację (pętla bez blokad)
+
     public void adjustStock(int quantity) {
 
-        int newQuantity = this.quantityInStock + quantity;
+        checkWritable();
 
-        if(newQuantity >=0){
+        long current;
+        int newQuantity;
 
-            this.quantityInStock = newQuantity;
-        }
+        do {
+
+            current = stock.get();
+
+            if(current == RETIRED){
+
+                successor().adjustStock(quantity);
+
+                return;
+            }
+
+            newQuantity = quantityInStock(current) + quantity;
+
+            if(newQuantity < 0){
+
+                return;
+            }
+
+        } while(!commit(current, pack(newQuantity, reserved(current))));
+
+        stockChanged(quantity, 0);
 
         // Gdybyśmy dokonali próby zmniejszenia ilości poniżej zera - nic się nie stanie
         // Po prostu wartość nie zostanie zaktualizowana
@@ -87,52 +395,455 @@ public class StockItem implements Comparable<StockItem> {
 
     public int reserveStock(int quantity){
 
-        // Wywołanie metody getAvailableQuantity() - to nie jest pole, ale metoda
+        checkWritable();
+
+        // Produkt podzielony na przedziały - rezerwacja z puli przedziału wątku (licznik główny tylko przy uzupełnianiu puli)
 
-        if(quantity <= this.getAvailableQuantity()){
+        StockStripes currentStripes = stripes;
 
-            this.reserved += quantity;
+        if((currentStripes != null) && (quantity > 0)){
 
-            // Metoda zwraca informacji o zarezerwowanej ilości (w przyszłości można by stworzyć bardziej zaawansowaną aplikację)
-            // Na przykład można by wprowadzić możliwość rezerwacji części towaru (jeśli nie można zarezerwować całości)
+            int result = currentStripes.reserve(this, quantity);
 
-            return quantity;
+            if(result == StockStripes.RESERVED){
+
+                StockItemListener current = listener;
+
+                if(current != null){
+
+                    current.stockReservedFromStripe(this, quantity);
+                }
+
+                return quantity;
+            }
+
+            if(result == StockStripes.OUT_OF_STOCK){
+
+                return 0;
+            }
+
+            // Istnieje migawka - rezerwacja z licznika głównego, a gdy tam brakuje towaru, oddajemy mu wszystkie pule i próbujemy ponownie
+
+            int reserved = reserve(quantity);
+
+            return (reserved == 0) && drainStripes() ? reserve(quantity) : reserved;
         }
 
-        return 0;
+        return reserve(quantity);
+    }
+
+    private int reserve(int quantity){
+
+        // Wywołanie metody getAvailableQuantity() nie wystarczy - sprawdzenie i zapis muszą dotyczyć tego samego stanu
+
+        // retries - nieudane compareAndSet() (inny wątek zmienił stan pomiędzy odczytem a zapisem) - miara rywalizacji o produkt
+
+        int retries = 0;
+
+        while(true){
+
+            long current = stock.get();
+
+            if(current == RETIRED){
+
+                contended(retries);
+
+                return successor().reserveStock(quantity);
+            }
+
+            if(quantity > quantityInStock(current) - reserved(current)){
+
+                // W przypadku gdy byśmy chcieli zarezerwować większą ilość towaru niż jest dostępna w magazynie - zostanie zwrócona wartość 0
+                // Jednak gdybyśmy podali wartość ujemną - nastąpi aktualizacja danych (luka w systemie)
 
-        // W przypadku gdy byśmy chcieli zarezerwować większą ilość towaru niż jest dostępna w magazynie - zostanie zwrócona wartość 0
-        // Jednak gdybyśmy podali wartość ujemną - nastąpi aktualizacja danych (luka w systemie)
+                contended(retries);
+
+                return 0;
+            }
+
+            if(commit(current, pack(quantityInStock(current), reserved(current) + quantity))){
+
+                break;
+            }
+
+            retries++;
+        }
+
+        contended(retries);
+        stockChanged(0, quantity);
+
+        // Metoda zwraca informacji o zarezerwowanej ilości (w przyszłości można by stworzyć bardziej zaawansowaną aplikację)
+        // Na przykład można by wprowadzić możliwość rezerwacji części towaru (jeśli nie można zarezerwować całości)
+
+        return quantity;
     }
 
     // Brak walidacji wartości ujemnych (ciekawy pomysł informowania o niepowodzeniu)
 
     public int unreserveStock(int quantity){
 
-        if(quantity <= this.reserved){
+        while(true){
+
+            long current = stock.get();
+
+            if(current == RETIRED){
+
+                return successor().unreserveStock(quantity);
+            }
 
-            this.reserved -= quantity;
-            return quantity;
+            // Sprawdzamy rezerwacje bez pul przedziałów - stan odczytany w trakcie przeniesienia pul odczytujemy ponownie
+
+            long state = consistentState(current);
+
+            if(state == UNSTABLE){
+
+                continue;
+            }
+
+            if(quantity > reserved(state)){
+
+                // Gdybyśmy chcieli odrezerwować więcej niż zarezerwowaliśmy - wtedy zostanie zwrócona wartość 0 - informacja o niepowodzeniu
+                // Jednak gdybyśmy podali wartość ujemną - nastąpi aktualizacja danych (luka w systemie)
+
+                return 0;
+            }
+
+            if(commit(current, pack(quantityInStock(current), reserved(current) - quantity))){
+
+                break;
+            }
         }
 
-        return 0;
+        stockChanged(0, -quantity);
 
-        // Gdybyśmy chcieli odrezerwować więcej niż zarezerwowaliśmy - wtedy zostanie zwrócona wartość 0 - informacja o niepowodzeniu
-        // Jednak gdybyśmy podali wartość ujemną - nastąpi aktualizacja danych (luka w systemie)
+        return quantity;
     }
 
     public int finalizeStock(int quantity){
 
-        if(quantity <= this.reserved){
+        while(true){
+
+            long current = stock.get();
+
+            if(current == RETIRED){
+
+                return successor().finalizeStock(quantity);
+            }
 
-            quantityInStock -=quantity;
-            reserved -= quantity;
-            return quantity;
+            long state = consistentState(current);
+
+            if(state == UNSTABLE){
+
+                continue;
+            }
+
+            if(quantity > reserved(state)){
+
+                // Tutaj również nie dokonywaliśmy walidacji pod wzlędem wartości ujemnych
+
+                return 0;
+            }
+
+            if(commit(current, pack(quantityInStock(current) - quantity, reserved(current) - quantity))){
+
+                break;
+            }
         }
 
-        return 0;
+        stockChanged(-quantity, -quantity);
 
-        // Tutaj również nie dokonywaliśmy walidacji pod wzlędem wartości ujemnych
+        return quantity;
+    }
+
+    // Zapis nowego stanu - gdy produkt należy do listy, stan sprzed zmiany trafia do historii migawek (StockHistory)
+    // Licznik writers chroni czytelnika migawki przed odczytem stanu, którego rekord historii nie został jeszcze zapisany
+    // Bez migawek licznika nie zmieniamy - zapis ogłaszamy w polu wątku (StockHistory.WriterSlot), na które czeka tworzona migawka
+
+    private boolean commit(long current, long newState){
+
+        StockHistory currentHistory = history;
+
+        if(currentHistory == null){
+
+            return stock.compareAndSet(current, newState);
+        }
+
+        if(!currentHistory.isRecording()){
+
+            StockHistory.WriterSlot slot = StockHistory.writerSlot();
+
+            slot.enter();
+
+            // Drugie sprawdzenie po ogłoszeniu - albo migawka poczeka na ten zapis, albo zapis zobaczy migawkę i użyje licznika
+
+            if(!currentHistory.isRecording()){
+
+                boolean written = stock.compareAndSet(current, newState);
+
+                if(written){
+
+                    currentHistory.recordWrite(this, logical(current));
+                }
+
+                slot.exit();
+
+                return written;
+            }
+
+            slot.exit();
+        }
+
+        WRITERS.incrementAndGet(this);
+
+        boolean written;
+
+        if(currentHistory.isRecording()){
+
+            // Gdy istnieją migawki, zapisy jednego produktu wykonujemy po kolei - rekord historii musi opisywać pierwszą zmianę po migawce
+            // Inne produkty i czytelnicy nie czekają (blokada dotyczy tylko tego obiektu)
+
+            synchronized(this){
+
+                written = stock.compareAndSet(current, newState);
+
+                if(written){
+
+                    currentHistory.recordWrite(this, logical(current));
+                }
+            }
+
+        } else {
+
+            written = stock.compareAndSet(current, newState);
+
+            if(written){
+
+                currentHistory.recordWrite(this, logical(current));
+            }
+        }
+
+        WRITERS.decrementAndGet(this);
+
+        return written;
+    }
+
+    // Metody pomocnicze klasy StockStripes
+
+    boolean isRecorded(){
+
+        StockHistory currentHistory = history;
+
+        return (currentHistory != null) && currentHistory.isRecording();
+    }
+
+    // Przeniesienie dostępnego towaru do puli przedziału - co najmniej needed sztuk (o ile są), zwykle część pozostałego towaru
+    // Stan widziany przez klienta się nie zmienia (pula to nadal towar dostępny) - nie powiadamiamy o zmianie stanu
+
+    int grantQuota(int needed, int stripeCount){
+
+        long current;
+        int granted;
+
+        do {
+
+            current = stock.get();
+
+            if(current == RETIRED){
+
+                return 0;
+            }
+
+            int available = quantityInStock(current) - reserved(current);
+
+            granted = Math.min(available, Math.max(needed, available / (2 * stripeCount)));
+
+            if(granted <= 0){
+
+                return 0;
+            }
+
+        } while(!commit(current, pack(quantityInStock(current), reserved(current) + granted)));
+
+        return granted;
+    }
+
+    // Pule przedziałów zmieniły się razem z licznikiem głównym - wartość magazynu i indeksy odczytują stan ponownie
+
+    void stockRebalanced(){
+
+        StockItemListener current = listener;
+
+        if(current != null){
+
+            current.stockRebalanced(this);
+        }
+    }
+
+    // Zwrot wszystkich pul do licznika głównego (gdy istnieje migawka, a w liczniku głównym brakuje towaru)
+    // Stan widziany przez klienta się nie zmienia - czytelnik migawki czeka na koniec operacji (licznik writers)
+
+    private boolean drainStripes(){
+
+        StockStripes currentStripes = stripes;
+
+        currentStripes.awaitIdle();
+
+        int total;
+
+        WRITERS.incrementAndGet(this);
+
+        synchronized(this){
+
+            currentStripes.beginRebalance();
+
+            try {
+
+                total = currentStripes.takeAll();
+
+                if(total > 0){
+
+                    long current;
+
+                    do {
+
+                        current = stock.get();
+
+                    } while(!stock.compareAndSet(current, pack(quantityInStock(current), reserved(current) - total)));
+                }
+
+            } finally {
+
+                currentStripes.endRebalance();
+            }
+        }
+
+        WRITERS.decrementAndGet(this);
+
+        return total > 0;
+    }
+
+    // Cofnięcie metody finalizeStock() - towar wraca do magazynu jako zarezerwowany
+    // Metoda dostępna tylko w pakiecie - używana przez StockList.checkout() gdy nie udało się sprzedać całego koszyka
+
+    void restoreStock(int quantity){
+
+        long current;
+
+        do {
+
+            current = stock.get();
+
+            if(current == RETIRED){
+
+                successor().restoreStock(quantity);
+
+                return;
+            }
+
+        } while(!commit(current, pack(quantityInStock(current) + quantity, reserved(current) + quantity)));
+
+        stockChanged(quantity, quantity);
+    }
+
+    // Odłączenie produktu zastąpionego przez next (StockList.addStock() z tą samą nazwą) - wywoływane wewnątrz compute() dla tego klucza
+    // Stan przenosimy jedną operacją compareAndSet() (zamiast odczytu ilości i osobnych adjustStock() i reserveStock() na następcy)
+    // Od tej chwili każda zmiana tego obiektu (np. klient, który wcześniej pobrał go przez get()) trafia do następcy - nic nie ginie
+    // Następcę zapisujemy pod blokadą obiektu dopiero po przeniesieniu stanu - wątek, który trafi na RETIRED, czeka na tę blokadę
+    // withReservations - false: następca przejmuje tylko dostępny towar (addStockSecondVersion())
+
+    void retire(StockItem next, boolean withReservations){
+
+        synchronized(this){
+
+            StockStripes currentStripes = stripes;
+
+            // Rezerwacje z pul przedziałów kończymy przed odczytem stanu - kolejne trafią do licznika głównego, a stamtąd do następcy
+
+            if(currentStripes != null){
+
+                retiring = true;
+                currentStripes.awaitIdle();
+            }
+
+            long current;
+            long state;
+
+            do {
+
+                current = stock.get();
+                state = logical(current);
+
+            } while(!commit(current, RETIRED));
+
+            if(currentStripes != null){
+
+                currentStripes.takeAll();
+            }
+
+            int quantity = quantityInStock(state);
+            int reserved = reserved(state);
+
+            next.absorb(withReservations ? quantity : quantity - reserved, withReservations ? reserved : 0);
+
+            if(backorders != null){
+
+                next.backorders = backorders;
+            }
+
+            successor = next;
+        }
+    }
+
+    private void absorb(int quantity, int reserved){
+
+        long current;
+
+        do {
+
+            current = stock.get();
+
+        } while(!commit(current, pack(quantityInStock(current) + quantity, reserved(current) + reserved)));
+    }
+
+    private StockItem successor(){
+
+        synchronized(this){
+
+            return successor;
+        }
+    }
+
+    boolean isRetiring(){
+
+        return retiring;
+    }
+
+    // Kolejka oczekujących rezerwacji (StockList.reserveOrWait()) - tworzona pod blokadą obiektu, tak jak przeniesienie kolejki w retire()
+    // Produkt odłączony od listy przekazuje pytanie następcy - kolejka nigdy nie zostaje na obiekcie, którego nikt już nie obsługuje
+
+    BackorderQueue backorderQueue(){
+
+        synchronized(this){
+
+            if(stock.get() == RETIRED){
+
+                return successor.backorderQueue();
+            }
+
+            if(backorders == null){
+
+                backorders = new BackorderQueue();
+            }
+
+            return backorders;
+        }
+    }
+
+    // Ustawienie stanu odczytanego z dziennika (StockJournal) - używane tylko podczas odtwarzania, zanim produkt trafi na listę
+
+    void loadState(int quantityInStock, int reserved){
+
+        stock.set(pack(quantityInStock, reserved));
     }
 
     @Override
@@ -199,6 +910,16 @@ public class StockItem implements Comparable<StockItem> {
     @Override
     public String toString() {
 
-        return this.name + " : price " + this.price + ". Reserved : " + this.reserved;
+        return this.name + " : price " + this.getPrice() + ". Reserved : " + this.getReservedQuantity();
+    }
+
+    // Ten sam tekst co toString() - zapisywany bezpośrednio do raportu (bez tworzenia obiektu String)
+
+    void appendTo(Appendable out) throws IOException {
+
+        out.append(name).append(" : price ");
+        ReportFormat.appendPrice(out, priceInMinorUnits);
+        out.append(". Reserved : ");
+        ReportFormat.appendLong(out, getReservedQuantity());
     }
 }
@@ -0,0 +1,30 @@
+package com.marcinsi.warehouseapp;
+
+// Interfejs pozwalający obiektowi StockList dowiedzieć się o każdej zmianie produktu
+// Metody są wywoływane po udanej zmianie stanu, w wątku, który tę zmianę wykonał
+// Przekazujemy różnice (delta), a nie nowe wartości - różnice można sumować niezależnie od kolejności wątków
+
+interface StockItemListener {
+
+    void stockChanged(StockItem item, int quantityDelta, int reservedDelta);
+
+    // Wywoływane przed rezerwacją, dostawą albo zmianą ceny - wyjątek odrzuca zmianę (np. lista, której dziennik nie może już zapisywać)
+
+    void checkWritable(StockItem item);
+
+    // Rezerwacja z puli przedziału produktu "gorącego" (StockStripes) - licznik główny produktu się nie zmienił
+
+    void stockReservedFromStripe(StockItem item, int quantity);
+
+    // Przeniesienie towaru pomiędzy licznikiem głównym a pulami przedziałów - stan widziany przez klienta się nie zmienił
+
+    void stockRebalanced(StockItem item);
+
+    // Rezerwacja z licznika głównego, której compareAndSet() nie powiódł się retries razy (inny wątek zmienił stan w międzyczasie)
+
+    void reserveContended(StockItem item, int retries);
+
+    // Ceny w groszach (StockItem.getPriceInMinorUnits())
+
+    void priceChanged(StockItem item, long oldPrice, long newPrice);
+}
@@ -0,0 +1,777 @@
+package com.marcinsi.warehouseapp;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Dziennik zmian (write-ahead journal) oraz migawki (snapshot) stanu obiektu StockList
+// Bez dziennika cały stan magazynu istnieje tylko w pamięci - restart aplikacji kasuje wszystkie rezerwacje
+//
+// Każda zmiana produktu (dodanie, adjust, reserve, unreserve, finalize, zmiana ceny) dopisuje krótki rekord binarny
+// Rekord zawiera pełny stan produktu - przy odtwarzaniu ostatni rekord danego produktu "wygrywa"
+//
+// Dopisanie rekordu nie używa blokad: wątek rezerwuje miejsce w buforze (CAS na pozycji bufora) i dopiero potem odczytuje stan produktu
+// Rekord o późniejszej pozycji odczytuje stan później niż rekord o wcześniejszej pozycji został zarezerwowany,
+// więc ostatni rekord produktu zawiera stan obejmujący wszystkie zmiany, których rekordy trafiły do dziennika
+//
+// Zapis na dysk (group commit): osobny wątek zamyka pełny lub niepusty bufor, czeka na wątki kończące zapis swoich rekordów,
+// podstawia drugi bufor, zapisuje dane przez FileChannel i wywołuje force() - jeden fsync obejmuje wszystkie zebrane rekordy
+// Potwierdzenie trwałości: awaitDurable() czeka na zapis ostatniego rekordu dopisanego przez bieżący wątek, sync() - wszystkich rekordów
+// Rekord większy niż bufor (bardzo długa nazwa produktu) jest odrzucany wyjątkiem IllegalArgumentException (checkRecord())
+// Błąd zapisu na dysk zatrzymuje dziennik (isFailed(), getFailure()): lista odrzuca nowe rezerwacje, dostawy, zmiany cen, sprzedaż i nowe produkty
+// wyjątkiem UncheckedIOException (checkWritable()), a awaitDurable(), sync() i close() zgłaszają zapisany błąd
+//
+// Migawka (snapshot()) zapisuje stan wszystkich produktów i rozpoczyna nowy plik dziennika
+// Odtwarzanie (recover()) wczytuje ostatnią migawkę i tylko te pliki dziennika, które powstały po niej
+// Produkty dostają zapisane identyfikatory - także wtedy, gdy w numeracji są luki (rekord dodania utracony przy awarii)
+
+public class StockJournal implements Closeable {
+
+    // Rodzaje rekordów - informacja, jaka operacja spowodowała zapis (przy odtwarzaniu liczy się tylko zapisany stan)
+
+    static final byte ADD = 1;
+    static final byte ADJUST = 2;
+    static final byte RESERVE = 3;
+    static final byte UNRESERVE = 4;
+    static final byte FINALIZE = 5;
+    static final byte RESTORE = 6;
+    static final byte PRICE = 7;
+
+    private static final int SNAPSHOT_MAGIC = 0x53544b31;
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String JOURNAL_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    // Rozmiar rekordu: typ, identyfikator, ilość w magazynie, ilość zarezerwowana, cena (rekord dodania także długość i bajty nazwy)
+
+    private static final int RECORD_SIZE = 1 + 4 + 4 + 4 + 8;
+
+    // Najdłuższa nazwa produktu (w bajtach UTF-8), której rekord dodania mieści się w buforze
+
+    static final int MAX_NAME_BYTES = BUFFER_SIZE - RECORD_SIZE - 4;
+
+    // Bufor rekordów w pamięci - wątki rezerwują miejsce (position) operacją CAS i zapisują rekord bez blokady
+    // Ujemna pozycja oznacza bufor zamknięty przez wątek zapisujący: -(koniec danych) - 1
+    // written - liczba bajtów, które wątki już zapisały (bufor można zapisać na dysk, gdy zrówna się z końcem danych)
+    // base - pozycja początku bufora w całym dzienniku (licząc od otwarcia) - z niej wynika pozycja każdego rekordu
+
+    private static final class Block {
+
+        final ByteBuffer data = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final ByteBuffer view = data.duplicate();
+        final AtomicInteger position = new AtomicInteger();
+        final AtomicInteger written = new AtomicInteger();
+        long base;
+
+        void reset(long base) {
+
+            this.base = base;
+            written.set(0);
+            position.set(0);
+        }
+    }
+
+    private final Path directory;
+
+    // Blokada pliku dziennika - zapis bufora na dysk oraz rozpoczęcie nowego pliku (snapshot())
+
+    private final Object ioLock = new Object();
+
+    private FileChannel channel;
+    private long generation;
+
+    private volatile Block active = new Block();
+
+    // Pozycja w dzienniku, do której wszystkie rekordy są już na dysku
+
+    private volatile long durable = 0;
+    private volatile boolean closed = false;
+    private volatile IOException failure;
+
+    // Koniec ostatniego rekordu dopisanego przez dany wątek (awaitDurable())
+
+    private final ThreadLocal<long[]> lastAppended = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final Thread flusher;
+
+    private StockJournal(Path directory, long generation) throws IOException {
+
+        this.directory = directory;
+        this.generation = generation;
+        this.channel = openSegment(generation);
+
+        this.flusher = new Thread(this::flushLoop, "stock-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // Otwarcie dziennika w danym katalogu - nowe rekordy trafiają do nowego pliku (poprzednie pliki pozostają bez zmian)
+
+    public static StockJournal open(Path directory) throws IOException {
+
+        Files.createDirectories(directory);
+
+        long last = Math.max(lastGeneration(directory, JOURNAL_PREFIX, JOURNAL_SUFFIX), lastGeneration(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX));
+
+        return new StockJournal(directory, last + 1);
+    }
+
+    private FileChannel openSegment(long generation) throws IOException {
+
+        return FileChannel.open(directory.resolve(JOURNAL_PREFIX + generation + JOURNAL_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Sprawdzenie, czy rekord dodania produktu zmieści się w buforze - wywoływane przed dodaniem produktu do listy z dziennikiem
+
+    static void checkRecord(StockItem item) {
+
+        if(item.getName().length() * 3 > MAX_NAME_BYTES && item.getName().getBytes(StandardCharsets.UTF_8).length > MAX_NAME_BYTES){
+
+            throw new IllegalArgumentException("Item name too long for the stock journal : " + item.getName().length() + " characters");
+        }
+    }
+
+    // Błąd zapisu (zapis bufora albo rozpoczęcie nowego pliku w snapshot()) - dziennik jest zamknięty, a kolejne zmiany odrzucane
+
+    public boolean isFailed() {
+
+        return failure != null;
+    }
+
+    public IOException getFailure() {
+
+        return failure;
+    }
+
+    // Wywoływane przed zmianą produktu na liście z tym dziennikiem - zmiany, której nie da się zapisać, nie wykonujemy
+
+    void checkWritable() {
+
+        IOException currentFailure = failure;
+
+        if(currentFailure != null){
+
+            throw new UncheckedIOException("Stock journal failed - change rejected", currentFailure);
+        }
+    }
+
+    private void fail(IOException e) {
+
+        synchronized(this){
+
+            if(failure == null){
+
+                failure = e;
+            }
+
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    // Metody wywoływane przez StockList (przez obiekt nasłuchujący zmian produktów)
+
+    void itemAdded(StockItem item) {
+
+        append(ADD, item);
+    }
+
+    void stockChanged(StockItem item, int quantityDelta, int reservedDelta) {
+
+        byte type;
+
+        if(reservedDelta == 0){
+
+            type = ADJUST;
+
+        } else if(quantityDelta == 0){
+
+            type = reservedDelta > 0 ? RESERVE : UNRESERVE;
+
+        } else {
+
+            type = quantityDelta < 0 ? FINALIZE : RESTORE;
+        }
+
+        append(type, item);
+    }
+
+    void priceChanged(StockItem item) {
+
+        append(PRICE, item);
+    }
+
+    private void append(byte type, StockItem item) {
+
+        byte[] name = type == ADD ? item.getName().getBytes(StandardCharsets.UTF_8) : null;
+        int size = RECORD_SIZE + (name != null ? 4 + name.length : 0);
+
+        if(size > BUFFER_SIZE){
+
+            throw new IllegalArgumentException("Item name too long for the stock journal : " + item.getName().length() + " characters");
+        }
+
+        while(!closed){
+
+            Block block = active;
+            int position = block.position.get();
+
+            if(position < 0){
+
+                // Bufor zamknięty przez wątek zapisujący - czekamy na podstawienie kolejnego
+
+                awaitSwap(block);
+
+                continue;
+            }
+
+            if(position + size > BUFFER_SIZE){
+
+                // Rekord nie mieści się w buforze - zamykamy bufor (jeśli nikt tego jeszcze nie zrobił) i budzimy wątek zapisujący
+
+                if(block.position.compareAndSet(position, -position - 1)){
+
+                    LockSupport.unpark(flusher);
+                }
+
+                awaitSwap(block);
+
+                continue;
+            }
+
+            if(!block.position.compareAndSet(position, position + size)){
+
+                continue;
+            }
+
+            // Miejsce zarezerwowane - stan odczytujemy dopiero teraz (ostatni rekord produktu zawiera najnowszy stan)
+
+            long stock = item.getStockState();
+            ByteBuffer data = block.data;
+            int offset = position;
+
+            data.put(offset, type).putInt(offset + 1, item.getId());
+            offset += 5;
+
+            if(name != null){
+
+                data.putInt(offset, name.length).put(offset + 4, name);
+                offset += 4 + name.length;
+            }
+
+            data.putInt(offset, StockItem.quantityInStock(stock)).putInt(offset + 4, StockItem.reserved(stock)).putLong(offset + 8, item.getPriceInMinorUnits());
+
+            block.written.addAndGet(size);
+            lastAppended.get()[0] = block.base + position + size;
+
+            // Pierwszy rekord w pustym buforze - wątek zapisujący mógł zasnąć, bo nie miał nic do zapisania
+
+            if(position == 0){
+
+                LockSupport.unpark(flusher);
+            }
+
+            return;
+        }
+
+        // Dziennik zamknięty (close() albo błąd zapisu) - rekordu nie zapisujemy
+        // Po błędzie trafiają tu tylko zmiany, które zaczęły się przed nim, oraz zwolnienia rezerwacji - trwałość potwierdza wyłącznie awaitDurable() / sync()
+    }
+
+    // Czekamy, aż ostatni rekord dopisany przez bieżący wątek znajdzie się na dysku (potwierdzenie trwałości zmiany)
+    // Przerwanie wątku nie kończy oczekiwania - zmiana została już wykonana, więc wynik musi odpowiadać stanowi dziennika
+
+    public void awaitDurable() throws IOException {
+
+        awaitDurable(lastAppended.get()[0]);
+    }
+
+    // Czekamy, aż wszystkie rekordy dopisane do tej pory znajdą się na dysku
+
+    public void sync() throws IOException {
+
+        Block block = active;
+        int position = block.position.get();
+
+        awaitDurable(position >= 0 ? block.base + position : Math.max(durable, block.base - position - 1));
+    }
+
+    private void awaitDurable(long target) throws IOException {
+
+        if(durable < target){
+
+            boolean interrupted = false;
+
+            synchronized(this){
+
+                while((durable < target) && !closed){
+
+                    interrupted |= awaitFlusher();
+                }
+            }
+
+            if(interrupted){
+
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        IOException currentFailure = failure;
+
+        if(currentFailure != null){
+
+            throw currentFailure;
+        }
+
+        if(durable < target){
+
+            throw new IOException("Journal is closed");
+        }
+    }
+
+    // Bufory są używane na zmianę - po zapisie ten sam bufor może znowu zostać bieżącym (już otwartym, z nowym base)
+    // Dlatego czekamy tylko, dopóki bufor jest zamknięty - inaczej wątek czekałby na podmianę pustego bufora, na którą nic już nie czeka
+
+    private void awaitSwap(Block block) {
+
+        boolean interrupted = false;
+
+        synchronized(this){
+
+            while((active == block) && (block.position.get() < 0) && !closed){
+
+                interrupted |= awaitFlusher();
+            }
+        }
+
+        if(interrupted){
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushLoop() {
+
+        Block spare = new Block();
+
+        while(true){
+
+            Block block = active;
+            int position = block.position.get();
+
+            if(position == 0){
+
+                if(closed){
+
+                    return;
+                }
+
+                LockSupport.park(this);
+
+                continue;
+            }
+
+            // Zamknięcie bufora - nowe rekordy trafią już do drugiego bufora
+
+            if((position > 0) && !block.position.compareAndSet(position, -position - 1)){
+
+                continue;
+            }
+
+            int end = position > 0 ? position : -position - 1;
+
+            // Wątki, które zarezerwowały miejsce przed zamknięciem, kończą zapis swoich rekordów (kilkadziesiąt bajtów, bez blokad)
+
+            while(block.written.get() != end){
+
+                Thread.yield();
+            }
+
+            spare.reset(block.base + end);
+            active = spare;
+
+            synchronized(this){
+
+                notifyAll();
+            }
+
+            try {
+
+                synchronized(ioLock){
+
+                    writeFully(block, end);
+                }
+
+            } catch(IOException e){
+
+                fail(e);
+
+                return;
+            }
+
+            durable = block.base + end;
+
+            synchronized(this){
+
+                notifyAll();
+            }
+
+            spare = block;
+        }
+    }
+
+    private void writeFully(Block block, int end) throws IOException {
+
+        ByteBuffer buffer = block.view;
+
+        buffer.clear().limit(end);
+
+        while(buffer.hasRemaining()){
+
+            channel.write(buffer);
+        }
+
+        channel.force(false);
+    }
+
+    // Migawka - zapis stanu wszystkich produktów do osobnego pliku
+    // Najpierw zamykamy bieżący plik dziennika i rozpoczynamy nowy (krótka blokada), potem zapisujemy migawkę bez blokowania zapisów
+    // Zmiany wykonane w trakcie zapisu migawki trafiają do nowego pliku dziennika - przy odtwarzaniu nadpiszą stan z migawki
+
+    public void snapshot(StockList stockList) throws IOException {
+
+        long snapshotGeneration;
+
+        // Rekordy, które jeszcze czekają w buforze, trafią do nowego pliku - ich stan jest co najwyżej starszy od stanu w migawce,
+        // a ostatni rekord każdego produktu i tak zawiera stan nie starszy niż migawka
+
+        synchronized(ioLock){
+
+            if(closed){
+
+                throw new IOException("Journal is closed");
+            }
+
+            channel.close();
+
+            generation++;
+
+            try {
+
+                channel = openSegment(generation);
+
+            } catch(IOException e){
+
+                // Poprzedni plik jest już zamknięty - bez nowego pliku dziennik nie może przyjmować rekordów
+
+                fail(e);
+
+                throw e;
+            }
+
+            snapshotGeneration = generation;
+        }
+
+        Path temporary = directory.resolve(SNAPSHOT_PREFIX + snapshotGeneration + ".tmp");
+
+        try(FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            int count = stockList.itemCount();
+
+            buffer.putInt(SNAPSHOT_MAGIC).putInt(count);
+
+            for(int id = 0; id < count; id++){
+
+                StockItem item = stockList.get(id);
+
+                if(item == null){
+
+                    continue;
+                }
+
+                byte[] name = item.getName().getBytes(StandardCharsets.UTF_8);
+
+                if(buffer.remaining() < 1 + 4 + 4 + name.length + 16){
+
+                    buffer.flip();
+
+                    while(buffer.hasRemaining()){
+
+                        out.write(buffer);
+                    }
+
+                    buffer.clear();
+                }
+
+                long stock = item.getStockState();
+
+                buffer.put(ADD).putInt(id).putInt(name.length).put(name);
+                buffer.putInt(StockItem.quantityInStock(stock)).putInt(StockItem.reserved(stock)).putLong(item.getPriceInMinorUnits());
+            }
+
+            buffer.flip();
+
+            while(buffer.hasRemaining()){
+
+                out.write(buffer);
+            }
+
+            out.force(true);
+        }
+
+        Files.move(temporary, directory.resolve(SNAPSHOT_PREFIX + snapshotGeneration + SNAPSHOT_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+
+        // Starsze migawki oraz pliki dziennika nie są już potrzebne do odtworzenia stanu
+
+        deleteOlderThan(directory, JOURNAL_PREFIX, JOURNAL_SUFFIX, snapshotGeneration);
+        deleteOlderThan(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX, snapshotGeneration);
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        synchronized(this){
+
+            closed = true;
+            notifyAll();
+        }
+
+        LockSupport.unpark(flusher);
+
+        try {
+
+            flusher.join();
+
+        } catch(InterruptedException e){
+
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized(ioLock){
+
+            if(channel.isOpen()){
+
+                // Rekordy dopisane po zakończeniu wątku zapisującego
+
+                Block block = active;
+                int position = block.position.get();
+
+                if((position > 0) && (failure == null) && block.position.compareAndSet(position, -position - 1)){
+
+                    while(block.written.get() != position){
+
+                        Thread.yield();
+                    }
+
+                    writeFully(block, position);
+                    durable = block.base + position;
+                }
+
+                channel.close();
+            }
+        }
+
+        synchronized(this){
+
+            notifyAll();
+        }
+
+        if(failure != null){
+
+            throw failure;
+        }
+    }
+
+    // Odtworzenie stanu z katalogu: ostatnia migawka + pliki dziennika zapisane po niej
+    // Lista docelowa musi być pusta - produkty są dodawane metodą addStock() w kolejności identyfikatorów, każdy z zapisanym identyfikatorem
+
+    public static StockList recover(Path directory, StockList target) throws IOException {
+
+        StockItem[] items = new StockItem[1024];
+
+        if(Files.isDirectory(directory)){
+
+            long snapshotGeneration = lastGeneration(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+
+            if(snapshotGeneration >= 0){
+
+                try(DataInputStream in = openInput(directory.resolve(SNAPSHOT_PREFIX + snapshotGeneration + SNAPSHOT_SUFFIX))){
+
+                    if(in.readInt() != SNAPSHOT_MAGIC){
+
+                        throw new IOException("Not a stock snapshot : " + snapshotGeneration);
+                    }
+
+                    in.readInt();
+                    items = replay(in, items);
+                }
+            }
+
+            for(long segment : generations(directory, JOURNAL_PREFIX, JOURNAL_SUFFIX)){
+
+                if(segment >= snapshotGeneration){
+
+                    try(DataInputStream in = openInput(directory.resolve(JOURNAL_PREFIX + segment + JOURNAL_SUFFIX))){
+
+                        items = replay(in, items);
+                    }
+                }
+            }
+        }
+
+        if(target.itemCount() != 0){
+
+            throw new IllegalArgumentException("Recovery target must be empty : " + target.itemCount() + " items");
+        }
+
+        for(int id = 0; id < items.length; id++){
+
+            if(items[id] != null){
+
+                target.skipIds(id);
+                target.addStock(items[id]);
+            }
+        }
+
+        return target;
+    }
+
+    // Odczyt rekordów aż do końca pliku - niepełny ostatni rekord (awaria w trakcie zapisu) jest pomijany
+
+    private static StockItem[] replay(DataInputStream in, StockItem[] items) throws IOException {
+
+        try {
+
+            while(true){
+
+                byte type = in.readByte();
+                int id = in.readInt();
+                String name = null;
+
+                if(type == ADD){
+
+                    byte[] bytes = new byte[in.readInt()];
+
+                    in.readFully(bytes);
+                    name = new String(bytes, StandardCharsets.UTF_8);
+                }
+
+                int quantityInStock = in.readInt();
+                int reserved = in.readInt();
+                long price = in.readLong();
+
+                if(id >= items.length){
+
+                    items = Arrays.copyOf(items, Math.max(id + 1, items.length * 2));
+                }
+
+                if(name != null){
+
+                    items[id] = StockItem.ofMinorUnits(name, price, 0);
+                }
+
+                StockItem item = items[id];
+
+                if(item != null){
+
+                    item.loadState(quantityInStock, reserved);
+                    item.setPriceInMinorUnits(price);
+                }
+            }
+
+        } catch(EOFException e){
+
+            return items;
+        }
+    }
+
+    private static DataInputStream openInput(Path file) throws IOException {
+
+        InputStream in = Files.newInputStream(file);
+
+        return new DataInputStream(new BufferedInputStream(in, 1 << 16));
+    }
+
+    private static List<Long> generations(Path directory, String prefix, String suffix) throws IOException {
+
+        List<Long> result = new ArrayList<>();
+
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)){
+
+            for(Path file : files){
+
+                String name = file.getFileName().toString();
+
+                try {
+
+                    result.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+
+                } catch(NumberFormatException e){
+
+                    // Plik o innej nazwie - pomijamy
+                }
+            }
+        }
+
+        Collections.sort(result);
+
+        return result;
+    }
+
+    private static long lastGeneration(Path directory, String prefix, String suffix) throws IOException {
+
+        List<Long> all = generations(directory, prefix, suffix);
+
+        return all.isEmpty() ? -1 : all.get(all.size() - 1);
+    }
+
+    private static void deleteOlderThan(Path directory, String prefix, String suffix, long generation) throws IOException {
+
+        for(long older : generations(directory, prefix, suffix)){
+
+            if(older < generation){
+
+                Files.deleteIfExists(directory.resolve(prefix + older + suffix));
+            }
+        }
+    }
+
+    // Zwraca true, gdy oczekiwanie przerwano (flagę przerwania przywraca metoda wywołująca po zakończeniu czekania)
+
+    private boolean awaitFlusher() {
+
+        try {
+
+            wait();
+
+            return false;
+
+        } catch(InterruptedException e){
+
+            return true;
+        }
+    }
+}
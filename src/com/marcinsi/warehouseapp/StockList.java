@@ -1,140 +1,1441 @@
 package com.marcinsi.warehouseapp;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
-public class StockList {
+public class StockList implements AutoCloseable {
 
     private final Map<String, StockItem> list;
 
+    // Każdy produkt dodany do listy otrzymuje stały identyfikator (0, 1, 2...) - indeks w tablicy items
+    // Klient może raz zamienić nazwę na identyfikator (idOf()) i dalej korzystać z metod przyjmujących int - bez liczenia hashCode() nazwy
+    // Identyfikatory nadaje licznik nextId (bez blokad), produkt trafia do tablicy metodą store() - odczyty nie używają blokad
+    // Tablicę powiększa tylko jeden wątek naraz (growLock) - zapisy do tablicy nie czekają na tę blokadę, chyba że właśnie trwa powiększanie
+
+    private volatile StockItem[] items = new StockItem[16];
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final Object growLock = new Object();
+    private volatile boolean resizing = false;
+
+    // Produkty powiadamiają listę o każdej zmianie (StockItemListener) - dzięki temu wartość magazynu jest zawsze aktualna
+
+    private final StockValuation valuation = new StockValuation();
+    private final StockItemListener changes = new ItemChanges();
+
+    // Opcjonalny dziennik zmian (null - stan istnieje tylko w pamięci)
+
+    private volatile StockJournal journal;
+
+    // Obsługa rezerwacji z terminem ważności - tworzona przy pierwszej takiej rezerwacji
+
+    private volatile ReservationExpiry expiry;
+    private volatile boolean closed = false;
+
+    // Aktualna wersja cennika (PriceList()) - odczyt bez blokad, nowe wersje publikuje jeden wątek naraz (priceLock, publishPrice())
+
+    private volatile PriceSnapshot prices;
+    private final Object priceLock = new Object();
+
+    // Subskrybenci strumienia zmian (kopiowanie tablicy przy dodaniu / usunięciu subskrybenta - to rzadkie operacje)
+
+    private volatile StockEventStream[] subscribers = new StockEventStream[0];
+
+    // Pomiary operacji (null - pomiary wyłączone)
+
+    private volatile WarehouseMetrics metrics;
+
+    // Indeksy według dostępnej ilości i ceny (null - indeksy wyłączone, zapytania przechodzą po całej liście)
+
+    private volatile StockIndex index;
+
+    // Historia zmian produktów dla migawek snapshot() - zapisy dopisują do niej stany tylko wtedy, gdy istnieje otwarta migawka
+
+    private final StockHistory history = new StockHistory();
+
+    // Liczba trwających operacji addAll() - w tym czasie nowe produkty nie tworzą kolejnych wersji cennika (jedna wersja na końcu)
+
+    private final AtomicInteger bulkLoads = new AtomicInteger();
+
     public StockList() {
 
-        // Struktura LinkedHashMap<> - zachowuje porządek dodawania -> mamy możliwość zmiany implementacji
+        // Struktura LinkedHashMap<> - zachowuje porządek dodawania -> mamy możliwość zmiany implementacji
+
+        this(new LinkedHashMap<>(), 16);
+    }
+
+    // Lista o rozmiarze dobranym do spodziewanej liczby produktów - mapa i tablica produktów nie są powiększane w trakcie ładowania
+
+    public StockList(int expectedItems) {
+
+        this(new LinkedHashMap<>(mapCapacity(expectedItems)), expectedItems);
+    }
+
+    private StockList(Map<String, StockItem> list, int expectedItems) {
+
+        this.list = list;
+        this.items = new StockItem[Math.max(16, expectedItems)];
+        this.prices = PriceSnapshot.empty();
+    }
+
+    // Pojemność mapy, przy której podana liczba elementów nie przekroczy współczynnika zapełnienia 0.75
+
+    private static int mapCapacity(int expectedItems) {
+
+        return (int) Math.min(1 << 30, (long) Math.max(16, expectedItems) * 4 / 3 + 1);
+    }
+
+    // Metoda fabrykująca - lista produktów przeznaczona dla wielu wątków jednocześnie
+    // Odczyty (get(), sellStock(), reserveStock(), unreservedStock()) nie używają blokad
+    // Zapisy blokują tylko jeden klucz, a Items() oraz PriceList() nadal zachowują kolejność dodawania
+
+    public static StockList concurrentStockList() {
+
+        return new StockList(new ConcurrentLinkedMap<>(), 16);
+    }
+
+    public static StockList concurrentStockList(int expectedItems) {
+
+        return new StockList(new ConcurrentLinkedMap<>(mapCapacity(expectedItems)), expectedItems);
+    }
+
+    // Do wnętrza klasy przekazujemy referencje do obiektu
+
+    public int addStock(StockItem item){
+
+        if(item != null){
+
+            checkJournalRecord(item);
+
+            // Metoda compute() - odczyt poprzedniego produktu i zapis nowego to jedna operacja (ważne dla listy współbieżnej)
+            // Poprzedni produkt przekazuje nowemu cały stan jedną operacją (StockItem.retire()) - zmiany wykonane na starym obiekcie trafią do nowego
+
+            StockItem[] previous = new StockItem[1];
+
+            list.compute(item.getName(), (name, inStock) -> {
+
+                previous[0] = inStock;
+
+                return register(item, inStock, true);
+            });
+
+            registered(item, previous[0]);
+
+            // Zwrócenie ilości dostępnego towaru
+
+            return item.getAvailableQuantity();
+        }
+
+        return 0;
+    }
+
+    // Dodanie wielu produktów naraz (np. StockLoader) - każdy produkt tak jak w addStock(), w kolejności kolekcji
+    // Różnica: tablica produktów jest powiększana raz, a nowa wersja cennika (PriceList()) powstaje raz na końcu, a nie po każdym produkcie
+
+    public void addAll(Collection<? extends StockItem> newItems){
+
+        grow(nextId.get() + newItems.size());
+        bulkLoads.incrementAndGet();
+
+        try {
+
+            for(StockItem item : newItems){
+
+                addStock(item);
+            }
+
+        } finally {
+
+            bulkLoads.decrementAndGet();
+
+            synchronized(priceLock){
+
+                prices = prices.rebuild(items, nextId.get());
+            }
+        }
+    }
+
+    public int addStockSecondVersion(StockItem item){
+
+        if(item != null) {
+
+            checkJournalRecord(item);
+
+            StockItem[] previous = new StockItem[1];
+
+            list.compute(item.getName(), (name, inStock) -> {
+
+                // Nowy produkt przejmuje tylko dostępny towar poprzedniego (rezerwacje przepadają)
+
+                previous[0] = inStock;
+
+                return register(item, inStock, false);
+            });
+
+            registered(item, previous[0]);
+
+            return item.getAvailableQuantity();
+        }
+
+        return 0;
+    }
+
+
+    public int addStockThirdVersion(StockItem item){
+
+        // Tworzenie produktów (i dodawanie tych produktów) - taką możliwość bym umieścił tylko w tej klasie (zastosowanie odpowiednich mechanizmów pozwalających na uzyskanie takiego efektu)
+
+
+        if(item == null){
+
+            return 0;
+        }
+
+        checkJournalRecord(item);
+
+        StockItem inStock = list.compute(item.getName(), (name, previous) -> previous != null ? previous : register(item, null, true));
+
+        if(inStock == item){
+
+            // Jeśli wcześniej produkt nie istniał to wtedy - dodajemy go do mapy (sprawdzenie i dodanie w jednym kroku)
+
+            registered(item, null);
+
+            return item.getAvailableQuantity();
+        }
+
+        // Pobieram wartości z przekazanago towaru (które mnie interesują
+
+        long price = item.getPriceInMinorUnits();
+        int quantity = item.getQuantityInStock();
+
+        inStock.setPriceInMinorUnits(price);
+        inStock.adjustStock(quantity);
+
+        return inStock.getAvailableQuantity();
+    }
+
+    // Produkt, którego rekord nie zmieściłby się w dzienniku (bardzo długa nazwa), odrzucamy przed zmianą listy - tak samo po błędzie zapisu dziennika
+
+    private void checkJournalRecord(StockItem item){
+
+        StockJournal currentJournal = journal;
+
+        if(currentJournal != null){
+
+            currentJournal.checkWritable();
+            StockJournal.checkRecord(item);
+        }
+    }
+
+    // Sprzedaż (sellStock(), checkout()) sprawdzamy na poziomie listy - StockItem.finalizeStock() wykonuje też wycofanie już rozpoczętych operacji
+
+    private void checkJournal(){
+
+        StockJournal currentJournal = journal;
+
+        if(currentJournal != null){
+
+            currentJournal.checkWritable();
+        }
+    }
+
+    // Nadanie identyfikatora - wywoływane wewnątrz compute(), czyli zawsze dla jednego klucza na raz
+    // Nowy produkt dostaje kolejny wolny identyfikator, produkt zastępujący poprzedni (ta sama nazwa) przejmuje jego identyfikator
+    // Wewnątrz compute() wykonujemy tylko krótkie operacje bez blokad listy - reszta rejestracji w registered(), już po compute()
+    // Zdarzenie ADDED publikujemy tutaj: subskrybent musi je otrzymać przed pierwszą zmianą produktu (zapis do bufora nie blokuje)
+
+    private StockItem register(StockItem item, StockItem inStock, boolean withReservations){
+
+        if(inStock == item){
+
+            return item;
+        }
+
+        int id;
+
+        item.history = history;
+
+        if(inStock != null){
+
+            id = inStock.getId();
+
+            // Migawki starsze od zastąpienia produktu widzą poprzedni obiekt (pola ustawiamy przed zapisem do tablicy items)
+
+            long replacedAt = history.recordReplacement();
+
+            inStock.retire(item, withReservations);
+            inStock.setListener(null);
+
+            if(replacedAt != 0){
+
+                item.replaced = inStock;
+                item.replacedAt = replacedAt;
+            }
+
+        } else {
+
+            id = nextId.getAndIncrement();
+        }
+
+        item.setId(id);
+
+        publish(StockEvent.Type.ADDED, id, item.getQuantityInStock(), item.getReservedQuantity(), item.getPriceInMinorUnits());
+
+        item.setListener(changes);
+        store(id, item);
+
+        return item;
+    }
+
+    // Druga część rejestracji - po compute(), bez blokady klucza
+    // Do tej chwili zmiany nowego produktu nie są jeszcze wliczone do wartości magazynu ani indeksów - add() odczytuje aktualny stan
+
+    private void registered(StockItem item, StockItem inStock){
+
+        if(inStock == item){
+
+            return;
+        }
+
+        // Rekord dodania produktu może trafić do dziennika po rekordach jego zmian - odtwarzanie pomija zmiany nieznanego produktu,
+        // a rekord dodania zawiera stan odczytany później niż te zmiany
+
+        StockJournal currentJournal = journal;
+
+        if(currentJournal != null){
+
+            currentJournal.itemAdded(item);
+        }
+
+        if(inStock != null){
+
+            valuation.remove(inStock);
+
+            if(index != null){
+
+                index.remove(inStock);
+            }
+        }
+
+        valuation.add(item);
+
+        if(index != null){
+
+            index.add(item);
+        }
+
+        if(bulkLoads.get() == 0){
+
+            publishPrice(item);
+        }
+
+        // Oczekujący na poprzedni produkt o tej nazwie czekają teraz na nowy produkt (mógł przynieść towar)
+
+        BackorderQueue queue = item.backorders;
+
+        if((queue != null) && !queue.isEmpty()){
+
+            queue.drain(item);
+        }
+    }
+
+    // Zapis produktu do tablicy bez blokady - jeśli w tym czasie trwało powiększanie tablicy, kopia mogła pominąć nasz zapis
+    // Wtedy czekamy na koniec powiększania (growLock) i zapisujemy produkt ponownie, już do nowej tablicy
+
+    private void store(int id, StockItem item){
+
+        while(true){
+
+            StockItem[] current = items;
+
+            if(id >= current.length){
+
+                grow(id + 1);
+
+                continue;
+            }
+
+            StockSnapshot.ITEMS.setVolatile(current, id, item);
+
+            if(!resizing && (items == current)){
+
+                return;
+            }
+
+            synchronized(growLock){
+
+                // Powiększanie zakończone - kolejny obieg pętli zapisze produkt do nowej tablicy
+            }
+        }
+    }
+
+    private void grow(int capacity){
+
+        synchronized(growLock){
+
+            StockItem[] current = items;
+
+            if(current.length >= capacity){
+
+                return;
+            }
+
+            resizing = true;
+            items = Arrays.copyOf(current, Math.max(capacity, current.length * 2));
+            resizing = false;
+        }
+    }
+
+    // Reakcja na zmiany produktów znajdujących się na liście
+
+    private class ItemChanges implements StockItemListener {
+
+        @Override
+        public void stockChanged(StockItem item, int quantityDelta, int reservedDelta) {
+
+            valuation.refresh(item);
+
+            StockIndex currentIndex = index;
+
+            if(currentIndex != null){
+
+                currentIndex.stockChanged(item);
+            }
+
+            StockJournal currentJournal = journal;
+
+            if(currentJournal != null){
+
+                currentJournal.stockChanged(item, quantityDelta, reservedDelta);
+            }
+
+            StockEvent.Type type;
+
+            if(reservedDelta == 0){
+
+                type = StockEvent.Type.ADJUSTED;
+
+            } else if(quantityDelta == 0){
+
+                type = reservedDelta > 0 ? StockEvent.Type.RESERVED : StockEvent.Type.UNRESERVED;
+
+            } else {
+
+                type = quantityDelta < 0 ? StockEvent.Type.FINALIZED : StockEvent.Type.RESTORED;
+            }
+
+            publish(type, item.getId(), quantityDelta, reservedDelta, 0);
+
+            // Towar wrócił do puli (dostawa albo cofnięcie rezerwacji) - obsługa oczekujących rezerwacji
+
+            boolean freed = ((quantityDelta > 0) && (reservedDelta == 0)) || ((quantityDelta == 0) && (reservedDelta < 0));
+            BackorderQueue queue = item.backorders;
+
+            if(freed && (queue != null) && !queue.isEmpty()){
+
+                queue.drain(item);
+            }
+        }
+
+        // Rezerwacja produktu "gorącego" - wartość magazynu i indeksy ilości liczą taki produkt przy odczycie (StockValuation.markHot(), StockIndex.markHot())
+        // Odświeżenie przy każdej rezerwacji zmieniałoby wspólny licznik produktu (StockValuation.refresh()), którego przedziały mają unikać
+
+        @Override
+        public void stockReservedFromStripe(StockItem item, int quantity) {
+
+            StockJournal currentJournal = journal;
+
+            if(currentJournal != null){
+
+                currentJournal.stockChanged(item, 0, quantity);
+            }
+
+            publish(StockEvent.Type.RESERVED, item.getId(), 0, quantity, 0);
+        }
+
+        @Override
+        public void stockRebalanced(StockItem item) {
+
+            valuation.refresh(item);
+
+            StockIndex currentIndex = index;
+
+            if(currentIndex != null){
+
+                currentIndex.stockChanged(item);
+            }
+        }
+
+        // Dziennik po błędzie zapisu - zmiana produktu jest odrzucana, zanim cokolwiek zmieni (StockJournal.checkWritable())
+
+        @Override
+        public void checkWritable(StockItem item) {
+
+            StockJournal currentJournal = journal;
+
+            if(currentJournal != null){
+
+                currentJournal.checkWritable();
+            }
+        }
+
+        @Override
+        public void reserveContended(StockItem item, int retries) {
+
+            WarehouseMetrics currentMetrics = metrics;
+
+            if(currentMetrics != null){
+
+                currentMetrics.recordContention(retries);
+            }
+        }
+
+        @Override
+        public void priceChanged(StockItem item, long oldPrice, long newPrice) {
+
+            valuation.refresh(item);
+
+            StockIndex currentIndex = index;
+
+            if(currentIndex != null){
+
+                currentIndex.refresh(item);
+            }
+            publishPrice(item);
+            publish(StockEvent.Type.PRICE_CHANGED, item.getId(), 0, 0, newPrice);
+
+            StockJournal currentJournal = journal;
+
+            if(currentJournal != null){
+
+                currentJournal.priceChanged(item);
+            }
+        }
+    }
+
+    // Podłączenie dziennika - wszystkie produkty znajdujące się już na liście zostają w nim zapisane
+    // Od tej chwili każda zmiana produktu dopisuje rekord do dziennika (odtworzenie stanu - StockJournal.recover())
+    // Gdy któryś produkt ma nazwę zbyt długą dla dziennika, dziennik nie zostaje podłączony (IllegalArgumentException)
+
+    public synchronized void attachJournal(StockJournal journal){
+
+        for(int id = 0; id < nextId.get(); id++){
+
+            StockItem item = get(id);
+
+            if(item != null){
+
+                StockJournal.checkRecord(item);
+            }
+        }
+
+        this.journal = journal;
+
+        // Produkt rejestrowany w tej chwili: albo registered() odczyta już nowy dziennik, albo ta pętla znajdzie go w tablicy
+
+        for(int id = 0; id < nextId.get(); id++){
+
+            StockItem item = get(id);
+
+            if(item != null){
+
+                journal.itemAdded(item);
+            }
+        }
+    }
+
+    // Strumień zmian - każda zmiana produktu (stanu lub ceny) trafia do bufora subskrybenta jako jedno zdarzenie
+    // capacity - rozmiar bufora; gdy subskrybent nie nadąża, nowe zdarzenia są pomijane (StockEventStream.droppedEvents())
+
+    public synchronized StockEventStream subscribe(int capacity){
+
+        StockEventStream stream = new StockEventStream(this, capacity);
+        StockEventStream[] current = subscribers;
+        StockEventStream[] updated = Arrays.copyOf(current, current.length + 1);
+
+        updated[current.length] = stream;
+        subscribers = updated;
+
+        return stream;
+    }
+
+    synchronized void unsubscribe(StockEventStream stream){
+
+        StockEventStream[] current = subscribers;
+
+        for(int i = 0; i < current.length; i++){
+
+            if(current[i] == stream){
+
+                StockEventStream[] updated = new StockEventStream[current.length - 1];
+
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+
+                subscribers = updated;
+
+                return;
+            }
+        }
+    }
+
+    private void publish(StockEvent.Type type, int itemId, int quantityDelta, int reservedDelta, long priceInMinorUnits){
+
+        for(StockEventStream stream : subscribers){
+
+            stream.publish(type, itemId, quantityDelta, reservedDelta, priceInMinorUnits);
+        }
+    }
+
+    // Nowa wersja cennika - wersje tworzy jeden wątek naraz (priceLock), zawsze na podstawie najnowszej (PriceSnapshot dopisuje nowe produkty w miejscu)
+    // Cenę odczytujemy z produktu pod blokadą - ostatnia publikacja zawiera najnowszą cenę; czytelnicy cennika nie używają blokady
+
+    private void publishPrice(StockItem item){
+
+        int id = item.getId();
+
+        // W trakcie addAll() cennik może jeszcze nie zawierać produktu - nowa wersja powstanie na końcu ładowania
+
+        if((id < 0) || (bulkLoads.get() != 0)){
+
+            return;
+        }
+
+        synchronized(priceLock){
+
+            if((get(id) == item) && (bulkLoads.get() == 0)){
+
+                prices = prices.withItem(id, item.getName(), item.getPriceInMinorUnits());
+            }
+        }
+    }
+
+    // Włączenie indeksów - wszystkie produkty znajdujące się już na liście trafiają do indeksów
+    // Od tej chwili itemsBelowAvailable(), itemsInPriceRange(), mostAvailable() oraz mostExpensive() nie przechodzą po całej liście
+
+    public synchronized void enableIndexes(){
+
+        if(index != null){
+
+            return;
+        }
+
+        // Indeks publikujemy przed dodaniem produktów - zmiana w trakcie dodawania zostanie przeliczona przez StockIndex.refresh()
+
+        index = new StockIndex();
+
+        for(int id = 0; id < nextId.get(); id++){
+
+            StockItem item = get(id);
+
+            if(item != null){
+
+                index.add(item);
+            }
+        }
+    }
+
+    // Produkty, których dostępna ilość jest mniejsza od progu (np. do uzupełnienia) - od najmniejszej ilości
+    // Z indeksami koszt O((d + 1) log n + k) - d to liczba produktów zmienionych od poprzedniego zapytania o ilość (StockIndex)
+
+    public List<StockItem> itemsBelowAvailable(int threshold){
+
+        StockIndex currentIndex = index;
+
+        if(currentIndex != null){
+
+            return currentIndex.itemsBelowAvailable(threshold);
+        }
+
+        List<StockItem> result = new ArrayList<>();
+
+        for(StockItem item : list.values()){
+
+            if(item.getAvailableQuantity() < threshold){
+
+                result.add(item);
+            }
+        }
+
+        result.sort(Comparator.comparingInt(StockItem::getAvailableQuantity).thenComparingInt(StockItem::getId));
+
+        return result;
+    }
+
+    // Produkty o cenie z przedziału <lowest, highest> - od najtańszego
+
+    public List<StockItem> itemsInPriceRange(double lowest, double highest){
+
+        StockIndex currentIndex = index;
+
+        if(currentIndex != null){
+
+            return currentIndex.itemsInPriceRange(lowest, highest);
+        }
+
+        List<StockItem> result = new ArrayList<>();
+
+        for(StockItem item : list.values()){
+
+            if((item.getPrice() >= lowest) && (item.getPrice() <= highest)){
+
+                result.add(item);
+            }
+        }
+
+        result.sort(Comparator.comparingDouble(StockItem::getPrice).thenComparingInt(StockItem::getId));
+
+        return result;
+    }
+
+    // Produkty z największą dostępną ilością (co najwyżej count produktów) - z indeksami koszt jak w itemsBelowAvailable()
+
+    public List<StockItem> mostAvailable(int count){
+
+        StockIndex currentIndex = index;
+
+        if(currentIndex != null){
+
+            return currentIndex.mostAvailable(count);
+        }
+
+        return top(Comparator.comparingInt(StockItem::getAvailableQuantity).thenComparingInt(StockItem::getId), count);
+    }
+
+    // Najdroższe produkty (co najwyżej count produktów)
+
+    public List<StockItem> mostExpensive(int count){
+
+        StockIndex currentIndex = index;
+
+        if(currentIndex != null){
+
+            return currentIndex.mostExpensive(count);
+        }
+
+        return top(Comparator.comparingDouble(StockItem::getPrice).thenComparingInt(StockItem::getId), count);
+    }
+
+    private List<StockItem> top(Comparator<StockItem> order, int count){
+
+        List<StockItem> result = new ArrayList<>(list.values());
+
+        result.sort(order.reversed());
+
+        return new ArrayList<>(result.subList(0, Math.max(0, Math.min(count, result.size()))));
+    }
+
+    // Odtwarzanie dziennika (StockJournal.recover()) - kolejny nowy produkt dostanie identyfikator co najmniej id
+    // Identyfikatory pominięte w zapisanej numeracji pozostają puste (get() zwraca null) - tak jak na liście, z której pochodzi dziennik
+
+    void skipIds(int id){
+
+        nextId.accumulateAndGet(id, Math::max);
+    }
+
+    // Liczba nadanych identyfikatorów - produkt rejestrowany w tej chwili może jeszcze nie być w tablicy (get() zwraca null)
+
+    int itemCount(){
+
+        return nextId.get();
+    }
+
+    // Wartość towaru dostępnego oraz zarezerwowanego - odczyt w czasie stałym (bez przechodzenia po liście)
+
+    public double totalAvailableValue(){
+
+        return (double) valuation.totalAvailableValue() / StockItem.MINOR_UNITS;
+    }
+
+    public double totalReservedValue(){
+
+        return (double) valuation.totalReservedValue() / StockItem.MINOR_UNITS;
+    }
+
+    // Te same wartości w groszach - dokładnie, bez zaokrągleń
+
+    public long totalAvailableValueInMinorUnits(){
+
+        return valuation.totalAvailableValue();
+    }
+
+    public long totalReservedValueInMinorUnits(){
+
+        return valuation.totalReservedValue();
+    }
+
+    // Wartość towaru dostępnego przeliczona od nowa (np. kontrola wartości utrzymywanej na bieżąco) - w groszach
+    // Produkty przetwarzamy segmentami cennika (PriceSnapshot): ceny są już w tablicy long[], ilości zbieramy do tablicy int[]
+    // Mnożenie i sumowanie wykonuje MoneyMath.dotProduct() - prosta pętla na tablicach, którą JIT może wektoryzować
+
+    public long computeAvailableValueInMinorUnits(){
+
+        PriceSnapshot snapshot = prices;
+        StockItem[] current = items;
+        int count = Math.min(snapshot.idLimit(), current.length);
+        int[] quantities = new int[PriceSnapshot.SEGMENT_SIZE];
+        long total = 0;
+
+        for(int from = 0; from < count; from += PriceSnapshot.SEGMENT_SIZE){
+
+            int length = Math.min(PriceSnapshot.SEGMENT_SIZE, count - from);
+
+            for(int i = 0; i < length; i++){
+
+                StockItem item = current[from + i];
+
+                quantities[i] = item != null ? item.getAvailableQuantity() : 0;
+            }
+
+            total += MoneyMath.dotProduct(snapshot.segment(from), quantities, 0, length);
+        }
+
+        return total;
+    }
+
+    // Domyślne granice histogramu dostępnych ilości oraz liczba produktów o największej wartości (analyze())
+
+    private static final int[] DEFAULT_AVAILABILITY_BOUNDS = {1, 10, 100, 1_000, 10_000, 100_000};
+    private static final int DEFAULT_TOP = 10;
+
+    public StockStatistics analyze(){
+
+        return analyze(DEFAULT_AVAILABILITY_BOUNDS, DEFAULT_TOP);
+    }
+
+    // Statystyki całej listy liczone równolegle (StockAnalytics, ForkJoinPool.commonPool()) - bez blokad i bez wspólnych liczników
+    // Stan każdego produktu odczytujemy raz (ilość i rezerwacja z tego samego momentu), ale różne produkty w różnych chwilach
+    // availabilityBounds - rosnące granice przedziałów histogramu, topK - liczba produktów o największej wartości dostępnego towaru
+
+    public StockStatistics analyze(int[] availabilityBounds, int topK){
+
+        for(int i = 1; i < availabilityBounds.length; i++){
+
+            if(availabilityBounds[i] <= availabilityBounds[i - 1]){
+
+                throw new IllegalArgumentException("Histogram bounds must be increasing : " + Arrays.toString(availabilityBounds));
+            }
+        }
+
+        if(topK < 0){
+
+            throw new IllegalArgumentException("Negative top count : " + topK);
+        }
+
+        PriceSnapshot snapshot = prices;
+        StockItem[] current = items;
+        int count = Math.min(snapshot.idLimit(), current.length);
+        int[] bounds = availabilityBounds.clone();
+        StockAnalytics task = new StockAnalytics(current, snapshot, bounds, topK, 0, count);
+
+        // Mała lista - bez przekazywania zadania do puli wątków
+
+        StockAnalytics.Accumulator result = count <= StockAnalytics.LEAF_SIZE ? task.compute() : ForkJoinPool.commonPool().invoke(task);
+
+        return new StockStatistics(result, bounds, current);
+    }
+
+    // Podział dostępnego towaru produktu na przedziały (np. produkt w promocji rezerwowany przez wiele wątków naraz) - StockStripes
+    // Rezerwacje korzystają z puli przedziału wątku, a licznik główny zmieniają tylko przy uzupełnianiu puli
+    // Sprzedaż i cofnięcie rezerwacji nadal zmieniają licznik główny, a odczyty ilości sumują pule wszystkich przedziałów
+    // Wartość magazynu (totalAvailableValue(), totalReservedValue()) oraz zapytania o ilość (itemsBelowAvailable(), mostAvailable()) liczą taki produkt przy każdym odczycie
+    // Dzięki temu widzą rezerwacje z pul przedziałów od razu, ale każdy produkt "gorący" zwiększa koszt tych odczytów - to rozwiązanie dla nielicznych produktów
+    // Zwracamy false, gdy produktu nie ma na liście albo jest już podzielony
+
+    public synchronized boolean markHot(String item, int stripes){
+
+        StockItem inStock = list.get(item);
+
+        if((inStock == null) || !inStock.enableStripes(stripes)){
+
+            return false;
+        }
+
+        valuation.markHot(inStock);
+
+        StockIndex currentIndex = index;
+
+        if(currentIndex != null){
+
+            currentIndex.markHot(inStock);
+        }
+
+        return true;
+    }
+
+    // Metody sprzedające produkt, rezerwujące oraz cofące rezerwacje danego produktu - działają według schematu - podajemy nazwy produktu oraz ilość
+    // Dlaczego podajemy nazwę - lista produktów przechowuje wszystkie produkty - kluczem jest nazwa produktu
+
+    public int sellStock(String item, int quantity){
+
+        return sellStock(list.get(item), quantity);
+    }
+
+    public int sellStock(int itemId, int quantity){
+
+        return sellStock(get(itemId), quantity);
+    }
+
+    private int sellStock(StockItem inStock, int quantity){
+
+        checkJournal();
+
+        WarehouseMetrics currentMetrics = metrics;
+        long start = currentMetrics != null ? System.nanoTime() : 0;
+        int sold = 0;
+
+        if((inStock != null) && (quantity > 0)){
+
+            // Zwracamy wynik działania metody finalizeStock()
+            // Ja bym trochę zmodyfikował to rozwiązanie i umieścił walidację (dodatnia ilość w metodzie finalizeStock())
+            // Czyli umieściłbym to poziom niżej
+
+            sold = inStock.finalizeStock(quantity);
+
+        }
+
+        if(currentMetrics != null){
+
+            currentMetrics.record(WarehouseMetrics.Operation.SELL, (inStock != null) && (quantity > 0), sold, start);
+        }
+
+        return sold;
+    }
+
+    // Sprzedaż całego koszyka - po zakończeniu albo wszystkie pozycje są sprzedane, albo żadna
+    // To gwarancja wyniku, a nie izolacja: pozycje sprzedajemy po kolei, więc inne wątki mogą na chwilę zobaczyć część koszyka jako sprzedaną
+    // Najpierw sprawdzamy wszystkie pozycje (produkt istnieje i ma zarezerwowaną wystarczającą ilość) - dopiero potem cokolwiek sprzedajemy
+    // Pozycja może się nie powieść mimo sprawdzenia tylko wtedy, gdy inny wątek w międzyczasie zużyje tę samą rezerwację
+    // Wtedy wcześniej sprzedane pozycje wracają do magazynu jako zarezerwowane (restoreStock()) - to jedyne okno kompensacji
+    // Koszyk przechowuje produkty w TreeMap - kolejność pozycji wynika z metody compareTo() (kolejność nazw)
+    // Dzięki stałej kolejności dwa równoległe zakupy zawsze przechodzą po produktach w ten sam sposób
+
+    public CheckoutResult checkout(Basket basket){
+
+        checkJournal();
+
+        WarehouseMetrics currentMetrics = metrics;
+        long start = currentMetrics != null ? System.nanoTime() : 0;
+
+        Map<StockItem, Integer> lines = basket.Items();
+
+        StockItem[] resolved = new StockItem[lines.size()];
+        int[] quantities = new int[lines.size()];
+        int index = 0;
+
+        for(Map.Entry<StockItem, Integer> line : lines.entrySet()){
+
+            // Produkt w koszyku mógł zostać zastąpiony w magazynie nowym obiektem (addStock()) - dlatego szukamy go po identyfikatorze
+            // Nowy obiekt przejmuje identyfikator poprzedniego, więc odczyt z tablicy zwraca aktualny produkt bez liczenia hashCode() nazwy
+            // Identyfikator mógł jednak zostać nadany przez inną listę - gdy nazwa się nie zgadza, szukamy produktu po nazwie (tak jak BasketStore.encode())
+
+            StockItem inStock = line.getKey().getId() >= 0 ? get(line.getKey().getId()) : null;
+
+            if((inStock == null) || !inStock.getName().equals(line.getKey().getName())){
+
+                inStock = list.get(line.getKey().getName());
+            }
+
+            int quantity = line.getValue();
+
+            // Sprawdzenie przed sprzedażą - pozycja bez produktu lub bez wystarczającej rezerwacji kończy zakup bez zmiany stanu magazynu
+
+            if((inStock == null) || (inStock.getReservedQuantity() < quantity)){
+
+                if(currentMetrics != null){
+
+                    currentMetrics.record(WarehouseMetrics.Operation.CHECKOUT, inStock != null ? WarehouseMetrics.Outcome.OUT_OF_STOCK : WarehouseMetrics.Outcome.FAILURE, start);
+                }
+
+                return CheckoutResult.failed(line.getKey().getName());
+            }
+
+            resolved[index] = inStock;
+            quantities[index] = quantity;
+            index++;
+        }
+
+        // Rezerwacje z terminem, z których pochodzą pozycje koszyka, wstrzymujemy na czas sprzedaży (Reservation.hold()) - wygaśnięcie po sprzedaży zwolniłoby cudzy towar
+        // Rezerwacja, która zdążyła wygasnąć (albo została anulowana), kończy zakup niepowodzeniem - jej towar wrócił już do puli
+        // Zatwierdzamy je dopiero wtedy, gdy wszystkie pozycje są sprzedane - po nieudanym zakupie znowu oczekują (z tym samym terminem)
+
+        List<Reservation> held = new ArrayList<>();
+
+        for(Reservation reservation : basket.reservations()){
+
+            if(reservation.hold()){
+
+                held.add(reservation);
+
+            } else if(!reservation.isCommitted()){
+
+                unhold(held);
+
+                if(currentMetrics != null){
+
+                    currentMetrics.record(WarehouseMetrics.Operation.CHECKOUT, WarehouseMetrics.Outcome.OUT_OF_STOCK, start);
+                }
+
+                StockItem item = reservation.getItem();
+
+                return CheckoutResult.failed(item != null ? item.getName() : "#" + reservation.itemId());
+            }
+        }
+
+        CheckoutResult result = finalizeLines(resolved, quantities, index);
+
+        if(result.isSuccessful()){
+
+            for(Reservation reservation : held){
+
+                reservation.commitHeld();
+            }
+
+            basket.clearBasket();
+
+        } else {
 
-        this.list = new LinkedHashMap<>();
+            unhold(held);
+        }
+
+        if(currentMetrics != null){
+
+            currentMetrics.record(WarehouseMetrics.Operation.CHECKOUT, result.isSuccessful() ? WarehouseMetrics.Outcome.SUCCESS : WarehouseMetrics.Outcome.OUT_OF_STOCK, start);
+        }
+
+        return result;
     }
 
-    // Do wnętrza klasy przekazujemy referencje do obiektu
+    private static void unhold(List<Reservation> held){
 
-    public int addStock(StockItem item){
+        for(Reservation reservation : held){
 
-        if(item != null){
+            reservation.unhold();
+        }
+    }
+
+    // Sprzedaż koszyka kompaktowego (CompactBasket) - te same gwarancje co checkout(Basket)
+    // Pozycje są już identyfikatorami produktów tej listy - nie porównujemy obiektów ani nazw, tylko odczytujemy tablicę items
+    // Pozycje sprzedajemy w kolejności identyfikatorów (identyfikator nie zmienia się przy zastąpieniu produktu), więc kolejność jest stała jak w TreeMap
+
+    public CheckoutResult checkout(CompactBasket basket){
+
+        checkJournal();
+
+        WarehouseMetrics currentMetrics = metrics;
+        long start = currentMetrics != null ? System.nanoTime() : 0;
+
+        long[] lines = basket.sortedLines();
+        StockItem[] resolved = new StockItem[lines.length];
+        int[] quantities = new int[lines.length];
+
+        for(int i = 0; i < lines.length; i++){
 
-            StockItem inStock = list.getOrDefault(item.getName(), item);
+            int itemId = CompactBasket.itemId(lines[i]);
+            int quantity = CompactBasket.quantity(lines[i]);
+            StockItem inStock = get(itemId);
 
-            if(inStock != item){
+            if((inStock == null) || (inStock.getReservedQuantity() < quantity)){
 
-                item.adjustStock(inStock.getQuantityInStock());
-                item.reserveStock(inStock.getReservedQuantity());
+                if(currentMetrics != null){
+
+                    currentMetrics.record(WarehouseMetrics.Operation.CHECKOUT, inStock != null ? WarehouseMetrics.Outcome.OUT_OF_STOCK : WarehouseMetrics.Outcome.FAILURE, start);
+                }
+
+                return CheckoutResult.failed(inStock != null ? inStock.getName() : "#" + itemId);
             }
 
-            list.put(item.getName(), item);
+            resolved[i] = inStock;
+            quantities[i] = quantity;
+        }
 
-            // Zwrócenie ilości dostępnego towaru
+        CheckoutResult result = finalizeLines(resolved, quantities, lines.length);
 
-            return item.getAvailableQuantity();
+        if(result.isSuccessful()){
+
+            basket.clearBasket();
         }
 
-        return 0;
+        if(currentMetrics != null){
+
+            currentMetrics.record(WarehouseMetrics.Operation.CHECKOUT, result.isSuccessful() ? WarehouseMetrics.Outcome.SUCCESS : WarehouseMetrics.Outcome.OUT_OF_STOCK, start);
+        }
+
+        return result;
     }
 
-    public int addStockSecondVersion(StockItem item){
+    // Druga faza zakupu - sprzedaż sprawdzonych pozycji po kolei, a gdy któraś się nie powiedzie - zwrot wcześniej sprzedanych (restoreStock())
 
-        if(item != null) {
+    private static CheckoutResult finalizeLines(StockItem[] resolved, int[] quantities, int lines){
+
+        int units = 0;
+        long totalCost = 0;
+
+        for(int i = 0; i < lines; i++){
+
+            StockItem inStock = resolved[i];
+            int quantity = quantities[i];
+
+            if(inStock.finalizeStock(quantity) != quantity){
 
-            StockItem inStock = list.get(item.getName());
+                for(int j = 0; j < i; j++){
 
-            if (inStock != null) {
+                    resolved[j].restoreStock(quantities[j]);
+                }
 
-                item.adjustStock(inStock.getAvailableQuantity());
+                return CheckoutResult.failed(inStock.getName());
             }
 
-            list.put(item.getName(), item);
+            units += quantity;
+            totalCost += inStock.getPriceInMinorUnits() * quantity;
+        }
 
-            return item.getAvailableQuantity();
+        return CheckoutResult.sold(lines, units, totalCost);
+    }
+
+    public int reserveStock(String item, int quantity){
+
+        return reserveStock(list.get(item), quantity);
+    }
+
+    public int reserveStock(int itemId, int quantity){
+
+        return reserveStock(get(itemId), quantity);
+    }
+
+    private int reserveStock(StockItem inStock, int quantity){
+
+        WarehouseMetrics currentMetrics = metrics;
+        long start = currentMetrics != null ? System.nanoTime() : 0;
+        int reserved = 0;
+
+        if((inStock != null) && (quantity > 0)){
+
+            // Tutaj również bym przesunął funkcjonalność walidacji (wartości dodatnie ilości)
+
+            reserved = inStock.reserveStock(quantity);
         }
 
-        return 0;
+        if(currentMetrics != null){
+
+            currentMetrics.record(WarehouseMetrics.Operation.RESERVE, (inStock != null) && (quantity > 0), reserved, start);
+        }
+
+        return reserved;
+
     }
 
+    // Rezerwacja potwierdzona przez dziennik - metoda wraca dopiero wtedy, gdy rekord rezerwacji znajdzie się na dysku (StockJournal.awaitDurable())
+    // Gdy zapis dziennika się nie powiódł, rezerwacja zostaje cofnięta i metoda zwraca 0 - bez dziennika działa tak jak reserveStock()
 
-    public int addStockThirdVersion(StockItem item){
+    public int reserveStockDurably(String item, int quantity){
 
-        // Tworzenie produktów (i dodawanie tych produktów) - taką możliwość bym umieścił tylko w tej klasie (zastosowanie odpowiednich mechanizmów pozwalających na uzyskanie takiego efektu)
+        StockItem inStock = list.get(item);
+        int reserved = reserveStock(inStock, quantity);
+        StockJournal currentJournal = journal;
 
+        if((reserved > 0) && (currentJournal != null)){
 
-        if(item == null){
+            try {
 
-            return 0;
+                currentJournal.awaitDurable();
+
+            } catch(IOException e){
+
+                inStock.unreserveStock(reserved);
+
+                return 0;
+            }
         }
 
-        StockItem inStock = list.get(item.getName());
+        return reserved;
+    }
+
+    // Rezerwacja całego zamówienia w jednym przebiegu - każda pozycja jest wyszukiwana tylko raz
+    // Policy.PARTIAL - każda pozycja rezerwowana niezależnie, Policy.ALL_OR_NOTHING - jedna nieudana pozycja cofa pozostałe
+    // Wynik (a także znalezione produkty - dla Basket.addAll()) trafia do przekazanego obiektu BatchReservation
+
+    public BatchReservation reserveAll(Map<String, Integer> order, BatchReservation.Policy policy){
 
-        if(inStock == null){
+        return reserveAll(order, policy, new BatchReservation(order.size()));
+    }
 
-            list.put(item.getName(), item); // Jeśli wcześniej produkt nie istniał to wtedy - dodajemy go do mapy
+    public BatchReservation reserveAll(Map<String, Integer> order, BatchReservation.Policy policy, BatchReservation result){
 
-            return item.getAvailableQuantity();
+        result.reset(order.size());
+
+        boolean failed = false;
+
+        for(Map.Entry<String, Integer> line : order.entrySet()){
+
+            String name = line.getKey();
+            Integer quantity = line.getValue();
+            StockItem inStock = list.get(name);
+
+            if(inStock == null){
+
+                result.addLine(name, null, quantity != null ? quantity : 0, 0, BatchReservation.Outcome.UNKNOWN_ITEM);
+                failed = true;
+
+            } else if((quantity == null) || (quantity <= 0)){
+
+                result.addLine(name, inStock, quantity != null ? quantity : 0, 0, BatchReservation.Outcome.INVALID_QUANTITY);
+                failed = true;
+
+            } else if(!failed || (policy == BatchReservation.Policy.PARTIAL)){
+
+                int reserved = inStock.reserveStock(quantity);
+
+                result.addLine(name, inStock, quantity, reserved, reserved != 0 ? BatchReservation.Outcome.RESERVED : BatchReservation.Outcome.INSUFFICIENT_STOCK);
+                failed |= reserved == 0;
+
+            } else {
+
+                // Zamówienie i tak zostanie cofnięte - nie rezerwujemy kolejnych pozycji
+
+                result.addLine(name, inStock, quantity, 0, BatchReservation.Outcome.ROLLED_BACK);
+            }
         }
 
-        // Pobieram wartości z przekazanago towaru (które mnie interesują
+        if(failed && (policy == BatchReservation.Policy.ALL_OR_NOTHING)){
 
-        double price = item.getPrice();
-        int quantity = item.getQuantityInStock();
+            result.rollBack();
+        }
 
-        inStock.setPrice(price);
-        inStock.adjustStock(quantity);
+        return result;
+    }
 
-        return inStock.getAvailableQuantity();
+    // Rezerwacja z terminem ważności - jeśli klient porzuci koszyk, towar sam wróci do puli po upływie czasu ttl
+    // Zwraca null, jeśli rezerwacja się nie powiodła (tak jak get() dla nieistniejącego produktu)
+    // Sprzedaż zarezerwowanego towaru: Basket.addToBasket(Reservation) i checkout() albo commit() przed sellStock() - inaczej termin zwolni sprzedane sztuki
+
+    public Reservation reserveStock(String item, int quantity, long ttl, TimeUnit unit){
+
+        return reserveStock(item, quantity, ttl, unit, null);
     }
 
-    // Metody sprzedające produkt, rezerwujące oraz cofące rezerwacje danego produktu - działają według schematu - podajemy nazwy produktu oraz ilość
-    // Dlaczego podajemy nazwę - lista produktów przechowuje wszystkie produkty - kluczem jest nazwa produktu
+    // Parametr onExpiry - np. usunięcie pozycji z koszyka, gdy rezerwacja wygaśnie (wywoływane w wątku obsługi terminów)
 
-    public int sellStock(String item, int quantity){
+    public Reservation reserveStock(String item, int quantity, long ttl, TimeUnit unit, Consumer<Reservation> onExpiry){
 
+        ReservationExpiry currentExpiry = reservationExpiry();
         StockItem inStock = list.get(item);
 
-        if((inStock != null) && (quantity > 0)){
+        if(reserveStock(inStock, quantity) == 0){
 
-            // Zwracamy wynik działania metody finalizeStock()
-            // Ja bym trochę zmodyfikował to rozwiązanie i umieścił walidację (dodatnia ilość w metodzie finalizeStock())
-            // Czyli umieściłbym to poziom niżej
+            return null;
+        }
+
+        Reservation reservation = new Reservation(this, currentExpiry, inStock.getId(), quantity, currentExpiry.deadlineTick(ttl, unit), onExpiry);
+
+        currentExpiry.schedule(reservation);
+
+        return reservation;
+    }
+
+    // Rezerwacja z oczekiwaniem (backorder) - jeśli towaru brakuje, klient czeka w kolejce produktu zamiast ponawiać reserveStock()
+    // Wynik: ilość zarezerwowana od razu albo po pojawieniu się towaru (kolejność FIFO), 0 - nieznany produkt lub ilość niedodatnia
+    // Po upływie terminu future kończy się wyjątkiem TimeoutException (rezerwacji nie ma), cancel() również rezygnuje z oczekiwania
+    // Future oczekującego kończy pula wątków (BackorderQueue) - dalsze kroki (thenAccept() itp.) nie działają w wątku, który zwolnił towar, ani pod jego blokadami
+
+    public CompletableFuture<Integer> reserveOrWait(String item, int quantity, long timeout, TimeUnit unit){
 
-            return inStock.finalizeStock(quantity);
+        StockItem inStock = list.get(item);
+
+        if((inStock == null) || (quantity <= 0)){
 
+            return CompletableFuture.completedFuture(0);
         }
 
-        return 0;
+        // Gdy nikt nie czeka - zwykła rezerwacja, gdy ktoś już czeka - ustawiamy się za nim (bez wyprzedzania kolejki)
+
+        BackorderQueue queue = inStock.backorders;
+
+        if((queue == null) || queue.isEmpty()){
+
+            int reserved = reserveStock(inStock, quantity);
+
+            if(reserved != 0){
+
+                return CompletableFuture.completedFuture(reserved);
+            }
+        }
+
+        // Produkt mógł w międzyczasie zostać zastąpiony (addStock() z tą samą nazwą) - czekamy na aktualny obiekt o tym identyfikatorze
+
+        return backorders(inStock).enqueue(get(inStock.getId()), quantity, timeout, unit);
     }
 
+    // Liczba oczekujących rezerwacji produktu (0 - nieznany produkt)
 
-    public int reserveStock(String item, int quantity){
+    public int waitingReservations(String item){
 
         StockItem inStock = list.get(item);
+        BackorderQueue queue = inStock != null ? inStock.backorders : null;
 
-        if((inStock != null) && (quantity > 0)){
+        return queue != null ? queue.size() : 0;
+    }
 
-            // Tutaj również bym przesunął funkcjonalność walidacji (wartości dodatnie ilości)
+    // Kolejkę tworzy produkt pod swoją blokadą (StockItem.backorderQueue()) - zastąpienie produktu zawsze przenosi istniejącą kolejkę na nowy obiekt
 
-            return inStock.reserveStock(quantity);
+    private BackorderQueue backorders(StockItem item){
+
+        return item.backorderQueue();
+    }
+
+    private ReservationExpiry reservationExpiry(){
+
+        ReservationExpiry current = expiry;
+
+        if((current == null) || closed){
+
+            synchronized(this){
+
+                if(closed){
+
+                    throw new IllegalStateException("Stock list closed");
+                }
+
+                if(expiry == null){
+
+                    expiry = new ReservationExpiry(10, TimeUnit.MILLISECONDS);
+                }
+
+                current = expiry;
+            }
         }
 
-        return 0;
+        return current;
+    }
+
+    // Zamknięcie listy - zatrzymanie wątku obsługi terminów rezerwacji (tworzonego przy pierwszej rezerwacji z terminem)
+    // Rezerwacje z terminem, które jeszcze trwają, nie wygasną już same, a nowe rezerwacje z terminem kończą się wyjątkiem IllegalStateException
+    // Pozostałe operacje listy działają dalej; dziennik (StockJournal) zamyka ten, kto go otworzył
+
+    @Override
+    public void close(){
+
+        ReservationExpiry current;
+
+        synchronized(this){
+
+            closed = true;
+            current = expiry;
+        }
+
+        if(current != null){
 
+            current.shutdown();
+        }
     }
 
-    public int unreservedStock(String item, int quantity){
+    // Usunięcie sztuk z koszyka razem z cofnięciem ich rezerwacji (Main.removeItem(), WarehouseService.removeItem())
+    // Sztuki z rezerwacji z terminem (Basket.addToBasket(Reservation)) zwalnia sama rezerwacja - termin nie zwolni ich już po raz drugi
+    // Zwracamy liczbę zwolnionych sztuk (0 - nieznany produkt albo w koszyku nie ma tylu sztuk)
+
+    public int removeFromBasket(Basket basket, String item, int quantity){
 
         StockItem inStock = list.get(item);
 
+        if((inStock == null) || (basket.removeFromBasket(inStock, quantity) != quantity)){
+
+            return 0;
+        }
+
+        int released = basket.releaseReservations(inStock.getId(), quantity);
+
+        return released < quantity ? released + unreservedStock(inStock, quantity - released) : released;
+    }
+
+    // Zwolnienie całego koszyka (np. koniec sesji - WarehouseService.endSession()) - wszystkie pozycje tak jak w removeFromBasket(), potem koszyk jest pusty
+    // Zwracamy liczbę zwolnionych sztuk
+
+    public int releaseBasket(Basket basket){
+
+        int released = 0;
+
+        for(Map.Entry<StockItem, Integer> line : new ArrayList<>(basket.Items().entrySet())){
+
+            released += removeFromBasket(basket, line.getKey().getName(), line.getValue());
+        }
+
+        basket.clearBasket();
+
+        return released;
+    }
+
+    public int unreservedStock(String item, int quantity){
+
+        return unreservedStock(list.get(item), quantity);
+    }
+
+    public int unreservedStock(int itemId, int quantity){
+
+        return unreservedStock(get(itemId), quantity);
+    }
+
+    private int unreservedStock(StockItem inStock, int quantity){
+
+        WarehouseMetrics currentMetrics = metrics;
+        long start = currentMetrics != null ? System.nanoTime() : 0;
+        int unreserved = 0;
+
         if((inStock != null) && (quantity >0)){
 
-            return inStock.unreserveStock(quantity);
+            unreserved = inStock.unreserveStock(quantity);
 
         }
 
-        return 0;
+        if(currentMetrics != null){
+
+            currentMetrics.record(WarehouseMetrics.Operation.UNRESERVE, (inStock != null) && (quantity > 0), unreserved, start);
+        }
+
+        return unreserved;
+
+    }
+
+    // Włączenie pomiarów operacji sellStock(), reserveStock(), unreservedStock() oraz checkout()
+    // Kolejne wywołanie zwraca ten sam obiekt - można go zarejestrować w JMX (WarehouseMetrics.registerMBean()) albo przekazać do koszyków
+
+    public synchronized WarehouseMetrics enableMetrics(){
+
+        if(metrics == null){
+
+            metrics = new WarehouseMetrics();
+        }
+
+        return metrics;
+    }
+
+    // Aktualne pomiary (null - pomiary wyłączone)
 
+    public WarehouseMetrics getMetrics(){
+
+        return metrics;
+    }
+
+    // Cofnięcie sprzedaży (sellStock() lub checkout()) - towar wraca do magazynu jako zarezerwowany
+    // Używane, gdy sprzedaż była częścią większej operacji, która ostatecznie się nie powiodła (np. zakup koszyka na kilku listach)
+
+    public int restoreStock(String item, int quantity){
+
+        StockItem inStock = list.get(item);
+
+        if((inStock != null) && (quantity > 0)){
+
+            inStock.restoreStock(quantity);
+
+            return quantity;
+        }
+
+        return 0;
     }
 
     public StockItem get(String key){
@@ -142,30 +1443,36 @@ public class StockList {
         return list.get(key);
     }
 
-    // Ciekawe rozwiązanie - zwracamy mapę, której nie można modyfikować (wraz z obiektami)
-    // Obiektów również nie można modyfikować, bo są immutable
-    // Klasa StockItem - przechowywanie mapy StockItem
-    // Jednak chcemy uniknąć zrócenia tej głównej bazowej struktury danych
-    // Chcemy udostępnić te dane w innej formie
+    // Pobranie produktu po identyfikatorze - zwykły odczyt z tablicy (null - jeśli identyfikator nie istnieje)
 
-    public Map<String, Double> PriceList(){
+    public StockItem get(int itemId){
 
-        // Tworzę nową mapę - którą na końcu będzimy zwracać
+        StockItem[] current = items;
 
-        Map<String, Double> prices = new LinkedHashMap<>();
+        return (itemId >= 0) && (itemId < current.length) ? current[itemId] : null;
+    }
 
-        // Obiekt klasy Map.Entry - to jest konstrukcja służąca do przeprowadzenia iteracji na rekordach
+    // Zamiana nazwy na identyfikator (-1 - jeśli produktu nie ma na liście)
 
-        for(Map.Entry<String, StockItem> item : list.entrySet()){
+    public int idOf(String key){
 
-            // Wypełniam nowo utworzoną mapę odpowiednimi danymi pozyskanymi z głównej mapy
-            // Klucz będzie ten sam, a wartość to pobrana cena
+        StockItem inStock = list.get(key);
 
-           prices.put(item.getKey(), item.getValue().getPrice());
+        return inStock != null ? inStock.getId() : -1;
+    }
 
-        }
+    // Ciekawe rozwiązanie - zwracamy mapę, której nie można modyfikować (wraz z obiektami)
+    // Obiektów również nie można modyfikować, bo są immutable
+    // Klasa StockItem - przechowywanie mapy StockItem
+    // Jednak chcemy uniknąć zrócenia tej głównej bazowej struktury danych
+    // Chcemy udostępnić te dane w innej formie
+
+    // Zamiast tworzyć nową mapę przy każdym wywołaniu - zwracamy aktualną migawkę cennika (jeden odczyt pola volatile)
+    // Migawka jest niezmienna, a nowa wersja powstaje tylko wtedy, gdy zmieni się cena (setPrice()) lub lista produktów (addStock())
+
+    public PriceSnapshot PriceList(){
 
-        return Collections.unmodifiableMap(prices);
+        return prices;
     }
 
     public Map<String, StockItem> Items(){
@@ -177,6 +1484,21 @@ public class StockList {
         return Collections.unmodifiableMap(list);
     }
 
+    // Spójny odczyt całej listy w jednym momencie (MVCC) - bez kopiowania produktów i bez blokowania zapisów
+    // Długi raport lub eksport (StockSnapshot.writeReport()) widzi stan z chwili wywołania, choć rezerwacje trwają dalej
+    // Migawkę trzeba zamknąć (close()), najlepiej w bloku try-with-resources
+
+    public StockSnapshot snapshot(){
+
+        // W trakcie addAll() cennik obejmuje tylko produkty sprzed ładowania - migawka też
+        // Cennik odczytujemy przed tablicą produktów - produkt trafia do tablicy (store()) przed publikacją w cenniku
+
+        long version = history.open();
+        PriceSnapshot currentPrices = prices;
+
+        return new StockSnapshot(history, version, items, currentPrices.idLimit(), currentPrices);
+    }
+
     public Map<String, StockItem> ItemsPrevious() {
 
         // W tym przypadku zwróconą kopię można było modyfikować
@@ -186,35 +1508,61 @@ public class StockList {
         return new HashMap<>(list);
     }
 
-    @Override
-    public String toString() {
+    // Raport stanu magazynu zapisywany wiersz po wierszu do dowolnego obiektu Appendable (StringBuilder, Writer...)
+    // Raport nie jest budowany w pamięci - eksport bardzo dużej listy do pliku wymaga stałej ilości pamięci
+    // Zapis do kanału (WritableByteChannel) - przez obiekt Writer, np. new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8))
 
-        String s = "\nStock List\n"; // Ciekawe rozwiązania ze zmienną typu String - Będzie zwracać tekst w kilku linijkach - mamy taką możliwość
+    public void writeReport(Appendable out) throws IOException {
 
-        double totalCost = 0.0;
+        out.append("\nStock List\n");
 
-        for(HashMap.Entry<String, StockItem> item: list.entrySet()){
+        // Wartości w groszach (long) - suma jest dokładna niezależnie od liczby produktów
 
-            StockItem stockItem = item.getValue();
+        long totalCost = 0;
+
+        for(StockItem stockItem : list.values()){
 
             // Decyzja o tym jaką informacje drukujemy, jak obliczamy wartość towaru w magazynie
             // W obecnym rozwiązaniu wartość jest obliczana jako iloczyn ceny oraz ilości, która jest dostępna
 
-            double itemValue = stockItem.getPrice() * stockItem.getAvailableQuantity();
+            int available = stockItem.getAvailableQuantity();
+            long itemValue = stockItem.getPriceInMinorUnits() * available;
 
-            s = s + stockItem + ". There are " + stockItem.getAvailableQuantity() + " in stock (available). Value of item : "; // nie przechodzimy jeszcze do kolejnj lini
+            stockItem.appendTo(out);
+            out.append(". There are ");
+            ReportFormat.appendLong(out, available);
+            out.append(" in stock (available). Value of item : ");
 
             // Odpowiednie formatowanie (do dwóch miejsc po przecinku - częste rozwiązanie)
-            // Wywołanie metody String.format("%.2f", itemValue)
+            // Zamiast String.format("%.2f", itemValue) - własne formatowanie liczby (bez tworzenia obiektów)
 
-            s = s + String.format("%.2f", itemValue) + "\n";
+            ReportFormat.appendFixed2(out, itemValue);
+            out.append('\n');
 
             totalCost += itemValue;
         }
 
-        s += "Total stock value : " + String.format("%.2f", totalCost);
+        out.append("Total stock value : ");
+        ReportFormat.appendFixed2(out, totalCost);
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder s = new StringBuilder();
+
+        try {
+
+            writeReport(s);
+
+        } catch(IOException e){
+
+            // StringBuilder nie zgłasza wyjątku IOException - ta sytuacja nie może wystąpić
+
+            throw new UncheckedIOException(e);
+        }
 
-        return s;
+        return s.toString();
     }
 
 }
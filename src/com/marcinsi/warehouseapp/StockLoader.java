@@ -0,0 +1,567 @@
+package com.marcinsi.warehouseapp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Szybkie ładowanie katalogu produktów z pliku (zamiast tworzenia StockItem i wywołania addStock() dla każdego wiersza jak w Main)
+//
+// Plik mapujemy do pamięci (FileChannel.map()) i dzielimy na części - każdą część analizuje osobny wątek (ForkJoinPool.commonPool())
+// Wyniki części łączymy w kolejności pliku i dodajemy metodą StockList.addAll() - lista jest od razu powiększana do liczby wierszy
+// Powtórzona nazwa działa tak jak addStock(): ilości się sumują, obowiązuje cena z późniejszego wiersza, produkt zostaje na pierwszej pozycji
+//
+// Format CSV: nazwa,cena,ilość - cena z kropką dziesiętną (np. 0.86), pierwsza linia może być nagłówkiem (name,...), linie # to komentarze
+// Format binarny (writeBinary()): nagłówek WHS1, a następnie bloki: długość bloku, liczba rekordów, rekordy
+// Rekord: długość nazwy (2 bajty), nazwa (UTF-8), cena w groszach (long), ilość (int) - bloki pozwalają analizować plik równolegle
+
+public final class StockLoader {
+
+    private static final int MAGIC = 0x57485331;
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    // Część pliku dla jednego wątku - co najmniej 1 MB, najwyżej 256 MB (jedno mapowanie ma limit 2 GB)
+
+    private static final long MIN_CHUNK = 1L << 20;
+    private static final long MAX_CHUNK = 1L << 28;
+    private static final int MAX_LINE = 1 << 16;
+
+    private StockLoader() {
+    }
+
+    public static StockList loadCsv(Path file) throws IOException {
+
+        List<StockItem> rows = parseCsv(file);
+        StockList stockList = new StockList(rows.size());
+
+        stockList.addAll(rows);
+
+        return stockList;
+    }
+
+    // Dodanie produktów z pliku do istniejącej listy - zwracamy liczbę wczytanych wierszy
+
+    public static int loadCsv(Path file, StockList stockList) throws IOException {
+
+        List<StockItem> rows = parseCsv(file);
+
+        stockList.addAll(rows);
+
+        return rows.size();
+    }
+
+    public static StockList loadBinary(Path file) throws IOException {
+
+        List<StockItem> rows = parseBinary(file);
+        StockList stockList = new StockList(rows.size());
+
+        stockList.addAll(rows);
+
+        return stockList;
+    }
+
+    public static int loadBinary(Path file, StockList stockList) throws IOException {
+
+        List<StockItem> rows = parseBinary(file);
+
+        stockList.addAll(rows);
+
+        return rows.size();
+    }
+
+    // Zapis listy w formacie binarnym (nazwa, cena, ilość w magazynie - rezerwacje nie są częścią katalogu)
+
+    public static void writeBinary(StockList stockList, Path file) throws IOException {
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+
+            ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.BIG_ENDIAN);
+            ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+            int records = 0;
+
+            header.putInt(MAGIC).flip();
+            writeFully(channel, header);
+
+            for(StockItem item : stockList.Items().values()){
+
+                byte[] name = item.getName().getBytes(StandardCharsets.UTF_8);
+
+                if(name.length > 0xFFFF){
+
+                    throw new IOException("Item name too long : " + item.getName());
+                }
+
+                if(block.remaining() < 2 + name.length + 12){
+
+                    writeBlock(channel, header, block, records);
+                    records = 0;
+                }
+
+                block.putShort((short) name.length).put(name).putLong(item.getPriceInMinorUnits()).putInt(item.getQuantityInStock());
+                records++;
+            }
+
+            if(records > 0){
+
+                writeBlock(channel, header, block, records);
+            }
+        }
+    }
+
+    private static void writeBlock(FileChannel channel, ByteBuffer header, ByteBuffer block, int records) throws IOException {
+
+        block.flip();
+        header.clear();
+        header.putInt(block.remaining()).putInt(records).flip();
+
+        writeFully(channel, header);
+        writeFully(channel, block);
+
+        block.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+
+        while(buffer.hasRemaining()){
+
+            channel.write(buffer);
+        }
+    }
+
+    // CSV - podział pliku na części bez czytania go (granice części wyrównujemy do końca linii dopiero w wątku analizującym)
+
+    private static List<StockItem> parseCsv(Path file) throws IOException {
+
+        return parseCsv(file, 0);
+    }
+
+    // chunkSize - rozmiar części w bajtach (0 - dobierany do rozmiaru pliku i liczby wątków), mniejsze części np. w testach granic części
+
+    static List<StockItem> parseCsv(Path file, long chunkSize) throws IOException {
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+
+            long size = channel.size();
+            long tasks = Math.max(1, Math.min(size / MIN_CHUNK, ForkJoinPool.getCommonPoolParallelism() * 4L));
+            long chunk = chunkSize > 0 ? chunkSize : Math.min(MAX_CHUNK, (size + tasks - 1) / tasks);
+            List<Callable<List<StockItem>>> parts = new ArrayList<>();
+
+            for(long start = 0; start < size; start += chunk){
+
+                long from = start;
+                long to = Math.min(size, start + chunk);
+
+                parts.add(() -> parseCsvChunk(channel, size, from, to));
+            }
+
+            return runAll(parts);
+        }
+    }
+
+    // Część zawiera wiersze, które zaczynają się w przedziale <from, to) - ostatni wiersz może wychodzić poza przedział
+
+    private static List<StockItem> parseCsvChunk(FileChannel channel, long size, long from, long to) throws IOException {
+
+        long mapStart = from == 0 ? 0 : from - 1;
+        long mapEnd = Math.min(size, to + MAX_LINE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+
+        int position = (int) (from - mapStart);
+        int end = (int) (to - mapStart);
+        int limit = buffer.limit();
+
+        // Poprzednia część zakończyła się w środku wiersza - ten wiersz należy do niej
+
+        if((from > 0) && (buffer.get(0) != '\n')){
+
+            while((position < limit) && (buffer.get(position) != '\n')){
+
+                position++;
+            }
+
+            position++;
+        }
+
+        List<StockItem> rows = new ArrayList<>((int) Math.min(Integer.MAX_VALUE, (to - from) / 16 + 1));
+        byte[] name = new byte[256];
+
+        while(position < end){
+
+            int lineEnd = position;
+
+            while((lineEnd < limit) && (buffer.get(lineEnd) != '\n')){
+
+                lineEnd++;
+            }
+
+            if((lineEnd == limit) && (mapEnd < size)){
+
+                throw new IOException("Line longer than " + MAX_LINE + " bytes at offset " + (mapStart + position));
+            }
+
+            int contentEnd = (lineEnd > position) && (buffer.get(lineEnd - 1) == '\r') ? lineEnd - 1 : lineEnd;
+
+            if((contentEnd > position) && (buffer.get(position) != '#') && !((from == 0) && (position == 0) && isHeader(buffer, contentEnd))){
+
+                int comma = indexOf(buffer, position, contentEnd);
+
+                if(comma < 0){
+
+                    throw invalidRow(mapStart + position);
+                }
+
+                int length = comma - position;
+
+                if(length > name.length){
+
+                    name = new byte[Math.max(length, name.length * 2)];
+                }
+
+                buffer.get(position, name, 0, length);
+
+                int secondComma = indexOf(buffer, comma + 1, contentEnd);
+
+                if((length == 0) || (secondComma < 0)){
+
+                    throw invalidRow(mapStart + position);
+                }
+
+                long price = parsePrice(buffer, comma + 1, secondComma, mapStart + position);
+                long quantity = parseLong(buffer, secondComma + 1, contentEnd, mapStart + position);
+
+                if(quantity > Integer.MAX_VALUE){
+
+                    throw invalidRow(mapStart + position);
+                }
+
+                rows.add(StockItem.ofMinorUnits(new String(name, 0, length, StandardCharsets.UTF_8), price, (int) quantity));
+            }
+
+            position = lineEnd + 1;
+        }
+
+        return rows;
+    }
+
+    private static boolean isHeader(ByteBuffer buffer, int end) {
+
+        byte[] header = "name,".getBytes(StandardCharsets.US_ASCII);
+
+        if(end < header.length){
+
+            return false;
+        }
+
+        for(int i = 0; i < header.length; i++){
+
+            if(Character.toLowerCase(buffer.get(i)) != header[i]){
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, int to) {
+
+        for(int i = from; i < to; i++){
+
+            if(buffer.get(i) == ','){
+
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    // Cena z kropką dziesiętną bezpośrednio w groszach (bez liczby double) - trzecia cyfra po kropce zaokrągla (od 5 w górę)
+    // Cena dodatnia, która po zaokrągleniu dałaby 0 groszy, jest błędem wiersza - tak jak w StockItem.toMinorUnits()
+
+    private static long parsePrice(ByteBuffer buffer, int from, int to, long rowOffset) throws IOException {
+
+        long units = 0;
+        int fraction = -1;
+        int digits = 0;
+        boolean positive = false;
+
+        for(int i = from; i < to; i++){
+
+            byte b = buffer.get(i);
+
+            if((b == '.') && (fraction < 0)){
+
+                fraction = 0;
+
+            } else if((b >= '0') && (b <= '9')){
+
+                positive |= b != '0';
+
+                if(fraction < 0){
+
+                    units = units * 10 + (b - '0');
+                    digits++;
+
+                } else if(fraction < 2){
+
+                    units = units * 10 + (b - '0');
+                    fraction++;
+
+                } else if(fraction == 2){
+
+                    units += b >= '5' ? 1 : 0;
+                    fraction++;
+                }
+
+            } else {
+
+                throw invalidRow(rowOffset);
+            }
+        }
+
+        if((digits == 0) || (digits > 16)){
+
+            throw invalidRow(rowOffset);
+        }
+
+        for(int i = Math.max(fraction, 0); i < 2; i++){
+
+            units *= 10;
+        }
+
+        if(positive && (units == 0)){
+
+            throw new IOException("Price below the minor unit at offset " + rowOffset);
+        }
+
+        return units;
+    }
+
+    private static long parseLong(ByteBuffer buffer, int from, int to, long rowOffset) throws IOException {
+
+        if((from == to) || (to - from > 18)){
+
+            throw invalidRow(rowOffset);
+        }
+
+        long value = 0;
+
+        for(int i = from; i < to; i++){
+
+            byte b = buffer.get(i);
+
+            if((b < '0') || (b > '9')){
+
+                throw invalidRow(rowOffset);
+            }
+
+            value = value * 10 + (b - '0');
+        }
+
+        return value;
+    }
+
+    private static IOException invalidRow(long offset) {
+
+        return new IOException("Invalid row at offset " + offset + " (expected name,price,quantity)");
+    }
+
+    // Format binarny - najpierw odczytujemy tylko nagłówki bloków, potem łączymy sąsiednie bloki w części dla wątków
+
+    private static List<StockItem> parseBinary(Path file) throws IOException {
+
+        return parseBinary(file, 0);
+    }
+
+    static List<StockItem> parseBinary(Path file, long chunkSize) throws IOException {
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(8);
+
+            if((size < 4) || (readAt(channel, header, 0, 4).getInt() != MAGIC)){
+
+                throw new IOException("Not a stock catalog : " + file);
+            }
+
+            long chunk = chunkSize > 0 ? chunkSize : Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, size / (ForkJoinPool.getCommonPoolParallelism() * 4L)));
+            List<Callable<List<StockItem>>> parts = new ArrayList<>();
+            long position = 4;
+            long partStart = position;
+            int partRecords = 0;
+
+            while(position < size){
+
+                if(size - position < 8){
+
+                    throw new IOException("Truncated stock catalog : " + file);
+                }
+
+                readAt(channel, header, position, 8);
+
+                int length = header.getInt();
+                int records = header.getInt();
+
+                if((length < 0) || (records < 0) || (position + 8 + length > size)){
+
+                    throw new IOException("Truncated stock catalog : " + file);
+                }
+
+                position += 8 + length;
+                partRecords += records;
+
+                if((position - partStart >= chunk) || (position == size)){
+
+                    long from = partStart;
+                    long to = position;
+                    int count = partRecords;
+
+                    parts.add(() -> parseBinaryChunk(channel, from, to, count));
+
+                    partStart = position;
+                    partRecords = 0;
+                }
+            }
+
+            return runAll(parts);
+        }
+    }
+
+    private static ByteBuffer readAt(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+
+        buffer.clear().limit(length);
+
+        while(buffer.hasRemaining()){
+
+            if(channel.read(buffer, position + buffer.position()) < 0){
+
+                throw new IOException("Unexpected end of stock catalog");
+            }
+        }
+
+        return buffer.flip();
+    }
+
+    // Rekord, który wychodzi poza swój blok, ujemna cena lub ilość albo pusta nazwa - uszkodzony blok (IOException, a nie wyjątek bufora)
+
+    private static List<StockItem> parseBinaryChunk(FileChannel channel, long from, long to, int records) throws IOException {
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        List<StockItem> rows = new ArrayList<>(records);
+        byte[] name = new byte[256];
+
+        while(buffer.hasRemaining()){
+
+            int blockStart = buffer.position();
+            int blockEnd = buffer.getInt() + blockStart + 8;
+            int count = buffer.getInt();
+
+            for(int i = 0; i < count; i++){
+
+                if(blockEnd - buffer.position() < 2){
+
+                    throw corruptedBlock(from + blockStart);
+                }
+
+                int length = buffer.getShort() & 0xFFFF;
+
+                if((length == 0) || (blockEnd - buffer.position() < length + 12)){
+
+                    throw corruptedBlock(from + blockStart);
+                }
+
+                if(length > name.length){
+
+                    name = new byte[Math.max(length, name.length * 2)];
+                }
+
+                buffer.get(name, 0, length);
+
+                long price = buffer.getLong();
+                int quantity = buffer.getInt();
+
+                if((price < 0) || (quantity < 0)){
+
+                    throw corruptedBlock(from + blockStart);
+                }
+
+                rows.add(StockItem.ofMinorUnits(new String(name, 0, length, StandardCharsets.UTF_8), price, quantity));
+            }
+
+            if(buffer.position() != blockEnd){
+
+                throw corruptedBlock(from + blockStart);
+            }
+        }
+
+        return rows;
+    }
+
+    private static IOException corruptedBlock(long offset) {
+
+        return new IOException("Corrupted block in stock catalog at offset " + offset);
+    }
+
+    // Równoległe wykonanie części i połączenie wyników w kolejności pliku
+
+    private static List<StockItem> runAll(List<Callable<List<StockItem>>> parts) throws IOException {
+
+        List<Future<List<StockItem>>> futures = new ArrayList<>(parts.size());
+
+        for(Callable<List<StockItem>> part : parts){
+
+            futures.add(ForkJoinPool.commonPool().submit(part));
+        }
+
+        List<List<StockItem>> results = new ArrayList<>(parts.size());
+        int total = 0;
+
+        try {
+
+            for(Future<List<StockItem>> future : futures){
+
+                List<StockItem> rows = future.get();
+
+                results.add(rows);
+                total += rows.size();
+            }
+
+        } catch(ExecutionException e){
+
+            if(e.getCause() instanceof IOException){
+
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException("Loading stock catalog failed", e.getCause());
+
+        } catch(InterruptedException e){
+
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while loading stock catalog");
+        }
+
+        List<StockItem> all = new ArrayList<>(total);
+
+        for(List<StockItem> rows : results){
+
+            all.addAll(rows);
+        }
+
+        return all;
+    }
+}
@@ -0,0 +1,209 @@
+package com.marcinsi.warehouseapp;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.NoSuchElementException;
+
+// Spójna migawka stanu magazynu w jednym momencie (MVCC) - wynik StockList.snapshot()
+// Migawka nie kopiuje listy produktów i nie blokuje zapisów - stan sprzed zmiany przechowuje historia (StockHistory), tylko dla zmienionych produktów
+// Migawka zawiera każdą zmianę zakończoną przed wywołaniem snapshot() i żadnej zmiany rozpoczętej po jego zakończeniu
+// Operacje na kilku produktach (np. StockList.checkout()) nie są atomowe - migawka może zawierać część zmian trwającego zakupu
+//
+// Migawkę trzeba zamknąć (close()) - do tego czasu zapisy przechowują stany potrzebne migawce
+//
+//   try(StockSnapshot snapshot = stockList.snapshot()){
+//       snapshot.writeReport(writer);
+//   }
+
+public final class StockSnapshot implements AutoCloseable {
+
+    // Odczyt elementu tablicy z semantyką acquire - produkt jest zapisywany w StockList.store() przez setVolatile()
+
+    static final VarHandle ITEMS = MethodHandles.arrayElementVarHandle(StockItem[].class);
+
+    private final StockHistory history;
+    private final long version;
+    private final StockItem[] items;
+    private final int count;
+    private final PriceSnapshot prices;
+
+    private volatile boolean closed = false;
+
+    StockSnapshot(StockHistory history, long version, StockItem[] items, int count, PriceSnapshot prices) {
+
+        this.history = history;
+        this.version = version;
+        this.items = items;
+        this.count = count;
+        this.prices = prices;
+    }
+
+    public long getVersion() {
+
+        return version;
+    }
+
+    // Granica identyfikatorów w migawce - identyfikatory od 0 do size() - 1 (w kolejności dodania do listy)
+    // Produkt rejestrowany w chwili tworzenia migawki może nie należeć do migawki - wtedy contains() zwraca false
+
+    public int size() {
+
+        return count;
+    }
+
+    public boolean contains(int id) {
+
+        return (id < count) && prices.contains(id);
+    }
+
+    // Cennik z momentu utworzenia migawki
+
+    public PriceSnapshot getPrices() {
+
+        return prices;
+    }
+
+    // Produkt widziany przez migawkę - jeśli produkt został później zastąpiony (addStock() z tą samą nazwą), wracamy do poprzedniego obiektu
+
+    private StockItem item(int id) {
+
+        if(closed){
+
+            throw new IllegalStateException("Snapshot closed");
+        }
+
+        if((id < 0) || (id >= count)){
+
+            throw new IndexOutOfBoundsException(id);
+        }
+
+        if(!prices.contains(id)){
+
+            throw new NoSuchElementException("No item with id " + id + " in snapshot " + version);
+        }
+
+        StockItem item = (StockItem) ITEMS.getAcquire(items, id);
+
+        while(item.replacedAt > version){
+
+            item = item.replaced;
+        }
+
+        return item;
+    }
+
+    // Spakowany stan produktu (StockItem.pack()) - jeden odczyt dla ilości w magazynie i ilości zarezerwowanej
+
+    private long state(int id) {
+
+        return StockHistory.stateAt(item(id), version);
+    }
+
+    public String getName(int id) {
+
+        return item(id).getName();
+    }
+
+    public double getPrice(int id) {
+
+        return prices.getPrice(id);
+    }
+
+    public long getPriceInMinorUnits(int id) {
+
+        return prices.getPriceInMinorUnits(id);
+    }
+
+    public int getQuantityInStock(int id) {
+
+        return StockItem.quantityInStock(state(id));
+    }
+
+    public int getReservedQuantity(int id) {
+
+        return StockItem.reserved(state(id));
+    }
+
+    public int getAvailableQuantity(int id) {
+
+        long state = state(id);
+
+        return StockItem.quantityInStock(state) - StockItem.reserved(state);
+    }
+
+    // Wartość dostępnego towaru w momencie migawki (w groszach)
+
+    public long totalAvailableValueInMinorUnits() {
+
+        long total = 0;
+
+        for(int id = 0; id < count; id++){
+
+            if(!prices.contains(id)){
+
+                continue;
+            }
+
+            long state = state(id);
+
+            total += prices.getPriceInMinorUnits(id) * (StockItem.quantityInStock(state) - StockItem.reserved(state));
+        }
+
+        return total;
+    }
+
+    // Raport w tym samym formacie co StockList.writeReport() - wszystkie wiersze i suma pochodzą z tego samego momentu
+
+    public void writeReport(Appendable out) throws IOException {
+
+        out.append("\nStock List\n");
+
+        long totalCost = 0;
+
+        for(int id = 0; id < count; id++){
+
+            if(!prices.contains(id)){
+
+                continue;
+            }
+
+            StockItem item = item(id);
+            long state = StockHistory.stateAt(item, version);
+            long price = prices.getPriceInMinorUnits(id);
+            int available = StockItem.quantityInStock(state) - StockItem.reserved(state);
+            long itemValue = price * available;
+
+            out.append(item.getName()).append(" : price ");
+            ReportFormat.appendPrice(out, price);
+            out.append(". Reserved : ");
+            ReportFormat.appendLong(out, StockItem.reserved(state));
+            out.append(". There are ");
+            ReportFormat.appendLong(out, available);
+            out.append(" in stock (available). Value of item : ");
+            ReportFormat.appendFixed2(out, itemValue);
+            out.append('\n');
+
+            totalCost += itemValue;
+        }
+
+        out.append("Total stock value : ");
+        ReportFormat.appendFixed2(out, totalCost);
+    }
+
+    @Override
+    public void close() {
+
+        if(!closed){
+
+            closed = true;
+            history.close(version);
+        }
+    }
+
+    @Override
+    public String toString() {
+
+        return "Stock snapshot " + version + " : " + count + (count == 1 ? " item" : " items");
+    }
+}
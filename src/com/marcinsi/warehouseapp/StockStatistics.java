@@ -0,0 +1,188 @@
+package com.marcinsi.warehouseapp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Wynik StockList.analyze() - sumy, wartości skrajne, histogram dostępnych ilości oraz produkty o największej wartości towaru
+// Wartości pieniężne w groszach (long) - tak jak w StockValuation
+
+public final class StockStatistics {
+
+    private final int itemCount;
+    private final long quantityInStock;
+    private final long reservedQuantity;
+    private final long availableValue;
+    private final long reservedValue;
+    private final int minAvailable;
+    private final int maxAvailable;
+    private final StockItem minAvailableItem;
+    private final StockItem maxAvailableItem;
+    private final long minPrice;
+    private final long maxPrice;
+    private final int[] histogramBounds;
+    private final long[] histogram;
+    private final List<StockItem> top;
+    private final long[] topValues;
+
+    StockStatistics(StockAnalytics.Accumulator result, int[] histogramBounds, StockItem[] items) {
+
+        boolean empty = result.items == 0;
+
+        this.itemCount = result.items;
+        this.quantityInStock = result.quantityInStock;
+        this.reservedQuantity = result.reserved;
+        this.availableValue = result.availableValue;
+        this.reservedValue = result.reservedValue;
+        this.minAvailable = empty ? 0 : result.minAvailable;
+        this.maxAvailable = empty ? 0 : result.maxAvailable;
+        this.minAvailableItem = empty ? null : items[result.minAvailableId];
+        this.maxAvailableItem = empty ? null : items[result.maxAvailableId];
+        this.minPrice = empty ? 0 : result.minPrice;
+        this.maxPrice = empty ? 0 : result.maxPrice;
+        this.histogramBounds = histogramBounds.clone();
+        this.histogram = result.histogram;
+
+        // Kopiec (K elementów) zamieniamy na listę od największej wartości
+
+        int size = result.topSize;
+        Integer[] order = new Integer[size];
+
+        for(int i = 0; i < size; i++){
+
+            order[i] = i;
+        }
+
+        Arrays.sort(order, (a, b) -> result.topValues[a] != result.topValues[b] ? Long.compare(result.topValues[b], result.topValues[a]) : Integer.compare(result.topIds[a], result.topIds[b]));
+
+        List<StockItem> topItems = new ArrayList<>(size);
+
+        this.topValues = new long[size];
+
+        for(int rank = 0; rank < size; rank++){
+
+            topItems.add(items[result.topIds[order[rank]]]);
+            topValues[rank] = result.topValues[order[rank]];
+        }
+
+        this.top = Collections.unmodifiableList(topItems);
+    }
+
+    public int getItemCount() {
+
+        return itemCount;
+    }
+
+    public long getQuantityInStock() {
+
+        return quantityInStock;
+    }
+
+    public long getReservedQuantity() {
+
+        return reservedQuantity;
+    }
+
+    public long getAvailableQuantity() {
+
+        return quantityInStock - reservedQuantity;
+    }
+
+    public long getAvailableValueInMinorUnits() {
+
+        return availableValue;
+    }
+
+    public long getReservedValueInMinorUnits() {
+
+        return reservedValue;
+    }
+
+    public int getMinAvailable() {
+
+        return minAvailable;
+    }
+
+    public int getMaxAvailable() {
+
+        return maxAvailable;
+    }
+
+    // Produkty z najmniejszą i największą dostępną ilością (przy równych ilościach - dodany wcześniej), null dla pustej listy
+
+    public StockItem getMinAvailableItem() {
+
+        return minAvailableItem;
+    }
+
+    public StockItem getMaxAvailableItem() {
+
+        return maxAvailableItem;
+    }
+
+    public long getMinPriceInMinorUnits() {
+
+        return minPrice;
+    }
+
+    public long getMaxPriceInMinorUnits() {
+
+        return maxPrice;
+    }
+
+    // Histogram dostępnych ilości: przedział 0 - poniżej pierwszej granicy, przedział i - od granicy i-1 do granicy i (bez niej)
+    // Ostatni przedział - od ostatniej granicy wzwyż (liczba przedziałów = liczba granic + 1)
+
+    public int getHistogramBins() {
+
+        return histogram.length;
+    }
+
+    public int[] getHistogramBounds() {
+
+        return histogramBounds.clone();
+    }
+
+    public long getHistogramCount(int bin) {
+
+        return histogram[bin];
+    }
+
+    // Produkty o największej wartości dostępnego towaru (od największej)
+
+    public List<StockItem> getTopByValue() {
+
+        return top;
+    }
+
+    public long getTopValueInMinorUnits(int rank) {
+
+        return topValues[rank];
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder s = new StringBuilder();
+
+        s.append("Stock statistics : ").append(itemCount).append(itemCount == 1 ? " item" : " items");
+        s.append(", available ").append(getAvailableQuantity()).append(", reserved ").append(reservedQuantity);
+
+        try {
+
+            s.append(", available value ");
+            ReportFormat.appendFixed2(s, availableValue);
+            s.append(", reserved value ");
+            ReportFormat.appendFixed2(s, reservedValue);
+
+        } catch(IOException e){
+
+            throw new UncheckedIOException(e);
+        }
+
+        return s.toString();
+    }
+}
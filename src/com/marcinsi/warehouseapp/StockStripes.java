@@ -0,0 +1,258 @@
+package com.marcinsi.warehouseapp;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Podział dostępnego towaru "gorącego" produktu na przedziały (StockList.markHot()) - np. produkt w promocji rezerwowany przez wiele wątków naraz
+// Bez podziału każda rezerwacja zmienia ten sam licznik (StockItem.stock) - wątki czekają na siebie, choć rezerwują różne sztuki
+//
+// Każdy przedział przechowuje pulę sztuk (quota) pobraną wcześniej z licznika głównego - rezerwacja zmniejsza pulę przedziału swojego wątku
+// Licznik główny traktuje pule jak zarezerwowany towar: reserved w liczniku = rzeczywiście zarezerwowane + suma pul
+// Dlatego towaru nie można sprzedać dwa razy - pula powstaje tylko z dostępnego towaru, a pula przedziału nigdy nie spada poniżej zera
+// Gdy pula jest pusta: pobieramy kolejną porcję z licznika głównego, a gdy tam nie ma towaru - przejmujemy pule innych przedziałów
+//
+// Przeniesienie towaru pomiędzy licznikiem głównym a pulami (uzupełnienie puli, przejęcie pul, zwrot pul) to dwa osobne zapisy
+// Dlatego odczyt licznika głównego razem z sumą pul (StockItem.consistentState()) powtarzamy, gdy w tym czasie trwało przeniesienie (liczniki rebalances)
+// Rezerwacja z puli tylko zmniejsza pulę - suma odczytana w jej trakcie leży pomiędzy stanem sprzed i po rezerwacji
+//
+// Przedziały leżą w osobnych liniach pamięci podręcznej (pola wypełniające przed i za licznikami) - brak fałszywego współdzielenia (false sharing)
+// Pola wypełniające rozmieszczamy w klasach nadrzędnych - JVM nie zmienia kolejności pól pomiędzy klasą nadrzędną a podrzędną
+
+final class StockStripes {
+
+    private static final AtomicIntegerFieldUpdater<StripeValue> QUOTA = AtomicIntegerFieldUpdater.newUpdater(StripeValue.class, "quota");
+    private static final AtomicIntegerFieldUpdater<StripeValue> BUSY = AtomicIntegerFieldUpdater.newUpdater(StripeValue.class, "busy");
+
+    // Wynik reserve(): towar zarezerwowany z puli, brak towaru, operację trzeba wykonać na liczniku głównym (istnieje migawka StockSnapshot)
+
+    static final int RESERVED = 1;
+    static final int OUT_OF_STOCK = 0;
+    static final int USE_STOCK = -1;
+
+    static class StripePadding {
+
+        long p01, p02, p03, p04, p05, p06, p07;
+    }
+
+    static class StripeValue extends StripePadding {
+
+        // Pula przedziału oraz liczba trwających operacji na przedziale (czytelnik migawki czeka, aż spadnie do zera)
+
+        volatile int quota;
+        volatile int busy;
+    }
+
+    static final class Stripe extends StripeValue {
+
+        long p11, p12, p13, p14, p15, p16, p17;
+    }
+
+    private final Stripe[] stripes;
+    private final int mask;
+
+    // Liczba rozpoczętych i zakończonych przeniesień pul - równe wartości oznaczają, że żadne przeniesienie nie trwa
+    // Zmieniane tylko przy uzupełnianiu i przejmowaniu pul (rzadko) - rezerwacje z puli ich nie dotykają
+
+    private final AtomicLong rebalancesStarted = new AtomicLong();
+    private final AtomicLong rebalancesFinished = new AtomicLong();
+
+    StockStripes(int count) {
+
+        // Liczba przedziałów - potęga dwójki (wybór przedziału przez maskę bitową)
+
+        int size = Integer.highestOneBit(Math.max(1, Math.min(count, 1 << 16)));
+
+        this.stripes = new Stripe[size];
+        this.mask = size - 1;
+
+        for(int i = 0; i < size; i++){
+
+            stripes[i] = new Stripe();
+        }
+    }
+
+    int size() {
+
+        return stripes.length;
+    }
+
+    // Suma pul wszystkich przedziałów - razem z licznikiem głównym tylko przez StockItem.consistentState() (stableVersion(), unchanged())
+
+    int quota() {
+
+        int total = 0;
+
+        for(Stripe stripe : stripes){
+
+            total += stripe.quota;
+        }
+
+        return total;
+    }
+
+    void beginRebalance() {
+
+        rebalancesStarted.incrementAndGet();
+    }
+
+    void endRebalance() {
+
+        rebalancesFinished.incrementAndGet();
+    }
+
+    // Wersja pul z chwili, w której żadne przeniesienie nie trwa (czekamy na koniec trwającego - to jedna operacja compareAndSet() i jedno dodawanie)
+
+    long stableVersion() {
+
+        while(true){
+
+            long version = rebalancesFinished.get();
+
+            if(rebalancesStarted.get() == version){
+
+                return version;
+            }
+
+            Thread.yield();
+        }
+    }
+
+    // Od odczytu wersji nie rozpoczęło się żadne przeniesienie
+
+    boolean unchanged(long version) {
+
+        return rebalancesStarted.get() == version;
+    }
+
+    // Przedział wątku - wybierany na podstawie identyfikatora wątku (wymieszanego, żeby kolejne wątki trafiały do różnych przedziałów)
+
+    private Stripe current() {
+
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+
+        return stripes[(int) (id >>> 32) & mask];
+    }
+
+    int reserve(StockItem item, int quantity) {
+
+        Stripe stripe = current();
+
+        BUSY.incrementAndGet(stripe);
+
+        try {
+
+            // Póki istnieje migawka, pule się nie zmieniają - migawka odczytuje stan produktu z licznika głównego i historii zmian
+            // Tak samo w trakcie odłączania produktu od listy (StockItem.retire()) - licznik główny przekaże rezerwację następcy
+
+            if(item.isRecorded() || item.isRetiring()){
+
+                return USE_STOCK;
+            }
+
+            while(true){
+
+                int quota = stripe.quota;
+
+                if(quota >= quantity){
+
+                    if(QUOTA.compareAndSet(stripe, quota, quota - quantity)){
+
+                        return RESERVED;
+                    }
+
+                    continue;
+                }
+
+                int granted;
+
+                beginRebalance();
+
+                try {
+
+                    granted = item.grantQuota(quantity - quota, stripes.length);
+
+                    if(granted > 0){
+
+                        QUOTA.addAndGet(stripe, granted);
+                    }
+
+                } finally {
+
+                    endRebalance();
+                }
+
+                if(granted > 0){
+
+                    item.stockRebalanced();
+
+                } else if(steal(stripe) == 0){
+
+                    return OUT_OF_STOCK;
+                }
+            }
+
+        } finally {
+
+            BUSY.decrementAndGet(stripe);
+        }
+    }
+
+    // Przejęcie pul pozostałych przedziałów (licznik główny jest pusty) - suma pul się nie zmienia, więc licznik główny też nie
+
+    private int steal(Stripe target) {
+
+        int stolen = 0;
+
+        beginRebalance();
+
+        try {
+
+            for(Stripe victim : stripes){
+
+                if(victim != target){
+
+                    int taken = QUOTA.getAndSet(victim, 0);
+
+                    if(taken > 0){
+
+                        QUOTA.addAndGet(target, taken);
+                        stolen += taken;
+                    }
+                }
+            }
+
+        } finally {
+
+            endRebalance();
+        }
+
+        return stolen;
+    }
+
+    // Oczekiwanie na zakończenie operacji rozpoczętych przed utworzeniem migawki (kolejne operacje od razu wybierają licznik główny)
+
+    void awaitIdle() {
+
+        for(Stripe stripe : stripes){
+
+            while(stripe.busy != 0){
+
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    // Wyzerowanie wszystkich pul (tylko po awaitIdle(), gdy istnieje migawka) - zwracamy sumę, którą trzeba oddać licznikowi głównemu
+
+    int takeAll() {
+
+        int total = 0;
+
+        for(Stripe stripe : stripes){
+
+            total += QUOTA.getAndSet(stripe, 0);
+        }
+
+        return total;
+    }
+}
@@ -0,0 +1,122 @@
+package com.marcinsi.warehouseapp;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+// Wartość towaru w magazynie utrzymywana na bieżąco (zamiast przeliczania całej listy w StockList.toString())
+// Wartości liczymy w groszach (long) - sumowanie jest dokładne, a LongAdder nie jest wąskim gardłem przy wielu wątkach
+// Dla każdego produktu pamiętamy jego ostatni "wkład" do sumy - po zmianie produktu dodajemy tylko różnicę
+// Produkty "gorące" (StockList.markHot()) nie mają wkładu w sumach - rezerwacje z pul przedziałów nie zmieniają licznika głównego
+// Ich wartość liczymy przy odczycie sumy (takich produktów jest niewiele)
+
+class StockValuation {
+
+    private final LongAdder availableValue = new LongAdder();
+    private final LongAdder reservedValue = new LongAdder();
+    private final CopyOnWriteArrayList<StockItem> hotItems = new CopyOnWriteArrayList<>();
+
+    // Produkt został dodany do listy - od tej chwili jego wartość wlicza się do sumy
+
+    void add(StockItem item) {
+
+        item.valuationActive = true;
+
+        if(item.isHot()){
+
+            hotItems.addIfAbsent(item);
+        }
+
+        refresh(item);
+    }
+
+    // Produkt został usunięty z listy (zastąpiony nowym obiektem) - jego wkład spada do zera
+
+    void remove(StockItem item) {
+
+        item.valuationActive = false;
+
+        hotItems.remove(item);
+        refresh(item);
+    }
+
+    // Produkt podzielony na przedziały - jego wkład spada do zera, a wartość liczy totalAvailableValue() / totalReservedValue()
+    // Jeśli produkt został w tym czasie usunięty z listy, remove() mogło go jeszcze nie widzieć na liście "gorących" - usuwamy go sami
+
+    void markHot(StockItem item) {
+
+        hotItems.addIfAbsent(item);
+        refresh(item);
+
+        if(!item.valuationActive){
+
+            hotItems.remove(item);
+        }
+    }
+
+    // Przeliczenie wkładu jednego produktu na podstawie jego aktualnego stanu
+    // Tylko jeden wątek na raz przelicza dany produkt - pozostałe zgłaszają prośbę i wychodzą (bez blokowania)
+    // Wątek przeliczający powtarza pętlę, dopóki są zgłoszone prośby - ostatnie przeliczenie zawsze widzi najnowszy stan
+
+    void refresh(StockItem item) {
+
+        if(item.valuationRequests.getAndIncrement() != 0){
+
+            return;
+        }
+
+        int missed = 1;
+
+        do {
+
+            long available = 0;
+            long reserved = 0;
+
+            if(item.valuationActive && !item.isHot()){
+
+                long price = item.getPriceInMinorUnits();
+
+                available = price * item.getAvailableQuantity();
+                reserved = price * item.getReservedQuantity();
+            }
+
+            availableValue.add(available - item.valuedAvailable);
+            reservedValue.add(reserved - item.valuedReserved);
+
+            item.valuedAvailable = available;
+            item.valuedReserved = reserved;
+
+            missed = item.valuationRequests.addAndGet(-missed);
+
+        } while(missed != 0);
+    }
+
+    long totalAvailableValue() {
+
+        long total = availableValue.sum();
+
+        for(StockItem item : hotItems){
+
+            if(item.valuationActive){
+
+                total += item.getPriceInMinorUnits() * item.getAvailableQuantity();
+            }
+        }
+
+        return total;
+    }
+
+    long totalReservedValue() {
+
+        long total = reservedValue.sum();
+
+        for(StockItem item : hotItems){
+
+            if(item.valuationActive){
+
+                total += item.getPriceInMinorUnits() * item.getReservedQuantity();
+            }
+        }
+
+        return total;
+    }
+}
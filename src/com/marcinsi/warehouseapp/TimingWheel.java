@@ -0,0 +1,177 @@
+package com.marcinsi.warehouseapp;
+
+import java.util.function.Consumer;
+
+// Hierarchiczne koło czasowe (hierarchical timing wheel) - terminy wygaśnięcia rezerwacji
+// Poziom 0 ma 64 miejsca po jednym "tyknięciu", poziom 1 - 64 miejsca po 64 tyknięcia, poziom 2 - po 4096 tyknięć itd.
+// Dodanie i usunięcie rezerwacji to O(1) (lista dwukierunkowa w danym miejscu koła), bez przeglądania wszystkich rezerwacji
+// Gdy koło niższego poziomu wykona pełny obrót, rezerwacje z kolejnego miejsca wyższego poziomu są rozkładane na niższe poziomy
+// Klasa nie jest bezpieczna wątkowo - używa jej tylko wątek ReservationExpiry
+
+class TimingWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+
+    static final class Bucket {
+
+        private Reservation head;
+    }
+
+    private final Bucket[][] levels;
+    private long currentTick;
+
+    TimingWheel(int levelCount, long startTick) {
+
+        this.levels = new Bucket[levelCount][SLOTS];
+        this.currentTick = startTick;
+
+        for(Bucket[] level : levels){
+
+            for(int slot = 0; slot < SLOTS; slot++){
+
+                level[slot] = new Bucket();
+            }
+        }
+    }
+
+    long currentTick() {
+
+        return currentTick;
+    }
+
+    // Zwraca false, jeśli termin już minął (rezerwację trzeba od razu obsłużyć)
+
+    boolean add(Reservation reservation) {
+
+        long deadline = reservation.deadlineTick;
+        long delta = deadline - currentTick;
+
+        if(delta <= 0){
+
+            return false;
+        }
+
+        for(int level = 0; level < levels.length; level++){
+
+            if(delta < (1L << (SLOT_BITS * (level + 1)))){
+
+                link(levels[level][(int) (deadline >> (SLOT_BITS * level)) & MASK], reservation);
+
+                return true;
+            }
+        }
+
+        // Termin dalszy niż zakres koła - ostatnie miejsce najwyższego poziomu, przy rozkładaniu termin zostanie sprawdzony ponownie
+
+        int top = levels.length - 1;
+
+        link(levels[top][(int) ((currentTick >> (SLOT_BITS * top)) - 1) & MASK], reservation);
+
+        return true;
+    }
+
+    void remove(Reservation reservation) {
+
+        Bucket bucket = reservation.bucket;
+
+        if(bucket == null){
+
+            return;
+        }
+
+        if(reservation.previous != null){
+
+            reservation.previous.next = reservation.next;
+
+        } else {
+
+            bucket.head = reservation.next;
+        }
+
+        if(reservation.next != null){
+
+            reservation.next.previous = reservation.previous;
+        }
+
+        reservation.previous = null;
+        reservation.next = null;
+        reservation.bucket = null;
+    }
+
+    // Przesunięcie koła do danego momentu - rezerwacje, których termin minął, są przekazywane do obiektu expired
+
+    void advanceTo(long tick, Consumer<Reservation> expired) {
+
+        while(currentTick < tick){
+
+            currentTick++;
+
+            for(int level = levels.length - 1; level > 0; level--){
+
+                if((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0){
+
+                    Reservation reservation = detachAll(levels[level][(int) (currentTick >> (SLOT_BITS * level)) & MASK]);
+
+                    while(reservation != null){
+
+                        Reservation next = reservation.next;
+
+                        reservation.next = null;
+
+                        if(!add(reservation)){
+
+                            expired.accept(reservation);
+                        }
+
+                        reservation = next;
+                    }
+                }
+            }
+
+            Reservation reservation = detachAll(levels[0][(int) currentTick & MASK]);
+
+            while(reservation != null){
+
+                Reservation next = reservation.next;
+
+                reservation.next = null;
+                expired.accept(reservation);
+
+                reservation = next;
+            }
+        }
+    }
+
+    private void link(Bucket bucket, Reservation reservation) {
+
+        reservation.bucket = bucket;
+        reservation.previous = null;
+        reservation.next = bucket.head;
+
+        if(bucket.head != null){
+
+            bucket.head.previous = reservation;
+        }
+
+        bucket.head = reservation;
+    }
+
+    // Odłączenie całej listy z danego miejsca - zwracamy pierwszy element, elementy są połączone polem next
+
+    private Reservation detachAll(Bucket bucket) {
+
+        Reservation head = bucket.head;
+
+        bucket.head = null;
+
+        for(Reservation reservation = head; reservation != null; reservation = reservation.next){
+
+            reservation.bucket = null;
+            reservation.previous = null;
+        }
+
+        return head;
+    }
+}
@@ -0,0 +1,214 @@
+package com.marcinsi.warehouseapp;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Pomiary operacji magazynu - liczniki wyników oraz histogramy czasów dla każdej operacji
+// Włączane przez StockList.enableMetrics() (oraz konstruktor Basket(name, metrics)) - bez włączenia kosztem jest jeden odczyt pola volatile
+// Liczniki to LongAdder - każdy wątek zwiększa zwykle własną komórkę, więc równoległe operacje nie rywalizują o jeden licznik
+// Odczyt (pull API albo JMX) sumuje komórki - jest wolniejszy, ale wykonywany rzadko
+// Najdroższą częścią pomiaru są dwa wywołania System.nanoTime() (kilkadziesiąt nanosekund) - sam zapis do liczników to kilka nanosekund
+// Rywalizacja o produkty: liczba rezerwacji, których compareAndSet() musiał być powtórzony, oraz łączna liczba powtórzeń
+// Rosnąca liczba powtórzeń przy tych samych czasach operacji wskazuje produkt, który warto podzielić na przedziały (StockList.markHot())
+
+public class WarehouseMetrics implements WarehouseMetricsMXBean {
+
+    public enum Operation {
+
+        RESERVE,
+        SELL,
+        UNRESERVE,
+        CHECKOUT,
+        BASKET_ADD,
+        BASKET_REMOVE
+    }
+
+    // SUCCESS - operacja wykonana, OUT_OF_STOCK - produkt istnieje, ale brakuje towaru (lub rezerwacji / pozycji w koszyku)
+    // FAILURE - nieznany produkt albo niepoprawna ilość
+
+    public enum Outcome {
+
+        SUCCESS,
+        OUT_OF_STOCK,
+        FAILURE
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final Outcome[] OUTCOMES = Outcome.values();
+
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private final LongAdder[] counters = new LongAdder[OPERATIONS.length * OUTCOMES.length];
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private final LongAdder contendedReserves = new LongAdder();
+    private final LongAdder reserveRetries = new LongAdder();
+
+    public WarehouseMetrics() {
+
+        for(int i = 0; i < counters.length; i++){
+
+            counters[i] = new LongAdder();
+        }
+
+        for(int i = 0; i < latencies.length; i++){
+
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    // Zapis wyniku operacji rozpoczętej w chwili startNanos (System.nanoTime())
+    // valid - czy produkt istniał i ilość była poprawna, result - wynik operacji (0 - nie udało się)
+
+    void record(Operation operation, boolean valid, int result, long startNanos) {
+
+        record(operation, result != 0 ? Outcome.SUCCESS : valid ? Outcome.OUT_OF_STOCK : Outcome.FAILURE, startNanos);
+    }
+
+    void record(Operation operation, Outcome outcome, long startNanos) {
+
+        latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+        counters[operation.ordinal() * OUTCOMES.length + outcome.ordinal()].increment();
+    }
+
+    // Wywoływane przez StockList tylko dla rezerwacji, które musiały powtórzyć compareAndSet() - rezerwacja bez rywalizacji nie płaci nic
+
+    void recordContention(int retries) {
+
+        contendedReserves.increment();
+        reserveRetries.add(retries);
+    }
+
+    // Pull API
+
+    public long getCount(Operation operation, Outcome outcome) {
+
+        return counters[operation.ordinal() * OUTCOMES.length + outcome.ordinal()].sum();
+    }
+
+    public long getCount(Operation operation) {
+
+        long count = 0;
+
+        for(Outcome outcome : OUTCOMES){
+
+            count += getCount(operation, outcome);
+        }
+
+        return count;
+    }
+
+    public LatencyHistogram getLatency(Operation operation) {
+
+        return latencies[operation.ordinal()];
+    }
+
+    public long getContendedReserves() {
+
+        return contendedReserves.sum();
+    }
+
+    public long getReserveRetries() {
+
+        return reserveRetries.sum();
+    }
+
+    // JMX
+
+    @Override
+    public Map<String, Long> getCounters() {
+
+        Map<String, Long> result = new LinkedHashMap<>();
+
+        for(Operation operation : OPERATIONS){
+
+            for(Outcome outcome : OUTCOMES){
+
+                result.put(operation + "." + outcome, getCount(operation, outcome));
+            }
+        }
+
+        result.put(Operation.RESERVE + ".CONTENDED", getContendedReserves());
+        result.put(Operation.RESERVE + ".CAS_RETRIES", getReserveRetries());
+
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getLatencies() {
+
+        Map<String, Long> result = new LinkedHashMap<>();
+
+        for(Operation operation : OPERATIONS){
+
+            LatencyHistogram histogram = getLatency(operation);
+
+            for(int i = 0; i < PERCENTILES.length; i++){
+
+                result.put(operation + "." + PERCENTILE_NAMES[i], histogram.getValueAtPercentile(PERCENTILES[i]));
+            }
+
+            result.put(operation + ".max", histogram.getMax());
+        }
+
+        return result;
+    }
+
+    @Override
+    public void reset() {
+
+        for(LongAdder counter : counters){
+
+            counter.reset();
+        }
+
+        for(LatencyHistogram histogram : latencies){
+
+            histogram.reset();
+        }
+
+        contendedReserves.reset();
+        reserveRetries.reset();
+    }
+
+    // Rejestracja w serwerze JMX platformy, np. registerMBean("com.marcinsi.warehouseapp:type=WarehouseMetrics,name=main")
+
+    public ObjectName registerMBean(String objectName) throws JMException {
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(objectName);
+
+        server.registerMBean(this, name);
+
+        return name;
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder s = new StringBuilder("Warehouse metrics");
+
+        for(Operation operation : OPERATIONS){
+
+            LatencyHistogram histogram = getLatency(operation);
+
+            s.append('\n').append(operation).append(" : ").append(getCount(operation)).append(" calls");
+
+            for(Outcome outcome : OUTCOMES){
+
+                s.append(", ").append(outcome).append(' ').append(getCount(operation, outcome));
+            }
+
+            s.append(", p50 ").append(histogram.getValueAtPercentile(50.0)).append(" ns, p99 ").append(histogram.getValueAtPercentile(99.0)).append(" ns");
+        }
+
+        s.append("\nContention : ").append(getContendedReserves()).append(" reserves retried, ").append(getReserveRetries()).append(" retries");
+
+        return s.toString();
+    }
+}
@@ -0,0 +1,19 @@
+package com.marcinsi.warehouseapp;
+
+import java.util.Map;
+
+// Interfejs JMX (MXBean) - dane widoczne np. w JConsole / VisualVM pod nazwą podaną w WarehouseMetrics.registerMBean()
+// MXBean używa tylko typów standardowych (Map<String, Long> - tabela), więc klient JMX nie potrzebuje klas aplikacji
+
+public interface WarehouseMetricsMXBean {
+
+    // Klucz: OPERACJA.WYNIK, np. RESERVE.OUT_OF_STOCK, oraz RESERVE.CONTENDED i RESERVE.CAS_RETRIES (rywalizacja o produkty)
+
+    Map<String, Long> getCounters();
+
+    // Klucz: OPERACJA.percentyl w nanosekundach, np. SELL.p99
+
+    Map<String, Long> getLatencies();
+
+    void reset();
+}
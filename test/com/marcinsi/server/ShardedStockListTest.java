@@ -0,0 +1,203 @@
+package com.marcinsi.server;
+
+import com.marcinsi.warehouseapp.CheckoutResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// ShardedStockList - rozkład produktów na pierścieniu oraz zakup, gdy shard nie odpowiada
+
+class ShardedStockListTest {
+
+    // Shard, który wykonuje zakup, ale "gubi" odpowiedź (lostResponses razy) albo w ogóle nie odpowiada (down)
+
+    private static final class FlakyShard extends LocalShard {
+
+        private int lostResponses;
+        private boolean down;
+
+        @Override
+        public CheckoutResult checkout(long checkoutId, Map<String, Integer> lines) {
+
+            if(down){
+
+                throw new UncheckedIOException(new IOException("Shard is down"));
+            }
+
+            CheckoutResult result = super.checkout(checkoutId, lines);
+
+            if(lostResponses > 0){
+
+                lostResponses--;
+
+                throw new UncheckedIOException(new IOException("Response lost"));
+            }
+
+            return result;
+        }
+    }
+
+    @Test
+    void ringSpreadsItemsEvenlyAndMovesFewOnResize() {
+
+        int items = 100_000;
+        ConsistentHashRing four = new ConsistentHashRing(4, 160);
+        ConsistentHashRing five = new ConsistentHashRing(5, 160);
+        int[] counts = new int[4];
+        int moved = 0;
+
+        for(int i = 0; i < items; i++){
+
+            String item = "item" + i;
+            int before = four.shardOf(item);
+            int after = five.shardOf(item);
+
+            counts[before]++;
+
+            // Dodanie sharda przenosi produkty tylko do nowego sharda
+
+            if(before != after){
+
+                assertEquals(4, after);
+
+                moved++;
+            }
+        }
+
+        for(int count : counts){
+
+            assertTrue(Math.abs(count - items / 4) < items / 4 * 0.15, "shard holds " + count);
+        }
+
+        assertTrue((moved > items / 5 * 0.8) && (moved < items / 5 * 1.2), "moved " + moved);
+    }
+
+    @Test
+    void lostResponseIsResolvedWithTheSameCheckoutId() throws IOException {
+
+        List<FlakyShard> shards = shards(2);
+
+        try(ShardedStockList stockList = new ShardedStockList(shards)){
+
+            Map<String, Integer> basket = basket(stockList, 2);
+
+            shards.get(0).lostResponses = 1;
+
+            CheckoutResult result = stockList.checkout(basket);
+
+            assertTrue(result.isSuccessful());
+            assertEquals(2, result.getLinesSold());
+
+            // Każdy produkt sprzedany dokładnie raz
+
+            for(String item : basket.keySet()){
+
+                assertEquals(9, shards.get(stockList.shardOf(item)).getStockList().get(item).getQuantityInStock());
+            }
+        }
+    }
+
+    @Test
+    void unreachableShardIsCompensatedAndRealFailureIsReported() throws IOException {
+
+        List<FlakyShard> shards = shards(3);
+
+        try(ShardedStockList stockList = new ShardedStockList(shards)){
+
+            Map<String, Integer> basket = basket(stockList, 3);
+            List<String> items = new ArrayList<>(basket.keySet());
+
+            // Pierwszy shard nie odpowiada (sprzedaje, ale odpowiedzi giną), na trzecim brakuje rezerwacji
+
+            String lost = itemOn(stockList, items, 0);
+            String missing = itemOn(stockList, items, 2);
+
+            shards.get(0).lostResponses = 3;
+            stockList.unreservedStock(missing, 1);
+
+            CheckoutResult result = stockList.checkout(basket);
+
+            assertFalse(result.isSuccessful());
+            assertEquals(missing, result.getFailedItem());
+
+            for(String item : items){
+
+                assertEquals(10, shards.get(stockList.shardOf(item)).getStockList().get(item).getQuantityInStock());
+            }
+
+            assertEquals(1, shards.get(0).getStockList().get(lost).getReservedQuantity());
+
+            // Shard bez odpowiedzi, gdy wszystkie pozostałe sprzedały - odmowa z produktem tego sharda, towar wraca
+
+            shards.get(0).lostResponses = 0;
+            shards.get(0).down = true;
+            stockList.reserveStock(missing, 1);
+
+            result = stockList.checkout(basket);
+
+            assertFalse(result.isSuccessful());
+            assertEquals(lost, result.getFailedItem());
+            assertEquals(10, shards.get(2).getStockList().get(missing).getQuantityInStock());
+            assertEquals(1, shards.get(2).getStockList().get(missing).getReservedQuantity());
+        }
+    }
+
+    private static List<FlakyShard> shards(int count) {
+
+        List<FlakyShard> shards = new ArrayList<>();
+
+        for(int i = 0; i < count; i++){
+
+            shards.add(new FlakyShard());
+        }
+
+        return shards;
+    }
+
+    // Koszyk z jednym produktem na każdym shardzie (ilość 1, zarezerwowana)
+
+    private static Map<String, Integer> basket(ShardedStockList stockList, int shardCount) {
+
+        Map<String, Integer> basket = new TreeMap<>();
+        boolean[] covered = new boolean[shardCount];
+
+        for(int i = 0; basket.size() < shardCount; i++){
+
+            String item = "item" + i;
+            int shard = stockList.shardOf(item);
+
+            if(!covered[shard]){
+
+                covered[shard] = true;
+
+                stockList.addStock(item, 100, 10);
+                stockList.reserveStock(item, 1);
+                basket.put(item, 1);
+            }
+        }
+
+        return basket;
+    }
+
+    private static String itemOn(ShardedStockList stockList, List<String> items, int shard) {
+
+        for(String item : items){
+
+            if(stockList.shardOf(item) == shard){
+
+                return item;
+            }
+        }
+
+        throw new IllegalStateException("No item on shard " + shard);
+    }
+}
@@ -0,0 +1,79 @@
+package com.marcinsi.server;
+
+import com.marcinsi.warehouseapp.StockItem;
+import com.marcinsi.warehouseapp.StockList;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Protokół tekstowy WarehouseServer - kodowanie nazw i sprawdzanie ilości w CHECKOUTLINES
+
+class WarehouseServerTest {
+
+    @Test
+    void encodedFieldsRoundTrip() {
+
+        for(String field : new String[] {"bread", "brown bread", "100% juice", "tab\there", "line\nbreak", "żółw", ""}){
+
+            String encoded = WarehouseServer.encode(field);
+
+            assertEquals(-1, encoded.indexOf(' '));
+            assertEquals(-1, encoded.indexOf('\n'));
+            assertEquals(field, WarehouseServer.decode(encoded));
+        }
+
+        assertEquals("bread", WarehouseServer.encode("bread"));
+        assertThrows(IllegalArgumentException.class, () -> WarehouseServer.decode("bad%2"));
+        assertThrows(IllegalArgumentException.class, () -> WarehouseServer.decode("bad%zz"));
+    }
+
+    @Test
+    void namesWithSpacesAreSingleFields() throws IOException {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("brown bread", 250, 10));
+
+        try(WarehouseServer server = new WarehouseServer(new WarehouseService(stockList), 0)){
+
+            String item = WarehouseServer.encode("brown bread");
+
+            assertEquals("OK 3", server.execute("RESERVE " + item + " 3"));
+            assertEquals("OK 1 3 750", server.execute("CHECKOUTLINES 1 " + item + " 3"));
+            assertEquals(7, stockList.get("brown bread").getQuantityInStock());
+
+            // Powtórzony zakup (ten sam identyfikator) zwraca zapisany wynik i niczego nie sprzedaje
+
+            assertEquals("OK 1 3 750", server.execute("CHECKOUTLINES 1 " + item + " 3"));
+            assertEquals(7, stockList.get("brown bread").getQuantityInStock());
+            assertEquals("OK 3", server.execute("RESTORE 1 " + item + " 3"));
+            assertEquals("OK 0", server.execute("RESTORE 1 " + item + " 3"));
+            assertEquals(10, stockList.get("brown bread").getQuantityInStock());
+            assertEquals("ERR " + WarehouseServer.encode("no such item"), server.execute("CHECKOUTLINES 2 " + WarehouseServer.encode("no such item") + " 1"));
+        }
+    }
+
+    // Pozycja z ilością <= 0 odrzuca całe żądanie - nie sprzedajemy reszty koszyka bez niej
+
+    @Test
+    void checkoutLinesRejectsNonPositiveQuantities() throws IOException {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+        stockList.addStock(StockItem.ofMinorUnits("milk", 199, 10));
+
+        try(WarehouseServer server = new WarehouseServer(new WarehouseService(stockList), 0)){
+
+            server.execute("RESERVE bread 2");
+
+            assertEquals("ERR invalid quantity", server.execute("CHECKOUTLINES 1 bread 2 milk 0"));
+            assertEquals("ERR invalid quantity", server.execute("CHECKOUTLINES 2 bread 2 milk -1"));
+            assertEquals(10, stockList.get("bread").getQuantityInStock());
+            assertEquals(2, stockList.get("bread").getReservedQuantity());
+        }
+    }
+}
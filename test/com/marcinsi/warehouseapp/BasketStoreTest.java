@@ -0,0 +1,221 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// BasketStore - koszyki w pliku: kodowanie varint, wczytywanie po restarcie, przepisywanie pliku i praca wielu sesji naraz
+
+class BasketStoreTest {
+
+    @Test
+    void varintsRoundTrip() {
+
+        int[] values = {0, 1, 127, 128, 255, 16_383, 16_384, 2_097_151, 2_097_152, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        byte[] buffer = new byte[5 * values.length];
+        int position = 0;
+
+        for(int value : values){
+
+            int next = BasketStore.writeVarint(buffer, position, value);
+
+            assertTrue(next - position <= 5);
+
+            position = next;
+        }
+
+        int[] cursor = {0};
+
+        for(int value : values){
+
+            assertEquals(value, BasketStore.readVarint(buffer, cursor));
+        }
+
+        assertEquals(position, cursor[0]);
+        assertEquals(1, BasketStore.writeVarint(buffer, 0, 127));
+        assertEquals(2, BasketStore.writeVarint(buffer, 0, 128));
+    }
+
+    // Koszyki ponad limit trafiają do pliku, wracają przy dostępie i przetrwają ponowne otwarcie
+
+    @Test
+    void spilledBasketsSurviveReopen(@TempDir Path directory) throws IOException {
+
+        StockList stockList = stockList();
+        Path file = directory.resolve("baskets.bin");
+
+        try(BasketStore store = BasketStore.open(stockList, file, 1)){
+
+            store.withBasket("alice", basket -> basket.addToBasket(stockList.get("bread"), 2));
+            store.withBasket("bob", basket -> basket.addToBasket(stockList.get("brown bread"), 3));
+
+            assertEquals(1, store.hotSize());
+            assertEquals(2, store.size());
+            assertEquals(2, (int) store.withExistingBasket("alice", basket -> basket.Items().get(stockList.get("bread"))));
+        }
+
+        try(BasketStore store = BasketStore.open(stockList, file, 1)){
+
+            assertEquals(2, store.size());
+            assertEquals(3, (int) store.withExistingBasket("bob", basket -> basket.Items().get(stockList.get("brown bread"))));
+
+            Basket removed = store.remove("alice");
+
+            assertEquals(1, removed.Items().size());
+        }
+
+        try(BasketStore store = BasketStore.open(stockList, file, 1)){
+
+            assertEquals(1, store.size());
+            assertNull(store.withExistingBasket("alice", basket -> 1));
+        }
+    }
+
+    // Plik z innej listy (inne identyfikatory) - produkty odnajdujemy po nazwie, nieznany produkt jest pomijany
+
+    @Test
+    void loadResolvesItemsByNameWhenIdsDiffer(@TempDir Path directory) throws IOException {
+
+        StockList first = stockList();
+        Path file = directory.resolve("baskets.bin");
+
+        first.addStock(StockItem.ofMinorUnits("cake", 900, 10));
+
+        try(BasketStore store = BasketStore.open(first, file, 1)){
+
+            store.withBasket("alice", basket -> {
+
+                basket.addToBasket(first.get("brown bread"), 1);
+                basket.addToBasket(first.get("cake"), 2);
+
+                return null;
+            });
+        }
+
+        StockList second = new StockList();
+
+        second.addStock(StockItem.ofMinorUnits("milk", 199, 10));
+        second.addStock(StockItem.ofMinorUnits("brown bread", 320, 10));
+
+        try(BasketStore store = BasketStore.open(second, file, 1)){
+
+            List<String> items = store.withExistingBasket("alice", basket -> {
+
+                List<String> names = new ArrayList<>();
+
+                basket.Items().keySet().forEach(item -> names.add(item.getName()));
+
+                return names;
+            });
+
+            assertEquals(List.of("brown bread"), items);
+        }
+    }
+
+    // Wiele wczytań i zapisów tych samych sesji - nieaktualne rekordy przekraczają próg i plik jest przepisywany bez utraty koszyków
+
+    @Test
+    void compactionKeepsLiveBaskets(@TempDir Path directory) throws IOException {
+
+        StockList stockList = stockList();
+        Path file = directory.resolve("baskets.bin");
+        long largest = 0;
+
+        try(BasketStore store = BasketStore.open(stockList, file, 2, 512)){
+
+            for(int round = 0; round < 200; round++){
+
+                for(int session = 0; session < 10; session++){
+
+                    store.withBasket("session" + session, basket -> basket.addToBasket(stockList.get("bread"), 1));
+                }
+
+                largest = Math.max(largest, store.fileSize());
+            }
+
+            assertTrue(store.fileSize() < largest, "file was never compacted");
+        }
+
+        try(BasketStore store = BasketStore.open(stockList, file, 2)){
+
+            assertEquals(10, store.size());
+
+            for(int session = 0; session < 10; session++){
+
+                assertEquals(200, (int) store.withExistingBasket("session" + session, basket -> basket.Items().get(stockList.get("bread"))));
+            }
+        }
+    }
+
+    // Kilka wątków, każdy na swoich sesjach, przy małej części w pamięci - wczytywanie i zapis do pliku poza blokadą magazynu
+
+    @Test
+    void concurrentSessionsKeepTheirLines(@TempDir Path directory) throws Exception {
+
+        StockList stockList = stockList();
+        Path file = directory.resolve("baskets.bin");
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        try(BasketStore store = BasketStore.open(stockList, file, 4, 4_096)){
+
+            Thread[] threads = new Thread[4];
+
+            for(int t = 0; t < threads.length; t++){
+
+                int thread = t;
+
+                threads[t] = new Thread(() -> {
+
+                    try {
+
+                        for(int round = 0; round < 500; round++){
+
+                            store.withBasket("t" + thread + "-" + (round % 8), basket -> basket.addToBasket(stockList.get("bread"), 1));
+                        }
+
+                    } catch(Throwable e){
+
+                        failure.compareAndSet(null, e);
+                    }
+                });
+
+                threads[t].start();
+            }
+
+            for(Thread thread : threads){
+
+                thread.join();
+            }
+
+            assertNull(failure.get());
+            assertEquals(32, store.size());
+
+            for(int t = 0; t < threads.length; t++){
+
+                for(int session = 0; session < 8; session++){
+
+                    assertEquals(500 / 8 + (session < 500 % 8 ? 1 : 0), (int) store.withExistingBasket("t" + t + "-" + session, basket -> basket.Items().get(stockList.get("bread"))));
+                }
+            }
+        }
+    }
+
+    private static StockList stockList() {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 1_000));
+        stockList.addStock(StockItem.ofMinorUnits("brown bread", 320, 1_000));
+
+        return stockList;
+    }
+}
@@ -0,0 +1,179 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// StockList.reserveAll() - PARTIAL i ALL_OR_NOTHING, cofanie rezerwacji, ponowne użycie wyniku oraz Basket.addAll()
+
+class BatchReservationTest {
+
+    private static StockList stockList() {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+        stockList.addStock(StockItem.ofMinorUnits("milk", 199, 5));
+        stockList.addStock(StockItem.ofMinorUnits("jam", 450, 2));
+
+        return stockList;
+    }
+
+    private static Map<String, Integer> order(Object... lines) {
+
+        Map<String, Integer> order = new LinkedHashMap<>();
+
+        for(int line = 0; line < lines.length; line += 2){
+
+            order.put((String) lines[line], (Integer) lines[line + 1]);
+        }
+
+        return order;
+    }
+
+    // PARTIAL - każda pozycja osobno, nieudane pozycje nie wpływają na pozostałe
+
+    @Test
+    void partialReservesEveryLineThatFits() {
+
+        StockList stockList = stockList();
+
+        BatchReservation result = stockList.reserveAll(order("bread", 3, "cheese", 1, "jam", 5, "milk", 2, "butter", null, "bread", 0), BatchReservation.Policy.PARTIAL);
+
+        // Mapa nie ma powtórzonych kluczy - druga pozycja "bread" zastąpiła pierwszą (ilość 0)
+
+        assertEquals(5, result.size());
+        assertEquals(BatchReservation.Outcome.INVALID_QUANTITY, result.getOutcome(0));
+        assertEquals(BatchReservation.Outcome.UNKNOWN_ITEM, result.getOutcome(1));
+        assertEquals(BatchReservation.Outcome.INSUFFICIENT_STOCK, result.getOutcome(2));
+        assertEquals(BatchReservation.Outcome.RESERVED, result.getOutcome(3));
+        assertEquals(BatchReservation.Outcome.UNKNOWN_ITEM, result.getOutcome(4));
+        assertEquals(1, result.getReservedLines());
+        assertFalse(result.isComplete());
+
+        assertEquals("jam", result.getName(2));
+        assertEquals(5, result.getRequested(2));
+        assertEquals(0, result.getReserved(2));
+        assertEquals(2, result.getReserved(3));
+
+        assertEquals(0, stockList.get("bread").getReservedQuantity());
+        assertEquals(0, stockList.get("jam").getReservedQuantity());
+        assertEquals(2, stockList.get("milk").getReservedQuantity());
+    }
+
+    @Test
+    void completeOrderIsReservedUnderBothPolicies() {
+
+        for(BatchReservation.Policy policy : BatchReservation.Policy.values()){
+
+            StockList stockList = stockList();
+            BatchReservation result = stockList.reserveAll(order("bread", 3, "milk", 5), policy);
+
+            assertTrue(result.isComplete(), policy.name());
+            assertEquals(2, result.getReservedLines());
+            assertEquals(3, stockList.get("bread").getReservedQuantity());
+            assertEquals(5, stockList.get("milk").getReservedQuantity());
+            assertEquals(0, stockList.get("milk").getAvailableQuantity());
+            assertEquals("Batch reservation : 2 of 2 lines reserved", result.toString());
+        }
+    }
+
+    // ALL_OR_NOTHING - nieudana pozycja cofa pozycje zarezerwowane wcześniej, a późniejszych już nie rezerwujemy
+
+    @Test
+    void allOrNothingRollsBackEarlierLinesWhenALaterLineFails() {
+
+        StockList stockList = stockList();
+
+        BatchReservation result = stockList.reserveAll(order("bread", 3, "milk", 2, "jam", 5, "bread2", 1), BatchReservation.Policy.ALL_OR_NOTHING);
+
+        assertEquals(BatchReservation.Outcome.ROLLED_BACK, result.getOutcome(0));
+        assertEquals(BatchReservation.Outcome.ROLLED_BACK, result.getOutcome(1));
+        assertEquals(BatchReservation.Outcome.INSUFFICIENT_STOCK, result.getOutcome(2));
+        assertEquals(BatchReservation.Outcome.UNKNOWN_ITEM, result.getOutcome(3));
+        assertEquals(0, result.getReserved(0));
+        assertEquals(0, result.getReservedLines());
+
+        for(StockItem item : stockList.Items().values()){
+
+            assertEquals(0, item.getReservedQuantity(), item.getName());
+        }
+
+        // Nieudana pierwsza pozycja - kolejne są oznaczone jako cofnięte bez rezerwowania
+
+        result = stockList.reserveAll(order("cheese", 1, "bread", 3, "milk", 2), BatchReservation.Policy.ALL_OR_NOTHING);
+
+        assertEquals(BatchReservation.Outcome.UNKNOWN_ITEM, result.getOutcome(0));
+        assertEquals(BatchReservation.Outcome.ROLLED_BACK, result.getOutcome(1));
+        assertEquals(BatchReservation.Outcome.ROLLED_BACK, result.getOutcome(2));
+        assertEquals(0, stockList.get("bread").getReservedQuantity());
+        assertEquals(10, stockList.get("bread").getAvailableQuantity());
+    }
+
+    // Ten sam obiekt wyniku dla kolejnych zamówień - mniejsze zamówienie nie zostawia wierszy poprzedniego, większe powiększa tablice
+
+    @Test
+    void resultObjectCanBeReused() {
+
+        StockList stockList = stockList();
+        BatchReservation result = new BatchReservation(1);
+
+        assertSame(result, stockList.reserveAll(order("bread", 1, "milk", 1, "jam", 1), BatchReservation.Policy.PARTIAL, result));
+        assertEquals(3, result.size());
+        assertEquals("jam", result.getName(2));
+
+        stockList.reserveAll(order("jam", 1), BatchReservation.Policy.PARTIAL, result);
+
+        assertEquals(1, result.size());
+        assertEquals("jam", result.getName(0));
+        assertNull(result.getItem(1));
+        assertNull(result.getName(1));
+        assertTrue(result.isComplete());
+        assertEquals("Batch reservation : 1 of 1 line reserved", result.toString());
+
+        stockList.reserveAll(order(), BatchReservation.Policy.ALL_OR_NOTHING, result);
+
+        assertEquals(0, result.size());
+        assertTrue(result.isComplete());
+        assertEquals(2, stockList.get("jam").getReservedQuantity());
+    }
+
+    // Basket.addAll() - do koszyka trafiają tylko zarezerwowane pozycje, produkty znalezione podczas rezerwacji
+
+    @Test
+    void basketAddsOnlyReservedLines() {
+
+        StockList stockList = stockList();
+        Basket basket = new Basket("basket");
+
+        basket.addToBasket(stockList.get("bread"), stockList.reserveStock("bread", 1));
+
+        BatchReservation result = stockList.reserveAll(order("bread", 2, "jam", 5, "milk", 4), BatchReservation.Policy.PARTIAL);
+
+        assertEquals(2, basket.addAll(result));
+        assertEquals(2, basket.Items().size());
+        assertEquals(3, basket.Items().get(stockList.get("bread")));
+        assertEquals(4, basket.Items().get(stockList.get("milk")));
+        assertNull(basket.Items().get(stockList.get("jam")));
+
+        BatchReservation rolledBack = stockList.reserveAll(order("bread", 1, "jam", 5), BatchReservation.Policy.ALL_OR_NOTHING);
+
+        assertEquals(0, basket.addAll(rolledBack));
+        assertEquals(3, basket.Items().get(stockList.get("bread")));
+        assertEquals(3, stockList.get("bread").getReservedQuantity());
+
+        CheckoutResult checkout = stockList.checkout(basket);
+
+        assertTrue(checkout.isSuccessful());
+        assertEquals(7, checkout.getUnitsSold());
+        assertEquals(7, stockList.get("bread").getQuantityInStock());
+        assertEquals(1, stockList.get("milk").getQuantityInStock());
+    }
+}
@@ -0,0 +1,197 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// StockList.checkout() - sprzedaż całego koszyka albo żadnej pozycji
+
+class CheckoutTest {
+
+    @Test
+    void successfulCheckoutSellsAllLinesAndClearsTheBasket() {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+        stockList.addStock(StockItem.ofMinorUnits("milk", 199, 5));
+
+        StockItem bread = stockList.get("bread");
+        StockItem milk = stockList.get("milk");
+
+        Basket basket = new Basket("basket");
+
+        basket.addToBasket(bread, stockList.reserveStock("bread", 3));
+        basket.addToBasket(milk, stockList.reserveStock("milk", 2));
+
+        CheckoutResult result = stockList.checkout(basket);
+
+        assertTrue(result.isSuccessful());
+        assertEquals(2, result.getLinesSold());
+        assertEquals(5, result.getUnitsSold());
+        assertEquals(3 * 250 + 2 * 199, result.getTotalCostInMinorUnits());
+        assertTrue(basket.Items().isEmpty());
+        assertEquals(7, bread.getQuantityInStock());
+        assertEquals(0, bread.getReservedQuantity());
+        assertEquals(3, milk.getQuantityInStock());
+        assertEquals(0, milk.getReservedQuantity());
+    }
+
+    // Druga pozycja nie ma rezerwacji - sprawdzenie przed sprzedażą odrzuca koszyk, pierwsza pozycja pozostaje nietknięta
+
+    @Test
+    void checkoutWithoutReservationLeavesStockUntouched() {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+        stockList.addStock(StockItem.ofMinorUnits("milk", 199, 5));
+
+        StockItem bread = stockList.get("bread");
+        StockItem milk = stockList.get("milk");
+        Basket basket = new Basket("basket");
+
+        basket.addToBasket(bread, stockList.reserveStock("bread", 3));
+        basket.addToBasket(milk, 2);
+
+        CheckoutResult result = stockList.checkout(basket);
+
+        assertFalse(result.isSuccessful());
+        assertEquals("milk", result.getFailedItem());
+        assertEquals(2, basket.Items().size());
+        assertEquals(10, bread.getQuantityInStock());
+        assertEquals(3, bread.getReservedQuantity());
+        assertEquals(5, milk.getQuantityInStock());
+        assertEquals(0, milk.getReservedQuantity());
+    }
+
+    @Test
+    void checkoutOfUnknownItemFails() {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+
+        Basket basket = new Basket("basket");
+
+        basket.addToBasket(stockList.get("bread"), stockList.reserveStock("bread", 1));
+        basket.addToBasket(StockItem.ofMinorUnits("caviar", 10_000, 0), 1);
+
+        CheckoutResult result = stockList.checkout(basket);
+
+        assertFalse(result.isSuccessful());
+        assertEquals("caviar", result.getFailedItem());
+        assertEquals(1, stockList.get("bread").getReservedQuantity());
+    }
+
+    // Produkt w koszyku pochodzi z innej listy - jego identyfikator wskazuje w tej liście inny produkt
+    // Zakup nie może sprzedać produktu o tym identyfikatorze, tylko produkt o tej samej nazwie
+
+    @Test
+    void checkoutResolvesItemsFromAnotherListByName() {
+
+        StockList other = new StockList();
+
+        other.addStock(StockItem.ofMinorUnits("milk", 199, 5));
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+        stockList.addStock(StockItem.ofMinorUnits("milk", 199, 5));
+
+        StockItem foreignMilk = other.get("milk");
+
+        assertEquals(stockList.idOf("bread"), foreignMilk.getId());
+
+        Basket basket = new Basket("basket");
+
+        stockList.reserveStock("bread", 1);
+        basket.addToBasket(foreignMilk, stockList.reserveStock("milk", 1));
+
+        CheckoutResult result = stockList.checkout(basket);
+
+        assertTrue(result.isSuccessful());
+        assertEquals(4, stockList.get("milk").getQuantityInStock());
+        assertEquals(10, stockList.get("bread").getQuantityInStock());
+        assertEquals(1, stockList.get("bread").getReservedQuantity());
+        assertEquals(5, foreignMilk.getQuantityInStock());
+    }
+
+    // Wiele koszyków sprzedaje te same dwie pozycje, mając do dyspozycji mniej rezerwacji niż koszyków
+    // Wątki rywalizują o wspólną rezerwację, więc część zakupów przechodzi przez kompensację (restoreStock())
+    // Niezależnie od przeplotu obie pozycje muszą zostać sprzedane w tej samej liczbie, a rezerwacje nie mogą zginąć
+
+    @Test
+    void failedCheckoutsRollBackUnderContention() throws InterruptedException {
+
+        int threadCount = 8;
+        int rounds = 20_000;
+        StockList stockList = StockList.concurrentStockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("a", 100, 1_000_000));
+        stockList.addStock(StockItem.ofMinorUnits("b", 100, 1_000_000));
+
+        StockItem a = stockList.get("a");
+        StockItem b = stockList.get("b");
+        AtomicInteger successful = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threadCount];
+
+        // Wspólna pula rezerwacji - mniejsza niż liczba wątków, więc zakupy wzajemnie zużywają sobie rezerwacje
+
+        stockList.reserveStock("a", threadCount / 2);
+        stockList.reserveStock("b", threadCount / 2);
+
+        for(int t = 0; t < threadCount; t++){
+
+            workers[t] = new Thread(() -> {
+
+                try {
+
+                    start.await();
+
+                } catch(InterruptedException e){
+
+                    return;
+                }
+
+                for(int i = 0; i < rounds; i++){
+
+                    Basket basket = new Basket("basket");
+
+                    basket.addToBasket(a, 1);
+                    basket.addToBasket(b, 1);
+
+                    if(stockList.checkout(basket).isSuccessful()){
+
+                        successful.incrementAndGet();
+
+                        // Uzupełnienie wspólnej puli rezerwacji
+
+                        stockList.reserveStock("a", 1);
+                        stockList.reserveStock("b", 1);
+                    }
+                }
+            });
+
+            workers[t].start();
+        }
+
+        start.countDown();
+
+        for(Thread worker : workers){
+
+            worker.join();
+        }
+
+        assertEquals(1_000_000 - successful.get(), a.getQuantityInStock());
+        assertEquals(1_000_000 - successful.get(), b.getQuantityInStock());
+        assertEquals(threadCount / 2, a.getReservedQuantity());
+        assertEquals(threadCount / 2, b.getReservedQuantity());
+    }
+}
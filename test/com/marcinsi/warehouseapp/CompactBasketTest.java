@@ -0,0 +1,126 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Koszyk kompaktowy - pozycje w IntIntHashMap, zakup przez StockList.checkout(CompactBasket)
+
+class CompactBasketTest {
+
+    private static StockList stockList() {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+        stockList.addStock(StockItem.ofMinorUnits("milk", 199, 5));
+        stockList.addStock(StockItem.ofMinorUnits("apple", 50, 100));
+
+        return stockList;
+    }
+
+    @Test
+    void addAndRemoveKeepQuantities() {
+
+        CompactBasket basket = new CompactBasket("basket", 2);
+
+        assertEquals(0, basket.addToBasket(7, 2));
+        assertEquals(2, basket.addToBasket(7, 3));
+        assertEquals(0, basket.addToBasket(-1, 3));
+        assertEquals(0, basket.removeFromBasket(7, 6));
+        assertEquals(4, basket.removeFromBasket(7, 4));
+        assertEquals(1, basket.getQuantity(7));
+        assertEquals(1, basket.removeFromBasket(7, 1));
+        assertEquals(0, basket.size());
+    }
+
+    @Test
+    void linesAreSortedByItemId() {
+
+        CompactBasket basket = new CompactBasket("basket");
+
+        for(int itemId = 40; itemId >= 0; itemId -= 4){
+
+            basket.addToBasket(itemId, itemId + 1);
+        }
+
+        long[] lines = basket.sortedLines();
+
+        assertEquals(11, lines.length);
+
+        for(int i = 0; i < lines.length; i++){
+
+            assertEquals(i * 4, CompactBasket.itemId(lines[i]));
+            assertEquals(i * 4 + 1, CompactBasket.quantity(lines[i]));
+        }
+    }
+
+    @Test
+    void checkoutSellsReservedLines() {
+
+        StockList stockList = stockList();
+        CompactBasket basket = new CompactBasket("basket");
+        int bread = stockList.idOf("bread");
+        int apple = stockList.idOf("apple");
+
+        basket.addToBasket(bread, stockList.reserveStock(bread, 2));
+        basket.addToBasket(apple, stockList.reserveStock(apple, 10));
+
+        CheckoutResult result = stockList.checkout(basket);
+
+        assertTrue(result.isSuccessful());
+        assertEquals(2, result.getLinesSold());
+        assertEquals(12, result.getUnitsSold());
+        assertEquals(2 * 250 + 10 * 50, result.getTotalCostInMinorUnits());
+        assertEquals(0, basket.size());
+        assertEquals(8, stockList.get(bread).getQuantityInStock());
+        assertEquals(90, stockList.get(apple).getQuantityInStock());
+    }
+
+    @Test
+    void checkoutFailsWithoutTouchingStock() {
+
+        StockList stockList = stockList();
+        CompactBasket basket = new CompactBasket("basket");
+        int bread = stockList.idOf("bread");
+        int milk = stockList.idOf("milk");
+
+        basket.addToBasket(bread, stockList.reserveStock(bread, 2));
+        basket.addToBasket(milk, 1);
+
+        CheckoutResult result = stockList.checkout(basket);
+
+        assertFalse(result.isSuccessful());
+        assertEquals("milk", result.getFailedItem());
+        assertEquals(2, basket.size());
+        assertEquals(10, stockList.get(bread).getQuantityInStock());
+        assertEquals(2, stockList.get(bread).getReservedQuantity());
+
+        basket.clearBasket();
+        basket.addToBasket(1_000, 1);
+
+        assertEquals("#1000", stockList.checkout(basket).getFailedItem());
+    }
+
+    // Raport koszyka kompaktowego wygląda tak samo jak raport zwykłego koszyka z tymi samymi pozycjami
+
+    @Test
+    void reportMatchesBasket() {
+
+        StockList stockList = stockList();
+        CompactBasket compact = new CompactBasket("basket");
+        Basket basket = new Basket("basket");
+
+        for(String name : new String[]{"milk", "apple", "bread"}){
+
+            compact.addToBasket(stockList.idOf(name), name.length());
+            basket.addToBasket(stockList.get(name), name.length());
+        }
+
+        assertEquals(basket.toString(), compact.toString(stockList::get));
+        assertArrayEquals(new long[0], new CompactBasket("empty").sortedLines());
+    }
+}
@@ -0,0 +1,85 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// MappedStockList.open() - ponowne otwarcie pliku, odrzucanie parametrów, dla których indeks albo rekordy nie zmieszczą się w buforach
+
+class MappedStockListTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void reopenedFileKeepsItsDataAndParameters() throws IOException {
+
+        Path file = directory.resolve("stock.map");
+
+        try(MappedStockList stockList = MappedStockList.open(file, 1_000, 32)){
+
+            stockList.addStockInMinorUnits("bread", 86, 100);
+            stockList.addStockInMinorUnits("milk", 210, 25);
+            stockList.reserveStock("bread", 4);
+        }
+
+        // Parametry z nagłówka pliku - podane przy ponownym otwarciu są pomijane
+
+        try(MappedStockList stockList = MappedStockList.open(file, 1, 1)){
+
+            int bread = stockList.slotOf("bread");
+
+            assertEquals(2, stockList.size());
+            assertEquals(96, stockList.getAvailableQuantity(bread));
+            assertEquals(4, stockList.getReservedQuantity(bread));
+            assertEquals(210, stockList.getPriceInMinorUnits(stockList.slotOf("milk")));
+        }
+    }
+
+    // Dawniej highestOneBit(capacity) << 2 przepełniał int dla capacity od 2^29
+
+    @Test
+    void oversizedParametersAreRejected() {
+
+        int[] capacities = {0, -1, MappedStockList.MAX_CAPACITY + 1, 1 << 29, Integer.MAX_VALUE};
+
+        for(int capacity : capacities){
+
+            assertThrows(IllegalArgumentException.class, () -> MappedStockList.open(directory.resolve("capacity.map"), capacity, 32), Integer.toString(capacity));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> MappedStockList.open(directory.resolve("name.map"), 10, 0));
+        assertThrows(IllegalArgumentException.class, () -> MappedStockList.open(directory.resolve("name.map"), 10, MappedStockList.MAX_NAME_LENGTH + 1));
+    }
+
+    // Nagłówek z poprawnym znacznikiem, ale niemożliwymi parametrami (uszkodzony plik) - IOException zamiast mapowania
+
+    @Test
+    void corruptedHeaderIsRejected() throws IOException {
+
+        int[][] headers = {{1 << 29, 32, 0, 0}, {100, 32, 4096, 0}, {100, -5, 256, 0}, {-1, 32, 256, 0}, {100, 32, 256, 101}};
+
+        for(int[] header : headers){
+
+            ByteBuffer bytes = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+
+            bytes.putInt(0, 0x4d53544c).putInt(4, header[0]).putInt(8, header[1]).putInt(12, header[3]).putInt(16, header[2]);
+
+            Path file = Files.write(directory.resolve("corrupted.map"), bytes.array());
+
+            assertThrows(IOException.class, () -> MappedStockList.open(file, 10, 10), header[0] + " " + header[1] + " " + header[2] + " " + header[3]);
+        }
+
+        Path other = Files.write(directory.resolve("other.map"), new byte[64]);
+
+        assertThrows(IOException.class, () -> MappedStockList.open(other, 10, 10));
+    }
+}
@@ -0,0 +1,198 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Cennik (PriceSnapshot) - starsze wersje się nie zmieniają, indeks nazw jest częścią wersji, nowe produkty nie kopiują segmentów
+
+class PriceSnapshotTest {
+
+    @Test
+    void olderVersionsDoNotSeeLaterChanges() {
+
+        PriceSnapshot first = PriceSnapshot.empty().withItem(0, "bread", 250).withItem(1, "milk", 199);
+        PriceSnapshot later = first;
+
+        for(int id = 2; id < 5_000; id++){
+
+            later = later.withItem(id, "item" + id, id);
+        }
+
+        later = later.withPrice(0, 300);
+
+        assertEquals(2, first.size());
+        assertEquals(2.5, first.get("bread"));
+        assertNull(first.get("item100"));
+        assertFalse(first.containsKey("item4999"));
+        assertEquals(Map.of("bread", 2.5, "milk", 1.99), new HashMap<>(first));
+
+        assertEquals(5_000, later.size());
+        assertEquals(3.0, later.get("bread"));
+        assertEquals(1.0, later.get("item100"));
+        assertEquals(4999L, later.getPriceInMinorUnits(4_999));
+    }
+
+    // Indeks nazw przebudowywany przy podwojeniu liczby produktów - każda nazwa musi być odnaleziona w każdej wersji
+
+    @Test
+    void everyNameIsFoundAcrossIndexRebuilds() {
+
+        PriceSnapshot snapshot = PriceSnapshot.empty();
+
+        for(int id = 0; id < 20_000; id++){
+
+            snapshot = snapshot.withItem(id, "item" + id, id);
+
+            if(Integer.bitCount(id) == 1){
+
+                for(int known = 0; known <= id; known++){
+
+                    assertEquals(known, snapshot.getPriceInMinorUnits(known));
+                    assertTrue(snapshot.containsKey("item" + known));
+                }
+            }
+        }
+
+        assertFalse(snapshot.containsKey("item20000"));
+        assertFalse(snapshot.containsKey(42));
+        assertNull(snapshot.get(null));
+    }
+
+    // Nowy produkt zapisujemy w miejscu - segment cen jest współdzielony z poprzednią wersją; zmiana ceny kopiuje segment
+
+    @Test
+    void appendsShareSegmentsAndPriceChangesCopyThem() {
+
+        PriceSnapshot first = PriceSnapshot.empty().withItem(0, "bread", 250);
+        PriceSnapshot second = first.withItem(1, "milk", 199);
+        PriceSnapshot third = second.withPrice(1, 205);
+
+        assertSame(first.segment(0), second.segment(0));
+        assertTrue(second.segment(0) != third.segment(0));
+        assertEquals(199, second.getPriceInMinorUnits(1));
+        assertEquals(205, third.getPriceInMinorUnits(1));
+        assertEquals(0, first.getPriceInMinorUnits(1));
+        assertSame(third, third.withPrice(1, 205));
+    }
+
+    // Produkty rejestrowane równolegle mogą trafić do cennika poza kolejnością - puste miejsca nie należą do cennika
+
+    @Test
+    void holesAreFilledWithoutChangingOlderVersions() {
+
+        PriceSnapshot withGap = PriceSnapshot.empty().withItem(0, "bread", 250).withItem(2_500, "far", 1);
+
+        assertEquals(2, withGap.size());
+        assertEquals(2_501, withGap.idLimit());
+        assertFalse(withGap.contains(1_500));
+        assertEquals(0, withGap.getPriceInMinorUnits(1_500));
+        assertEquals(Map.of("bread", 2.5, "far", 0.01), new HashMap<>(withGap));
+
+        PriceSnapshot filled = withGap.withItem(1_500, "middle", 7);
+
+        assertTrue(filled.contains(1_500));
+        assertEquals(0.07, filled.get("middle"));
+        assertFalse(withGap.contains(1_500));
+        assertNull(withGap.get("middle"));
+        assertEquals(3, filled.entrySet().size());
+    }
+
+    // Lista niewspółbieżna zmieniana przez jeden wątek - czytelnicy cennika nie dotykają mapy produktów (LinkedHashMap)
+
+    @Test
+    void readersDoNotTouchTheLiveList() throws InterruptedException {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread reader = new Thread(() -> {
+
+            try {
+
+                while(running.get()){
+
+                    PriceSnapshot snapshot = stockList.PriceList();
+
+                    if(!Double.valueOf(2.5).equals(snapshot.get("bread")) || (snapshot.size() != snapshot.entrySet().size())){
+
+                        throw new AssertionError("Inconsistent price list version " + snapshot.getVersion());
+                    }
+                }
+
+            } catch(Throwable e){
+
+                failure.set(e);
+            }
+        });
+
+        reader.start();
+
+        for(int i = 0; i < 50_000; i++){
+
+            stockList.addStock(StockItem.ofMinorUnits("item" + i, i, 1));
+        }
+
+        running.set(false);
+        reader.join();
+
+        assertNull(failure.get());
+        assertEquals(50_001, stockList.PriceList().size());
+        assertEquals(0.5, stockList.PriceList().get("item50"));
+    }
+
+    // Cena dodatnia mniejsza od grosza nie może zostać zaokrąglona do 0 i pominięta
+
+    @Test
+    void subCentPricesAreRejected() {
+
+        StockItem bread = StockItem.ofMinorUnits("bread", 250, 10);
+
+        assertThrows(IllegalArgumentException.class, () -> bread.setPrice(0.004));
+        assertThrows(IllegalArgumentException.class, () -> new StockItem("crumb", 0.001, 1));
+        assertEquals(250, bread.getPriceInMinorUnits());
+
+        bread.setPrice(0.005);
+        bread.setPrice(0.0);
+
+        assertEquals(1, bread.getPriceInMinorUnits());
+    }
+
+    // Kolumna cen w pliku przechowuje grosze - cena wraca bez błędu zaokrąglenia
+
+    @Test
+    void mappedListStoresMinorUnits(@TempDir Path directory) throws IOException {
+
+        Path file = directory.resolve("stock.bin");
+
+        try(MappedStockList stockList = MappedStockList.open(file, 16, 32)){
+
+            stockList.addStockInMinorUnits("bread", 1_000_000_000_001L, 5);
+            stockList.addStock("milk", 1.99, 5);
+        }
+
+        try(MappedStockList stockList = MappedStockList.open(file, 16, 32)){
+
+            assertEquals(1_000_000_000_001L, stockList.getPriceInMinorUnits(stockList.slotOf("bread")));
+            assertEquals(199, stockList.getPriceInMinorUnits(stockList.slotOf("milk")));
+            assertEquals(1.99, stockList.getPrice(stockList.slotOf("milk")));
+        }
+    }
+}
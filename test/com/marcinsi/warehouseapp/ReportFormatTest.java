@@ -0,0 +1,219 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Raporty StockList.writeReport() i Basket.writeReport() - ten sam tekst co dawne toString() (konkatenacja, String.format("%.2f"), Double.toString())
+
+class ReportFormatTest {
+
+    private static final long[] AMOUNTS = {
+            0, 1, 5, 9, 10, 50, 86, 99, 100, 101, 110, 1250, 6200, 12_345, 99_999,
+            -1, -86, -1250, -100, -999_999_999, -1_000_000_000L,
+            999_999_999, 1_000_000_000L, 1_000_000_001L, 1_234_567_890L, 100_000_000_000L, Long.MAX_VALUE, Long.MIN_VALUE
+    };
+
+    private static String price(long minorUnits) throws IOException {
+
+        StringBuilder s = new StringBuilder();
+
+        ReportFormat.appendPrice(s, minorUnits);
+
+        return s.toString();
+    }
+
+    private static String fixed2(long minorUnits) throws IOException {
+
+        StringBuilder s = new StringBuilder();
+
+        ReportFormat.appendFixed2(s, minorUnits);
+
+        return s.toString();
+    }
+
+    private static String number(long value) throws IOException {
+
+        StringBuilder s = new StringBuilder();
+
+        ReportFormat.appendLong(s, value);
+
+        return s.toString();
+    }
+
+    @Test
+    void priceMatchesDoubleToString() throws IOException {
+
+        assertEquals("12.5", price(1250));
+        assertEquals("0.86", price(86));
+        assertEquals("62.0", price(6200));
+        assertEquals("0.0", price(0));
+        assertEquals("-12.5", price(-1250));
+        assertEquals("9999999.99", price(999_999_999));
+        assertEquals("1.0E7", price(1_000_000_000L));
+
+        for(long amount : AMOUNTS){
+
+            assertEquals(Double.toString(amount / 100.0), price(amount), Long.toString(amount));
+        }
+
+        Random random = new Random(7);
+
+        for(int i = 0; i < 100_000; i++){
+
+            long amount = random.nextInt(4) == 0 ? random.nextLong() >> random.nextInt(64) : random.nextInt(1_100_000_000) - 50_000_000;
+
+            assertEquals(Double.toString(amount / 100.0), price(amount), Long.toString(amount));
+        }
+    }
+
+    // Kwoty do około 10^13 groszy - dla nich String.format("%.2f") liczby double odtwarza dokładnie grosze
+
+    @Test
+    void fixed2MatchesStringFormat() throws IOException {
+
+        assertEquals("12.50", fixed2(1250));
+        assertEquals("0.86", fixed2(86));
+        assertEquals("0.00", fixed2(0));
+        assertEquals("-0.05", fixed2(-5));
+        assertEquals("-12.50", fixed2(-1250));
+        assertEquals("10000000.00", fixed2(1_000_000_000L));
+        assertEquals("123456789012.34", fixed2(12_345_678_901_234L));
+
+        for(long amount : AMOUNTS){
+
+            if(Math.abs((double) amount) < 1e13){
+
+                assertEquals(String.format(Locale.ROOT, "%.2f", amount / 100.0), fixed2(amount), Long.toString(amount));
+            }
+        }
+
+        Random random = new Random(11);
+
+        for(int i = 0; i < 100_000; i++){
+
+            long amount = random.nextLong() % 10_000_000_000_000L >> random.nextInt(40);
+
+            assertEquals(String.format(Locale.ROOT, "%.2f", amount / 100.0), fixed2(amount), Long.toString(amount));
+        }
+    }
+
+    @Test
+    void longMatchesLongToString() throws IOException {
+
+        for(long value : AMOUNTS){
+
+            assertEquals(Long.toString(value), number(value));
+        }
+
+        for(int digits = 0; digits < 19; digits++){
+
+            long power = (long) Math.pow(10, digits);
+
+            assertEquals(Long.toString(power), number(power));
+            assertEquals(Long.toString(power - 1), number(power - 1));
+            assertEquals(Long.toString(-power), number(-power));
+        }
+    }
+
+    // Raport listy - przykład zapisany dosłownie oraz porównanie z dawnym toString() dla kwot powyżej 10 milionów
+
+    @Test
+    void stockListReportMatchesFormerToString() {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 86, 100));
+        stockList.addStock(StockItem.ofMinorUnits("cake", 1250, 3));
+        stockList.addStock(StockItem.ofMinorUnits("car", 15_000_000, 100));
+        stockList.addStock(StockItem.ofMinorUnits("empty", 199, 0));
+        stockList.reserveStock("bread", 2);
+
+        assertEquals("\nStock List\n"
+                + "bread : price 0.86. Reserved : 2. There are 98 in stock (available). Value of item : 84.28\n"
+                + "cake : price 12.5. Reserved : 0. There are 3 in stock (available). Value of item : 37.50\n"
+                + "car : price 150000.0. Reserved : 0. There are 100 in stock (available). Value of item : 15000000.00\n"
+                + "empty : price 1.99. Reserved : 0. There are 0 in stock (available). Value of item : 0.00\n"
+                + "Total stock value : 15000121.78", stockList.toString());
+
+        assertEquals(formerStockListReport(stockList), stockList.toString());
+
+        stockList.addStock(StockItem.ofMinorUnits("yacht", 123_456_789_012L, 7));
+
+        assertEquals(formerStockListReport(stockList), stockList.toString());
+    }
+
+    // Raport koszyka - suma w groszach wypisana jak dawniej liczba double (np. "62.0"), od 10 milionów w zapisie wykładniczym
+
+    @Test
+    void basketReportMatchesFormerToString() {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 86, 100));
+        stockList.addStock(StockItem.ofMinorUnits("cake", 1250, 3));
+        stockList.addStock(StockItem.ofMinorUnits("car", 15_000_000, 100));
+
+        Basket basket = new Basket("Tim");
+
+        assertEquals("\nShopping basket Tim contains 0 items\nTotal cost : 0.0", basket.toString());
+
+        basket.addToBasket(stockList.get("cake"), 1);
+
+        assertEquals("\nShopping basket Tim contains 1 item\n"
+                + "cake : price 12.5. Reserved : 0. 1 purchased\n"
+                + "Total cost : 12.5", basket.toString());
+
+        basket.addToBasket(stockList.get("bread"), 5);
+
+        assertEquals("\nShopping basket Tim contains 2 items\n"
+                + "bread : price 0.86. Reserved : 0. 5 purchased\n"
+                + "cake : price 12.5. Reserved : 0. 1 purchased\n"
+                + "Total cost : 16.8", basket.toString());
+
+        basket.addToBasket(stockList.get("car"), 67);
+
+        assertEquals(formerBasketReport("Tim", basket), basket.toString());
+        assertEquals("Total cost : 1.00500168E7", basket.toString().substring(basket.toString().lastIndexOf('\n') + 1));
+    }
+
+    // Dawne toString() - konkatenacja i String.format(), ale z kwotami w groszach (dawna suma liczb double dawała np. 57.050000000000004)
+
+    private static String formerStockListReport(StockList stockList) {
+
+        String s = "\nStock List\n";
+        long totalCost = 0;
+
+        for(StockItem stockItem : stockList.Items().values()){
+
+            long itemValue = stockItem.getPriceInMinorUnits() * stockItem.getAvailableQuantity();
+
+            s = s + stockItem + ". There are " + stockItem.getAvailableQuantity() + " in stock (available). Value of item : ";
+            s = s + String.format(Locale.ROOT, "%.2f", itemValue / 100.0) + "\n";
+
+            totalCost += itemValue;
+        }
+
+        return s + "Total stock value : " + String.format(Locale.ROOT, "%.2f", totalCost / 100.0);
+    }
+
+    private static String formerBasketReport(String name, Basket basket) {
+
+        Map<StockItem, Integer> list = basket.Items();
+        String s = "\nShopping basket " + name + " contains " + list.size() + (list.size() == 1 ? " item" : " items") + "\n";
+        long totalCost = 0;
+
+        for(Map.Entry<StockItem, Integer> item : list.entrySet()){
+
+            s = s + item.getKey() + ". " + item.getValue() + " purchased\n";
+            totalCost += item.getKey().getPriceInMinorUnits() * item.getValue();
+        }
+
+        return s + "Total cost : " + totalCost / 100.0;
+    }
+}
@@ -0,0 +1,297 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Test obciążeniowy rezerwacji (StockItem - stan w jednej zmiennej long, compareAndSet() bez blokad)
+// N wątków losowo rezerwuje, sprzedaje, cofa rezerwacje i uzupełnia towar jednego produktu
+// Osobny wątek przez cały czas sprawdza stan: inStock >= reserved >= 0 (nigdy nie sprzedajemy towaru, którego nie ma)
+// Na końcu zasada zachowania: stan początkowy + dostawy = stan końcowy + sprzedaż, a reserved = suma rezerwacji trzymanych przez wątki
+//
+// Uruchomienie poza testami (dłuższy przebieg): java com.marcinsi.warehouseapp.ReservationStressTest threads=16 operations=5000000 hot=true
+
+class ReservationStressTest {
+
+    private static final int INITIAL_STOCK = 1_000;
+
+    // Wynik jednego przebiegu - sumy ze wszystkich wątków oraz pierwszy zauważony błąd (null - brak błędu)
+
+    static final class Outcome {
+
+        long sold;
+        long added;
+        long held;
+        int quantityInStock;
+        int reserved;
+        String violation;
+    }
+
+    @Test
+    void reservationsNeverOversell() throws InterruptedException {
+
+        Outcome outcome = run(8, 50_000, false);
+
+        assertNull(outcome.violation);
+        assertEquals(INITIAL_STOCK + outcome.added, outcome.quantityInStock + outcome.sold);
+        assertEquals(outcome.held, outcome.reserved);
+        assertTrue(outcome.reserved <= outcome.quantityInStock);
+    }
+
+    @Test
+    void hotItemReservationsNeverOversell() throws InterruptedException {
+
+        Outcome outcome = run(8, 50_000, true);
+
+        assertNull(outcome.violation);
+        assertEquals(INITIAL_STOCK + outcome.added, outcome.quantityInStock + outcome.sold);
+        assertEquals(outcome.held, outcome.reserved);
+        assertTrue(outcome.reserved <= outcome.quantityInStock);
+    }
+
+    // Mało towaru przy wielu przedziałach - licznik główny jest prawie zawsze pusty, więc rezerwacje ciągle przejmują pule innych przedziałów
+    // W tym czasie sprzedaż i cofnięcie własnych rezerwacji muszą się udawać (suma pul odczytana w trakcie przejęcia nie może liczyć puli dwa razy)
+
+    @Test
+    void hotItemStealsKeepHeldUnitsReleasable() throws InterruptedException {
+
+        Outcome outcome = run(8, 50_000, true, 16);
+
+        assertNull(outcome.violation);
+        assertEquals(16 + outcome.added, outcome.quantityInStock + outcome.sold);
+        assertEquals(outcome.held, outcome.reserved);
+        assertTrue(outcome.reserved <= outcome.quantityInStock);
+    }
+
+    // Odczyt stanu w trakcie przeniesienia pul (np. licznik główny już zmieniony, pula przedziału jeszcze nie) czeka na jego koniec
+
+    @Test
+    void hotItemChecksWaitForQuotaTransfer() throws Exception {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("promo", 100, 100));
+        stockList.markHot("promo", 4);
+
+        StockItem item = stockList.get("promo");
+
+        assertEquals(10, item.reserveStock(10));
+
+        StockStripes stripes = item.stripes();
+        FutureTask<Integer> unreserved = new FutureTask<>(() -> item.unreserveStock(10));
+
+        stripes.beginRebalance();
+
+        try {
+
+            new Thread(unreserved).start();
+
+            Thread.sleep(100);
+
+            assertFalse(unreserved.isDone());
+
+        } finally {
+
+            stripes.endRebalance();
+        }
+
+        assertEquals(10, unreserved.get(5, TimeUnit.SECONDS));
+        assertEquals(0, item.getReservedQuantity());
+        assertEquals(100, item.getAvailableQuantity());
+        assertEquals(0, item.unreserveStock(1));
+    }
+
+    static Outcome run(int threadCount, int operations, boolean hot) throws InterruptedException {
+
+        return run(threadCount, operations, hot, INITIAL_STOCK);
+    }
+
+    static Outcome run(int threadCount, int operations, boolean hot, int initialStock) throws InterruptedException {
+
+        StockList stockList = StockList.concurrentStockList();
+        StockItem item = new StockItem("stress", 1.0, initialStock);
+
+        stockList.addStock(item);
+
+        if(hot){
+
+            stockList.markHot("stress", 4 * threadCount);
+        }
+
+        long[] sold = new long[threadCount];
+        long[] added = new long[threadCount];
+        long[] held = new long[threadCount];
+        AtomicReference<String> violation = new AtomicReference<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threadCount];
+
+        for(int t = 0; t < threadCount; t++){
+
+            int index = t;
+
+            workers[t] = new Thread(() -> {
+
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+
+                try {
+
+                    start.await();
+
+                } catch(InterruptedException e){
+
+                    return;
+                }
+
+                for(int i = 0; i < operations; i++){
+
+                    int quantity = 1 + random.nextInt(5);
+                    int choice = random.nextInt(100);
+
+                    if(choice < 50){
+
+                        int reserved = item.reserveStock(quantity);
+
+                        if((reserved != 0) && (reserved != quantity)){
+
+                            violation.compareAndSet(null, "partial reservation " + reserved + " of " + quantity);
+                        }
+
+                        held[index] += reserved;
+
+                    } else if(choice < 75){
+
+                        // Sprzedaż tylko z własnej rezerwacji - tak jak checkout() po reserveStock()
+
+                        int quantityToSell = (int) Math.min(quantity, held[index]);
+
+                        if(quantityToSell > 0){
+
+                            int finalized = item.finalizeStock(quantityToSell);
+
+                            if(finalized != quantityToSell){
+
+                                violation.compareAndSet(null, "finalize of held units failed : " + finalized + " of " + quantityToSell);
+                            }
+
+                            held[index] -= finalized;
+                            sold[index] += finalized;
+                        }
+
+                    } else if(choice < 95){
+
+                        int quantityToRelease = (int) Math.min(quantity, held[index]);
+
+                        if(quantityToRelease > 0){
+
+                            int released = item.unreserveStock(quantityToRelease);
+
+                            if(released != quantityToRelease){
+
+                                violation.compareAndSet(null, "unreserve of held units failed : " + released + " of " + quantityToRelease);
+                            }
+
+                            held[index] -= released;
+                        }
+
+                    } else {
+
+                        item.adjustStock(quantity);
+                        added[index] += quantity;
+                    }
+                }
+            });
+
+            workers[t].start();
+        }
+
+        // Kontrola stanu w trakcie pracy wątków - jeden odczyt getStockState() zawiera obie wartości z tej samej chwili
+
+        Thread monitor = new Thread(() -> {
+
+            while(running.get()){
+
+                long state = item.getStockState();
+                int quantityInStock = StockItem.quantityInStock(state);
+                int reserved = StockItem.reserved(state);
+
+                if((reserved < 0) || (reserved > quantityInStock)){
+
+                    violation.compareAndSet(null, "inconsistent state : in stock " + quantityInStock + ", reserved " + reserved);
+                }
+
+                Thread.yield();
+            }
+        });
+
+        monitor.start();
+        start.countDown();
+
+        for(Thread worker : workers){
+
+            worker.join();
+        }
+
+        running.set(false);
+        monitor.join();
+
+        Outcome outcome = new Outcome();
+
+        for(int t = 0; t < threadCount; t++){
+
+            outcome.sold += sold[t];
+            outcome.added += added[t];
+            outcome.held += held[t];
+        }
+
+        outcome.quantityInStock = item.getQuantityInStock();
+        outcome.reserved = item.getReservedQuantity();
+        outcome.violation = violation.get();
+
+        return outcome;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        int threads = 16;
+        int operations = 5_000_000;
+        boolean hot = false;
+
+        for(String arg : args){
+
+            String[] parts = arg.split("=", 2);
+
+            switch(parts[0]){
+
+                case "threads": threads = Integer.parseInt(parts[1]); break;
+                case "operations": operations = Integer.parseInt(parts[1]); break;
+                case "hot": hot = Boolean.parseBoolean(parts[1]); break;
+                default: throw new IllegalArgumentException("Unknown argument : " + arg);
+            }
+        }
+
+        Outcome outcome = run(threads, operations, hot);
+        boolean conserved = INITIAL_STOCK + outcome.added == outcome.quantityInStock + outcome.sold;
+        boolean reservationsMatch = outcome.held == outcome.reserved;
+
+        System.out.println("sold " + outcome.sold + ", added " + outcome.added + ", in stock " + outcome.quantityInStock + ", reserved " + outcome.reserved + ", held by threads " + outcome.held);
+
+        if((outcome.violation != null) || !conserved || !reservationsMatch){
+
+            System.out.println("FAILED : " + (outcome.violation != null ? outcome.violation : conserved ? "reserved units do not match" : "stock is not conserved"));
+            System.exit(1);
+        }
+
+        System.out.println("OK : no overselling, stock conserved");
+    }
+}
@@ -0,0 +1,254 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Rezerwacje z terminem ważności - wygaśnięcie, powiązanie z koszykiem oraz zamknięcie listy (StockList.close())
+
+class ReservationTest {
+
+    private static long expiryThreads() {
+
+        return Thread.getAllStackTraces().keySet().stream().filter(thread -> thread.getName().equals("reservation-expiry") && thread.isAlive()).count();
+    }
+
+    @Test
+    void unusedReservationExpires() throws InterruptedException {
+
+        try(StockList stockList = new StockList()){
+
+            stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+
+            CountDownLatch expired = new CountDownLatch(1);
+            Reservation reservation = stockList.reserveStock("bread", 4, 20, TimeUnit.MILLISECONDS, r -> expired.countDown());
+
+            assertNotNull(reservation);
+            assertEquals(4, stockList.get("bread").getReservedQuantity());
+            assertTrue(expired.await(5, TimeUnit.SECONDS));
+            assertTrue(reservation.isExpired());
+            assertEquals(0, stockList.get("bread").getReservedQuantity());
+            assertFalse(reservation.cancel());
+        }
+    }
+
+    // Rezerwacja sprzedana w koszyku nie może po terminie zwolnić sztuk zarezerwowanych przez kogoś innego
+
+    @Test
+    void checkoutCommitsBasketReservations() throws InterruptedException {
+
+        try(StockList stockList = new StockList()){
+
+            stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+            stockList.reserveStock("bread", 3);
+
+            Reservation reservation = stockList.reserveStock("bread", 2, 200, TimeUnit.MILLISECONDS);
+            Basket basket = new Basket("basket");
+
+            basket.addToBasket(reservation);
+
+            assertTrue(stockList.checkout(basket).isSuccessful());
+            assertTrue(reservation.isCommitted());
+
+            Thread.sleep(400);
+
+            StockItem bread = stockList.get("bread");
+
+            assertFalse(reservation.isExpired());
+            assertEquals(8, bread.getQuantityInStock());
+            assertEquals(3, bread.getReservedQuantity());
+        }
+    }
+
+    // Zakup przerwany w połowie (druga rezerwacja została anulowana) - pierwsza rezerwacja nadal oczekuje i wygasa w swoim terminie
+
+    @Test
+    void failedCheckoutLeavesReservationsPending() throws InterruptedException {
+
+        try(StockList stockList = new StockList()){
+
+            stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+            stockList.addStock(StockItem.ofMinorUnits("milk", 300, 10));
+
+            CountDownLatch expired = new CountDownLatch(1);
+            Reservation bread = stockList.reserveStock("bread", 2, 200, TimeUnit.MILLISECONDS, r -> expired.countDown());
+            Reservation milk = stockList.reserveStock("milk", 1, 1, TimeUnit.HOURS);
+            Basket basket = new Basket("basket");
+
+            basket.addToBasket(bread);
+            basket.addToBasket(milk);
+            stockList.reserveStock("milk", 1);
+
+            assertTrue(milk.cancel());
+
+            CheckoutResult result = stockList.checkout(basket);
+
+            assertFalse(result.isSuccessful());
+            assertEquals("milk", result.getFailedItem());
+            assertTrue(bread.isPending());
+            assertEquals(10, stockList.get("bread").getQuantityInStock());
+            assertEquals(2, stockList.get("bread").getReservedQuantity());
+
+            assertTrue(expired.await(5, TimeUnit.SECONDS));
+            assertTrue(bread.isExpired());
+            assertEquals(0, stockList.get("bread").getReservedQuantity());
+            assertEquals(1, stockList.get("milk").getReservedQuantity());
+        }
+    }
+
+    // Pozycja usunięta z koszyka - jej rezerwacja nie może po terminie zwolnić sztuk, które w tym czasie zarezerwował ktoś inny
+
+    @Test
+    void removedBasketLineDoesNotExpireAgain() throws InterruptedException {
+
+        try(StockList stockList = new StockList()){
+
+            stockList.addStock(StockItem.ofMinorUnits("bread", 250, 3));
+
+            Reservation reservation = stockList.reserveStock("bread", 3, 200, TimeUnit.MILLISECONDS);
+            Basket basket = new Basket("basket");
+
+            basket.addToBasket(reservation);
+
+            assertEquals(3, stockList.removeFromBasket(basket, "bread", 3));
+            assertEquals(3, stockList.reserveStock("bread", 3));
+
+            Thread.sleep(400);
+
+            assertFalse(reservation.isExpired());
+            assertEquals(3, stockList.get("bread").getReservedQuantity());
+            assertEquals(0, stockList.get("bread").getAvailableQuantity());
+        }
+    }
+
+    // Częściowe usunięcie pozycji - zwolnione sztuki wracają od razu, pozostałe nadal wygasają w terminie (dokładnie raz)
+
+    @Test
+    void partiallyRemovedLineKeepsTheDeadlineForTheRest() throws InterruptedException {
+
+        try(StockList stockList = new StockList()){
+
+            stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+
+            CountDownLatch expired = new CountDownLatch(1);
+            Basket basket = new Basket("basket");
+
+            basket.addToBasket(stockList.reserveStock("bread", 3, 200, TimeUnit.MILLISECONDS, r -> expired.countDown()));
+
+            assertEquals(1, stockList.removeFromBasket(basket, "bread", 1));
+            assertEquals(2, stockList.get("bread").getReservedQuantity());
+            assertEquals(8, stockList.reserveStock("bread", 8));
+            assertTrue(expired.await(5, TimeUnit.SECONDS));
+            assertEquals(8, stockList.get("bread").getReservedQuantity());
+
+            // Koniec sesji po wygaśnięciu - sztuki zwolnione przez termin nie są zwalniane po raz drugi
+
+            assertEquals(2, stockList.releaseBasket(basket));
+            assertEquals(8, stockList.get("bread").getReservedQuantity());
+            assertTrue(basket.Items().isEmpty());
+        }
+    }
+
+    // Rezerwacja wygasła, zanim koszyk został sprzedany - jej towar wrócił do puli, więc zakup się nie udaje
+
+    @Test
+    void checkoutFailsForExpiredReservation() throws InterruptedException {
+
+        try(StockList stockList = new StockList()){
+
+            stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+
+            CountDownLatch expired = new CountDownLatch(1);
+            Reservation reservation = stockList.reserveStock("bread", 2, 10, TimeUnit.MILLISECONDS, r -> expired.countDown());
+            Basket basket = new Basket("basket");
+
+            basket.addToBasket(reservation);
+            stockList.reserveStock("bread", 2);
+
+            assertTrue(expired.await(5, TimeUnit.SECONDS));
+
+            CheckoutResult result = stockList.checkout(basket);
+
+            assertFalse(result.isSuccessful());
+            assertEquals("bread", result.getFailedItem());
+            assertEquals(10, stockList.get("bread").getQuantityInStock());
+            assertEquals(2, stockList.get("bread").getReservedQuantity());
+            assertEquals(0, basket.addToBasket(reservation));
+        }
+    }
+
+    @Test
+    void closeStopsTheExpiryThread() {
+
+        long before = expiryThreads();
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+
+        Reservation reservation = stockList.reserveStock("bread", 1, 1, TimeUnit.HOURS);
+
+        assertEquals(before + 1, expiryThreads());
+
+        stockList.close();
+
+        assertEquals(before, expiryThreads());
+        assertThrows(IllegalStateException.class, () -> stockList.reserveStock("bread", 1, 1, TimeUnit.HOURS));
+        assertEquals(1, stockList.get("bread").getReservedQuantity());
+        assertTrue(reservation.cancel());
+        assertEquals(0, stockList.get("bread").getReservedQuantity());
+        assertEquals(1, stockList.reserveStock("bread", 1));
+    }
+
+    // Oczekująca rezerwacja kończy się w puli wątków - dalsze kroki klienta nie blokują wątku, który zwolnił towar
+
+    @Test
+    void backorderContinuationDoesNotRunInReleasingThread() throws Exception {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 0));
+
+        CompletableFuture<Integer> pending = stockList.reserveOrWait("bread", 5, 10, TimeUnit.SECONDS);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Thread> continuation = new AtomicReference<>();
+
+        CompletableFuture<Integer> done = pending.thenApply(quantity -> {
+
+            continuation.set(Thread.currentThread());
+            started.countDown();
+
+            try {
+
+                release.await(5, TimeUnit.SECONDS);
+            } catch(InterruptedException e){
+
+                Thread.currentThread().interrupt();
+            }
+
+            return quantity;
+        });
+
+        assertFalse(pending.isDone());
+
+        stockList.get("bread").adjustStock(5);
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), continuation.get());
+
+        release.countDown();
+
+        assertEquals(5, done.get(5, TimeUnit.SECONDS));
+        assertEquals(5, stockList.get("bread").getReservedQuantity());
+    }
+}
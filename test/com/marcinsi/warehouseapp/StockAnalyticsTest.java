@@ -0,0 +1,200 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// StockList.analyze() - wynik obliczeń równoległych (StockAnalytics) porównany ze zwykłą pętlą po produktach
+
+class StockAnalyticsTest {
+
+    private static final int[] BOUNDS = {1, 10, 100, 1_000};
+
+    // Lista mniejsza niż jedno zadanie (bez puli wątków) i lista dzielona na wiele zadań
+    // Małe zakresy cen i ilości - dużo równych wartości (remisy przy min/max i w top-K)
+
+    @Test
+    void parallelResultMatchesSequentialLoop() {
+
+        for(int size : new int[] {3_000, 5 * StockAnalytics.LEAF_SIZE + 123}){
+
+            StockList stockList = new StockList();
+            Random random = new Random(size);
+
+            for(int i = 0; i < size; i++){
+
+                stockList.addStock(StockItem.ofMinorUnits("item" + i, 1 + random.nextInt(20), random.nextInt(1_500)));
+            }
+
+            for(StockItem item : stockList.Items().values()){
+
+                if(random.nextInt(4) == 0){
+
+                    item.reserveStock(1 + random.nextInt(Math.max(1, item.getQuantityInStock())));
+                }
+            }
+
+            for(int topK : new int[] {0, 1, 10, 250}){
+
+                assertMatchesSequential(stockList, topK);
+            }
+        }
+    }
+
+    // Równe wartości w top-K - wyżej produkt dodany wcześniej, niezależnie od podziału na zadania
+
+    @Test
+    void topTiesAreOrderedByInsertion() {
+
+        StockList stockList = new StockList();
+
+        for(int i = 0; i < 3 * StockAnalytics.LEAF_SIZE; i++){
+
+            stockList.addStock(StockItem.ofMinorUnits("item" + i, 100, 1));
+        }
+
+        stockList.get("item" + (2 * StockAnalytics.LEAF_SIZE)).adjustStock(1);
+
+        StockStatistics statistics = stockList.analyze(BOUNDS, 4);
+        List<StockItem> top = statistics.getTopByValue();
+
+        assertEquals(4, top.size());
+        assertSame(stockList.get("item" + (2 * StockAnalytics.LEAF_SIZE)), top.get(0));
+        assertSame(stockList.get("item0"), top.get(1));
+        assertSame(stockList.get("item1"), top.get(2));
+        assertSame(stockList.get("item2"), top.get(3));
+        assertEquals(200, statistics.getTopValueInMinorUnits(0));
+        assertEquals(100, statistics.getTopValueInMinorUnits(3));
+        assertSame(stockList.get("item0"), statistics.getMinAvailableItem());
+        assertSame(stockList.get("item" + (2 * StockAnalytics.LEAF_SIZE)), statistics.getMaxAvailableItem());
+    }
+
+    @Test
+    void emptyListHasZeroStatistics() {
+
+        StockStatistics statistics = new StockList().analyze(BOUNDS, 5);
+
+        assertEquals(0, statistics.getItemCount());
+        assertEquals(0, statistics.getQuantityInStock());
+        assertEquals(0, statistics.getAvailableValueInMinorUnits());
+        assertEquals(0, statistics.getMinAvailable());
+        assertEquals(0, statistics.getMaxAvailable());
+        assertEquals(0, statistics.getMinPriceInMinorUnits());
+        assertEquals(0, statistics.getMaxPriceInMinorUnits());
+        assertNull(statistics.getMinAvailableItem());
+        assertNull(statistics.getMaxAvailableItem());
+        assertTrue(statistics.getTopByValue().isEmpty());
+        assertEquals(BOUNDS.length + 1, statistics.getHistogramBins());
+
+        for(int bin = 0; bin < statistics.getHistogramBins(); bin++){
+
+            assertEquals(0, statistics.getHistogramCount(bin));
+        }
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+
+        StockList stockList = new StockList();
+
+        assertThrows(IllegalArgumentException.class, () -> stockList.analyze(new int[] {10, 10}, 1));
+        assertThrows(IllegalArgumentException.class, () -> stockList.analyze(BOUNDS, -1));
+    }
+
+    private static void assertMatchesSequential(StockList stockList, int topK) {
+
+        List<StockItem> items = new ArrayList<>(stockList.Items().values());
+
+        items.sort(Comparator.comparingInt(StockItem::getId));
+
+        long quantity = 0;
+        long reserved = 0;
+        long availableValue = 0;
+        long reservedValue = 0;
+        long minPrice = Long.MAX_VALUE;
+        long maxPrice = Long.MIN_VALUE;
+        StockItem minItem = null;
+        StockItem maxItem = null;
+        long[] histogram = new long[BOUNDS.length + 1];
+
+        for(StockItem item : items){
+
+            int available = item.getAvailableQuantity();
+            long price = item.getPriceInMinorUnits();
+
+            quantity += item.getQuantityInStock();
+            reserved += item.getReservedQuantity();
+            availableValue += price * available;
+            reservedValue += price * item.getReservedQuantity();
+            minPrice = Math.min(minPrice, price);
+            maxPrice = Math.max(maxPrice, price);
+
+            if((minItem == null) || (available < minItem.getAvailableQuantity())){
+
+                minItem = item;
+            }
+
+            if((maxItem == null) || (available > maxItem.getAvailableQuantity())){
+
+                maxItem = item;
+            }
+
+            int bin = 0;
+
+            while((bin < BOUNDS.length) && (available >= BOUNDS[bin])){
+
+                bin++;
+            }
+
+            histogram[bin]++;
+        }
+
+        // Top-K: sortowanie stabilne po wartości - przy remisie zostaje kolejność identyfikatorów
+
+        List<StockItem> top = new ArrayList<>(items);
+
+        top.sort(Comparator.comparingLong((StockItem item) -> item.getPriceInMinorUnits() * item.getAvailableQuantity()).reversed());
+
+        top = top.subList(0, Math.min(topK, top.size()));
+
+        StockStatistics statistics = stockList.analyze(BOUNDS, topK);
+        long[] histogramResult = new long[statistics.getHistogramBins()];
+
+        for(int bin = 0; bin < histogramResult.length; bin++){
+
+            histogramResult[bin] = statistics.getHistogramCount(bin);
+        }
+
+        String context = items.size() + " items, top " + topK;
+
+        assertEquals(items.size(), statistics.getItemCount(), context);
+        assertEquals(quantity, statistics.getQuantityInStock(), context);
+        assertEquals(reserved, statistics.getReservedQuantity(), context);
+        assertEquals(quantity - reserved, statistics.getAvailableQuantity(), context);
+        assertEquals(availableValue, statistics.getAvailableValueInMinorUnits(), context);
+        assertEquals(reservedValue, statistics.getReservedValueInMinorUnits(), context);
+        assertEquals(minPrice, statistics.getMinPriceInMinorUnits(), context);
+        assertEquals(maxPrice, statistics.getMaxPriceInMinorUnits(), context);
+        assertSame(minItem, statistics.getMinAvailableItem(), context);
+        assertSame(maxItem, statistics.getMaxAvailableItem(), context);
+        assertEquals(minItem.getAvailableQuantity(), statistics.getMinAvailable(), context);
+        assertEquals(maxItem.getAvailableQuantity(), statistics.getMaxAvailable(), context);
+        assertArrayEquals(histogram, histogramResult, context);
+        assertEquals(top, statistics.getTopByValue(), context);
+
+        for(int rank = 0; rank < top.size(); rank++){
+
+            assertEquals(top.get(rank).getPriceInMinorUnits() * top.get(rank).getAvailableQuantity(), statistics.getTopValueInMinorUnits(rank), context);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Strumień zmian - bufor cykliczny wielu producentów i jednego czytelnika
+
+class StockEventStreamTest {
+
+    // Pozycje przechodzą wielokrotnie przez koniec bufora - zdarzenia wychodzą w kolejności publikacji, pełny bufor odrzuca zdarzenie
+
+    @Test
+    void eventsSurviveManyWraparounds() {
+
+        StockList stockList = new StockList();
+
+        try(StockEventStream stream = stockList.subscribe(8)){
+
+            List<Integer> received = new ArrayList<>();
+            List<Long> sequences = new ArrayList<>();
+            List<Long> prices = new ArrayList<>();
+            int published = 0;
+
+            for(int round = 0; round < 1_000; round++){
+
+                for(int i = 0; i < 5; i++){
+
+                    assertTrue(stream.publish(StockEvent.Type.RESERVED, published, 0, 1, 100L * published));
+
+                    published++;
+                }
+
+                assertEquals(5, stream.poll((event, endOfBatch) -> {
+
+                    received.add(event.getItemId());
+                    sequences.add(event.getSequence());
+                    prices.add(event.getPriceInMinorUnits());
+
+                }, 16));
+            }
+
+            for(int i = 0; i < received.size(); i++){
+
+                assertEquals(i, received.get(i));
+                assertEquals((long) i, sequences.get(i));
+                assertEquals(100L * i, prices.get(i));
+            }
+
+            for(int i = 0; i < 8; i++){
+
+                assertTrue(stream.publish(StockEvent.Type.ADJUSTED, i, 1, 0, 0));
+            }
+
+            assertFalse(stream.publish(StockEvent.Type.ADJUSTED, 8, 1, 0, 0));
+            assertEquals(1, stream.droppedEvents());
+
+            boolean[] lastFlag = new boolean[1];
+
+            assertEquals(3, stream.poll((event, endOfBatch) -> lastFlag[0] = endOfBatch, 3));
+            assertTrue(lastFlag[0]);
+            assertEquals(5, stream.poll((event, endOfBatch) -> lastFlag[0] = endOfBatch, 16));
+            assertTrue(lastFlag[0]);
+            assertEquals(0, stream.poll((event, endOfBatch) -> { }, 16));
+        }
+    }
+
+    // Kilku producentów naraz - zdarzenia każdego producenta przychodzą w kolejności, a odebrane i odrzucone sumują się do opublikowanych
+
+    @Test
+    void concurrentProducersKeepTheirOrder() throws InterruptedException {
+
+        int producerCount = 4;
+        int perProducer = 200_000;
+        StockList stockList = StockList.concurrentStockList();
+
+        try(StockEventStream stream = stockList.subscribe(256)){
+
+            Thread[] producers = new Thread[producerCount];
+
+            for(int p = 0; p < producerCount; p++){
+
+                int producer = p;
+
+                producers[p] = new Thread(() -> {
+
+                    for(int i = 1; i <= perProducer; i++){
+
+                        stream.publish(StockEvent.Type.ADJUSTED, producer, i, 0, 0);
+                    }
+                });
+
+                producers[p].start();
+            }
+
+            int[] last = new int[producerCount];
+            long[] received = new long[1];
+            boolean[] ordered = {true};
+            StockEventStream.Handler handler = (event, endOfBatch) -> {
+
+                ordered[0] &= event.getQuantityDelta() > last[event.getItemId()];
+                last[event.getItemId()] = event.getQuantityDelta();
+                received[0]++;
+            };
+
+            boolean running = true;
+
+            while(running){
+
+                stream.poll(handler, 64, 1, TimeUnit.MILLISECONDS);
+
+                running = false;
+
+                for(Thread producer : producers){
+
+                    running |= producer.isAlive();
+                }
+            }
+
+            while(stream.poll(handler, 64) > 0){
+
+                // Zdarzenia opublikowane tuż przed zakończeniem producentów
+            }
+
+            assertTrue(ordered[0]);
+            assertEquals((long) producerCount * perProducer, received[0] + stream.droppedEvents());
+        }
+    }
+
+    @Test
+    void stockChangesArePublished() {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+
+        try(StockEventStream stream = stockList.subscribe(16)){
+
+            stockList.reserveStock("bread", 3);
+            stockList.sellStock("bread", 2);
+            stockList.get("bread").adjustStock(5);
+            stockList.get("bread").setPrice(2.75);
+
+            List<String> events = new ArrayList<>();
+
+            stream.poll((event, endOfBatch) -> events.add(event.getType() + " " + event.getItemId() + " " + event.getQuantityDelta() + " " + event.getReservedDelta() + " " + event.getPriceInMinorUnits()), 16);
+
+            assertEquals(List.of("RESERVED 0 0 3 0", "FINALIZED 0 -2 -2 0", "ADJUSTED 0 5 0 0", "PRICE_CHANGED 0 0 0 275"), events);
+        }
+
+        stockList.reserveStock("bread", 1);
+    }
+}
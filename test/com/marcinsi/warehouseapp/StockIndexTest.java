@@ -0,0 +1,180 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// StockIndex - zmiany stanu przenoszone przy zapytaniu, zastępowanie produktów i zgodność z zapytaniami bez indeksu
+
+class StockIndexTest {
+
+    // Wyniki zapytań z indeksem muszą być takie same jak na liście bez indeksu (także po wielu zmianach pomiędzy zapytaniami)
+
+    @Test
+    void indexedQueriesMatchPlainQueries() {
+
+        StockList indexed = new StockList();
+        StockList plain = new StockList();
+        Random random = new Random(16);
+
+        for(int i = 0; i < 200; i++){
+
+            long price = 1 + random.nextInt(5_000);
+            int quantity = random.nextInt(1_000);
+
+            indexed.addStock(StockItem.ofMinorUnits("item" + i, price, quantity));
+            plain.addStock(StockItem.ofMinorUnits("item" + i, price, quantity));
+        }
+
+        indexed.enableIndexes();
+
+        for(int i = 0; i < 2_000; i++){
+
+            String name = "item" + random.nextInt(200);
+            int quantity = 1 + random.nextInt(20);
+
+            if(random.nextBoolean()){
+
+                assertEquals(plain.reserveStock(name, quantity), indexed.reserveStock(name, quantity));
+            }
+            else {
+
+                assertEquals(plain.sellStock(name, quantity), indexed.sellStock(name, quantity));
+            }
+        }
+
+        for(int threshold : new int[] {0, 1, 15, 16, 17, 100, 333, 1_000}){
+
+            assertEquals(names(plain.itemsBelowAvailable(threshold)), names(indexed.itemsBelowAvailable(threshold)));
+        }
+
+        for(int count : new int[] {0, 1, 5, 37, 200, 500}){
+
+            assertEquals(names(plain.mostAvailable(count)), names(indexed.mostAvailable(count)));
+        }
+
+        assertEquals(names(plain.itemsInPriceRange(10, 20)), names(indexed.itemsInPriceRange(10, 20)));
+    }
+
+    // Rezerwacja nie przenosi produktu w indeksie - robi to dopiero następne zapytanie o ilość (raz, niezależnie od liczby zmian)
+
+    @Test
+    void reservationsAreAppliedAtTheNextQuery() {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 1_000));
+        stockList.addStock(StockItem.ofMinorUnits("milk", 300, 990));
+        stockList.enableIndexes();
+
+        StockItem bread = stockList.get("bread");
+        StockIndex.Key key = bread.availableKey;
+
+        for(int i = 0; i < 20; i++){
+
+            stockList.reserveStock("bread", 1);
+        }
+
+        assertSame(key, bread.availableKey);
+        assertEquals(1, bread.indexChanged);
+        assertEquals(List.of("milk"), names(stockList.mostAvailable(1)));
+        assertTrue(key != bread.availableKey);
+        assertEquals(0, bread.indexChanged);
+        assertEquals(List.of("bread"), names(stockList.itemsBelowAvailable(985)));
+    }
+
+    // Wiele produktów o prawie tej samej ilości - zapytanie przenosi tylko zmienione produkty i zwraca dokładną kolejność
+
+    @Test
+    void narrowQuantityRangeQueriesMatchPlainQueries() {
+
+        StockList indexed = new StockList();
+        StockList plain = new StockList();
+        Random random = new Random(1_000);
+
+        for(int i = 0; i < 20_000; i++){
+
+            int quantity = 1_000 + random.nextInt(100);
+
+            indexed.addStock(StockItem.ofMinorUnits("item" + i, 100, quantity));
+            plain.addStock(StockItem.ofMinorUnits("item" + i, 100, quantity));
+        }
+
+        indexed.enableIndexes();
+
+        for(int round = 0; round < 20; round++){
+
+            for(int i = 0; i < 50; i++){
+
+                String name = "item" + random.nextInt(20_000);
+                int quantity = 1 + random.nextInt(30);
+
+                assertEquals(plain.reserveStock(name, quantity), indexed.reserveStock(name, quantity));
+            }
+
+            assertEquals(names(plain.mostAvailable(3)), names(indexed.mostAvailable(3)));
+            assertEquals(names(plain.itemsBelowAvailable(1_000)), names(indexed.itemsBelowAvailable(1_000)));
+        }
+    }
+
+    // Zastąpiony produkt znika z wyników, nowy obiekt (ten sam identyfikator) jest widoczny od razu
+
+    @Test
+    void replacedItemIsDroppedFromResults() {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 5));
+        stockList.enableIndexes();
+        stockList.addStock(StockItem.ofMinorUnits("bread", 300, 7));
+
+        List<StockItem> below = stockList.itemsBelowAvailable(100);
+
+        assertEquals(1, below.size());
+        assertSame(stockList.get("bread"), below.get(0));
+        assertEquals(List.of("bread"), names(stockList.mostExpensive(10)));
+        assertEquals(3.0, stockList.mostExpensive(1).get(0).getPrice());
+    }
+
+    // Rezerwacje produktu "gorącego" (z pul przedziałów) są od razu widoczne w wartości magazynu i w zapytaniach o ilość
+
+    @Test
+    void hotItemReservationsAreVisibleInValuationAndIndex() {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 1_000));
+        stockList.addStock(StockItem.ofMinorUnits("milk", 300, 900));
+        stockList.enableIndexes();
+
+        assertTrue(stockList.markHot("bread", 4));
+
+        stockList.reserveStock("bread", 200);
+
+        assertEquals(800, stockList.get("bread").getAvailableQuantity());
+        assertEquals(800 * 250 + 900 * 300, stockList.totalAvailableValueInMinorUnits());
+        assertEquals(200 * 250, stockList.totalReservedValueInMinorUnits());
+        assertEquals(stockList.computeAvailableValueInMinorUnits(), stockList.totalAvailableValueInMinorUnits());
+        assertEquals(List.of("bread"), names(stockList.itemsBelowAvailable(850)));
+        assertEquals(List.of("milk", "bread"), names(stockList.mostAvailable(2)));
+        assertEquals(List.of("milk"), names(stockList.mostAvailable(1)));
+
+        // Zastąpiony produkt "gorący" znika z sum i z wyników
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+
+        assertEquals(stockList.computeAvailableValueInMinorUnits(), stockList.totalAvailableValueInMinorUnits());
+        assertEquals(List.of("bread"), names(stockList.itemsBelowAvailable(850)));
+        assertSame(stockList.get("bread"), stockList.itemsBelowAvailable(850).get(0));
+    }
+
+    private static List<String> names(List<StockItem> items) {
+
+        return items.stream().map(StockItem::getName).toList();
+    }
+}
@@ -0,0 +1,302 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Dziennik zmian - odtworzenie stanu, potwierdzenie trwałości rezerwacji, odrzucanie zbyt dużych rekordów, zachowanie po błędzie zapisu
+
+class StockJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private static void assertSameState(StockList expected, StockList actual) {
+
+        assertEquals(expected.Items().size(), actual.Items().size());
+
+        for(StockItem item : expected.Items().values()){
+
+            StockItem recovered = actual.get(item.getName());
+
+            assertEquals(item.getQuantityInStock(), recovered.getQuantityInStock(), item.getName());
+            assertEquals(item.getReservedQuantity(), recovered.getReservedQuantity(), item.getName());
+            assertEquals(item.getPriceInMinorUnits(), recovered.getPriceInMinorUnits(), item.getName());
+        }
+    }
+
+    @Test
+    void recoverReplaysEveryKindOfChange() throws IOException {
+
+        StockList stockList = new StockList();
+
+        try(StockJournal journal = StockJournal.open(directory)){
+
+            stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+            stockList.attachJournal(journal);
+            stockList.addStock(StockItem.ofMinorUnits("milk", 199, 5));
+            stockList.reserveStock("bread", 4);
+            stockList.sellStock("bread", 3);
+            stockList.unreservedStock("bread", 1);
+            stockList.get("milk").adjustStock(7);
+            stockList.get("milk").setPriceInMinorUnits(205);
+            stockList.addStock(StockItem.ofMinorUnits("bread", 260, 2));
+        }
+
+        assertSameState(stockList, StockJournal.recover(directory, new StockList()));
+    }
+
+    // Zmiany po migawce trafiają do nowego pliku dziennika i nadpisują stan zapisany w migawce
+
+    @Test
+    void recoverStartsFromTheLatestSnapshot() throws IOException {
+
+        StockList stockList = new StockList();
+
+        try(StockJournal journal = StockJournal.open(directory)){
+
+            stockList.attachJournal(journal);
+
+            for(int i = 0; i < 100; i++){
+
+                stockList.addStock(StockItem.ofMinorUnits("item" + i, 100 + i, 50));
+            }
+
+            journal.snapshot(stockList);
+
+            for(int i = 0; i < 100; i += 3){
+
+                stockList.reserveStock("item" + i, i % 7 + 1);
+            }
+
+            journal.snapshot(stockList);
+            stockList.sellStock("item0", 1);
+            stockList.addStock(StockItem.ofMinorUnits("late", 1, 1));
+        }
+
+        assertSameState(stockList, StockJournal.recover(directory, new StockList()));
+    }
+
+    // Kilka wątków dopisuje rekordy równocześnie - dane zajmują wiele buforów, ostatni rekord każdego produktu musi zawierać stan końcowy
+
+    @Test
+    void concurrentAppendsRecoverTheFinalState() throws Exception {
+
+        int threadCount = 4;
+        int itemCount = 64;
+        StockList stockList = StockList.concurrentStockList();
+
+        for(int i = 0; i < itemCount; i++){
+
+            stockList.addStock(StockItem.ofMinorUnits("item" + i, 10, 1_000_000));
+        }
+
+        try(StockJournal journal = StockJournal.open(directory)){
+
+            stockList.attachJournal(journal);
+
+            Thread[] workers = new Thread[threadCount];
+
+            for(int t = 0; t < threadCount; t++){
+
+                int seed = t;
+
+                workers[t] = new Thread(() -> {
+
+                    for(int i = 0; i < 60_000; i++){
+
+                        String name = "item" + ((i * 31 + seed) % itemCount);
+
+                        if(stockList.reserveStock(name, 2) == 2){
+
+                            stockList.sellStock(name, 1);
+                        }
+                    }
+                });
+
+                workers[t].start();
+            }
+
+            for(Thread worker : workers){
+
+                worker.join();
+            }
+        }
+
+        assertSameState(stockList, StockJournal.recover(directory, new StockList()));
+    }
+
+    // Potwierdzona rezerwacja jest na dysku, zanim metoda wróci - odtworzenie przy otwartym dzienniku już ją zawiera
+
+    @Test
+    void durableReservationIsOnDiskBeforeItReturns() throws IOException {
+
+        StockList stockList = new StockList();
+
+        try(StockJournal journal = StockJournal.open(directory)){
+
+            stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+            stockList.attachJournal(journal);
+
+            assertEquals(3, stockList.reserveStockDurably("bread", 3));
+
+            StockList recovered = StockJournal.recover(directory, new StockList());
+
+            assertEquals(3, recovered.get("bread").getReservedQuantity());
+            assertEquals(0, stockList.reserveStockDurably("bread", 8));
+            assertEquals(0, stockList.reserveStockDurably("caviar", 1));
+        }
+    }
+
+    // Przerwanie wątku nie przerywa potwierdzenia - rezerwacja jest zapisana, a flaga przerwania pozostaje ustawiona
+
+    @Test
+    void interruptedDurableReservationStillCompletes() throws IOException {
+
+        StockList stockList = new StockList();
+
+        try(StockJournal journal = StockJournal.open(directory)){
+
+            stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+            stockList.attachJournal(journal);
+
+            Thread.currentThread().interrupt();
+
+            try {
+
+                assertEquals(2, stockList.reserveStockDurably("bread", 2));
+                assertTrue(Thread.currentThread().isInterrupted());
+
+            } finally {
+
+                Thread.interrupted();
+            }
+
+            assertEquals(2, StockJournal.recover(directory, new StockList()).get("bread").getReservedQuantity());
+        }
+    }
+
+    // Rekord dodania większy niż bufor dziennika - produkt jest odrzucany, zanim zmieni się lista
+
+    @Test
+    void oversizedRecordsAreRejected() throws IOException {
+
+        String longName = "x".repeat(StockJournal.MAX_NAME_BYTES + 1);
+        StockList stockList = new StockList();
+
+        try(StockJournal journal = StockJournal.open(directory)){
+
+            stockList.attachJournal(journal);
+
+            assertThrows(IllegalArgumentException.class, () -> stockList.addStock(StockItem.ofMinorUnits(longName, 1, 1)));
+            assertNull(stockList.get(longName));
+            assertEquals(0, stockList.Items().size());
+
+            stockList.addStock(StockItem.ofMinorUnits("x".repeat(StockJournal.MAX_NAME_BYTES), 1, 1));
+        }
+
+        assertEquals(1, StockJournal.recover(directory, new StockList()).Items().size());
+
+        StockList unjournaled = new StockList();
+
+        unjournaled.addStock(StockItem.ofMinorUnits(longName, 1, 1));
+
+        try(StockJournal journal = StockJournal.open(directory.resolve("other"))){
+
+            assertThrows(IllegalArgumentException.class, () -> unjournaled.attachJournal(journal));
+        }
+    }
+
+    // Identyfikatory z dziennika są zachowane - także z luką (rekord dodania produktu 1 utracony przy awarii)
+
+    @Test
+    void recoverKeepsRecordedIds() throws IOException {
+
+        try(StockJournal journal = StockJournal.open(directory)){
+
+            StockItem bread = StockItem.ofMinorUnits("bread", 250, 10);
+            StockItem jam = StockItem.ofMinorUnits("jam", 450, 2);
+
+            bread.setId(0);
+            jam.setId(2);
+            journal.itemAdded(bread);
+            journal.itemAdded(jam);
+        }
+
+        StockList recovered = StockJournal.recover(directory, new StockList());
+
+        assertEquals("bread", recovered.get(0).getName());
+        assertNull(recovered.get(1));
+        assertEquals(2, recovered.idOf("jam"));
+        assertEquals(2, recovered.get(2).getQuantityInStock());
+        assertEquals(2, recovered.Items().size());
+
+        recovered.addStock(StockItem.ofMinorUnits("milk", 199, 5));
+
+        assertEquals(3, recovered.idOf("milk"));
+
+        // Lista docelowa z produktami - identyfikatory nie mogłyby być zachowane
+
+        assertThrows(IllegalArgumentException.class, () -> StockJournal.recover(directory, recovered));
+    }
+
+    // Błąd zapisu dziennika (snapshot() nie może utworzyć nowego pliku - katalog usunięty)
+    // Dziennik jest oznaczony jako uszkodzony, nowe zmiany są odrzucane przed wykonaniem, a zwolnienie rezerwacji nadal działa
+
+    @Test
+    void failedJournalRejectsLaterChanges() throws IOException {
+
+        Path journalDirectory = directory.resolve("journal");
+        StockList stockList = new StockList();
+        StockJournal journal = StockJournal.open(journalDirectory);
+
+        stockList.attachJournal(journal);
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+        stockList.reserveStock("bread", 2);
+        journal.sync();
+
+        assertFalse(journal.isFailed());
+
+        try(var files = Files.list(journalDirectory)){
+
+            for(Path file : files.toList()){
+
+                Files.delete(file);
+            }
+        }
+
+        Files.delete(journalDirectory);
+
+        assertThrows(IOException.class, () -> journal.snapshot(stockList));
+        assertTrue(journal.isFailed());
+
+        StockItem bread = stockList.get("bread");
+        UncheckedIOException rejected = assertThrows(UncheckedIOException.class, () -> stockList.reserveStock("bread", 1));
+
+        assertEquals(journal.getFailure(), rejected.getCause());
+        assertThrows(UncheckedIOException.class, () -> stockList.sellStock("bread", 1));
+        assertThrows(UncheckedIOException.class, () -> bread.adjustStock(5));
+        assertThrows(UncheckedIOException.class, () -> bread.setPriceInMinorUnits(300));
+        assertThrows(UncheckedIOException.class, () -> stockList.addStock(StockItem.ofMinorUnits("milk", 199, 5)));
+        assertThrows(UncheckedIOException.class, () -> stockList.reserveStockDurably("bread", 1));
+
+        assertEquals(10, bread.getQuantityInStock());
+        assertEquals(2, bread.getReservedQuantity());
+        assertEquals(250, bread.getPriceInMinorUnits());
+        assertNull(stockList.get("milk"));
+
+        assertEquals(2, stockList.unreservedStock("bread", 2));
+        assertThrows(IOException.class, journal::sync);
+        assertThrows(IOException.class, journal::close);
+    }
+}
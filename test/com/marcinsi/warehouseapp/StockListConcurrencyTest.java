@@ -0,0 +1,153 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Lista współbieżna (StockList.concurrentStockList()) - rejestracja produktów z wielu wątków oraz zastępowanie produktu w trakcie rezerwacji
+
+class StockListConcurrencyTest {
+
+    @Test
+    void concurrentAddStockAssignsDenseUniqueIds() throws InterruptedException {
+
+        int threadCount = 8;
+        int perThread = 2_000;
+        StockList stockList = StockList.concurrentStockList();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threadCount];
+
+        for(int t = 0; t < threadCount; t++){
+
+            int index = t;
+
+            workers[t] = new Thread(() -> {
+
+                try {
+
+                    start.await();
+
+                } catch(InterruptedException e){
+
+                    return;
+                }
+
+                for(int i = 0; i < perThread; i++){
+
+                    stockList.addStock(StockItem.ofMinorUnits("item-" + index + "-" + i, 100, 2));
+                }
+            });
+
+            workers[t].start();
+        }
+
+        start.countDown();
+
+        for(Thread worker : workers){
+
+            worker.join();
+        }
+
+        int total = threadCount * perThread;
+        Set<Integer> ids = new HashSet<>();
+
+        for(StockItem item : stockList.Items().values()){
+
+            assertTrue(ids.add(item.getId()));
+            assertSame(item, stockList.get(item.getId()));
+        }
+
+        assertEquals(total, ids.size());
+        assertEquals(total - 1, ids.stream().mapToInt(Integer::intValue).max().getAsInt());
+        assertEquals(total, stockList.PriceList().size());
+        assertEquals(total * 200L, stockList.totalAvailableValueInMinorUnits());
+        assertEquals(total * 200L, stockList.computeAvailableValueInMinorUnits());
+    }
+
+    // Wątki trzymają referencję do poprzedniego obiektu (pobraną przez get()), a w tym czasie produkt jest wielokrotnie zastępowany
+    // Zmiany wykonane na starym obiekcie trafiają do następcy - żadna sztuka nie ginie i nie powstaje z niczego
+
+    @Test
+    void replacingAnItemKeepsChangesMadeThroughOldReferences() throws InterruptedException {
+
+        int initial = 100_000;
+        int threadCount = 6;
+        StockList stockList = StockList.concurrentStockList();
+
+        stockList.addStock(new StockItem("item", 1.0, initial));
+
+        long[] sold = new long[threadCount];
+        long[] held = new long[threadCount];
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread[] workers = new Thread[threadCount];
+
+        for(int t = 0; t < threadCount; t++){
+
+            int index = t;
+
+            workers[t] = new Thread(() -> {
+
+                while(running.get()){
+
+                    StockItem item = stockList.get("item");
+
+                    for(int i = 0; i < 100; i++){
+
+                        held[index] += item.reserveStock(1);
+
+                        if((held[index] > 0) && (i % 3 == 0)){
+
+                            int finalized = item.finalizeStock(1);
+
+                            held[index] -= finalized;
+                            sold[index] += finalized;
+                        }
+
+                        if((held[index] > 0) && (i % 5 == 0)){
+
+                            held[index] -= item.unreserveStock(1);
+                        }
+                    }
+                }
+            });
+
+            workers[t].start();
+        }
+
+        for(int i = 0; i < 2_000; i++){
+
+            stockList.addStock(new StockItem("item", 1.0, 0));
+        }
+
+        running.set(false);
+
+        for(Thread worker : workers){
+
+            worker.join();
+        }
+
+        long totalSold = 0;
+        long totalHeld = 0;
+
+        for(int t = 0; t < threadCount; t++){
+
+            totalSold += sold[t];
+            totalHeld += held[t];
+        }
+
+        StockItem current = stockList.get("item");
+
+        assertEquals(initial, current.getQuantityInStock() + totalSold);
+        assertEquals(totalHeld, current.getReservedQuantity());
+        assertEquals(0, current.getId());
+        assertEquals(1, stockList.Items().size());
+        assertEquals(current.getAvailableQuantity() * 100L, stockList.totalAvailableValueInMinorUnits());
+    }
+}
@@ -0,0 +1,224 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// StockLoader - granice części pliku, nagłówek, powtórzone nazwy, zaokrąglanie cen oraz uszkodzone wiersze CSV i bloki binarne
+
+class StockLoaderTest {
+
+    @TempDir
+    Path directory;
+
+    // Każdy możliwy podział pliku na części (także w środku wiersza i tuż za znakiem końca linii) daje te same wiersze
+
+    @Test
+    void rowsCrossingChunkBoundariesBelongToOneChunk() throws IOException {
+
+        String csv = "name,price,quantity\r\n"
+                + "bread,0.86,100\r\n"
+                + "# komentarz\n"
+                + "\n"
+                + "a,1,1\n"
+                + "very long product name crossing several chunks,12.5,7\n"
+                + "milk,2.10,25";
+
+        Path file = write("boundaries.csv", csv);
+        List<String> expected = List.of("bread 86 100", "a 100 1", "very long product name crossing several chunks 1250 7", "milk 210 25");
+
+        assertEquals(expected, rows(StockLoader.parseCsv(file, 0)));
+
+        for(int chunk = 1; chunk <= csv.length() + 1; chunk++){
+
+            assertEquals(expected, rows(StockLoader.parseCsv(file, chunk)), "chunk " + chunk);
+        }
+    }
+
+    @Test
+    void headerIsOptional() throws IOException {
+
+        assertEquals(List.of("bread 86 100"), rows(StockLoader.parseCsv(write("header.csv", "Name,Price,Quantity\nbread,0.86,100\n"), 0)));
+        assertEquals(List.of("bread 86 100", "milk 210 25"), rows(StockLoader.parseCsv(write("plain.csv", "bread,0.86,100\nmilk,2.10,25\n"), 0)));
+
+        // Nagłówek tylko w pierwszej linii - ta sama linia dalej w pliku jest błędnym wierszem
+
+        assertThrows(IOException.class, () -> StockLoader.parseCsv(write("late.csv", "bread,0.86,100\nname,price,quantity\n"), 0));
+    }
+
+    // Powtórzona nazwa - tak jak addStock(): ilości się sumują, cena z późniejszego wiersza, produkt na pierwszej pozycji
+
+    @Test
+    void duplicatesMergeLikeAddStock() throws IOException {
+
+        Path file = write("duplicates.csv", "bread,0.86,100\nmilk,2.10,25\nbread,0.90,50\n");
+        StockList loaded = StockLoader.loadCsv(file);
+        StockList added = new StockList();
+
+        added.addStock(StockItem.ofMinorUnits("bread", 86, 100));
+        added.addStock(StockItem.ofMinorUnits("milk", 210, 25));
+        added.addStock(StockItem.ofMinorUnits("bread", 90, 50));
+
+        assertEquals(rows(new ArrayList<>(added.Items().values())), rows(new ArrayList<>(loaded.Items().values())));
+        assertEquals(List.of("bread 90 150", "milk 210 25"), rows(new ArrayList<>(loaded.Items().values())));
+        assertEquals(0, loaded.get("bread").getId());
+    }
+
+    // Trzecia cyfra po kropce zaokrągla w górę od 5 (dziesiętnie, bez błędów liczb double), cena poniżej grosza jest błędem
+
+    @Test
+    void pricesRoundToMinorUnits() throws IOException {
+
+        Path file = write("prices.csv", "a,0.005,1\nb,1.005,1\nc,0.994,1\nd,0.995,1\ne,12,1\nf,12.5,1\ng,0.00,1\nh,7.1299,1\n");
+
+        assertEquals(List.of("a 1 1", "b 101 1", "c 99 1", "d 100 1", "e 1200 1", "f 1250 1", "g 0 1", "h 713 1"), rows(StockLoader.parseCsv(file, 0)));
+        assertThrows(IOException.class, () -> StockLoader.parseCsv(write("crumb.csv", "crumb,0.004,1\n"), 0));
+    }
+
+    @Test
+    void malformedCsvRowsAreRejected() throws IOException {
+
+        String[] rows = {"bread", "bread,0.86", ",0.86,100", "bread,,100", "bread,0.86,", "bread,abc,100", "bread,1.2.3,100", "bread,0.86,-5", "bread,0.86,100,7", "bread,0.86,99999999999"};
+
+        for(String row : rows){
+
+            Path file = write("malformed.csv", "milk,2.10,25\n" + row + "\n");
+
+            assertThrows(IOException.class, () -> StockLoader.parseCsv(file, 0), row);
+            assertThrows(IOException.class, () -> StockLoader.parseCsv(file, 4), row);
+        }
+    }
+
+    // Format binarny: zapis i odczyt (także przy podziale na wiele części), bloki łączone w kolejności pliku
+
+    @Test
+    void binaryCatalogRoundTrips() throws IOException {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 86, 100));
+        stockList.addStock(StockItem.ofMinorUnits("żółw", 12_50, 3));
+
+        Path file = directory.resolve("catalog.bin");
+
+        StockLoader.writeBinary(stockList, file);
+
+        assertEquals(List.of("bread 86 100", "żółw 1250 3"), rows(StockLoader.parseBinary(file, 0)));
+
+        Path blocks = writeBinary("blocks.bin", block(record("a", 1, 1), record("b", 2, 2)), block(record("c", 3, 3)), block(record("a", 4, 4)));
+
+        for(int chunk = 1; chunk < 64; chunk++){
+
+            assertEquals(List.of("a 1 1", "b 2 2", "c 3 3", "a 4 4"), rows(StockLoader.parseBinary(blocks, chunk)));
+        }
+
+        assertEquals(List.of("a 4 5", "b 2 2", "c 3 3"), rows(new ArrayList<>(StockLoader.loadBinary(blocks).Items().values())));
+    }
+
+    @Test
+    void malformedBinaryCatalogsAreRejected() throws IOException {
+
+        byte[] valid = block(record("bread", 86, 100));
+
+        // Zły nagłówek pliku, blok ucięty w połowie, niepełny nagłówek bloku
+
+        Files.write(directory.resolve("magic.bin"), new byte[] {'C', 'S', 'V', '1'});
+        assertThrows(IOException.class, () -> StockLoader.parseBinary(directory.resolve("magic.bin"), 0));
+
+        byte[] truncated = new byte[valid.length - 3];
+
+        System.arraycopy(valid, 0, truncated, 0, truncated.length);
+
+        assertThrows(IOException.class, () -> StockLoader.parseBinary(writeBinary("truncated.bin", truncated), 0));
+        assertThrows(IOException.class, () -> StockLoader.parseBinary(writeBinary("header.bin", valid, new byte[] {0, 0, 0}), 0));
+
+        // Rekord wychodzi poza blok, za duża liczba rekordów, za mała liczba rekordów, ujemna ilość, pusta nazwa
+
+        byte[] record = record("bread", 86, 100);
+
+        assertThrows(IOException.class, () -> StockLoader.parseBinary(writeBinary("overrun.bin", blockWithCount(2, record)), 0));
+        assertThrows(IOException.class, () -> StockLoader.parseBinary(writeBinary("count.bin", blockWithCount(0, record)), 0));
+        assertThrows(IOException.class, () -> StockLoader.parseBinary(writeBinary("negative.bin", block(record("bread", 86, -1))), 0));
+        assertThrows(IOException.class, () -> StockLoader.parseBinary(writeBinary("empty.bin", block(record("", 86, 1))), 0));
+        assertThrows(IOException.class, () -> StockLoader.parseBinary(writeBinary("length.bin", block(ByteBuffer.allocate(2).putShort((short) 400).array())), 0));
+    }
+
+    private Path write(String name, String content) throws IOException {
+
+        return Files.writeString(directory.resolve(name), content, StandardCharsets.UTF_8);
+    }
+
+    // Plik binarny: nagłówek WHS1 i podane bloki
+
+    private Path writeBinary(String name, byte[]... blocks) throws IOException {
+
+        int size = 4;
+
+        for(byte[] block : blocks){
+
+            size += block.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).putInt(0x57485331);
+
+        for(byte[] block : blocks){
+
+            buffer.put(block);
+        }
+
+        return Files.write(directory.resolve(name), buffer.array());
+    }
+
+    private static byte[] block(byte[]... records) {
+
+        return blockWithCount(records.length, records);
+    }
+
+    private static byte[] blockWithCount(int count, byte[]... records) {
+
+        int length = 0;
+
+        for(byte[] record : records){
+
+            length += record.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(8 + length).putInt(length).putInt(count);
+
+        for(byte[] record : records){
+
+            buffer.put(record);
+        }
+
+        return buffer.array();
+    }
+
+    private static byte[] record(String name, long price, int quantity) {
+
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+
+        return ByteBuffer.allocate(2 + bytes.length + 12).putShort((short) bytes.length).put(bytes).putLong(price).putInt(quantity).array();
+    }
+
+    private static List<String> rows(List<StockItem> items) {
+
+        List<String> rows = new ArrayList<>();
+
+        for(StockItem item : items){
+
+            rows.add(item.getName() + " " + item.getPriceInMinorUnits() + " " + item.getQuantityInStock());
+        }
+
+        return rows;
+    }
+}
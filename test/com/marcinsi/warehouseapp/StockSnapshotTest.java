@@ -0,0 +1,90 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Migawki StockSnapshot - stan z chwili utworzenia migawki, także gdy zapisy trwają w trakcie jej otwierania
+
+class StockSnapshotTest {
+
+    @Test
+    void snapshotKeepsStateFromItsCreation() {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+
+        // Zapisy bez migawek nie tworzą rekordów historii
+
+        stockList.reserveStock("bread", 2);
+
+        try(StockSnapshot snapshot = stockList.snapshot()){
+
+            stockList.reserveStock("bread", 3);
+            stockList.sellStock("bread", 4);
+
+            assertEquals(10, snapshot.getQuantityInStock(0));
+            assertEquals(2, snapshot.getReservedQuantity(0));
+        }
+
+        assertEquals(6, stockList.get("bread").getQuantityInStock());
+        assertEquals(1, stockList.get("bread").getReservedQuantity());
+    }
+
+    // Wątki zmieniają produkt bez przerwy, także w chwili otwierania migawki - kolejne odczyty jednej migawki muszą dać ten sam stan
+
+    @Test
+    void readsAreRepeatableWhileSnapshotsOpenUnderLoad() throws InterruptedException {
+
+        StockList stockList = StockList.concurrentStockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 1_000_000));
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread[] writers = new Thread[2];
+
+        for(int w = 0; w < writers.length; w++){
+
+            writers[w] = new Thread(() -> {
+
+                while(running.get()){
+
+                    stockList.reserveStock("bread", 1);
+                    stockList.unreservedStock("bread", 1);
+                }
+            });
+
+            writers[w].start();
+        }
+
+        try {
+
+            for(int i = 0; i < 2_000; i++){
+
+                try(StockSnapshot snapshot = stockList.snapshot()){
+
+                    int reserved = snapshot.getReservedQuantity(0);
+
+                    Thread.yield();
+
+                    assertEquals(reserved, snapshot.getReservedQuantity(0));
+                    assertEquals(1_000_000, snapshot.getQuantityInStock(0));
+                }
+            }
+
+        } finally {
+
+            running.set(false);
+
+            for(Thread writer : writers){
+
+                writer.join();
+            }
+        }
+
+        assertEquals(0, stockList.get("bread").getReservedQuantity());
+    }
+}
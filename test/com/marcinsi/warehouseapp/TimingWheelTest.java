@@ -0,0 +1,130 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Koło czasowe - rezerwacja wygasa dokładnie w swoim tyknięciu, także po rozłożeniu z wyższych poziomów (cascade)
+
+class TimingWheelTest {
+
+    private static Reservation reservation(long deadlineTick) {
+
+        return new Reservation(null, null, 0, 1, deadlineTick, null);
+    }
+
+    @Test
+    void reservationsExpireInTheirOwnTickOnEveryLevel() {
+
+        TimingWheel wheel = new TimingWheel(5, 0);
+        long[] deadlines = {1, 63, 64, 65, 127, 4095, 4096, 4097, 64 * 64 * 3 + 17, 262_143, 262_144, 262_145, 1_000_003};
+        List<Reservation> scheduled = new ArrayList<>();
+
+        for(long deadline : deadlines){
+
+            Reservation reservation = reservation(deadline);
+
+            assertTrue(wheel.add(reservation));
+            scheduled.add(reservation);
+        }
+
+        List<Reservation> expired = new ArrayList<>();
+
+        for(long tick = 1; tick <= 1_000_003; tick++){
+
+            long now = tick;
+
+            wheel.advanceTo(tick, reservation -> {
+
+                assertEquals(reservation.deadlineTick, now);
+                expired.add(reservation);
+            });
+        }
+
+        assertEquals(scheduled.size(), expired.size());
+    }
+
+    // Przesunięcie o wiele tyknięć naraz (wątek obsługi terminów się spóźnił) - rezerwacje wygasają w kolejności terminów
+
+    @Test
+    void advancingSeveralTicksAtOnceExpiresInDeadlineOrder() {
+
+        TimingWheel wheel = new TimingWheel(3, 100);
+
+        for(long deadline = 4_200; deadline > 100; deadline -= 37){
+
+            wheel.add(reservation(deadline));
+        }
+
+        List<Long> expired = new ArrayList<>();
+
+        wheel.advanceTo(5_000, reservation -> expired.add(reservation.deadlineTick));
+
+        assertEquals(111, expired.size());
+
+        for(int i = 1; i < expired.size(); i++){
+
+            assertTrue(expired.get(i - 1) < expired.get(i));
+        }
+
+        assertEquals(5_000, wheel.currentTick());
+    }
+
+    @Test
+    void removedReservationsDoNotExpire() {
+
+        TimingWheel wheel = new TimingWheel(3, 0);
+        Reservation kept = reservation(70);
+        Reservation removed = reservation(70);
+        Reservation removedLater = reservation(300);
+
+        wheel.add(kept);
+        wheel.add(removed);
+        wheel.add(removedLater);
+        wheel.remove(removed);
+
+        List<Reservation> expired = new ArrayList<>();
+
+        wheel.advanceTo(200, expired::add);
+        wheel.remove(removedLater);
+        wheel.remove(removedLater);
+        wheel.advanceTo(400, expired::add);
+
+        assertEquals(List.of(kept), expired);
+    }
+
+    @Test
+    void pastDeadlinesAreRejected() {
+
+        TimingWheel wheel = new TimingWheel(3, 50);
+
+        assertFalse(wheel.add(reservation(50)));
+        assertFalse(wheel.add(reservation(10)));
+    }
+
+    // Termin poza zakresem koła (3 poziomy - 64^3 tyknięć) - rezerwacja czeka na najwyższym poziomie i wygasa w swoim tyknięciu
+
+    @Test
+    void deadlinesBeyondTheWheelRangeExpireOnTime() {
+
+        TimingWheel wheel = new TimingWheel(3, 0);
+        long deadline = 64 * 64 * 64 * 2 + 5;
+        List<Long> expired = new ArrayList<>();
+
+        wheel.add(reservation(deadline));
+
+        for(long tick = 1; tick <= deadline + 10; tick++){
+
+            long now = tick;
+
+            wheel.advanceTo(tick, reservation -> expired.add(now));
+        }
+
+        assertEquals(List.of(deadline), expired);
+    }
+}
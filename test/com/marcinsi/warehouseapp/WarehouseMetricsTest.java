@@ -0,0 +1,161 @@
+package com.marcinsi.warehouseapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// WarehouseMetrics i LatencyHistogram - percentyle znanych czasów, liczniki wyników operacji oraz licznik rywalizacji o produkt
+
+class WarehouseMetricsTest {
+
+    // Wartości 0..15 mają własne przedziały - percentyle są dokładne
+
+    @Test
+    void smallLatenciesHaveExactPercentiles() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getValueAtPercentile(50.0));
+
+        for(int nanos = 0; nanos < 16; nanos++){
+
+            histogram.record(nanos);
+        }
+
+        assertEquals(16, histogram.getTotalCount());
+        assertEquals(7, histogram.getValueAtPercentile(50.0));
+        assertEquals(15, histogram.getValueAtPercentile(99.0));
+        assertEquals(0, histogram.getValueAtPercentile(0.0));
+        assertEquals(15, histogram.getMax());
+        assertEquals(7.5, histogram.getMean());
+    }
+
+    // Większe wartości - górna granica przedziału, najwyżej 1/16 powyżej dokładnego percentyla i nie więcej niż maksimum
+
+    @Test
+    void largeLatenciesStayWithinBucketPrecision() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for(long nanos = 1_000; nanos <= 1_000_000; nanos += 1_000){
+
+            histogram.record(nanos);
+        }
+
+        assertEquals(1_000, histogram.getTotalCount());
+        assertBetween(500_000, 500_000 + 500_000 / 16, histogram.getValueAtPercentile(50.0));
+        assertBetween(990_000, 1_000_000, histogram.getValueAtPercentile(99.0));
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100.0));
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_500.0, histogram.getMean());
+
+        // 99 szybkich operacji i jedna wolna - p50 i p99 nie widzą wolnej, maksimum tak
+
+        histogram.reset();
+
+        for(int i = 0; i < 99; i++){
+
+            histogram.record(100);
+        }
+
+        histogram.record(50_000_000);
+
+        assertBetween(100, 100 + 100 / 16, histogram.getValueAtPercentile(50.0));
+        assertBetween(100, 100 + 100 / 16, histogram.getValueAtPercentile(99.0));
+        assertBetween(50_000_000, 50_000_000, histogram.getValueAtPercentile(99.9));
+        assertEquals(50_000_000, histogram.getMax());
+    }
+
+    @Test
+    void outcomesAreCountedPerOperation() {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+
+        WarehouseMetrics metrics = stockList.enableMetrics();
+
+        stockList.reserveStock("bread", 4);
+        stockList.reserveStock("bread", 4);
+        stockList.reserveStock("bread", 4);
+        stockList.reserveStock("cheese", 1);
+        stockList.reserveStock("bread", -1);
+        stockList.sellStock("bread", 3);
+        stockList.unreservedStock("bread", 10);
+
+        assertEquals(2, metrics.getCount(WarehouseMetrics.Operation.RESERVE, WarehouseMetrics.Outcome.SUCCESS));
+        assertEquals(1, metrics.getCount(WarehouseMetrics.Operation.RESERVE, WarehouseMetrics.Outcome.OUT_OF_STOCK));
+        assertEquals(2, metrics.getCount(WarehouseMetrics.Operation.RESERVE, WarehouseMetrics.Outcome.FAILURE));
+        assertEquals(5, metrics.getCount(WarehouseMetrics.Operation.RESERVE));
+        assertEquals(5, metrics.getLatency(WarehouseMetrics.Operation.RESERVE).getTotalCount());
+        assertEquals(1, metrics.getCount(WarehouseMetrics.Operation.SELL, WarehouseMetrics.Outcome.SUCCESS));
+        assertEquals(1, metrics.getCount(WarehouseMetrics.Operation.UNRESERVE, WarehouseMetrics.Outcome.OUT_OF_STOCK));
+        assertEquals(0, metrics.getCount(WarehouseMetrics.Operation.CHECKOUT));
+
+        Map<String, Long> counters = metrics.getCounters();
+
+        assertEquals(2L, counters.get("RESERVE.SUCCESS"));
+        assertEquals(2L, counters.get("RESERVE.FAILURE"));
+        assertEquals(0L, counters.get("RESERVE.CAS_RETRIES"));
+        assertTrue(metrics.getLatencies().get("RESERVE.p99") <= metrics.getLatencies().get("RESERVE.max"));
+
+        metrics.reset();
+
+        assertEquals(0, metrics.getCount(WarehouseMetrics.Operation.RESERVE));
+        assertEquals(0, metrics.getLatency(WarehouseMetrics.Operation.RESERVE).getTotalCount());
+    }
+
+    // Rezerwacja, której stan zmienił się pomiędzy odczytem a compareAndSet()
+    // Przy otwartej migawce zapisy produktu czekają na blokadę obiektu - test trzyma blokadę i w tym czasie zmienia stan (blokada jest wielowejściowa)
+
+    @Test
+    void retriedReservationsAreCountedAsContention() throws InterruptedException {
+
+        StockList stockList = new StockList();
+
+        stockList.addStock(StockItem.ofMinorUnits("bread", 250, 10));
+
+        StockItem bread = stockList.get("bread");
+        WarehouseMetrics metrics = stockList.enableMetrics();
+
+        try(StockSnapshot snapshot = stockList.snapshot()){
+
+            Thread reserving = new Thread(() -> stockList.reserveStock("bread", 3));
+
+            synchronized(bread){
+
+                reserving.start();
+
+                while(reserving.getState() != Thread.State.BLOCKED){
+
+                    Thread.yield();
+                }
+
+                bread.adjustStock(5);
+            }
+
+            reserving.join();
+
+            assertEquals(10, snapshot.getQuantityInStock(0));
+        }
+
+        assertEquals(15, bread.getQuantityInStock());
+        assertEquals(3, bread.getReservedQuantity());
+        assertEquals(1, metrics.getContendedReserves());
+        assertEquals(1, metrics.getReserveRetries());
+        assertEquals(1L, metrics.getCounters().get("RESERVE.CONTENDED"));
+        assertEquals(1, metrics.getCount(WarehouseMetrics.Operation.RESERVE, WarehouseMetrics.Outcome.SUCCESS));
+
+        metrics.reset();
+
+        assertEquals(0, metrics.getReserveRetries());
+    }
+
+    private static void assertBetween(long low, long high, long value) {
+
+        assertTrue((value >= low) && (value <= high), value + " not in [" + low + ", " + high + "]");
+    }
+}